@@ -22,15 +22,23 @@ NoticeEnd */
 
 package org.openwaterfoundation.tstool.plugin.synoptic.commands;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JFrame;
 
 import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticDataStore;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
 import org.openwaterfoundation.tstool.plugin.synoptic.ui.Synoptic_TimeSeries_InputFilter_JPanel;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.CheckpointJournal;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.CircuitBreaker;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.IntervalAggregator;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.ReadPlan;
 
 import riverside.datastore.DataStore;
 import rti.tscommandprocessor.core.TSCommandProcessor;
@@ -55,6 +63,7 @@ import RTi.Util.IO.AbstractCommand;
 import RTi.Util.Message.Message;
 import RTi.Util.Message.MessageUtil;
 import RTi.Util.String.StringUtil;
+import RTi.Util.Table.DataTable;
 import RTi.Util.Time.DateTime;
 import RTi.Util.Time.TimeInterval;
 
@@ -82,6 +91,11 @@ These are TS objects but with mainly the metadata (TSIdent) filled in.
 */
 private List<TS> __discoveryTSList = null;
 
+/**
+Table created in discovery mode when explaining the read (Explain=True).
+*/
+private DataTable __discoveryTable = null;
+
 /**
 Constructor.
 */
@@ -115,6 +129,12 @@ throws InvalidCommandParameterException {
     String IrregularInterval = parameters.getValue ( "IrregularInterval" );
     String Read24HourAsDay = parameters.getValue ( "Read24HourAsDay" );
     String ReadDayAs24Hour = parameters.getValue ( "ReadDayAs24Hour" );
+    String AggregationStatistic = parameters.getValue ( "AggregationStatistic" );
+    String ServerAggregation = parameters.getValue ( "ServerAggregation" );
+    String AccumulationToIncrement = parameters.getValue ( "AccumulationToIncrement" );
+    String WarmCache = parameters.getValue ( "WarmCache" );
+    String Resume = parameters.getValue ( "Resume" );
+    String Explain = parameters.getValue ( "Explain" );
     String Debug = parameters.getValue ( "Debug" );
     String InputFiltersCheck = parameters.getValue ( "InputFiltersCheck" ); // Passed in from the editor, not an actual parameter.
     String Where1 = parameters.getValue ( "Where1" );
@@ -210,6 +230,70 @@ throws InvalidCommandParameterException {
                    message, "Specify one of IrregularInterval, Read24HourAsDay=True, or ReadDayAs24Hour=True."));
 	}
 
+	if ( (AggregationStatistic != null) && !AggregationStatistic.isEmpty() ) {
+		if ( IntervalAggregator.lookupStatistic(AggregationStatistic) == null ) {
+			message = "The AggregationStatistic parameter value (" + AggregationStatistic + ") is invalid.";
+			warning += "\n" + message;
+			status.addToLog ( CommandPhaseType.INITIALIZATION,
+				new CommandLogRecord(CommandStatusType.FAILURE,
+					message, "Specify one of " + IntervalAggregator.getStatisticChoices() + "." ) );
+		}
+		if ( (Interval != null) && !Interval.isEmpty() && (Interval.indexOf("${") < 0)
+			&& !IntervalAggregator.isSupportedInterval(Interval) ) {
+			message = "The AggregationStatistic parameter is only used when the interval is one of "
+				+ IntervalAggregator.getIntervalChoices() + ".";
+			warning += "\n" + message;
+			status.addToLog ( CommandPhaseType.INITIALIZATION,
+				new CommandLogRecord(CommandStatusType.FAILURE,
+					message, "Specify a regular interval or don't specify AggregationStatistic." ) );
+		}
+	}
+
+	if ( (ServerAggregation != null) && !ServerAggregation.equals("") &&
+		!ServerAggregation.equalsIgnoreCase(_False) && !ServerAggregation.equalsIgnoreCase(_True) ) {
+        message = "The ServerAggregation parameter value is invalid.";
+		warning += "\n" + message;
+           status.addToLog ( CommandPhaseType.INITIALIZATION,
+               new CommandLogRecord(CommandStatusType.FAILURE,
+                   message, "Specify " + _False + " or " + _True + " (default)." ) );
+	}
+
+	if ( (AccumulationToIncrement != null) && !AccumulationToIncrement.equals("") &&
+		!AccumulationToIncrement.equalsIgnoreCase(_False) && !AccumulationToIncrement.equalsIgnoreCase(_True) ) {
+        message = "The AccumulationToIncrement parameter value is invalid.";
+		warning += "\n" + message;
+           status.addToLog ( CommandPhaseType.INITIALIZATION,
+               new CommandLogRecord(CommandStatusType.FAILURE,
+                   message, "Specify " + _False + " (default) or " + _True + "." ) );
+	}
+
+	if ( (WarmCache != null) && !WarmCache.equals("") &&
+		!WarmCache.equalsIgnoreCase(_False) && !WarmCache.equalsIgnoreCase(_True) ) {
+        message = "The WarmCache parameter value is invalid.";
+		warning += "\n" + message;
+           status.addToLog ( CommandPhaseType.INITIALIZATION,
+               new CommandLogRecord(CommandStatusType.FAILURE,
+                   message, "Specify " + _False + " (default) or " + _True + "." ) );
+	}
+
+	if ( (Resume != null) && !Resume.equals("") &&
+		!Resume.equalsIgnoreCase(_False) && !Resume.equalsIgnoreCase(_True) ) {
+        message = "The Resume parameter value is invalid.";
+		warning += "\n" + message;
+           status.addToLog ( CommandPhaseType.INITIALIZATION,
+               new CommandLogRecord(CommandStatusType.FAILURE,
+                   message, "Specify " + _False + " (default) or " + _True + "." ) );
+	}
+
+	if ( (Explain != null) && !Explain.equals("") &&
+		!Explain.equalsIgnoreCase(_False) && !Explain.equalsIgnoreCase(_True) ) {
+        message = "The Explain parameter value is invalid.";
+		warning += "\n" + message;
+           status.addToLog ( CommandPhaseType.INITIALIZATION,
+               new CommandLogRecord(CommandStatusType.FAILURE,
+                   message, "Specify " + _False + " (default) or " + _True + "." ) );
+	}
+
 	if ( (Debug != null) && !Debug.equals("") &&
 		!Debug.equalsIgnoreCase(_False) && !Debug.equalsIgnoreCase(_True) ) {
         message = "The Debug parameter value is invalid.";
@@ -315,6 +399,13 @@ throws InvalidCommandParameterException {
     validList.add ( "IrregularInterval" );
     validList.add ( "Read24HourAsDay" );
     validList.add ( "ReadDayAs24Hour" );
+    validList.add ( "AggregationStatistic" );
+    validList.add ( "ServerAggregation" );
+    validList.add ( "AccumulationToIncrement" );
+    validList.add ( "WarmCache" );
+    validList.add ( "Resume" );
+    validList.add ( "Explain" );
+    validList.add ( "ExplainTableID" );
     validList.add ( "Timezone" );
     validList.add ( "Debug" );
     warning = TSCommandProcessorUtil.validateParameterNames ( validList, this, warning );
@@ -336,9 +427,13 @@ throws InvalidCommandParameterException {
  * @param irregularInterval irregular interval to use for output time series
  * @param read24HourAsDay whether to read 24Hour time series as day interval
  * @param readDayAs24Hour whether to read daily time series as 24Hour interval
+ * @param aggregationStatistic statistic used to aggregate observations to a regular interval
+ * @param serverAggregation whether to use Synoptic services to aggregate on the server, if possible
+ * @param accumulationToIncrement whether to convert accumulated values that reset to increments
  */
 private HashMap<String,Object> createReadProperties ( String timezone, boolean debug,
-	String irregularInterval, boolean read24HourAsDay, boolean readDayAs24Hour ) {
+	String irregularInterval, boolean read24HourAsDay, boolean readDayAs24Hour, String aggregationStatistic,
+	boolean serverAggregation, boolean accumulationToIncrement ) {
 	HashMap<String,Object> readProperties = new HashMap<>();
 	if ( (timezone != null) && !timezone.isEmpty() ) {
 		readProperties.put("TimeZone", timezone );
@@ -355,6 +450,15 @@ private HashMap<String,Object> createReadProperties ( String timezone, boolean d
 	if ( readDayAs24Hour ) {
 		readProperties.put("ReadDayAs24Hour", "True" );
 	}
+	if ( (aggregationStatistic != null) && !aggregationStatistic.isEmpty() ) {
+		readProperties.put("AggregationStatistic", aggregationStatistic );
+	}
+	if ( !serverAggregation ) {
+		readProperties.put("ServerAggregation", "False" );
+	}
+	if ( accumulationToIncrement ) {
+		readProperties.put("AccumulationToIncrement", "True" );
+	}
 	return readProperties;
 }
 
@@ -375,12 +479,25 @@ private List<TS> getDiscoveryTSList () {
     return __discoveryTSList;
 }
 
+/**
+Return the table that is read by this class when run in discovery mode.
+*/
+private DataTable getDiscoveryTable() {
+    return __discoveryTable;
+}
+
 /**
 Return the list of data objects read by this object in discovery mode.
-The following classes can be requested:  TS
+The following classes can be requested:  TS, DataTable (when Explain=True)
 */
 @SuppressWarnings("unchecked")
 public <T> List<T> getObjectList ( Class<T> c ) {
+	DataTable table = getDiscoveryTable();
+	if ( (table != null) && (c == table.getClass()) ) {
+		List<T> v = new ArrayList<>();
+		v.add ( (T)table );
+		return v;
+	}
 	List<TS> discovery_TS_List = getDiscoveryTSList ();
     if ( (discovery_TS_List == null) || (discovery_TS_List.size() == 0) ) {
         return null;
@@ -456,6 +573,7 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
     boolean readData = true;
     if ( commandPhase == CommandPhaseType.DISCOVERY ) {
         setDiscoveryTSList ( null );
+        setDiscoveryTable ( null );
         readData = false;
     }
 
@@ -495,6 +613,48 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
     if ( (ReadDayAs24Hour != null) && ReadDayAs24Hour.equalsIgnoreCase(_True) ) {
     	readDayAs24Hour = true;
     }
+    String AggregationStatistic = parameters.getValue("AggregationStatistic");
+    String ServerAggregation = parameters.getValue("ServerAggregation");
+    boolean serverAggregation = true; // Default
+    if ( (ServerAggregation != null) && ServerAggregation.equalsIgnoreCase(_False) ) {
+    	serverAggregation = false;
+    }
+    String AccumulationToIncrement = parameters.getValue("AccumulationToIncrement");
+    boolean accumulationToIncrement = false; // Default
+    if ( (AccumulationToIncrement != null) && AccumulationToIncrement.equalsIgnoreCase(_True) ) {
+    	accumulationToIncrement = true;
+    }
+    String WarmCache = parameters.getValue("WarmCache");
+    boolean warmCache = false; // Default
+    if ( (WarmCache != null) && WarmCache.equalsIgnoreCase(_True) && (commandPhase == CommandPhaseType.RUN) ) {
+    	// Only warm the cache when running, discovery does not read data.
+    	warmCache = true;
+    }
+    String Resume = parameters.getValue("Resume");
+    boolean resume = false; // Default
+    if ( (Resume != null) && Resume.equalsIgnoreCase(_True) ) {
+    	resume = true;
+    }
+    String Explain = parameters.getValue("Explain");
+    boolean explain = false; // Default
+    if ( (Explain != null) && Explain.equalsIgnoreCase(_True) ) {
+    	explain = true;
+    }
+    String ExplainTableID = parameters.getValue("ExplainTableID");
+    ExplainTableID = TSCommandProcessorUtil.expandParameterValue(getCommandProcessor(), this, ExplainTableID);
+    if ( (ExplainTableID == null) || ExplainTableID.isEmpty() ) {
+    	ExplainTableID = "ReadSynopticExplain"; // Default
+    }
+    // Time series to explain, with the matching time series catalog, only used when running.
+    Map<String,TimeSeriesCatalog> explainCatalogMap = null;
+    if ( explain && (commandPhase == CommandPhaseType.RUN) ) {
+    	explainCatalogMap = new LinkedHashMap<>();
+    }
+    // Negative cache avoided count at the start of the read, or -1 if the negative cache is not used.
+    long negativeCacheAvoidedCount = -1;
+    // Hedge counts at the start of the read, or -1 if requests are not hedged.
+    long hedgeCount = -1;
+    long hedgeWinCount = -1;
 	String Timezone = parameters.getValue ("Timezone" );
 	String Debug = parameters.getValue ("Debug" );
 	boolean debug = false; // Default
@@ -561,8 +721,39 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
                     message, "Verify that a SynopticDataStore datastore is properly configured." ) );
             throw new RuntimeException ( message );
         }
+        else if ( resume && (dataStore.getResponseCache() == null) && (commandPhase == CommandPhaseType.RUN) ) {
+            message = "Datastore \"" + DataStore + "\" does not cache responses - cannot resume the read.";
+            Message.printWarning ( 2, routine, message );
+            status.addToLog ( commandPhase,
+                new CommandLogRecord(CommandStatusType.FAILURE,
+                    message, "Specify the ResponseCacheFolder datastore configuration property." ) );
+            throw new RuntimeException ( message );
+        }
+        else if ( warmCache && (dataStore.getResponseCache() == null) ) {
+            message = "Datastore \"" + DataStore + "\" does not cache responses - cannot warm the cache.";
+            Message.printWarning ( 2, routine, message );
+            status.addToLog ( commandPhase,
+                new CommandLogRecord(CommandStatusType.FAILURE,
+                    message, "Specify the ResponseCacheFolder datastore configuration property." ) );
+            throw new RuntimeException ( message );
+        }
+        else if ( explain && (commandPhase == CommandPhaseType.DISCOVERY) ) {
+        	// Time series are not read when explaining, only the table is output.
+        	DataTable table = new DataTable();
+        	table.setTableID ( ExplainTableID );
+        	setDiscoveryTable ( table );
+        }
         else {
 			// Have a datastore so try to read.
+			if ( dataStore.getNegativeCache() != null ) {
+				// Used to report how many requests were avoided because there were recently no data.
+				negativeCacheAvoidedCount = dataStore.getNegativeCache().getAvoidedCount();
+			}
+			if ( dataStore.getRequestHedger() != null ) {
+				// Used to report how many slow requests were hedged.
+				hedgeCount = dataStore.getRequestHedger().getHedgeCount();
+				hedgeWinCount = dataStore.getRequestHedger().getHedgeWinCount();
+			}
         	// See if a Where has been specified by checking for the first Where clause.
 			String WhereN = parameters.getValue ( "Where" + 1 );
 			//if ( (WhereN == null) || WhereN.isEmpty() ) { // }
@@ -596,10 +787,10 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 					tsident.setInterval(Interval);
 				}
 				String TSID = tsident.getIdentifier();
-				// Currently can only read up to 1Day interval:
-				// - TODO smalers 2023-01-16 enable once know how to handle
-				if ( (tsident.getIntervalBase() == TimeInterval.MONTH) || (tsident.getIntervalBase() == TimeInterval.YEAR) ) {
-					message = "Don't know how to read month or year interval for \"" + TSID + "\".";
+				// Currently can only read up to 1Month interval:
+				// - TODO smalers 2023-01-16 enable year once know how to handle
+				if ( tsident.getIntervalBase() == TimeInterval.YEAR ) {
+					message = "Don't know how to read year interval for \"" + TSID + "\".";
 					Message.printWarning ( 2, routine, message );
 	                status.addToLog ( commandPhase,
 	                    new CommandLogRecord(CommandStatusType.FAILURE,
@@ -611,8 +802,26 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 				TS ts = null;
 				try {
 					HashMap<String,Object> readProperties = createReadProperties ( Timezone, debug, IrregularInterval,
-						read24HourAsDay, readDayAs24Hour );
-	                ts = dataStore.readTimeSeries ( TSID, InputStart_DateTime, InputEnd_DateTime, readData, readProperties );
+						read24HourAsDay, readDayAs24Hour, AggregationStatistic, serverAggregation,
+						accumulationToIncrement );
+					if ( explainCatalogMap != null ) {
+						// Only match the time series catalog, which is needed to plan the read.
+						List<TimeSeriesCatalog> tscatalogList = dataStore.readTimeSeriesCatalog ( TSID, null, null, null );
+						if ( tscatalogList.size() != 1 ) {
+							throw new RuntimeException ( "Matched " + tscatalogList.size() + " TSID \"" + TSID
+								+ "\" but was expecting 1 match - cannot explain the read." );
+						}
+						explainCatalogMap.put ( TSID, tscatalogList.get(0) );
+					}
+					else if ( warmCache ) {
+						List<String> tsidList = new ArrayList<>();
+						tsidList.add(TSID);
+						warning_count += warmCache ( dataStore, tsidList, InputStart_DateTime, InputEnd_DateTime,
+							readProperties, null, status, commandPhase );
+					}
+					else {
+	                	ts = dataStore.readTimeSeries ( TSID, InputStart_DateTime, InputEnd_DateTime, readData, readProperties );
+					}
 				}
 				catch ( Exception e ) {
 				    ts = null;
@@ -621,11 +830,13 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 					Message.printWarning ( 2, routine, e );
 	                status.addToLog ( commandPhase,
 	                    new CommandLogRecord(CommandStatusType.FAILURE,
-	                        message, "Verify the time series identifier." ) );
+	                        message, (dataStore.isOffline() ?
+	                        	"Run with the datastore RecordResponses=True property while online to cache responses." :
+	                        	"Verify the time series identifier.") ) );
 	                throw new RuntimeException ( message );
 				}
 				finally {
-				    if ( ts == null ) {
+				    if ( (ts == null) && !warmCache && !explain ) {
 				        // Generate an event for listeners.
 				        notifyCommandProcessorEventListeners(new MissingObjectEvent(TSID,Class.forName("RTi.TS.TS"),"Time Series", this));
 				    }
@@ -716,6 +927,15 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 				}
 				catch ( Exception e ) {
 					// Probably no data.
+					if ( dataStore.isOffline() ) {
+						// Make it clear that the catalog was not cached.
+						message = "Error reading the time series list while offline (" + e + ").";
+						Message.printWarning ( 2, routine, message );
+						++warning_count;
+		                status.addToLog ( commandPhase,
+		                    new CommandLogRecord(CommandStatusType.FAILURE,
+		                        message, "Run with the datastore RecordResponses=True property while online to cache responses." ) );
+					}
 				}
 
 				// Make sure that size is set.
@@ -745,7 +965,27 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 				TS ts; // Time series to read.
 				TimeSeriesCatalog tsCatalog;
 				HashMap<String,Object> readProperties = createReadProperties ( Timezone, debug, IrregularInterval,
-					read24HourAsDay, readDayAs24Hour );
+					read24HourAsDay, readDayAs24Hour, AggregationStatistic, serverAggregation,
+						accumulationToIncrement );
+				// Time series identifiers to warm the cache.
+				List<String> warmTsidList = new ArrayList<>();
+				// Number of time series that were not read because the circuit breaker is open,
+				// which are summarized rather than adding a message for each time series.
+				int circuitOpenCount = 0;
+				// Checkpoint journal used to resume a read that fails or is cancelled:
+				// - only used if Resume=True because responses are saved regardless of the cache time to live
+				// - completed time series from a previous read with Resume=True are read from the cache
+				// - the journal is deleted when the read completes without problems
+				CheckpointJournal journal = null;
+				int resumedCount = 0;
+				int journalWarningCount = warning_count;
+				if ( (commandPhase == CommandPhaseType.RUN) && (dataStore.getResponseCache() != null) && !explain && resume ) {
+					journal = openCheckpointJournal ( dataStore, parameters, status, commandPhase );
+				}
+				// Resolve the default read period once so that all time series are read for the same period
+				// and the checkpoint unit keys identify the period that was read.
+				DateTime readStart = dataStore.resolveReadStart(InputStart_DateTime);
+				DateTime readEnd = dataStore.resolveReadEnd(InputEnd_DateTime);
 				for ( int i = 0; i < size; i++ ) {
 					// Check to see if reading time series should be canceled because the command has been canceled.
 					if ( tsprocessor.getCancelProcessingRequested() ) {
@@ -780,14 +1020,33 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 						+ "." + dataSource 
 						+ "." + dataType
 						+ "." + interval;
+					if ( explainCatalogMap != null ) {
+						// Plan the read below.
+						explainCatalogMap.put(tsidentString, tsCatalog);
+						continue;
+					}
+					if ( warmCache ) {
+						// Read below in parallel.
+						warmTsidList.add(tsidentString);
+						continue;
+					}
 		            // Update the progress.
 					message = "Reading Synoptic web service time series " + (i + 1) + " of " + size + " \"" + tsidentString + "\"";
 	                notifyCommandProgressListeners ( i, size, (float)-1.0, message );
+	                String unitKey = CheckpointJournal.getUnitKey(tsidentString, readStart, readEnd);
+	                CheckpointJournal.Unit unit = null;
+	                if ( journal != null ) {
+	                	// If completed by a previous read, read using the cached responses.
+	                	unit = CheckpointJournal.beginUnit(journal.isComplete(unitKey));
+	                	if ( unit.useCache() ) {
+	                		++resumedCount;
+	                	}
+	                }
 					try {
 					    ts = dataStore.readTimeSeries (
 							tsidentString,
-							InputStart_DateTime,
-							InputEnd_DateTime, readData, readProperties );
+							new DateTime(readStart),
+							new DateTime(readEnd), readData, readProperties );
 						// Add the time series to the temporary list.  It will be further processed below.
 		                if ( (ts != null) && (Alias != null) && !Alias.equals("") ) {
 		                    ts.setAlias ( TSCommandProcessorUtil.expandTimeSeriesMetadataString(
@@ -795,18 +1054,75 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
 		                }
 		                // Allow null to be added here.
 						tslist.add ( ts );
+						if ( (unit != null) && !unit.useCache() ) {
+							journal.recordComplete(unitKey, unit.getCacheFiles());
+						}
 					}
 					catch ( Exception e ) {
+						if ( CircuitBreaker.isCircuitOpen(e) ) {
+							++circuitOpenCount;
+							continue;
+						}
 						message = "Unexpected error reading Synoptic web service time series \"" + tsidentString + "\" (" + e + ").";
 						Message.printWarning ( 2, routine, message );
 						Message.printWarning ( 2, routine, e );
 						++warning_count;
+						String recommendation = "Report the problem to software support - also see the log file.";
+						if ( dataStore.isOffline() ) {
+							recommendation = "Run with the datastore RecordResponses=True property while online to cache responses.";
+						}
 	                    status.addToLog ( commandPhase,
 	                        new CommandLogRecord(CommandStatusType.FAILURE,
-	                           message, "Report the problem to software support - also see the log file." ) );
+	                           message, recommendation ) );
+					}
+					finally {
+						if ( unit != null ) {
+							CheckpointJournal.endUnit();
+						}
+					}
+				}
+				if ( circuitOpenCount > 0 ) {
+					message = "Did not read " + circuitOpenCount + " of " + size
+						+ " Synoptic web service time series because requests are failing ("
+						+ dataStore.getCircuitBreaker().getStatusMessage() + ").";
+					Message.printWarning ( 2, routine, message );
+					++warning_count;
+	                status.addToLog ( commandPhase,
+	                    new CommandLogRecord(CommandStatusType.FAILURE,
+	                       message, "Check the Synoptic web service status and the log file, and run again when the service is available." ) );
+				}
+				if ( warmCache && !warmTsidList.isEmpty() ) {
+					warning_count += warmCache ( dataStore, warmTsidList, InputStart_DateTime, InputEnd_DateTime,
+						readProperties, journal, status, commandPhase );
+				}
+				if ( journal != null ) {
+					journal.close();
+					if ( resumedCount > 0 ) {
+						Message.printStatus ( 2, routine, "Read " + resumedCount
+							+ " time series using cached responses that were completed by a previous read (Resume=True)." );
+					}
+					if ( tsprocessor.getCancelProcessingRequested() || (warning_count > journalWarningCount) ) {
+						message = "Reading was " + (tsprocessor.getCancelProcessingRequested() ? "cancelled" : "not complete")
+							+ ".  Completed time series are saved in the checkpoint journal \"" + journal.getFile() + "\".";
+						Message.printStatus ( 2, routine, message );
+		                status.addToLog ( commandPhase,
+		                    new CommandLogRecord(CommandStatusType.WARNING,
+		                       message, "Run the command again with Resume=" + _True + " to read the remaining time series." ) );
+					}
+					else {
+						// The read is complete so the journal and the responses that were only saved for the journal are not needed.
+						int removedCount = journal.delete(dataStore.getResponseCache());
+						Message.printStatus ( 2, routine, "Read is complete - deleted the checkpoint journal \"" + journal.getFile()
+							+ "\" and " + removedCount + " responses that were only cached for the journal." );
 					}
 				}
 			}
+			if ( (explainCatalogMap != null) && !explainCatalogMap.isEmpty() ) {
+				warning_count += explainRead ( dataStore, explainCatalogMap, InputStart_DateTime, InputEnd_DateTime,
+					createReadProperties ( Timezone, debug, IrregularInterval, read24HourAsDay, readDayAs24Hour,
+						AggregationStatistic, serverAggregation, accumulationToIncrement ),
+					(WarmCache != null) && WarmCache.equalsIgnoreCase(_True), ExplainTableID, status, commandPhase );
+			}
 		}
 
         int size = 0;
@@ -850,8 +1166,25 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
         else if ( commandPhase == CommandPhaseType.DISCOVERY ) {
             setDiscoveryTSList ( tslist );
         }
+        if ( (negativeCacheAvoidedCount >= 0) && (commandPhase == CommandPhaseType.RUN) ) {
+        	long avoidedCount = dataStore.getNegativeCache().getAvoidedCount() - negativeCacheAvoidedCount;
+        	if ( avoidedCount > 0 ) {
+        		Message.printStatus ( 2, routine, "Did not request data for " + avoidedCount
+        			+ " time series because recent requests for the period had no data (see the datastore NegativeCacheTtl property)." );
+        	}
+        }
+        if ( (hedgeCount >= 0) && (commandPhase == CommandPhaseType.RUN) ) {
+        	Message.printStatus ( 2, routine, "Hedged " + (dataStore.getRequestHedger().getHedgeCount() - hedgeCount)
+        		+ " slow requests, " + (dataStore.getRequestHedger().getHedgeWinCount() - hedgeWinCount)
+        		+ " of which returned before the original request (see the datastore HedgePercentile property)." );
+        }
+        if ( (dataStore != null) && (dataStore.getConcurrencyLimiter() != null) && (commandPhase == CommandPhaseType.RUN) ) {
+        	Message.printStatus ( 2, routine, "Adaptive concurrency " + dataStore.getConcurrencyLimiter().getMetrics()
+        		+ " (see the datastore AdaptiveConcurrency property)." );
+        	dataStore.updateConcurrencyLimitProperty();
+        }
         // Warn if nothing was retrieved (can be overridden to ignore).
-        if ( (tslist == null) || (size == 0) ) {
+        if ( ((tslist == null) || (size == 0)) && !warmCache && !explain ) {
             message = "No time series were read from the Synoptic web service.";
             Message.printWarning ( warning_level,
                 MessageUtil.formatMessageTag(command_tag,++warning_count), routine, message );
@@ -888,6 +1221,122 @@ throws InvalidCommandParameterException, CommandWarningException, CommandExcepti
     status.refreshPhaseSeverity(commandPhase,CommandStatusType.SUCCESS);
 }
 
+/**
+Explain the read by planning the web service requests without reading the data,
+and output a table with one row per planned request.
+@param dataStore datastore to read from
+@param tsidCatalogMap time series identifiers to read, with value being the matching time series catalog
+@param inputStart start of the read period, or null for the default
+@param inputEnd end of the read period, or null for the default
+@param readProperties read properties
+@param parallel whether the time series would be read in parallel (WarmCache=True)
+@param tableID identifier for the output table
+@param status command status, to add problems
+@param commandPhase command phase
+@return the number of warnings
+*/
+private int explainRead ( SynopticDataStore dataStore, Map<String,TimeSeriesCatalog> tsidCatalogMap,
+	DateTime inputStart, DateTime inputEnd, HashMap<String,Object> readProperties, boolean parallel, String tableID,
+	CommandStatus status, CommandPhaseType commandPhase ) {
+	String routine = getClass().getSimpleName() + ".explainRead";
+	int warningCount = 0;
+	ReadPlan plan = dataStore.planReadTimeSeries ( tsidCatalogMap, inputStart, inputEnd, readProperties, parallel );
+	String message = "Reading " + tsidCatalogMap.size() + " time series would use " + plan.getSummary() + ".";
+	Message.printStatus ( 2, routine, message );
+	status.addToLog ( commandPhase,
+		new CommandLogRecord(CommandStatusType.INFO,
+			message, "See the \"" + tableID + "\" table for the planned requests." ) );
+	try {
+		DataTable table = plan.createTable ( tableID );
+		PropList requestParams = new PropList ( "" );
+		requestParams.setUsingObject ( "Table", table );
+		getCommandProcessor().processRequest( "SetTable", requestParams );
+	}
+	catch ( Exception e ) {
+		message = "Error creating the read plan table \"" + tableID + "\" (" + e + ").";
+		Message.printWarning ( 3, routine, message );
+		Message.printWarning ( 3, routine, e );
+		++warningCount;
+		status.addToLog ( commandPhase,
+			new CommandLogRecord(CommandStatusType.FAILURE,
+				message, "Report the problem to software support." ) );
+	}
+	return warningCount;
+}
+
+/**
+Open the checkpoint journal for the read (Resume=True), which is saved in the response cache folder.
+The journal file name is determined from the command parameters, other than Resume,
+so that running the same command again will use the same journal and resume the completed time series.
+@param dataStore datastore being read, which must cache responses
+@param parameters command parameters
+@param status command status, to add problems
+@param commandPhase command phase
+@return the checkpoint journal, or null if it could not be opened
+*/
+private CheckpointJournal openCheckpointJournal ( SynopticDataStore dataStore, PropList parameters,
+	CommandStatus status, CommandPhaseType commandPhase ) {
+	String routine = getClass().getSimpleName() + ".openCheckpointJournal";
+	String readKey = toString(parameters).replaceAll(",?\\s*Resume=\"[^\"]*\"", "");
+	File journalFile = CheckpointJournal.getJournalFile(dataStore.getResponseCache().getFolder(), readKey);
+	try {
+		CheckpointJournal journal = new CheckpointJournal(journalFile, true);
+		Message.printStatus(2, routine, "Resuming the read using " + journal.getCompletedCount()
+			+ " completed time series from checkpoint journal \"" + journalFile + "\".");
+		return journal;
+	}
+	catch ( IOException e ) {
+		String message = "Error opening the checkpoint journal \"" + journalFile + "\" (" + e + ").";
+		Message.printWarning(3, routine, message);
+		Message.printWarning(3, routine, e);
+		status.addToLog ( commandPhase,
+			new CommandLogRecord(CommandStatusType.WARNING,
+				message, "The read will not be checkpointed.  Check that the response cache folder is writeable." ) );
+		return null;
+	}
+}
+
+/**
+Warm the datastore response cache by reading time series in parallel, without outputting the time series.
+@param dataStore datastore to read from
+@param tsidList time series identifiers to read
+@param inputStart start of the read period, or null for the default
+@param inputEnd end of the read period, or null for the default
+@param readProperties read properties
+@param journal checkpoint journal to skip and record completed time series, or null to not use
+@param status command status, to add problems
+@param commandPhase command phase
+@return the number of warnings
+*/
+private int warmCache ( SynopticDataStore dataStore, List<String> tsidList, DateTime inputStart, DateTime inputEnd,
+	HashMap<String,Object> readProperties, CheckpointJournal journal, CommandStatus status, CommandPhaseType commandPhase ) {
+	String routine = getClass().getSimpleName() + ".warmCache";
+	String message;
+	int warningCount = 0;
+	TSCommandProcessor tsprocessor = (TSCommandProcessor)getCommandProcessor();
+	if ( dataStore.getResponseCache().getTtlSeconds("stations/timeseries") <= 0 ) {
+		message = "Only time series data that end more than 1 day ago will be cached (ResponseCacheTtl for stations/timeseries is 0).";
+		Message.printWarning ( 2, routine, message );
+		status.addToLog ( commandPhase,
+			new CommandLogRecord(CommandStatusType.WARNING,
+				message, "Specify the datastore ResponseCacheTtl property to cache recent data (e.g., stations/timeseries:7200)." ) );
+	}
+	notifyCommandProgressListeners ( 0, tsidList.size(), (float)-1.0,
+		"Warming the response cache for " + tsidList.size() + " time series" );
+	List<String> problems = dataStore.warmResponseCache ( tsidList, inputStart, inputEnd, readProperties,
+		tsprocessor::getCancelProcessingRequested, journal );
+	for ( String problem : problems ) {
+		Message.printWarning ( 2, routine, problem );
+		++warningCount;
+		status.addToLog ( commandPhase,
+			new CommandLogRecord(CommandStatusType.FAILURE,
+				problem, "Check the log file for details." ) );
+	}
+	Message.printStatus ( 2, routine, "Warmed the response cache for " + tsidList.size() + " time series with "
+		+ problems.size() + " problems (see the datastore messages for the number of time series that were read)." );
+	return warningCount;
+}
+
 /**
 Set the list of time series read in discovery phase.
 */
@@ -895,6 +1344,13 @@ private void setDiscoveryTSList ( List<TS> discoveryTSList ) {
     __discoveryTSList = discoveryTSList;
 }
 
+/**
+Set the table that is read by this class in discovery mode.
+*/
+private void setDiscoveryTable ( DataTable table ) {
+    __discoveryTable = table;
+}
+
 /**
 Return the string representation of the command.
 @param parameters parameters to include in the command
@@ -924,6 +1380,13 @@ public String toString ( PropList parameters ) {
 		"IrregularInterval",
 		"Read24HourAsDay",
 		"ReadDayAs24Hour",
+		"AggregationStatistic",
+		"ServerAggregation",
+		"AccumulationToIncrement",
+		"WarmCache",
+		"Resume",
+		"Explain",
+		"ExplainTableID",
     	"Timezone",
 		"Debug",
 	};
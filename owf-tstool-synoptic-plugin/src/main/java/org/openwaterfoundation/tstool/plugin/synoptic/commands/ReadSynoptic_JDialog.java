@@ -56,6 +56,7 @@ import javax.swing.event.DocumentListener;
 
 import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticDataStore;
 import org.openwaterfoundation.tstool.plugin.synoptic.ui.Synoptic_TimeSeries_InputFilter_JPanel;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.IntervalAggregator;
 
 import riverside.datastore.DataStore;
 import rti.tscommandprocessor.core.TSCommandProcessor;
@@ -90,8 +91,16 @@ private JTabbedPane __tsInfo_JTabbedPane = null;
 private JPanel __multipleTS_JPanel = null;
 private JTextField __StationId_JTextField = null;
 //private SimpleJComboBox __StationId_JComboBox = null;
+private SimpleJComboBox __StationIdChoices_JComboBox = null; // Station ID choices matching the text field prefix.
 private JTextField __DataSource_JTextField;
 private SimpleJComboBox __IrregularInterval_JComboBox = null;
+private SimpleJComboBox __AggregationStatistic_JComboBox = null;
+private SimpleJComboBox __ServerAggregation_JComboBox = null;
+private SimpleJComboBox __AccumulationToIncrement_JComboBox = null;
+private SimpleJComboBox __WarmCache_JComboBox = null;
+private SimpleJComboBox __Resume_JComboBox = null;
+private SimpleJComboBox __Explain_JComboBox = null;
+private JTextField __ExplainTableID_JTextField = null;
 //private SimpleJComboBox __Read24HourAsDay_JComboBox = null;
 //private SimpleJComboBox __ReadDayAs24Hour_JComboBox = null;
 private JTextField __TSID_JTextField;
@@ -341,6 +350,34 @@ private void checkInput () {
     if ( IrregularInterval.length() > 0 ) {
         props.set ( "IrregularInterval", IrregularInterval );
     }
+    String AggregationStatistic = __AggregationStatistic_JComboBox.getSelected();
+    if ( AggregationStatistic.length() > 0 ) {
+        props.set ( "AggregationStatistic", AggregationStatistic );
+    }
+    String ServerAggregation = __ServerAggregation_JComboBox.getSelected();
+    if ( ServerAggregation.length() > 0 ) {
+        props.set ( "ServerAggregation", ServerAggregation );
+    }
+    String AccumulationToIncrement = __AccumulationToIncrement_JComboBox.getSelected();
+    if ( AccumulationToIncrement.length() > 0 ) {
+        props.set ( "AccumulationToIncrement", AccumulationToIncrement );
+    }
+    String WarmCache = __WarmCache_JComboBox.getSelected();
+    if ( WarmCache.length() > 0 ) {
+        props.set ( "WarmCache", WarmCache );
+    }
+    String Resume = __Resume_JComboBox.getSelected();
+    if ( Resume.length() > 0 ) {
+        props.set ( "Resume", Resume );
+    }
+    String Explain = __Explain_JComboBox.getSelected();
+    if ( Explain.length() > 0 ) {
+        props.set ( "Explain", Explain );
+    }
+    String ExplainTableID = __ExplainTableID_JTextField.getText().trim();
+    if ( ExplainTableID.length() > 0 ) {
+        props.set ( "ExplainTableID", ExplainTableID );
+    }
     /*
     String Read24HourAsDay = __Read24HourAsDay_JComboBox.getSelected();
     if ( Read24HourAsDay.length() > 0 ) {
@@ -418,6 +455,20 @@ private void commitEdits () {
 	__command.setCommandParameter ( "InputEnd", InputEnd );
 	String IrregularInterval = __IrregularInterval_JComboBox.getSelected();
 	__command.setCommandParameter (	"IrregularInterval", IrregularInterval );
+	String AggregationStatistic = __AggregationStatistic_JComboBox.getSelected();
+	__command.setCommandParameter (	"AggregationStatistic", AggregationStatistic );
+	String ServerAggregation = __ServerAggregation_JComboBox.getSelected();
+	__command.setCommandParameter (	"ServerAggregation", ServerAggregation );
+	String AccumulationToIncrement = __AccumulationToIncrement_JComboBox.getSelected();
+	__command.setCommandParameter (	"AccumulationToIncrement", AccumulationToIncrement );
+	String WarmCache = __WarmCache_JComboBox.getSelected();
+	__command.setCommandParameter (	"WarmCache", WarmCache );
+	String Resume = __Resume_JComboBox.getSelected();
+	__command.setCommandParameter (	"Resume", Resume );
+	String Explain = __Explain_JComboBox.getSelected();
+	__command.setCommandParameter (	"Explain", Explain );
+	String ExplainTableID = __ExplainTableID_JTextField.getText().trim();
+	__command.setCommandParameter (	"ExplainTableID", ExplainTableID );
 	/*
 	String Read24HourAsDay = __Read24HourAsDay_JComboBox.getSelected();
 	__command.setCommandParameter (	"Read24HourAsDay", Read24HourAsDay );
@@ -703,8 +754,14 @@ private void initialize ( JFrame parent, ReadSynoptic_Command command ) {
     __StationId_JTextField.addKeyListener ( this );
     JGUIUtil.addComponent(singleTS_JPanel, __StationId_JTextField,
         1, ySingle, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    // Choices are limited to station identifiers that start with the text field and are populated as characters are typed.
+    __StationIdChoices_JComboBox = new SimpleJComboBox ( false );
+    __StationIdChoices_JComboBox.setToolTipText("Station identifiers from previous queries that start with the station ID text, select to set the station ID.");
+    __StationIdChoices_JComboBox.addItemListener ( this );
+    JGUIUtil.addComponent(singleTS_JPanel, __StationIdChoices_JComboBox,
+        3, ySingle, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
     JGUIUtil.addComponent(singleTS_JPanel, new JLabel ( "Used in the TSID."),
-        3, ySingle, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+        4, ySingle, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
 
     /*
     __StationId_JComboBox = new SimpleJComboBox ( false );
@@ -802,6 +859,123 @@ private void initialize ( JFrame parent, ReadSynoptic_Command command ) {
 		"Optional - irregular interval for time series (default=IrregSecond)."),
 		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
 
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Aggregation statistic:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    List<String> aggregationStatistic_List = new ArrayList<>( IntervalAggregator.getStatisticChoices() );
+	aggregationStatistic_List.add(0,"");
+	__AggregationStatistic_JComboBox = new SimpleJComboBox ( false );
+	__AggregationStatistic_JComboBox.setToolTipText(
+		"Statistic used to aggregate observations when the interval is " + IntervalAggregator.getIntervalChoices() + ".");
+	__AggregationStatistic_JComboBox.setData ( aggregationStatistic_List);
+	__AggregationStatistic_JComboBox.select ( 0 );
+	__AggregationStatistic_JComboBox.addActionListener ( this );
+    JGUIUtil.addComponent(main_JPanel, __AggregationStatistic_JComboBox,
+		1, y, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel (
+		"Optional - statistic for regular interval (default=" + IntervalAggregator.STATISTIC_SUM + " for precipitation, "
+		+ IntervalAggregator.STATISTIC_MEAN + " for others)."),
+		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Server aggregation?:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    List<String> serverAggregation_List = new ArrayList<>( 3 );
+	serverAggregation_List.add ( "" );
+	serverAggregation_List.add ( __command._False );
+	serverAggregation_List.add ( __command._True );
+	__ServerAggregation_JComboBox = new SimpleJComboBox ( false );
+	__ServerAggregation_JComboBox.setToolTipText(
+		"Use the Synoptic 'precipitation' and 'statistics' services to aggregate 1Hour, 1Day, and 1Month data on the server?");
+	__ServerAggregation_JComboBox.setData ( serverAggregation_List);
+	__ServerAggregation_JComboBox.select ( 0 );
+	__ServerAggregation_JComboBox.addActionListener ( this );
+    JGUIUtil.addComponent(main_JPanel, __ServerAggregation_JComboBox,
+		1, y, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel (
+		"Optional - aggregate on the server if possible (default=" + __command._True + ")."),
+		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Accumulation to increment?:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    List<String> accumulationToIncrement_List = new ArrayList<>( 3 );
+	accumulationToIncrement_List.add ( "" );
+	accumulationToIncrement_List.add ( __command._False );
+	accumulationToIncrement_List.add ( __command._True );
+	__AccumulationToIncrement_JComboBox = new SimpleJComboBox ( false );
+	__AccumulationToIncrement_JComboBox.setToolTipText(
+		"Convert accumulated values that reset (e.g., precip_accum_one_hour) to the increment since the previous observation?");
+	__AccumulationToIncrement_JComboBox.setData ( accumulationToIncrement_List);
+	__AccumulationToIncrement_JComboBox.select ( 0 );
+	__AccumulationToIncrement_JComboBox.addActionListener ( this );
+    JGUIUtil.addComponent(main_JPanel, __AccumulationToIncrement_JComboBox,
+		1, y, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel (
+		"Optional - convert accumulation to increment (default=" + __command._False + ")."),
+		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Warm cache?:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    List<String> warmCache_List = new ArrayList<>( 3 );
+	warmCache_List.add ( "" );
+	warmCache_List.add ( __command._False );
+	warmCache_List.add ( __command._True );
+	__WarmCache_JComboBox = new SimpleJComboBox ( false );
+	__WarmCache_JComboBox.setToolTipText(
+		"Read the time series to save responses in the datastore response cache, without outputting time series?");
+	__WarmCache_JComboBox.setData ( warmCache_List);
+	__WarmCache_JComboBox.select ( 0 );
+	__WarmCache_JComboBox.addActionListener ( this );
+    JGUIUtil.addComponent(main_JPanel, __WarmCache_JComboBox,
+		1, y, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel (
+		"Optional - only warm the response cache (default=" + __command._False + ")."),
+		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Resume?:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    List<String> resume_List = new ArrayList<>( 3 );
+	resume_List.add ( "" );
+	resume_List.add ( __command._False );
+	resume_List.add ( __command._True );
+	__Resume_JComboBox = new SimpleJComboBox ( false );
+	__Resume_JComboBox.setToolTipText(
+		"Record completed time series in a checkpoint journal in the response cache folder, and resume a previous read that failed or was cancelled?");
+	__Resume_JComboBox.setData ( resume_List);
+	__Resume_JComboBox.select ( 0 );
+	__Resume_JComboBox.addActionListener ( this );
+    JGUIUtil.addComponent(main_JPanel, __Resume_JComboBox,
+		1, y, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel (
+		"Optional - use a checkpoint journal to resume a read (default=" + __command._False + ")."),
+		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Explain?:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    List<String> explain_List = new ArrayList<>( 3 );
+	explain_List.add ( "" );
+	explain_List.add ( __command._False );
+	explain_List.add ( __command._True );
+	__Explain_JComboBox = new SimpleJComboBox ( false );
+	__Explain_JComboBox.setToolTipText(
+		"Plan the web service requests and estimate the cost of the read, without reading the time series?");
+	__Explain_JComboBox.setData ( explain_List);
+	__Explain_JComboBox.select ( 0 );
+	__Explain_JComboBox.addActionListener ( this );
+    JGUIUtil.addComponent(main_JPanel, __Explain_JComboBox,
+		1, y, 2, 1, 1, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel (
+		"Optional - only output a table of planned requests (default=" + __command._False + ")."),
+		3, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Explain table ID:"),
+		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
+    __ExplainTableID_JTextField = new JTextField (20);
+    __ExplainTableID_JTextField.setToolTipText("Identifier for the table of planned requests, can use ${Property}.");
+    __ExplainTableID_JTextField.addKeyListener (this);
+    JGUIUtil.addComponent(main_JPanel, __ExplainTableID_JTextField,
+        1, y, 2, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST);
+    JGUIUtil.addComponent(main_JPanel, new JLabel ( "Optional - table for Explain=True (default=ReadSynopticExplain)."),
+        3, y, 3, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.WEST );
+
     /*
     JGUIUtil.addComponent(main_JPanel, new JLabel ( "Read 24Hour as 1Day:"),
 		0, ++y, 1, 1, 0, 0, insetsTLBR, GridBagConstraints.NONE, GridBagConstraints.EAST);
@@ -1002,6 +1176,13 @@ public void itemStateChanged ( ItemEvent event ) {
         // User has selected an interval.
         actionPerformedIntervalSelected ();
     }
+    else if ( (event.getSource() == __StationIdChoices_JComboBox) && (event.getStateChange() == ItemEvent.SELECTED) ) {
+        // User has selected a station ID choice.
+        String stationId = __StationIdChoices_JComboBox.getSelected();
+        if ( (stationId != null) && !stationId.isEmpty() ) {
+            __StationId_JTextField.setText ( stationId );
+        }
+    }
     /*
     else if ( (event.getSource() == __StationId_JComboBox) && (event.getStateChange() == ItemEvent.SELECTED) ) {
         // User has selected a data type.
@@ -1022,6 +1203,10 @@ public void keyPressed ( KeyEvent event ) {
 Need this to properly capture key events, especially deletes.
 */
 public void keyReleased ( KeyEvent event ) {
+	if ( event.getSource() == __StationId_JTextField ) {
+		// Update the station ID choices to match the typed prefix.
+		populateStationIdChoices ( getSelectedDataStore() );
+	}
 	refresh();
 }
 
@@ -1086,30 +1271,30 @@ private void populateIntervalChoices ( SynopticDataStore datastore ) {
 }
 
 /**
-Set the location ID choices in response to a new datastore being selected.
+Set the station ID choices in response to a new data type being selected or the station ID being edited.
+The choices are the station identifiers for the data type that start with the station ID text,
+from the datastore's indexed time series catalog.
 The location choices are also in the where filter (for multiple time series)
 but a single location is needed when reading a single time series.
-@param datastore the datastore to use to determine the data types
+@param datastore the datastore to use to determine the station identifiers
 */
 private void populateStationIdChoices ( SynopticDataStore datastore ) {
-	// TODO smalers 2023-03-19 not currently used since using a text field.
-	/*
-	if ( datastore == null ) {
+	if ( (datastore == null) || (__StationIdChoices_JComboBox == null) || (__StationId_JTextField == null) ) {
 		return;
 	}
-	//boolean includeWildcards = false;
-    List<String> stationIds0 = datastore.getStationIdStrings(getSelectedDataType());
-    // Make a copy since adding a blank.
-    List<String> stationIds = new ArrayList<>();
-    for ( String stationId : stationIds0 ) {
-    	stationIds.add(stationId);
-    }
-    // Add a blank because multiple time series tab might be used.
-    stationIds.add(0,"");
-    __StationId_JComboBox.setData ( stationIds );
-    // Select the default.
-    __StationId_JComboBox.select(0);
-    */
+	// The datastore indexes the cached catalog so only the prefix lookup is done here:
+	// - limit the number of choices to keep the list usable
+	String prefix = __StationId_JTextField.getText().trim();
+	List<String> stationIds = new ArrayList<>();
+	// Add a blank so that a choice is not selected by default.
+	stationIds.add("");
+	stationIds.addAll(datastore.getStationIdStrings(getSelectedDataType(), prefix, 500));
+	// Ignore events so that setting the data does not change the station ID.
+	boolean ignoreEvents = __ignoreEvents;
+	__ignoreEvents = true;
+    __StationIdChoices_JComboBox.setData ( stationIds );
+    __StationIdChoices_JComboBox.select(0);
+    __ignoreEvents = ignoreEvents;
 }
 
 /**
@@ -1127,6 +1312,13 @@ private void refresh () {
 	String InputStart = "";
 	String InputEnd = "";
 	String IrregularInterval = "";
+	String AggregationStatistic = "";
+	String ServerAggregation = "";
+	String AccumulationToIncrement = "";
+	String WarmCache = "";
+	String Resume = "";
+	String Explain = "";
+	String ExplainTableID = "";
 	//String Read24HourAsDay = "";
 	//String ReadDayAs24Hour = "";
 	//String Timezone = "";
@@ -1144,6 +1336,13 @@ private void refresh () {
 		InputStart = props.getValue ( "InputStart" );
 		InputEnd = props.getValue ( "InputEnd" );
 		IrregularInterval = props.getValue ( "IrregularInterval" );
+		AggregationStatistic = props.getValue ( "AggregationStatistic" );
+		ServerAggregation = props.getValue ( "ServerAggregation" );
+		AccumulationToIncrement = props.getValue ( "AccumulationToIncrement" );
+		WarmCache = props.getValue ( "WarmCache" );
+		Resume = props.getValue ( "Resume" );
+		Explain = props.getValue ( "Explain" );
+		ExplainTableID = props.getValue ( "ExplainTableID" );
 		//Read24HourAsDay = props.getValue ( "Read24HourAsDay" );
 		//ReadDayAs24Hour = props.getValue ( "ReadDayAs24Hour" );
 		//Timezone = props.getValue ( "Timezone" );
@@ -1222,6 +1421,7 @@ private void refresh () {
 	    if ( StationId != null ) {
 		    __StationId_JTextField.setText ( StationId );
 	    }
+	    populateStationIdChoices(getSelectedDataStore());
         // Populate the location ID (station_no) choices based on the time series list.
 	    /*
         populateStationIdChoices(getSelectedDataStore());
@@ -1308,6 +1508,99 @@ private void refresh () {
             	__IrregularInterval_JComboBox.select (0);
             }
         }
+	    if ( JGUIUtil.isSimpleJComboBoxItem( __AggregationStatistic_JComboBox, AggregationStatistic, JGUIUtil.NONE, null, null ) ) {
+            __AggregationStatistic_JComboBox.select (AggregationStatistic);
+        }
+        else {
+            if ( (AggregationStatistic == null) || AggregationStatistic.equals("") ) {
+                // New command...select the default.
+            	__AggregationStatistic_JComboBox.select (0);
+            }
+            else {
+                // Bad user command.
+                Message.printWarning ( 1, routine, "Existing command references an invalid\n"+
+                  "AggregationStatistic parameter \"" + AggregationStatistic + "\".  Select a\ndifferent value or Cancel." );
+            	__AggregationStatistic_JComboBox.select (0);
+            }
+        }
+	    if ( JGUIUtil.isSimpleJComboBoxItem( __ServerAggregation_JComboBox, ServerAggregation, JGUIUtil.NONE, null, null ) ) {
+            __ServerAggregation_JComboBox.select (ServerAggregation);
+        }
+        else {
+            if ( (ServerAggregation == null) || ServerAggregation.equals("") ) {
+                // New command...select the default.
+            	__ServerAggregation_JComboBox.select (0);
+            }
+            else {
+                // Bad user command.
+                Message.printWarning ( 1, routine, "Existing command references an invalid\n"+
+                  "ServerAggregation parameter \"" + ServerAggregation + "\".  Select a\ndifferent value or Cancel." );
+            	__ServerAggregation_JComboBox.select (0);
+            }
+        }
+	    if ( JGUIUtil.isSimpleJComboBoxItem( __AccumulationToIncrement_JComboBox, AccumulationToIncrement, JGUIUtil.NONE, null, null ) ) {
+            __AccumulationToIncrement_JComboBox.select (AccumulationToIncrement);
+        }
+        else {
+            if ( (AccumulationToIncrement == null) || AccumulationToIncrement.equals("") ) {
+                // New command...select the default.
+            	__AccumulationToIncrement_JComboBox.select (0);
+            }
+            else {
+                // Bad user command.
+                Message.printWarning ( 1, routine, "Existing command references an invalid\n"+
+                  "AccumulationToIncrement parameter \"" + AccumulationToIncrement + "\".  Select a\ndifferent value or Cancel." );
+            	__AccumulationToIncrement_JComboBox.select (0);
+            }
+        }
+	    if ( JGUIUtil.isSimpleJComboBoxItem( __WarmCache_JComboBox, WarmCache, JGUIUtil.NONE, null, null ) ) {
+            __WarmCache_JComboBox.select (WarmCache);
+        }
+        else {
+            if ( (WarmCache == null) || WarmCache.equals("") ) {
+                // New command...select the default.
+            	__WarmCache_JComboBox.select (0);
+            }
+            else {
+                // Bad user command.
+                Message.printWarning ( 1, routine, "Existing command references an invalid\n"+
+                  "WarmCache parameter \"" + WarmCache + "\".  Select a\ndifferent value or Cancel." );
+            	__WarmCache_JComboBox.select (0);
+            }
+        }
+	    if ( JGUIUtil.isSimpleJComboBoxItem( __Resume_JComboBox, Resume, JGUIUtil.NONE, null, null ) ) {
+            __Resume_JComboBox.select (Resume);
+        }
+        else {
+            if ( (Resume == null) || Resume.equals("") ) {
+                // New command...select the default.
+            	__Resume_JComboBox.select (0);
+            }
+            else {
+                // Bad user command.
+                Message.printWarning ( 1, routine, "Existing command references an invalid\n"+
+                  "Resume parameter \"" + Resume + "\".  Select a\ndifferent value or Cancel." );
+            	__Resume_JComboBox.select (0);
+            }
+        }
+	    if ( JGUIUtil.isSimpleJComboBoxItem( __Explain_JComboBox, Explain, JGUIUtil.NONE, null, null ) ) {
+            __Explain_JComboBox.select (Explain);
+        }
+        else {
+            if ( (Explain == null) || Explain.equals("") ) {
+                // New command...select the default.
+            	__Explain_JComboBox.select (0);
+            }
+            else {
+                // Bad user command.
+                Message.printWarning ( 1, routine, "Existing command references an invalid\n"+
+                  "Explain parameter \"" + Explain + "\".  Select a\ndifferent value or Cancel." );
+            	__Explain_JComboBox.select (0);
+            }
+        }
+		if ( ExplainTableID != null ) {
+			__ExplainTableID_JTextField.setText ( ExplainTableID );
+		}
 	    /*
 	    if ( JGUIUtil.isSimpleJComboBoxItem( __Read24HourAsDay_JComboBox, Read24HourAsDay, JGUIUtil.NONE, null, null ) ) {
             //__Read24HourAsDay_JComboBox.select (index[0] );
@@ -1442,6 +1735,20 @@ private void refresh () {
 	props.add ( "InputEnd=" + InputEnd );
 	IrregularInterval = __IrregularInterval_JComboBox.getSelected();
 	props.add ( "IrregularInterval=" + IrregularInterval );
+	AggregationStatistic = __AggregationStatistic_JComboBox.getSelected();
+	props.add ( "AggregationStatistic=" + AggregationStatistic );
+	ServerAggregation = __ServerAggregation_JComboBox.getSelected();
+	props.add ( "ServerAggregation=" + ServerAggregation );
+	AccumulationToIncrement = __AccumulationToIncrement_JComboBox.getSelected();
+	props.add ( "AccumulationToIncrement=" + AccumulationToIncrement );
+	WarmCache = __WarmCache_JComboBox.getSelected();
+	props.add ( "WarmCache=" + WarmCache );
+	Resume = __Resume_JComboBox.getSelected();
+	props.add ( "Resume=" + Resume );
+	Explain = __Explain_JComboBox.getSelected();
+	props.add ( "Explain=" + Explain );
+	ExplainTableID = __ExplainTableID_JTextField.getText().trim();
+	props.add ( "ExplainTableID=" + ExplainTableID );
 	/*
 	Read24HourAsDay = __Read24HourAsDay_JComboBox.getSelected();
 	props.add ( "Read24HourAsDay=" + Read24HourAsDay );
@@ -36,6 +36,12 @@ public class MetadataStation {
 
 	// List alphabetized.
 
+	/**
+	 * 'CWA' (NWS county warning area).
+	 */
+	@JsonProperty("CWA")
+	private String cwa = "";
+
 	/**
 	 * 'ELEVATION'.
 	 */
@@ -120,6 +126,13 @@ public class MetadataStation {
 	public MetadataStation() {
 	}
 
+	/**
+	 * Get the CWA.
+	 */
+	public String getCwa() {
+		return this.cwa;
+	}
+
 	/**
 	 * Get the ELEVATION.
 	 */
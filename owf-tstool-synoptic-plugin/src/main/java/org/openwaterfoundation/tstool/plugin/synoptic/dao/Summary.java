@@ -149,4 +149,16 @@ public class Summary {
 		}
 	}
 
+	/**
+	 * Indicate whether the request was throttled (rate limited), based on the response message,
+	 * because the web service does not use a specific RESPONSE_CODE for throttling.
+	 */
+	public boolean isThrottled ( ) {
+		if ( (this.responseCode == null) || (this.responseCode == 1) || (this.responseCode == 2) || (this.responseMessage == null) ) {
+			return false;
+		}
+		String message = this.responseMessage.toLowerCase();
+		return message.contains("rate limit") || message.contains("too many") || message.contains("throttl");
+	}
+
 }
\ No newline at end of file
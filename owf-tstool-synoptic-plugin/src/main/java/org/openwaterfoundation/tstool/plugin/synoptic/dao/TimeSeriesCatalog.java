@@ -51,6 +51,7 @@ public class TimeSeriesCatalog {
 	private String stationMnet = "";
 	private String stationMnetId = "";
 	private String stationName = "";
+	private String stationNwsCwa = "";
 	private Boolean stationQcFlagged = null;
 	private String stationState = null;
 	private String stationStatus = null;
@@ -120,6 +121,7 @@ public class TimeSeriesCatalog {
 		this.stationLongitude = timeSeriesCatalog.stationLongitude;
 		this.stationMnetId = timeSeriesCatalog.stationMnetId;
 		this.stationName = timeSeriesCatalog.stationName;
+		this.stationNwsCwa = timeSeriesCatalog.stationNwsCwa;
 		this.stationState = timeSeriesCatalog.stationState;
 		this.stationStatus = timeSeriesCatalog.stationStatus;
 		this.stationTimeZone = timeSeriesCatalog.stationTimeZone;
@@ -370,6 +372,10 @@ public class TimeSeriesCatalog {
 		return this.stationName;
 	}
 
+	public String getStationNwsCwa ( ) {
+		return this.stationNwsCwa;
+	}
+
 	public Boolean getStationQcFlagged ( ) {
 		return this.stationQcFlagged;
 	}
@@ -489,6 +495,10 @@ public class TimeSeriesCatalog {
 		this.stationName = stationName;
 	}
 
+	public void setStationNwsCwa ( String stationNwsCwa ) {
+		this.stationNwsCwa = stationNwsCwa;
+	}
+
 	public void setStationQcFlagged ( Boolean stationQcFlagged ) {
 		this.stationQcFlagged = stationQcFlagged;
 	}
@@ -0,0 +1,530 @@
+// TimeSeriesCatalogStore - compact columnar storage for a list of time series catalog
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.dao;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import RTi.Util.Time.DateTime;
+
+/**
+ * Compact storage for a list of TimeSeriesCatalog, used to keep large catalogs (e.g., many states) in memory.
+ * Data are stored in columns:
+ * <ul>
+ * <li>numbers are stored in primitive arrays, with NaN for missing</li>
+ * <li>strings are dictionary-encoded, which is effective because network, state, time zone, status,
+ *     data type, and other strings are repeated for many stations and for each sensor at a station</li>
+ * </ul>
+ * The store is a read-only List so that it can be used where a list of catalog is expected.
+ * The get() method creates a new TimeSeriesCatalog, which is appropriate when a few catalog are used.
+ * Use getRowView() to access many rows without creating objects, for example in a table model.
+ * A subset created with select() shares the columns with the original store.
+ */
+public class TimeSeriesCatalogStore extends AbstractList<TimeSeriesCatalog> implements RandomAccess {
+
+	/**
+	 * Dictionary for strings, shared by all string columns.
+	 */
+	private final StringDictionary dictionary;
+
+	/**
+	 * Rows in the columns for this store, or null if all rows are used in order.
+	 * This is used for a subset created with select().
+	 */
+	private final int [] rows;
+
+	/**
+	 * Number of rows.
+	 */
+	private final int size;
+
+	// Numeric columns, NaN if missing.
+	private final double [] stationElevation;
+	private final double [] stationElevDem;
+	private final double [] stationLatitude;
+	private final double [] stationLongitude;
+
+	// Boolean column: -1=null, 0=false, 1=true.
+	private final byte [] stationQcFlagged;
+
+	// Dictionary-encoded string columns, in the same order as TimeSeriesCatalog data members.
+	private final int [] stationId;
+	private final int [] dataSource;
+	private final int [] dataType;
+	private final int [] dataInterval;
+	private final int [] dataUnits;
+	private final int [] stationMnet;
+	private final int [] stationMnetId;
+	private final int [] stationName;
+	private final int [] stationNwsCwa;
+	private final int [] stationState;
+	private final int [] stationStatus;
+	private final int [] stationTimeZone;
+	private final int [] sensorVariable;
+	private final int [] sensorVariableOut;
+	private final int [] sensorStart;
+	private final int [] sensorEnd;
+
+	/**
+	 * Problems, which are rare, with key being the column row.
+	 */
+	private final Map<Integer,String> problemsMap;
+
+	/**
+	 * Create a store from a list of catalog.
+	 * @param tscatalogList list of time series catalog to store
+	 */
+	public TimeSeriesCatalogStore ( List<TimeSeriesCatalog> tscatalogList ) {
+		int n = tscatalogList.size();
+		this.dictionary = new StringDictionary();
+		this.rows = null;
+		this.size = n;
+		this.stationElevation = new double[n];
+		this.stationElevDem = new double[n];
+		this.stationLatitude = new double[n];
+		this.stationLongitude = new double[n];
+		this.stationQcFlagged = new byte[n];
+		this.stationId = new int[n];
+		this.dataSource = new int[n];
+		this.dataType = new int[n];
+		this.dataInterval = new int[n];
+		this.dataUnits = new int[n];
+		this.stationMnet = new int[n];
+		this.stationMnetId = new int[n];
+		this.stationName = new int[n];
+		this.stationNwsCwa = new int[n];
+		this.stationState = new int[n];
+		this.stationStatus = new int[n];
+		this.stationTimeZone = new int[n];
+		this.sensorVariable = new int[n];
+		this.sensorVariableOut = new int[n];
+		this.sensorStart = new int[n];
+		this.sensorEnd = new int[n];
+		this.problemsMap = new HashMap<>();
+		for ( int i = 0; i < n; i++ ) {
+			TimeSeriesCatalog tscatalog = tscatalogList.get(i);
+			this.stationElevation[i] = toDouble(tscatalog.getStationElevation());
+			this.stationElevDem[i] = toDouble(tscatalog.getStationElevDem());
+			this.stationLatitude[i] = toDouble(tscatalog.getStationLatitude());
+			this.stationLongitude[i] = toDouble(tscatalog.getStationLongitude());
+			Boolean qcFlagged = tscatalog.getStationQcFlagged();
+			this.stationQcFlagged[i] = (byte)((qcFlagged == null) ? -1 : (qcFlagged ? 1 : 0));
+			this.stationId[i] = this.dictionary.encode(tscatalog.getStationId());
+			this.dataSource[i] = this.dictionary.encode(tscatalog.getDataSource());
+			this.dataType[i] = this.dictionary.encode(tscatalog.getDataType());
+			this.dataInterval[i] = this.dictionary.encode(tscatalog.getDataInterval());
+			this.dataUnits[i] = this.dictionary.encode(tscatalog.getDataUnits());
+			this.stationMnet[i] = this.dictionary.encode(tscatalog.getStationMnet());
+			this.stationMnetId[i] = this.dictionary.encode(tscatalog.getStationMnetId());
+			this.stationName[i] = this.dictionary.encode(tscatalog.getStationName());
+			this.stationNwsCwa[i] = this.dictionary.encode(tscatalog.getStationNwsCwa());
+			this.stationState[i] = this.dictionary.encode(tscatalog.getStationState());
+			this.stationStatus[i] = this.dictionary.encode(tscatalog.getStationStatus());
+			this.stationTimeZone[i] = this.dictionary.encode(tscatalog.getStationTimeZone());
+			this.sensorVariable[i] = this.dictionary.encode(tscatalog.getSensorVariable());
+			this.sensorVariableOut[i] = this.dictionary.encode(tscatalog.getSensorVariableOut());
+			this.sensorStart[i] = this.dictionary.encode(tscatalog.getSensorStart());
+			this.sensorEnd[i] = this.dictionary.encode(tscatalog.getSensorEnd());
+			String problems = tscatalog.formatProblems();
+			if ( !problems.isEmpty() ) {
+				this.problemsMap.put(i, problems);
+			}
+		}
+		// The dictionary lookup map is only needed while building.
+		this.dictionary.trim();
+	}
+
+	/**
+	 * Create a subset of a store, sharing the columns.
+	 * @param store the original store
+	 * @param rows rows in the columns to include
+	 */
+	private TimeSeriesCatalogStore ( TimeSeriesCatalogStore store, int [] rows ) {
+		this.dictionary = store.dictionary;
+		this.rows = rows;
+		this.size = rows.length;
+		this.stationElevation = store.stationElevation;
+		this.stationElevDem = store.stationElevDem;
+		this.stationLatitude = store.stationLatitude;
+		this.stationLongitude = store.stationLongitude;
+		this.stationQcFlagged = store.stationQcFlagged;
+		this.stationId = store.stationId;
+		this.dataSource = store.dataSource;
+		this.dataType = store.dataType;
+		this.dataInterval = store.dataInterval;
+		this.dataUnits = store.dataUnits;
+		this.stationMnet = store.stationMnet;
+		this.stationMnetId = store.stationMnetId;
+		this.stationName = store.stationName;
+		this.stationNwsCwa = store.stationNwsCwa;
+		this.stationState = store.stationState;
+		this.stationStatus = store.stationStatus;
+		this.stationTimeZone = store.stationTimeZone;
+		this.sensorVariable = store.sensorVariable;
+		this.sensorVariableOut = store.sensorVariableOut;
+		this.sensorStart = store.sensorStart;
+		this.sensorEnd = store.sensorEnd;
+		this.problemsMap = store.problemsMap;
+	}
+
+	/**
+	 * Return the column row for a list position.
+	 */
+	private int columnRow ( int position ) {
+		if ( (position < 0) || (position >= this.size) ) {
+			throw new IndexOutOfBoundsException("Position " + position + " is not in the range 0 to " + (this.size - 1));
+		}
+		return (this.rows == null) ? position : this.rows[position];
+	}
+
+	/**
+	 * Create a new TimeSeriesCatalog for a list position.
+	 * @param position position in the list
+	 * @return a new TimeSeriesCatalog that can be modified without changing the store
+	 */
+	@Override
+	public TimeSeriesCatalog get ( int position ) {
+		RowView view = getRowView(position);
+		TimeSeriesCatalog tscatalog = new TimeSeriesCatalog();
+		tscatalog.setStationId(view.getStationId());
+		tscatalog.setDataSource(view.getDataSource());
+		tscatalog.setDataType(view.getDataType());
+		tscatalog.setDataInterval(view.getDataInterval());
+		tscatalog.setDataUnits(view.getDataUnits());
+		tscatalog.setStationElevation(view.getStationElevation());
+		tscatalog.setStationElevDem(view.getStationElevDem());
+		tscatalog.setStationLatitude(view.getStationLatitude());
+		tscatalog.setStationLongitude(view.getStationLongitude());
+		tscatalog.setStationMnet(view.getStationMnet());
+		tscatalog.setStationMnetId(view.getStationMnetId());
+		tscatalog.setStationName(view.getStationName());
+		tscatalog.setStationNwsCwa(view.getStationNwsCwa());
+		tscatalog.setStationQcFlagged(view.getStationQcFlagged());
+		tscatalog.setStationState(view.getStationState());
+		tscatalog.setStationStatus(view.getStationStatus());
+		tscatalog.setStationTimeZone(view.getStationTimeZone());
+		tscatalog.setSensorVariable(view.getSensorVariable());
+		tscatalog.setSensorVariableOut(view.getSensorVariableOut());
+		tscatalog.setSensorStart(view.getSensorStart());
+		tscatalog.setSensorEnd(view.getSensorEnd());
+		String problems = this.problemsMap.get(columnRow(position));
+		if ( problems != null ) {
+			tscatalog.addProblem(problems);
+		}
+		return tscatalog;
+	}
+
+	/**
+	 * Return a read-only view of a row, which does not copy the data.
+	 * Use RowView.setPosition() to reuse the view for other rows.
+	 * @param position position in the list
+	 * @return a view of the row
+	 */
+	public RowView getRowView ( int position ) {
+		RowView view = new RowView();
+		view.setPosition(position);
+		return view;
+	}
+
+	/**
+	 * Return the dictionary code for the station identifier, which can be used to group rows by station.
+	 * @param position position in the list
+	 * @return the dictionary code for the station identifier, -1 if null
+	 */
+	public int getStationIdCode ( int position ) {
+		return this.stationId[columnRow(position)];
+	}
+
+	/**
+	 * Return the station latitude.
+	 * @param position position in the list
+	 * @return the station latitude, NaN if missing
+	 */
+	public double getStationLatitude ( int position ) {
+		return this.stationLatitude[columnRow(position)];
+	}
+
+	/**
+	 * Return the station longitude.
+	 * @param position position in the list
+	 * @return the station longitude, NaN if missing
+	 */
+	public double getStationLongitude ( int position ) {
+		return this.stationLongitude[columnRow(position)];
+	}
+
+	/**
+	 * Create a subset of the store, which shares the columns.
+	 * @param positions positions in this store to include, in the order to include
+	 * @return a new store
+	 */
+	public TimeSeriesCatalogStore select ( List<Integer> positions ) {
+		int [] subsetRows = new int[positions.size()];
+		for ( int i = 0; i < subsetRows.length; i++ ) {
+			subsetRows[i] = columnRow(positions.get(i));
+		}
+		return new TimeSeriesCatalogStore(this, subsetRows);
+	}
+
+	/**
+	 * Return the number of rows.
+	 */
+	@Override
+	public int size () {
+		return this.size;
+	}
+
+	/**
+	 * Convert a Double to a primitive.
+	 */
+	private static double toDouble ( Double d ) {
+		return (d == null) ? Double.NaN : d;
+	}
+
+	/**
+	 * Convert a primitive to a Double.
+	 */
+	private static Double toDouble ( double d ) {
+		return Double.isNaN(d) ? null : d;
+	}
+
+	/**
+	 * Read-only view of a row in the store.
+	 * The view extends TimeSeriesCatalog so that it can be used with code that reads TimeSeriesCatalog,
+	 * but 'set' methods do not change the store.
+	 */
+	public class RowView extends TimeSeriesCatalog {
+
+		/**
+		 * Row in the columns.
+		 */
+		private int row = 0;
+
+		/**
+		 * Constructor.
+		 */
+		private RowView () {
+		}
+
+		@Override
+		public String formatProblems () {
+			String problems = problemsMap.get(this.row);
+			return (problems == null) ? "" : problems;
+		}
+
+		@Override
+		public String getDataInterval ( ) {
+			return dictionary.decode(dataInterval[this.row]);
+		}
+
+		@Override
+		public String getDataSource ( ) {
+			return dictionary.decode(dataSource[this.row]);
+		}
+
+		@Override
+		public String getDataType ( ) {
+			return dictionary.decode(dataType[this.row]);
+		}
+
+		@Override
+		public String getDataUnits ( ) {
+			return dictionary.decode(dataUnits[this.row]);
+		}
+
+		@Override
+		public String getSensorEnd ( ) {
+			return dictionary.decode(sensorEnd[this.row]);
+		}
+
+		@Override
+		public DateTime getSensorEndDateTime ( ) {
+			return parseDateTime(getSensorEnd());
+		}
+
+		@Override
+		public String getSensorStart ( ) {
+			return dictionary.decode(sensorStart[this.row]);
+		}
+
+		@Override
+		public DateTime getSensorStartDateTime ( ) {
+			return parseDateTime(getSensorStart());
+		}
+
+		@Override
+		public String getSensorVariable ( ) {
+			return dictionary.decode(sensorVariable[this.row]);
+		}
+
+		@Override
+		public String getSensorVariableOut ( ) {
+			return dictionary.decode(sensorVariableOut[this.row]);
+		}
+
+		@Override
+		public Double getStationElevation ( ) {
+			return toDouble(stationElevation[this.row]);
+		}
+
+		@Override
+		public Double getStationElevDem ( ) {
+			return toDouble(stationElevDem[this.row]);
+		}
+
+		@Override
+		public String getStationId ( ) {
+			return dictionary.decode(stationId[this.row]);
+		}
+
+		@Override
+		public Double getStationLatitude ( ) {
+			return toDouble(stationLatitude[this.row]);
+		}
+
+		@Override
+		public Double getStationLongitude ( ) {
+			return toDouble(stationLongitude[this.row]);
+		}
+
+		@Override
+		public String getStationMnet ( ) {
+			return dictionary.decode(stationMnet[this.row]);
+		}
+
+		@Override
+		public String getStationMnetId ( ) {
+			return dictionary.decode(stationMnetId[this.row]);
+		}
+
+		@Override
+		public String getStationName ( ) {
+			return dictionary.decode(stationName[this.row]);
+		}
+
+		@Override
+		public String getStationNwsCwa ( ) {
+			return dictionary.decode(stationNwsCwa[this.row]);
+		}
+
+		@Override
+		public Boolean getStationQcFlagged ( ) {
+			byte b = stationQcFlagged[this.row];
+			return (b < 0) ? null : Boolean.valueOf(b == 1);
+		}
+
+		@Override
+		public String getStationState ( ) {
+			return dictionary.decode(stationState[this.row]);
+		}
+
+		@Override
+		public String getStationStatus ( ) {
+			return dictionary.decode(stationStatus[this.row]);
+		}
+
+		@Override
+		public String getStationTimeZone ( ) {
+			return dictionary.decode(stationTimeZone[this.row]);
+		}
+
+		/**
+		 * Parse a date/time string, returning null if it cannot be parsed.
+		 */
+		private DateTime parseDateTime ( String s ) {
+			if ( (s == null) || s.isEmpty() ) {
+				return null;
+			}
+			try {
+				return DateTime.parse(s);
+			}
+			catch ( Exception e ) {
+				return null;
+			}
+		}
+
+		/**
+		 * Set the list position for the view.
+		 * @param position position in the list
+		 */
+		public void setPosition ( int position ) {
+			this.row = columnRow(position);
+		}
+	}
+
+	/**
+	 * Dictionary that encodes strings as integer codes.
+	 */
+	private static class StringDictionary {
+
+		/**
+		 * Strings, with position being the code.
+		 */
+		private List<String> values = new ArrayList<>();
+
+		/**
+		 * Lookup from string to code, only used while building the store.
+		 */
+		private Map<String,Integer> codeMap = new HashMap<>();
+
+		/**
+		 * Decode a string.
+		 * @param code the code from encode()
+		 * @return the string, or null if the code is -1
+		 */
+		public String decode ( int code ) {
+			return (code < 0) ? null : this.values.get(code);
+		}
+
+		/**
+		 * Encode a string.
+		 * @param s string to encode, can be null
+		 * @return the code for the string, -1 if null
+		 */
+		public int encode ( String s ) {
+			if ( s == null ) {
+				return -1;
+			}
+			Integer code = this.codeMap.get(s);
+			if ( code == null ) {
+				code = this.values.size();
+				this.values.add(s);
+				this.codeMap.put(s, code);
+			}
+			return code;
+		}
+
+		/**
+		 * Release the lookup map after building and trim the list to size.
+		 */
+		public void trim () {
+			this.codeMap = null;
+			ArrayList<String> trimmed = new ArrayList<>(this.values);
+			this.values = trimmed;
+		}
+	}
+}
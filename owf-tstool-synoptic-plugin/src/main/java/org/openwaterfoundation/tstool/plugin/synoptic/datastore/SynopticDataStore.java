@@ -22,22 +22,45 @@ NoticeEnd */
 
 package org.openwaterfoundation.tstool.plugin.synoptic.datastore;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URL;
+import java.nio.ByteBuffer;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
 
 import org.openwaterfoundation.tstool.plugin.synoptic.PluginMeta;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.MetadataStation;
@@ -47,18 +70,37 @@ import org.openwaterfoundation.tstool.plugin.synoptic.dao.State;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.StationObservations;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.Summary;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalogStore;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.Units;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.Variable;
 import org.openwaterfoundation.tstool.plugin.synoptic.dto.JacksonToolkit;
+import org.openwaterfoundation.tstool.plugin.synoptic.dto.ServerAggregationDecoder;
+import org.openwaterfoundation.tstool.plugin.synoptic.dto.TimeSeriesCsvDecoder;
 import org.openwaterfoundation.tstool.plugin.synoptic.ui.Synoptic_TimeSeries_CellRenderer;
 import org.openwaterfoundation.tstool.plugin.synoptic.ui.Synoptic_TimeSeries_InputFilter_JPanel;
 import org.openwaterfoundation.tstool.plugin.synoptic.ui.Synoptic_TimeSeries_TableModel;
+import org.openwaterfoundation.tstool.plugin.synoptic.ui.Synoptic_TimeSeries_TableModelLoader;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.AccumulationIncrementer;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.AdaptiveConcurrencyLimiter;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.ApiTokenPool;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.CheckpointJournal;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.CircuitBreaker;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.IntervalAggregator;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.LocalQueryUtil;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.NegativeCache;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.ReadPlan;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.RequestHedger;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.RequestScheduler;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.RequestShaper;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.ResponseCache;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.ServiceEndpointRouter;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.StationIdIndex;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.TimeSeriesCatalogSpatialIndex;
 import org.openwaterfoundation.tstool.plugin.synoptic.util.WebUtil;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import RTi.TS.TS;
 import RTi.TS.TSIdent;
@@ -86,9 +128,10 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	public final String RESOURCE_PATH = "/org/openwaterfoundation/tstool/plugin/synoptic/resources";
 
 	/**
-	 * API token required by the API, set in the datastore configuration 'ApiToken' proeprty.
+	 * API tokens required by the API, set in the datastore configuration 'ApiToken' and 'ApiTokens' properties,
+	 * with rate limit from the 'ApiTokenRateLimit' property.
 	 */
-	private String apiToken = "";
+	private ApiTokenPool apiTokenPool = new ApiTokenPool(new ArrayList<>(), 0);
 
 	/**
 	 * Properties for the plugin, used to help with application integration.
@@ -96,35 +139,128 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	private Map<String,Object> pluginProperties = new LinkedHashMap<>();
 
 	/**
-	 * Global time series catalog, used to streamline creating lists for UI choices.
+	 * Maximum number of State or NWS CWA catalogs to keep in the time series catalog snapshot.
 	 */
-	private List<TimeSeriesCatalog> tscatalogList = new ArrayList<>();
+	private final int TSCATALOG_CACHE_SIZE = 10;
 
 	/**
-	 * Global state (i.e, US states) list.
+	 * Time to live in seconds for cached State or NWS CWA catalogs if the response cache is not used,
+	 * otherwise the "stations/metadata" response time to live is used.
 	 */
-	private List<Network> networkList = new ArrayList<>();
+	private final long TSCATALOG_CACHE_TTL_SECONDS = 3600;
 
 	/**
-	 * Global NWS CWA list.
+	 * Cached time series catalog, replaced as a whole when the catalog changes so that readers don't need to lock:
+	 * - the global time series catalog, used to streamline creating lists for UI choices
+	 * - time series catalog read using only State and NWS CWA filters, with key from getTimeSeriesCatalogCacheKey()
+	 *   and value being a spatial index, which contains the catalog list
+	 * - queries that narrow a cached catalog are evaluated locally using LocalQueryUtil
 	 */
-	private List<NwsCwa> nwsCwaList = new ArrayList<>();
+	private final AtomicReference<TimeSeriesCatalogSnapshot> tscatalogSnapshot =
+		new AtomicReference<>(TimeSeriesCatalogSnapshot.EMPTY);
 
 	/**
-	 * Global state list.
+	 * Last access sequence for each cached State or NWS CWA catalog,
+	 * used to remove the least recently used catalog when the cache is full.
+	 * Catalogs older than getTimeSeriesCatalogCacheTtlSeconds() are also removed.
 	 */
-	private List<State> stateList = new ArrayList<>();
+	private final Map<String,Long> tscatalogCacheAccessMap = new ConcurrentHashMap<>();
 
 	/**
-	 * Global variable list.
+	 * Sequence used with 'tscatalogCacheAccessMap'.
 	 */
-	private List<Variable> variableList = new ArrayList<>();
+	private final AtomicLong tscatalogCacheAccessSequence = new AtomicLong(0);
+
+	/**
+	 * Table model for the most recent TSTool time series list query, which is disposed if another query is started.
+	 */
+	private Synoptic_TimeSeries_TableModel timeSeriesListTableModel = null;
+
+	/**
+	 * Global reference data (states, networks, NWS CWA, and variables),
+	 * replaced as a whole when a list is refreshed so that readers don't need to lock.
+	 */
+	private final AtomicReference<SynopticReferenceData> referenceData = new AtomicReference<>(SynopticReferenceData.EMPTY);
 
 	/**
 	 * Global debug option for datastore, used for development and troubleshooting.
 	 */
 	private boolean debug = false;
 
+	/**
+	 * Format used to read 'timeseries' service data, "JSON" (default) or "CSV",
+	 * set in the datastore configuration 'TimeSeriesFormat' property.
+	 */
+	private String timeSeriesFormat = "JSON";
+
+	/**
+	 * Request shaper used to limit the size of responses and record response sizes,
+	 * configured with the datastore configuration 'Precision' and 'RequestShapingCheck' properties.
+	 */
+	private RequestShaper requestShaper = new RequestShaper(null, false);
+
+	/**
+	 * Cache of raw web service responses, configured with the datastore configuration
+	 * 'ResponseCacheFolder' and 'ResponseCacheTtl' properties, or null if responses are not cached.
+	 */
+	private ResponseCache responseCache = null;
+
+	/**
+	 * Cache of station and sensor variable requests that returned no data, configured with the datastore configuration
+	 * 'NegativeCacheTtl' property, or null if not used.
+	 */
+	private NegativeCache negativeCache = null;
+
+	/**
+	 * Whether offline, in which case responses are only read from the response cache,
+	 * set in the datastore configuration 'Offline' property.
+	 */
+	private boolean offline = false;
+
+	/**
+	 * Current time used for default read periods when recording or offline, so that requests can be replayed,
+	 * or null to use the actual current time.
+	 */
+	private DateTime currentTime = null;
+
+	/**
+	 * Router for the service root URIs, which are set in the datastore configuration 'ServiceRootURI' property
+	 * as a comma-separated list, for example to use caching gateways.
+	 */
+	private ServiceEndpointRouter endpointRouter = null;
+
+	/**
+	 * Request hedger used to reduce tail latency for 'timeseries' and 'metadata' requests,
+	 * configured with the datastore configuration 'HedgePercentile' and 'HedgeBudget' properties, or null if not used.
+	 */
+	private RequestHedger requestHedger = null;
+
+	/**
+	 * Circuit breaker used to fail fast when the web service is failing,
+	 * configured with the datastore configuration 'CircuitBreakerErrorRate' and 'CircuitBreakerOpenTime' properties,
+	 * or null if not used.
+	 */
+	private CircuitBreaker circuitBreaker = null;
+
+	/**
+	 * Maximum number of concurrent requests, for example when warming the response cache,
+	 * set in the datastore configuration 'MaxConcurrentRequests' property.
+	 */
+	private int maxConcurrentRequests = 4;
+
+	/**
+	 * Adaptive limit for concurrent web service requests, enabled with the datastore configuration
+	 * 'AdaptiveConcurrency' property, or null if not used.
+	 * 'MaxConcurrentRequests' is the initial limit and 'AdaptiveConcurrencyMax' is the maximum limit.
+	 */
+	private AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+
+	/**
+	 * Scheduler for web service requests, which limits concurrent requests to 'MaxConcurrentRequests'
+	 * (or the adaptive limit) and starts interactive requests before batch requests.
+	 */
+	private RequestScheduler requestScheduler = null;
+
 	/**
 	Constructor for web service.
 	@param name identifier for the data store
@@ -145,11 +281,241 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	    setServiceRootURI ( serviceRootURI );
 	    setProperties ( props );
 
-	    // The API token is used for all requests so set as datastore data.
-	    this.apiToken = props.getValue("ApiToken");
-	    if ( this.apiToken == null ) {
-	    	// Don't warn here.  Use the messages from the service.
-	    	this.apiToken = "";
+	    // The service root URI can be a comma-separated list:
+	    // - 'serviceRootURI' is the first in the list and is used for displayed URLs
+	    List<String> rootUris = new ArrayList<>();
+	    rootUris.add(serviceRootURI.toString());
+	    prop = props.getValue("ServiceRootURI");
+	    if ( (prop != null) && (prop.indexOf(",") > 0) ) {
+	    	for ( String rootUri : prop.split(",") ) {
+	    		rootUris.add(rootUri.trim());
+	    	}
+	    }
+	    this.endpointRouter = new ServiceEndpointRouter(rootUris);
+	    if ( this.endpointRouter.size() > 1 ) {
+	    	Message.printStatus(2, routine, "Datastore \"" + name + "\" is using " + this.endpointRouter.size()
+	    		+ " service root URIs, routing each request to the fastest healthy URI.");
+	    	updateEndpointHealthProperty();
+	    }
+
+	    prop = props.getValue("TimeSeriesFormat");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( prop.equalsIgnoreCase("CSV") || prop.equalsIgnoreCase("JSON") ) {
+	    		this.timeSeriesFormat = prop.toUpperCase();
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" TimeSeriesFormat=" + prop
+	    			+ " is invalid - using JSON.");
+	    	}
+	    }
+
+	    Integer precision = null;
+	    prop = props.getValue("Precision");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isInteger(prop) && (Integer.parseInt(prop) >= 0) ) {
+	    		precision = Integer.valueOf(prop);
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" Precision=" + prop
+	    			+ " is invalid - using Synoptic default.");
+	    	}
+	    }
+	    prop = props.getValue("MaxConcurrentRequests");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isInteger(prop) && (Integer.parseInt(prop) > 0) ) {
+	    		this.maxConcurrentRequests = Integer.parseInt(prop);
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" MaxConcurrentRequests=" + prop
+	    			+ " is invalid - using " + this.maxConcurrentRequests + ".");
+	    	}
+	    }
+	    prop = props.getValue("AdaptiveConcurrency");
+	    if ( (prop != null) && prop.equalsIgnoreCase("true") ) {
+	    	int adaptiveConcurrencyMax = Math.max(32, this.maxConcurrentRequests);
+	    	String prop2 = props.getValue("AdaptiveConcurrencyMax");
+	    	if ( (prop2 != null) && StringUtil.isInteger(prop2) && (Integer.parseInt(prop2) > 0) ) {
+	    		adaptiveConcurrencyMax = Integer.parseInt(prop2);
+	    	}
+	    	else if ( (prop2 != null) && !prop2.isEmpty() ) {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" AdaptiveConcurrencyMax=" + prop2
+	    			+ " is invalid - using " + adaptiveConcurrencyMax + ".");
+	    	}
+	    	this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(this.maxConcurrentRequests, 1, adaptiveConcurrencyMax);
+	    	Message.printStatus(2, routine, "Datastore \"" + name + "\" is adapting the number of concurrent requests, starting at "
+	    		+ this.concurrencyLimiter.getLimit() + " with maximum " + this.concurrencyLimiter.getMaxLimit() + ".");
+	    }
+	    this.requestScheduler = new RequestScheduler( () ->
+	    	(this.concurrencyLimiter == null) ? this.maxConcurrentRequests : this.concurrencyLimiter.getLimit() );
+
+	    prop = props.getValue("HedgePercentile");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isDouble(prop) && (Double.parseDouble(prop) > 0.0) && (Double.parseDouble(prop) < 100.0) ) {
+	    		double hedgeBudget = 5.0;
+	    		String prop2 = props.getValue("HedgeBudget");
+	    		if ( (prop2 != null) && StringUtil.isDouble(prop2) && (Double.parseDouble(prop2) >= 0.0) ) {
+	    			hedgeBudget = Double.parseDouble(prop2);
+	    		}
+	    		else if ( (prop2 != null) && !prop2.isEmpty() ) {
+	    			Message.printWarning(3, routine, "Datastore \"" + name + "\" HedgeBudget=" + prop2
+	    				+ " is invalid - using " + hedgeBudget + ".");
+	    		}
+	    		this.requestHedger = new RequestHedger(Double.parseDouble(prop), hedgeBudget/100.0);
+	    		Message.printStatus(2, routine, "Datastore \"" + name + "\" is hedging requests that are slower than the "
+	    			+ prop + " percentile, for up to " + hedgeBudget + "% of requests.");
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" HedgePercentile=" + prop
+	    			+ " is invalid - expecting a percentile between 0 and 100.  Not hedging requests.");
+	    	}
+	    }
+
+	    // Circuit breaker:
+	    // - the error rate is a percent of the last 20 requests, with at least 10 requests
+	    // - the default is to open the circuit if half of the requests fail
+	    double circuitBreakerErrorRate = 50.0;
+	    prop = props.getValue("CircuitBreakerErrorRate");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isDouble(prop) && (Double.parseDouble(prop) >= 0.0) && (Double.parseDouble(prop) <= 100.0) ) {
+	    		circuitBreakerErrorRate = Double.parseDouble(prop);
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" CircuitBreakerErrorRate=" + prop
+	    			+ " is invalid - using " + circuitBreakerErrorRate + ".");
+	    	}
+	    }
+	    int circuitBreakerOpenTime = 30;
+	    prop = props.getValue("CircuitBreakerOpenTime");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isInteger(prop) && (Integer.parseInt(prop) > 0) ) {
+	    		circuitBreakerOpenTime = Integer.parseInt(prop);
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" CircuitBreakerOpenTime=" + prop
+	    			+ " is invalid - using " + circuitBreakerOpenTime + ".");
+	    	}
+	    }
+	    if ( circuitBreakerErrorRate > 0.0 ) {
+	    	this.circuitBreaker = new CircuitBreaker(circuitBreakerErrorRate/100.0, 20, 10, circuitBreakerOpenTime*1000L);
+	    }
+	    else {
+	    	Message.printStatus(2, routine, "Datastore \"" + name + "\" circuit breaker is disabled (CircuitBreakerErrorRate=0).");
+	    }
+
+	    prop = props.getValue("Offline");
+	    this.offline = (prop != null) && prop.equalsIgnoreCase("true");
+	    prop = props.getValue("RequestShapingCheck");
+	    // Don't check savings when offline because the check makes additional requests.
+	    this.requestShaper = new RequestShaper(precision, (prop != null) && prop.equalsIgnoreCase("true") && !this.offline);
+
+	    prop = props.getValue("ResponseCacheFolder");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	try {
+	    		this.responseCache = new ResponseCache(new File(prop));
+	    		// Default time to live:
+	    		// - networks and variables change rarely
+	    		// - station metadata changes as stations are added and periods of record are extended
+	    		// - recent data are not cached since new observations are received continuously (historical data are immutable)
+	    		this.responseCache.setTtlSeconds("networks", 86400);
+	    		this.responseCache.setTtlSeconds("variables", 86400);
+	    		this.responseCache.setTtlSeconds("stations/metadata", 3600);
+	    		prop = props.getValue("ResponseCacheTtl");
+	    		if ( (prop != null) && !prop.isEmpty() ) {
+	    			// Comma-separated list of Endpoint:Seconds.
+	    			for ( String part : prop.split(",") ) {
+	    				String [] parts = part.trim().split(":");
+	    				if ( (parts.length == 2) && StringUtil.isLong(parts[1].trim()) ) {
+	    					this.responseCache.setTtlSeconds(parts[0].trim(), Long.parseLong(parts[1].trim()));
+	    				}
+	    				else {
+	    					Message.printWarning(3, routine, "Datastore \"" + name + "\" ResponseCacheTtl part \"" + part
+	    						+ "\" is invalid - expecting Endpoint:Seconds.");
+	    				}
+	    			}
+	    		}
+	    		Message.printStatus(2, routine, "Datastore \"" + name + "\" caching responses in \""
+	    			+ this.responseCache.getFolder() + "\".");
+	    		prop = props.getValue("RecordResponses");
+	    		if ( this.offline ) {
+	    			// Use the current time from the recording, if available.
+	    			this.responseCache.setOffline(true);
+	    			long recordTimeMs = this.responseCache.getRecordTimeMs();
+	    			if ( recordTimeMs >= 0 ) {
+	    				this.currentTime = toDateTime(recordTimeMs);
+	    			}
+	    			Message.printStatus(2, routine, "Datastore \"" + name + "\" is offline - only cached responses will be used"
+	    				+ ((this.currentTime == null) ? "." : (", current time from recording = " + this.currentTime)) );
+	    			if ( (prop != null) && prop.equalsIgnoreCase("true") ) {
+	    				Message.printWarning(3, routine, "Datastore \"" + name + "\" Offline=True - ignoring RecordResponses=True.");
+	    			}
+	    		}
+	    		else if ( (prop != null) && prop.equalsIgnoreCase("true") ) {
+	    			// Record all responses, using a fixed current time so that offline runs make the same requests.
+	    			this.currentTime = toDateTime(this.responseCache.setRecord(true));
+	    			Message.printStatus(2, routine, "Datastore \"" + name + "\" is recording all responses, current time = "
+	    				+ this.currentTime );
+	    		}
+	    	}
+	    	catch ( Exception e ) {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" ResponseCacheFolder=" + prop
+	    			+ " cannot be used (" + e + ") - not caching responses.");
+	    		this.responseCache = null;
+	    	}
+	    }
+	    prop = props.getValue("NegativeCacheTtl");
+	    long negativeCacheTtl = 86400;
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isLong(prop) ) {
+	    		negativeCacheTtl = Long.parseLong(prop);
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" NegativeCacheTtl=" + prop
+	    			+ " is invalid - expecting seconds.  Using default " + negativeCacheTtl + ".");
+	    	}
+	    }
+	    if ( negativeCacheTtl > 0 ) {
+	    	// Save with the response cache so that requests are also avoided in later sessions.
+	    	File negativeCacheFile = null;
+	    	if ( this.responseCache != null ) {
+	    		negativeCacheFile = new File(this.responseCache.getFolder(), NegativeCache.FILE_NAME);
+	    	}
+	    	this.negativeCache = new NegativeCache(negativeCacheTtl, negativeCacheFile);
+	    }
+
+	    if ( this.offline && (this.responseCache == null) ) {
+	    	Message.printWarning(3, routine, "Datastore \"" + name + "\" Offline=True but ResponseCacheFolder is not specified"
+	    		+ " - no data will be available.");
+	    }
+
+	    // The API tokens are used for all requests so set as datastore data:
+	    // - 'ApiToken' is a single token and 'ApiTokens' is a comma-separated list, which can be used together
+	    // - if no tokens are specified, don't warn here and use the messages from the service
+	    List<String> apiTokens = new ArrayList<>();
+	    prop = props.getValue("ApiToken");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	apiTokens.add(prop.trim());
+	    }
+	    prop = props.getValue("ApiTokens");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	for ( String token : prop.split(",") ) {
+	    		apiTokens.add(token.trim());
+	    	}
+	    }
+	    double apiTokenRateLimit = 0.0;
+	    prop = props.getValue("ApiTokenRateLimit");
+	    if ( (prop != null) && !prop.isEmpty() ) {
+	    	if ( StringUtil.isDouble(prop) && (Double.parseDouble(prop) >= 0.0) ) {
+	    		apiTokenRateLimit = Double.parseDouble(prop);
+	    	}
+	    	else {
+	    		Message.printWarning(3, routine, "Datastore \"" + name + "\" ApiTokenRateLimit=" + prop
+	    			+ " is invalid - expecting requests per second.  Not limiting the request rate.");
+	    	}
+	    }
+	    this.apiTokenPool = new ApiTokenPool(apiTokens, apiTokenRateLimit);
+	    if ( this.apiTokenPool.size() > 1 ) {
+	    	Message.printStatus(2, routine, "Datastore \"" + name + "\" is using " + this.apiTokenPool.size() + " API tokens"
+	    		+ ((apiTokenRateLimit > 0.0) ? (", limited to " + apiTokenRateLimit + " requests per second per token.") : ".") );
 	    }
 
 	    // Set standard plugin properties:
@@ -166,6 +532,184 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	    readGlobalData();
 	}
 
+	/**
+	 * Add the time series catalog for a station, one for each sensor variable output.
+	 * @param metadataStation station read from the 'metadata' service
+	 * @param dataInterval data interval for the time series catalog
+	 * @param tsid requested time series identifier if reading a single time series, or null if reading 1+
+	 * @param tsidDataTypeReq main sensor variable from the requested TSID
+	 * @param tsidDataSubTypeReq numbered sensor variable from the requested TSID, or null if not specified
+	 * @param tscatalogList list of time series catalog to add to
+	 */
+	private void addTimeSeriesCatalog ( MetadataStation metadataStation, String dataInterval,
+		String tsid, String tsidDataTypeReq, String tsidDataSubTypeReq, List<TimeSeriesCatalog> tscatalogList ) {
+		String routine = getClass().getSimpleName() + ".addTimeSeriesCatalog";
+		// Use the same network list for all sensor variables.
+		List<Network> networkList = this.referenceData.get().getNetworkList();
+		// Loop through the sensor variables (SENSOR_VARIABLES) for the station.
+		//
+	    //  "SENSOR_VARIABLES": {
+	    //    "wind_speed": {
+	    //      "wind_speed_value_1": {
+	    //        "period_of_record": {
+	    //          "start": "",
+	    //          "end": ""
+	    //        }
+	    //      }
+	    //    },
+	    //    "air_temp": {
+	    //      "air_temp_value_1": {
+	    //        "period_of_record": {
+	    //          "start": "",
+	    //          "end": ""
+	    //        }
+	    //      }
+	    //    },
+		//
+		// The following map corresponds to the SENSOR_VARIABLES key.
+		Map<String, ?> SENSOR_VARIABLES_Map = metadataStation.getSensorVariablesMap();
+		// Used to break out of multiple levels of for loops.
+		boolean doBreak = false;
+		if ( SENSOR_VARIABLES_Map != null ) {
+			for ( Map.Entry<String, ?> sensorVariableEntry : metadataStation.getSensorVariablesMap().entrySet() ) {
+				// Get the data for the sensor variable:
+				// - key is the variable name (e.g., "wind_speed" in the above example)
+				// - value is the map under the name
+				String sensorVariableName = sensorVariableEntry.getKey();
+				@SuppressWarnings("unchecked")
+				Map<String,?> sensorVariableOutMap = (Map<String,?>)sensorVariableEntry.getValue();
+				if ( sensorVariableOutMap.size() == 0 ) {
+					// There are no variables (e.g., "wind_speed_value_1") so don't add 'tscatalog'.
+				}
+				// Loop through the output variable for the variable (e.g., "wind_speed_value_1").
+				for ( Map.Entry<String, ?> sensorVariableOutEntry : sensorVariableOutMap.entrySet() ) {
+					// Get the data for the sensor variable (output) dataset:
+					// - key is the variable name (e.g., "wind_speed_value_1" in the above example)
+					// - a 'tscatalog' object corresponds to this inner sensor
+					TimeSeriesCatalog tscatalog = new TimeSeriesCatalog();
+					String sensorVariableNameOut = sensorVariableOutEntry.getKey();
+					String start = "";
+					String end = "";
+					@SuppressWarnings("unchecked")
+					Map<String,?> sensorVariableOutDetailsMap = (Map<String,?>)sensorVariableOutEntry.getValue();
+					for ( Map.Entry<String, ?> sensorVariableOutDetailsEntry : sensorVariableOutDetailsMap.entrySet() ) {
+						// Get the detailed data for the sensor variable (output details) dataset:
+						// - key is the variable name (e.g., "period_of_record" in the above example)
+						String sensorVariableOutDetailKey = sensorVariableOutDetailsEntry.getKey();
+						if ( sensorVariableOutDetailKey.equalsIgnoreCase("period_of_record") ) {
+							// Read the period start and end.
+							@SuppressWarnings("unchecked")
+							Map<String,?> periodMap = (Map<String,?>)sensorVariableOutDetailsEntry.getValue();
+							for ( Map.Entry<String, ?> periodData : periodMap.entrySet() ) {
+								String periodKey = periodData.getKey();
+								if ( periodKey.equalsIgnoreCase("start") ) {
+									start = (String)periodData.getValue();
+								}
+								else if ( periodKey.equalsIgnoreCase("end") ) {
+									end = (String)periodData.getValue();
+								}
+							}
+						}
+					}
+
+					// Standard properties expected by TSTool:
+					// - data source is set to network below
+					if ( sensorVariableOutMap.size() == 1 ) {
+						tscatalog.setDataType(sensorVariableName);
+					}
+					else {
+						// For uniqueness the data type is both parts:
+						// - may need to evaluate if this is too verbose but should occur infrequently
+						tscatalog.setDataType(sensorVariableName + "-" + sensorVariableNameOut);
+					}
+					tscatalog.setDataInterval(dataInterval);
+					/*
+					LatestUnits units = LatestUnits.lookupLatestUnitsFromVariable(latestUnitsList, variableName);
+					if ( units == null ) {
+						tscatalog.setDataUnits("");
+					}
+					else {
+						tscatalog.setDataUnits(units.getUnits());
+					}
+					*/
+
+					if ( StringUtil.isDouble(metadataStation.getElevation()) ) {
+						Double elevation = Double.parseDouble(metadataStation.getElevation());
+						tscatalog.setStationElevation(elevation);
+					}
+					if ( StringUtil.isDouble(metadataStation.getElevDem()) ) {
+						Double elevDem = Double.parseDouble(metadataStation.getElevDem());
+						tscatalog.setStationElevDem(elevDem);
+					}
+					tscatalog.setStationId( metadataStation.getStid());
+					if ( StringUtil.isDouble(metadataStation.getLatitude()) ) {
+						Double latitude = Double.parseDouble(metadataStation.getLatitude());
+						tscatalog.setStationLatitude(latitude);
+					}
+					if ( StringUtil.isDouble(metadataStation.getLongitude()) ) {
+						Double longitude = Double.parseDouble(metadataStation.getLongitude());
+						tscatalog.setStationLongitude(longitude);
+					}
+					tscatalog.setStationMnetId(metadataStation.getMnetId());
+					Network network = Network.lookupNetworkFromId(networkList, metadataStation.getMnetId());
+					if ( network != null ) {
+						// Replace space with underscore to avoid issues with TSIDs including whitespace.
+						tscatalog.setStationMnet(network.getShortName().replace(" ", "_"));
+						tscatalog.setDataSource(network.getShortName().replace(" ", "_"));
+					}
+					tscatalog.setStationQcFlagged(metadataStation.getQcFlagged());
+					tscatalog.setStationName(metadataStation.getName());
+					tscatalog.setStationNwsCwa(metadataStation.getCwa());
+					tscatalog.setStationState(metadataStation.getState());
+					tscatalog.setStationStatus(metadataStation.getStatus());
+					tscatalog.setStationTimeZone(metadataStation.getTimeZone());
+
+					// Sensor variable.
+					tscatalog.setSensorVariable(sensorVariableName);
+					tscatalog.setSensorVariableOut(sensorVariableNameOut);
+					tscatalog.setSensorStart(start);
+					tscatalog.setSensorEnd(end);
+
+					// Save the catalog in the list.
+					if ( (tsid != null) && !tsid.isEmpty() ) {
+						// Reading a single time series:
+						// - only save if the request is matched and can then break out of the loop
+						if ( tsidDataSubTypeReq == null ) {
+							// Check the main sensor variable.
+							if ( sensorVariableName.equalsIgnoreCase(tsidDataTypeReq) ) {
+								// Save the catalog and return it.
+								tscatalogList.add(tscatalog);
+								doBreak = true;
+								break;
+							}
+						}
+						else {
+							// Check the main sensor variable and the numbered variable.
+							if ( sensorVariableName.equalsIgnoreCase(tsidDataTypeReq) &&
+								sensorVariableNameOut.equalsIgnoreCase(tsidDataSubTypeReq)) {
+								// Save the catalog and return it.
+								tscatalogList.add(tscatalog);
+								doBreak = true;
+								break;
+							}
+						}
+					}
+					else {
+						// Reading 1+ catalogs so always add.
+						tscatalogList.add(tscatalog);
+					}
+				}
+				if ( doBreak ) {
+					break;
+				}
+			}
+		}
+		else {
+			// No sensor variables map.
+			Message.printStatus(2, routine, "No sensor variables map for station \"" + metadataStation.getStid() + "\"");
+		}
+	}
+
 	/**
 	* THIS IS PLACEHOLDER CODE - NEED TO IMPLEMENT.
 	*
@@ -295,6 +839,14 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 
 	}
 
+	/**
+	 * Clear the cached State and NWS CWA catalogs, for example when the reference data are refreshed.
+	 */
+	private void clearTimeSeriesCatalogCache () {
+		this.tscatalogSnapshot.updateAndGet(snapshot -> snapshot.withoutCachedCatalogs(Long.MAX_VALUE));
+		this.tscatalogCacheAccessMap.clear();
+	}
+
 	/**
 	 * Create a time series input filter, used to initialize user interfaces.
 	 */
@@ -313,107 +865,72 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	 */
 	@SuppressWarnings("rawtypes")
 	public JWorksheet_AbstractRowTableModel createTimeSeriesListTableModel(String dataType, String timeStep, InputFilter_JPanel ifp ) {
-		// First query the database for the specified input.
-		List<TimeSeriesCatalog> tsmetaList = readTimeSeriesMeta ( dataType, timeStep, ifp );
-		return getTimeSeriesListTableModel(tsmetaList);
+		if ( !SwingUtilities.isEventDispatchThread() ) {
+			// Not called from the UI event thread so read the catalog before returning:
+			// - the list is displayed to the user so requests have priority over batch reads
+			RequestScheduler.Priority priorityBefore = RequestScheduler.setThreadPriority(RequestScheduler.Priority.INTERACTIVE);
+			try {
+				List<TimeSeriesCatalog> tsmetaList = readTimeSeriesMeta ( dataType, timeStep, ifp );
+				return getTimeSeriesListTableModel(tsmetaList);
+			}
+			finally {
+				RequestScheduler.setThreadPriority(priorityBefore);
+			}
+		}
+		// Called from the UI:
+		// - dispose of the previous model, which cancels a query that is still running
+		// - return an empty table model and add rows as the catalog is read in the background,
+		//   so that the main window does not freeze for large queries
+		disposeTimeSeriesListTableModel();
+		Synoptic_TimeSeries_TableModel tableModel = new Synoptic_TimeSeries_TableModel(this, new ArrayList<TimeSeriesCatalog>());
+		Synoptic_TimeSeries_TableModelLoader loader = new Synoptic_TimeSeries_TableModelLoader(this, tableModel, dataType, timeStep, ifp);
+		tableModel.setLoader(loader);
+		this.timeSeriesListTableModel = tableModel;
+		loader.execute();
+		return tableModel;
 	}
 
 	/**
-	 * Get the list of location identifier (station_no) strings used in the UI.
-	 * The list is determined from the cached list of time series catalog.
-	 * @param dataType to match, or * or null to return all, should be a value of stationparameter_no
-	 * @return a unique sorted list of the location identifiers (station_no)
+	 * Dispose of the table model for the most recent TSTool time series list query,
+	 * which cancels loading rows in the background if the query is still running.
+	 * This is called when another query is started and can be called by the UI when the list is cleared.
 	 */
-	public List<String> getStationIdStrings ( String dataType ) {
-		List<String> locIdList = new ArrayList<>();
-		/*
-		if ( (dataType == null) || dataType.isEmpty() || dataType.equals("*") ) {
-			// Return the cached list of all locations.
-			return this.locIdList;
+	public void disposeTimeSeriesListTableModel () {
+		if ( this.timeSeriesListTableModel != null ) {
+			this.timeSeriesListTableModel.dispose();
+			this.timeSeriesListTableModel = null;
 		}
-		else {
-			// Get the list of locations from the cached list of time series catalog
-			List<String> locIdList = new ArrayList<>();
-			String stationNo = null;
-			String stationParameterNo = null;
-			boolean found = false;
-			for ( TimeSeriesCatalog tscatalog : this.tscatalogList ) {
-				stationNo = tscatalog.getStationNo();
-				stationParameterNo = tscatalog.getStationParameterNo();
-
-				if ( !stationParameterNo.equals(dataType) ) {
-					// Requested data type does not match.
-					continue;
-				}
+	}
 
-				found = false;
-				for ( String locId2 : locIdList ) {
-					if ( locId2.equals(stationNo) ) {
-						found = true;
-						break;
-					}
-				}
-				if ( !found ) {
-					locIdList.add(stationNo);
-				}
-			}
-			Collections.sort(locIdList, String.CASE_INSENSITIVE_ORDER);
-			return locIdList;
-		}
-		*/
-		return locIdList;
+	/**
+	 * Get the list of station identifier strings used in the UI.
+	 * The list is determined from the cached time series catalog,
+	 * which includes State and NWS CWA catalog that have been queried.
+	 * @param dataType to match, or * or null to return all, should be a sensor variable or full data type
+	 * @return a unique sorted list of the station identifiers, which should not be modified
+	 */
+	public List<String> getStationIdStrings ( String dataType ) {
+		return getStationIdIndex().getStationIds(stripDataTypeNote(dataType));
 	}
 
 	/**
-	 * Fix a request involving 'network':
-	 * - the documentation says that the short name can be specified but it seems that only network ID can be used
-	 * - rather than switching to opaque network ID in commands, swap '&network=cwa' with '&network=63'.
-	 * @param requestUrl the full request URL
-	 * @return the updated URL with network number instead of ID
+	 * Get the list of station identifier strings used in the UI that start with a prefix,
+	 * for example to provide type-ahead choices.
+	 * @param dataType to match, or * or null to return all, should be a sensor variable or full data type
+	 * @param prefix the prefix to match, ignoring case, or null or empty to match all
+	 * @param maxCount maximum number of identifiers to return, or -1 to return all
+	 * @return a unique sorted list of the station identifiers
 	 */
-	private String fixNetworkRequest ( String requestUrl ) {
-		// Could probably do this with a regular expression but don't have time to fully confirm so do brute force.
-		int pos = requestUrl.indexOf("&network=");
-		if ( pos < 0 ) {
-			// Don't have a string that needs to be fixed.
-			return requestUrl;
-		}
-		else {
-			// Fix the URL:
-			// - get the following &
-			// - if not found then network is at the end of the URL
-			int pos2 = requestUrl.indexOf("&", pos + 1);
-			int posEqual = requestUrl.indexOf("=", pos + 1);
-			if ( pos2 < 0 ) {
-				// 'network' is at the end of the URL.
-				String network = requestUrl.substring(posEqual+1);
-				if ( StringUtil.isInteger(network) ) {
-					// Network is an integer so leave as is.
-					return requestUrl;
-				}
-				else {
-					// Network is not an integer so replace the short name with the ID.
-					String requestUrl2 = requestUrl.substring(0,pos) + "&network="
-						+ Network.lookupNetworkFromShortName(this.networkList, network).getId();
-					return requestUrl2;
-				}
-			}
-			else {
-				// 'network' is followed by other query parameters.
-				String network = requestUrl.substring(posEqual+1,pos2);
-				if ( StringUtil.isInteger(network) ) {
-					// Network is an integer so leave as is.
-					return requestUrl;
-				}
-				else {
-					// Network is not an integer so replace the short name with the ID.
-					String requestUrl2 = requestUrl.substring(0,pos) + "&network="
-						+ Network.lookupNetworkFromShortName(this.networkList, network).getId()
-						+ requestUrl.substring(pos2);
-					return requestUrl2;
-				}
-			}
-		}
+	public List<String> getStationIdStrings ( String dataType, String prefix, int maxCount ) {
+		return getStationIdIndex().getStationIdsWithPrefix(stripDataTypeNote(dataType), prefix, maxCount);
+	}
+
+	/**
+	 * Return the station identifier index for the current cached catalog, creating it if the catalog has changed.
+	 * @return the station identifier index
+	 */
+	private StationIdIndex getStationIdIndex () {
+		return this.tscatalogSnapshot.get().getStationIdIndex();
 	}
 
 	/**
@@ -455,16 +972,133 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 
 	/**
 	 * Return the API token.
+	 * If multiple tokens are used, the first token is returned.
 	 */
 	public String getApiToken() {
-		return this.apiToken;
+		return this.apiTokenPool.getFirstToken();
 	}
 
 	/**
 	 * Return the API token query parameter (token=API_TOKEN).
+	 * If multiple tokens are used, the first token is used.
 	 */
 	public String getApiTokenParameter() {
-		return "token=" + this.apiToken;
+		return "token=" + getApiToken();
+	}
+
+	/**
+	 * Return the API token pool, for example to report usage.
+	 * @return the API token pool
+	 */
+	public ApiTokenPool getApiTokenPool () {
+		return this.apiTokenPool;
+	}
+
+	/**
+	 * Return the circuit breaker.
+	 * @return the circuit breaker, or null if not used
+	 */
+	public CircuitBreaker getCircuitBreaker () {
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * Return the adaptive concurrency limiter.
+	 * @return the adaptive concurrency limiter, or null if not used
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter () {
+		return this.concurrencyLimiter;
+	}
+
+	/**
+	 * Return the current time used for default read periods,
+	 * which is the time that recording started when recording or offline.
+	 * @return a new DateTime for the current time
+	 */
+	private DateTime getCurrentDateTime () {
+		if ( this.currentTime == null ) {
+			return new DateTime(DateTime.DATE_CURRENT);
+		}
+		return new DateTime(this.currentTime);
+	}
+
+	/**
+	 * Return the end of the read period, using the default if not specified.
+	 * This is the same as used by readTimeSeries(), for example to identify the read period of a checkpoint unit.
+	 * @param readEnd end of the read period, or null to use the default (current time)
+	 * @return a new DateTime for the end of the read period
+	 */
+	public DateTime resolveReadEnd ( DateTime readEnd ) {
+		if ( readEnd == null ) {
+			return getCurrentDateTime();
+		}
+		return new DateTime(readEnd);
+	}
+
+	/**
+	 * Return the start of the read period, using the default if not specified.
+	 * This is the same as used by readTimeSeries(), for example to identify the read period of a checkpoint unit.
+	 * @param readStart start of the read period, or null to use the default (one month before the current time)
+	 * @return a new DateTime for the start of the read period
+	 */
+	public DateTime resolveReadStart ( DateTime readStart ) {
+		if ( readStart == null ) {
+			DateTime start = getCurrentDateTime();
+			start.addMonth(-1);
+			return start;
+		}
+		return new DateTime(readStart);
+	}
+
+	/**
+	 * Return the URL for a request, which includes the API token, for example to display or check a request.
+	 * If multiple tokens are used, the first token is used.
+	 * Requests made by the datastore use a token from the pool.
+	 * @param request the Synoptic request
+	 * @return the URL to send to the web service
+	 */
+	public String getRequestUrl ( SynopticRequest request ) {
+		return request.toUrl(getServiceRootURI().toString(), getApiToken());
+	}
+
+	/**
+	 * Return the negative cache.
+	 * @return the cache of requests that returned no data, or null if not used
+	 */
+	public NegativeCache getNegativeCache () {
+		return this.negativeCache;
+	}
+
+	/**
+	 * Return the request scheduler.
+	 * @return the request scheduler
+	 */
+	public RequestScheduler getRequestScheduler () {
+		return this.requestScheduler;
+	}
+
+	/**
+	 * Return the request hedger.
+	 * @return the request hedger, or null if requests are not hedged
+	 */
+	public RequestHedger getRequestHedger () {
+		return this.requestHedger;
+	}
+
+	/**
+	 * Return the response cache.
+	 * @return the response cache, or null if responses are not cached
+	 */
+	public ResponseCache getResponseCache () {
+		return this.responseCache;
+	}
+
+	/**
+	 * Return the request shaper, which limits the size of responses and records response sizes.
+	 * @return the request shaper
+	 */
+	public RequestShaper getRequestShaper () {
+		return this.requestShaper;
 	}
 
 	/**
@@ -485,34 +1119,97 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	/**
 	 * Return the list of networks.
 	 * @param readData if false, return the global cached data, if true read the data and reset in he cache
+	 * @return the read-only list of networks, which is not changed if the cache is reset
 	 */
 	public List<Network> getNetworks(boolean readData) throws IOException {
 		if ( readData ) {
-			this.networkList = readNetworkList();
+			// Read without locking and then replace the snapshot.
+			List<Network> networkList = readNetworkList();
+			return this.referenceData.updateAndGet(data -> data.withNetworkList(networkList)).getNetworkList();
 		}
-		return this.networkList;
+		return this.referenceData.get().getNetworkList();
 	}
 
 	/**
 	 * Return the list of NWS CWA.
 	 * @param readData if false, return the global cached data, if true read the data and reset in he cache
+	 * @return the read-only list of NWS CWA, which is not changed if the cache is reset
 	 */
 	public List<NwsCwa> getNwsCwaList(boolean readData) throws IOException {
 		if ( readData ) {
-			this.nwsCwaList = readNwsCwaList();
+			List<NwsCwa> nwsCwaList = readNwsCwaList();
+			return this.referenceData.updateAndGet(data -> data.withNwsCwaList(nwsCwaList)).getNwsCwaList();
 		}
-		return this.nwsCwaList;
+		return this.referenceData.get().getNwsCwaList();
 	}
 
 	/**
 	 * Return the list of states.
 	 * @param readData if false, return the global cached data, if true read the data and reset in he cache
+	 * @return the read-only list of states, which is not changed if the cache is reset
 	 */
 	public List<State> getStates(boolean readData) {
 		if ( readData ) {
-			this.stateList = readStateList();
+			List<State> stateList = readStateList();
+			return this.referenceData.updateAndGet(data -> data.withStateList(stateList)).getStateList();
 		}
-		return this.stateList;
+		return this.referenceData.get().getStateList();
+	}
+
+	/**
+	 * Return the Synoptic service used to aggregate data on the server, or null if data must be aggregated locally.
+	 * The 'precipitation' service computes precipitation totals from the station's precipitation sensors,
+	 * and the 'statistics' service computes statistics for other variables.
+	 * @param tscatalog time series catalog for the time series
+	 * @param intervalBase requested interval base
+	 * @param intervalMult requested interval multiplier
+	 * @param statistic aggregation statistic, one of IntervalAggregator.STATISTIC_*
+	 * @return "precipitation", "statistics", or null if the server cannot aggregate the data
+	 */
+	private String getServerAggregationService ( TimeSeriesCatalog tscatalog, int intervalBase, int intervalMult, String statistic ) {
+		if ( (intervalMult != 1) ||
+			((intervalBase != TimeInterval.HOUR) && (intervalBase != TimeInterval.DAY) && (intervalBase != TimeInterval.MONTH)) ) {
+			return null;
+		}
+		String sensorVariable = tscatalog.getSensorVariable();
+		if ( (sensorVariable != null) && sensorVariable.toLowerCase().startsWith("precip") ) {
+			String sensorVariableOut = tscatalog.getSensorVariableOut();
+			if ( statistic.equals(IntervalAggregator.STATISTIC_SUM) && (sensorVariableOut != null) && sensorVariableOut.endsWith("_1") ) {
+				// The 'precipitation' service does not select a sensor so only use it for the first sensor of the variable.
+				return "precipitation";
+			}
+			// Other precipitation statistics are computed locally.
+			return null;
+		}
+		if ( statistic.equals(IntervalAggregator.STATISTIC_COUNT) || statistic.equals(IntervalAggregator.STATISTIC_MAX)
+			|| statistic.equals(IntervalAggregator.STATISTIC_MEAN) || statistic.equals(IntervalAggregator.STATISTIC_MIN) ) {
+			return "statistics";
+		}
+		// Sum and Last are not provided by the 'statistics' service.
+		return null;
+	}
+
+	/**
+	 * Return the Synoptic service that can aggregate a time series on the server, using the read options.
+	 * This is used by readTimeSeries() and planReadTimeSeries() so that both make the same decision.
+	 * @param tscatalog time series catalog for the time series
+	 * @param intervalBase requested interval base
+	 * @param intervalMult requested interval multiplier
+	 * @param readOptions read options
+	 * @return "precipitation", "statistics", or null if the data are not aggregated on the server
+	 */
+	private String getServerAggregationService ( TimeSeriesCatalog tscatalog, int intervalBase, int intervalMult,
+		ReadOptions readOptions ) {
+		if ( !readOptions.serverAggregation || !readOptions.isAggregated(intervalBase) ) {
+			return null;
+		}
+		String service = getServerAggregationService(tscatalog, intervalBase, intervalMult,
+			readOptions.getAggregationStatistic(tscatalog));
+		if ( readOptions.accumulationToIncrement && (service != null) && !service.equals("precipitation") ) {
+			// The 'statistics' service would compute statistics on the accumulated values.
+			return null;
+		}
+		return service;
 	}
 
 	/**
@@ -523,16 +1220,71 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	private Summary getSummary ( JsonNode rootNode ) {
 		JsonNode summaryNode = rootNode.get("SUMMARY");
 		if ( summaryNode != null ) {
-			return (Summary)JacksonToolkit.getInstance().treeToValue(summaryNode, Summary.class);
+			Summary summary = JacksonToolkit.getInstance().treeToValue(summaryNode, Summary.class);
+			if ( (summary != null) && summary.isThrottled() && (this.concurrencyLimiter != null) ) {
+				this.concurrencyLimiter.recordThrottle();
+			}
+			return summary;
 		}
 		else {
 			return null;
 		}
 	}
 
+	/**
+	 * Return the time to live for cached State and NWS CWA catalogs,
+	 * which is the same as the "stations/metadata" response time to live so that the catalog is as current as the responses.
+	 * @return the time to live in seconds
+	 */
+	private long getTimeSeriesCatalogCacheTtlSeconds () {
+		if ( this.responseCache == null ) {
+			return TSCATALOG_CACHE_TTL_SECONDS;
+		}
+		return this.responseCache.getTtlSeconds("stations/metadata");
+	}
+
+	/**
+	 * Return the key for the time series catalog cache, for a query that uses input filters.
+	 * @param dataTypeReq requested data type or null or "*" for all
+	 * @param dataIntervalReq requested data interval or null or "*" for all
+	 * @param ifp input filter panel with "where" conditions
+	 * @return the cache key, or null if the query does not include a State or NWS CWA filter,
+	 * or includes a filter that cannot be evaluated locally
+	 */
+	private String getTimeSeriesCatalogCacheKey ( String dataTypeReq, String dataIntervalReq, InputFilter_JPanel ifp ) {
+		List<String> anchorClauses = new ArrayList<>();
+		int nfg = ifp.getNumFilterGroups();
+		for ( int ifg = 0; ifg < nfg; ifg++ ) {
+			InputFilter filter = ifp.getInputFilter(ifg);
+			String operator = ifp.getOperator(ifg);
+			if ( filter.getWhereLabel().trim().isEmpty() ) {
+				continue;
+			}
+			if ( !LocalQueryUtil.isLocalQueryFilter(filter, operator) ) {
+				return null;
+			}
+			if ( isTimeSeriesCatalogCacheAnchor(filter, operator) ) {
+				anchorClauses.add(WebUtil.getQueryClauseFromInputFilter(filter, operator));
+			}
+		}
+		if ( anchorClauses.isEmpty() ) {
+			return null;
+		}
+		// Sort so that the order of the filters does not matter.
+		Collections.sort(anchorClauses);
+		StringBuilder key = new StringBuilder();
+		key.append("var=" + (((dataTypeReq == null) || dataTypeReq.isEmpty()) ? "*" : dataTypeReq));
+		key.append("&interval=" + (((dataIntervalReq == null) || dataIntervalReq.isEmpty()) ? "*" : dataIntervalReq));
+		for ( String anchorClause : anchorClauses ) {
+			key.append("&" + anchorClause);
+		}
+		return key.toString();
+	}
+
 	/**
 	 * Return the list of time series catalog.
 	 * @param readData if false, return the global cached data, if true read the data and reset in he cache
+	 * @return the read-only list of time series catalog, which is not changed if the cache is reset
 	 */
 	public List<TimeSeriesCatalog> getTimeSeriesCatalog(boolean readData) {
 		if ( readData ) {
@@ -540,9 +1292,14 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 			String dataTypeReq = null;
 			String dataIntervalReq = null;
     		InputFilter_JPanel ifp = null;
-			this.tscatalogList = readTimeSeriesCatalog(tsid, dataTypeReq, dataIntervalReq, ifp );
+			// Save in the compact store to minimize memory use.
+			TimeSeriesCatalogStore tscatalogStore = new TimeSeriesCatalogStore(readTimeSeriesCatalog(tsid, dataTypeReq, dataIntervalReq, ifp ));
+			// The State and NWS CWA catalogs may be older than the global catalog so re-read when requested.
+			clearTimeSeriesCatalogCache();
+			return this.tscatalogSnapshot.updateAndGet(snapshot -> snapshot.withTimeSeriesCatalogList(tscatalogStore))
+				.getTimeSeriesCatalogList();
 		}
-		return this.tscatalogList;
+		return this.tscatalogSnapshot.get().getTimeSeriesCatalogList();
 	}
 
 	/**
@@ -571,8 +1328,10 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		//String routine = getClass().getSimpleName() + ".getTimeSeriesDataIntervalStrings";
 		List<String> dataIntervals = new ArrayList<>();
 
-		// Currently only IrregSecond since not sure how timesteps align and use * wildcards.
+		// Observations are IrregSecond:
+		// - observations can also be aggregated to some regular intervals when read
 		dataIntervals.add("IrregSecond");
+		dataIntervals.addAll(IntervalAggregator.getIntervalChoices());
 
 		/*
 		Message.printStatus(2, routine, "Getting interval strings for data type \"" + dataType + "\"");
@@ -601,9 +1360,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		}
 		*/
 
-		// Sort the intervals:
-		// - TODO smalers need to sort by time
-		Collections.sort(dataIntervals,String.CASE_INSENSITIVE_ORDER);
+		// Intervals are added in time order so don't need to sort.
 
 		if ( includeWildcards ) {
 			// Always allow querying list of time series for all intervals:
@@ -645,7 +1402,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		// Currently the data types are a static list, not determined from an API call.
 		List<String> dataTypes = new ArrayList<>();
 
-		for ( Variable variable : this.variableList ) {
+		for ( Variable variable : this.referenceData.get().getVariableList() ) {
 			dataTypes.add( variable.getName() );
 		}
 
@@ -726,6 +1483,151 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		return sensorVariable.substring(0,pos) + "_set_" + number;
 	}
 
+	/**
+	 * Indicate whether a filter is used as the basis for the time series catalog cache,
+	 * which is the case for State and NWS CWA filters that request specific values.
+	 * @param filter the InputFilter that is being processed
+	 * @param operator the operator that is selected for the filter
+	 * @return true if the filter is a State or NWS CWA filter using 'Matches', 'Equals', or 'OneOf'
+	 */
+	private boolean isTimeSeriesCatalogCacheAnchor ( InputFilter filter, String operator ) {
+		String whereSubject = filter.getWhereInternal();
+		if ( filter.getWhereLabel().trim().isEmpty() || (whereSubject == null) ) {
+			return false;
+		}
+		if ( !whereSubject.equals("state") && !whereSubject.equals("cwa") ) {
+			return false;
+		}
+		return operator.equalsIgnoreCase(InputFilter.INPUT_MATCHES)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_EQUALS)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_ONE_OF);
+	}
+
+	/**
+	 * Indicate whether all filters that are specified are State or NWS CWA filters
+	 * used as the basis for the time series catalog cache,
+	 * in which case the cached catalog does not need to be filtered locally.
+	 * @param ifp input filter panel with "where" conditions
+	 * @return true if all specified filters are time series catalog cache anchors
+	 */
+	private boolean isTimeSeriesCatalogCacheAnchorOnly ( InputFilter_JPanel ifp ) {
+		if ( ifp == null ) {
+			return true;
+		}
+		int nfg = ifp.getNumFilterGroups ();
+		for ( int ifg = 0; ifg < nfg; ifg++ ) {
+			InputFilter filter = ifp.getInputFilter ( ifg );
+			if ( !filter.getWhereLabel().trim().isEmpty() && !isTimeSeriesCatalogCacheAnchor(filter, ifp.getOperator(ifg)) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Plan the web service requests to read time series, without making the requests, for example to explain the cost of a read.
+	 * The requests are created using the same methods and read options as readTimeSeries(),
+	 * which for each time series requests the 'metadata' for the station
+	 * and sensor variable, and then requests the data using the 'timeseries' service,
+	 * or the 'statistics' or 'precipitation' service if the data are aggregated on the server.
+	 * Requests that are used by more than one time series are only planned once.
+	 * @param tsidCatalogMap time series identifiers to read, with value being the matching time series catalog
+	 * @param readStart start of read, or null to use the default
+	 * @param readEnd end of read, or null to use the default
+	 * @param readProperties read properties, as for readTimeSeries()
+	 * @param parallel whether the time series will be read in parallel (warming the cache) rather than sequentially
+	 * @return the read plan
+	 */
+	public ReadPlan planReadTimeSeries ( Map<String,TimeSeriesCatalog> tsidCatalogMap, DateTime readStart, DateTime readEnd,
+		HashMap<String,Object> readProperties, boolean parallel ) {
+		String routine = getClass().getSimpleName() + ".planReadTimeSeries";
+		// Use the same defaults as readTimeSeries().
+		readStart = resolveReadStart(readStart);
+		readEnd = resolveReadEnd(readEnd);
+		ReadOptions readOptions = new ReadOptions(readProperties);
+		boolean csv = this.timeSeriesFormat.equalsIgnoreCase("CSV");
+
+		// Time series are read sequentially unless warming the cache.
+		int concurrency = 1;
+		if ( parallel ) {
+			concurrency = (this.concurrencyLimiter == null) ? this.maxConcurrentRequests : this.concurrencyLimiter.getLimit();
+		}
+		ReadPlan plan = new ReadPlan(concurrency, this.endpointRouter.getLatencyMs(),
+			this.apiTokenPool.size(), this.apiTokenPool.getRequestsPerSecond());
+		for ( Map.Entry<String,TimeSeriesCatalog> entry : tsidCatalogMap.entrySet() ) {
+			String tsid = entry.getKey();
+			TimeSeriesCatalog tscatalog = entry.getValue();
+			TSIdent tsident = null;
+			try {
+				tsident = TSIdent.parseIdentifier(tsid);
+			}
+			catch ( Exception e ) {
+				Message.printWarning(3, routine, "Error parsing time series identifier \"" + tsid + "\" - not planning the read.");
+				continue;
+			}
+			String stationId = tsident.getLocation();
+
+			// The 'metadata' request to match the time series catalog, which is made by readTimeSeriesCatalog().
+			SynopticRequest metadataRequest = createTimeSeriesMetadataRequest(tsident);
+			plan.addRequest(metadataRequest, tsid, stationId, metadataRequest.getParameter("var"),
+				getPlannedRequestStatus(metadataRequest), 0, ReadPlan.estimateMetadataBytes());
+
+			// The data request, using the same decisions as readTimeSeries().
+			int intervalBase = tsident.getIntervalBase();
+			int intervalMult = tsident.getIntervalMult();
+			String service = getServerAggregationService(tscatalog, intervalBase, intervalMult, readOptions);
+			if ( service != null ) {
+				SynopticRequest request = createServerAggregationRequest(tscatalog, service, intervalBase,
+					readOptions.getAggregationStatistic(tscatalog), readStart, readEnd);
+				long periodMinutes = (intervalBase == TimeInterval.HOUR) ? 60 : ((intervalBase == TimeInterval.DAY) ? 1440 : 43830);
+				long valueCount = ReadPlan.estimateValueCount(readStart, readEnd,
+					tscatalog.getSensorStartDateTime(), tscatalog.getSensorEndDateTime(), periodMinutes);
+				plan.addRequest(request, tsid, stationId, tscatalog.getSensorVariable(), getPlannedRequestStatus(request),
+					valueCount, ReadPlan.estimateDataBytes(valueCount, true, false));
+			}
+			else if ( readOptions.getLocalAggregationProblem(tscatalog, intervalBase) != null ) {
+				Message.printWarning(3, routine, "TSID (" + tsid + ") " + readOptions.getLocalAggregationProblem(tscatalog, intervalBase)
+					+ " - not planning the read.");
+			}
+			else {
+				SynopticRequest request = createTimeSeriesRequest(stationId, tscatalog, readStart, readEnd);
+				String status = null;
+				if ( (this.negativeCache != null) && (this.negativeCache.isKnownEmpty(stationId, tscatalog.getSensorVariable(),
+					request.getParameter("start"), request.getParameter("end")) != null) ) {
+					status = ReadPlan.STATUS_KNOWN_EMPTY;
+				}
+				if ( csv ) {
+					// The CSV output is requested first.
+					request.setParameter("output", "csv");
+				}
+				if ( status == null ) {
+					status = getPlannedRequestStatus(request);
+				}
+				long valueCount = ReadPlan.estimateValueCount(readStart, readEnd,
+					tscatalog.getSensorStartDateTime(), tscatalog.getSensorEndDateTime(), ReadPlan.OBSERVATION_MINUTES);
+				plan.addRequest(request, tsid, stationId, tscatalog.getSensorVariable(), status,
+					valueCount, ReadPlan.estimateDataBytes(valueCount, false, csv));
+			}
+		}
+		Message.printStatus(2, routine, "Planned the read of " + tsidCatalogMap.size() + " time series: " + plan.getSummary() );
+		return plan;
+	}
+
+	/**
+	 * Return the status of a planned request, depending on whether the response is cached.
+	 * @param request request to check
+	 * @return one of ReadPlan.STATUS_*
+	 */
+	private String getPlannedRequestStatus ( SynopticRequest request ) {
+		if ( (this.responseCache != null) && this.responseCache.isCached(request) ) {
+			return ReadPlan.STATUS_CACHED;
+		}
+		else if ( this.offline ) {
+			return ReadPlan.STATUS_NOT_AVAILABLE;
+		}
+		return ReadPlan.STATUS_REQUEST;
+	}
+
 	/**
 	 * Indicate whether the datastore provides a time series input filter.
 	 * This datastore does provide an input filter panel.
@@ -747,10 +1649,27 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	public void readGlobalData () {
 		String routine = getClass().getSimpleName() + ".readGlobalData";
 		Message.printWarning ( 2, routine, "Reading global data for datastore \"" + getName() + "\"." );
+		// Global data are used to populate input filters so requests have priority over batch reads.
+		RequestScheduler.Priority priorityBefore = RequestScheduler.setThreadPriority(RequestScheduler.Priority.INTERACTIVE);
+		try {
+			readGlobalDataLists();
+		}
+		finally {
+			RequestScheduler.setThreadPriority(priorityBefore);
+		}
+	}
+
+	/**
+	 * Read the global data lists, called by readGlobalData().
+	 */
+	private void readGlobalDataLists () {
+		String routine = getClass().getSimpleName() + ".readGlobalData";
+
+		// Cached State and NWS CWA catalogs depend on the reference data so re-read when requested.
+		clearTimeSeriesCatalogCache();
 
 		try {
-			this.stateList = readStateList();
-			Message.printStatus(2, routine, "Initialized " + this.stateList.size() + " states." );
+			Message.printStatus(2, routine, "Initialized " + getStates(true).size() + " states." );
 		}
 		catch ( Exception e ) {
 			Message.printWarning(3, routine, "Error initializing global state list (" + e + ")");
@@ -758,8 +1677,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		}
 
 		try {
-			this.networkList = readNetworkList();
-			Message.printStatus(2, routine, "Read " + this.networkList.size() + " networks." );
+			Message.printStatus(2, routine, "Read " + getNetworks(true).size() + " networks." );
 		}
 		catch ( Exception e ) {
 			Message.printWarning(3, routine, "Error reading global network list (" + e + ")");
@@ -767,8 +1685,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		}
 
 		try {
-			this.nwsCwaList = readNwsCwaList();
-			Message.printStatus(2, routine, "Read " + this.nwsCwaList.size() + " NWS CWA." );
+			Message.printStatus(2, routine, "Read " + getNwsCwaList(true).size() + " NWS CWA." );
 		}
 		catch ( Exception e ) {
 			Message.printWarning(3, routine, "Error reading global network list (" + e + ")");
@@ -776,8 +1693,9 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		}
 
 		try {
-			this.variableList = readVariableList();
-			Message.printStatus(2, routine, "Read " + this.variableList.size() + " variables." );
+			List<Variable> variableList = readVariableList();
+			this.referenceData.updateAndGet(data -> data.withVariableList(variableList));
+			Message.printStatus(2, routine, "Read " + variableList.size() + " variables." );
 		}
 		catch ( Exception e ) {
 			Message.printWarning(3, routine, "Error reading global variable list (" + e + ")");
@@ -786,22 +1704,337 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 
 	}
 
+	/**
+	 * Return whether requests for an endpoint are hedged, which is used for requests that return data.
+	 * @param endpoint endpoint (e.g., "stations/timeseries")
+	 * @return true if requests for the endpoint are hedged
+	 */
+	private boolean isHedgedEndpoint ( String endpoint ) {
+		return endpoint.equals("stations/timeseries") || endpoint.equals("stations/metadata");
+	}
+
+	/**
+	 * Return whether the datastore is offline, in which case only cached responses are used.
+	 * @return true if offline
+	 */
+	public boolean isOffline () {
+		return this.offline;
+	}
+
+	/**
+	 * Open an input stream for the response to a request, using the response cache if enabled.
+	 * If multiple service root URIs are used, a request that fails is retried with another URI.
+	 * If request hedging is enabled, a slow request is hedged.
+	 * If the circuit breaker is open, a web service request fails immediately but cached responses can be used.
+	 * Web service requests are scheduled using the priority and client for the current thread (see RequestScheduler).
+	 * If a checkpoint unit is being read by the current thread (see CheckpointJournal), the response is saved in the cache
+	 * regardless of the time to live and the response cache file is added to the unit,
+	 * and if resuming the unit, a cached response is used regardless of its age.
+	 * @param request the Synoptic request
+	 * @return input stream for the response, which must be closed
+	 * @throws IOException if the request cannot be opened
+	 */
+	private InputStream openRequestStream ( SynopticRequest request ) throws IOException {
+		String routine = getClass().getSimpleName() + ".openRequestStream";
+		if ( (this.responseCache == null) && this.offline ) {
+			throw new ResponseCache.OfflineException ( "Offline and ResponseCacheFolder is not specified - cannot read \""
+				+ request + "\"." );
+		}
+		CheckpointJournal.Unit unit = (this.responseCache == null) ? null : CheckpointJournal.getThreadUnit();
+		if ( (unit != null) && unit.useCache() ) {
+			InputStream in = this.responseCache.openCachedStream(request);
+			if ( in != null ) {
+				unit.addCacheFile(this.responseCache.getEntryFile(request));
+				return in;
+			}
+		}
+		// Determine the priority in the calling thread because hedges are made in other threads.
+		RequestScheduler.Priority priority = RequestScheduler.getThreadPriority();
+		String client = RequestScheduler.getThreadClient();
+		// Service root URIs that have failed for the request.
+		Set<String> failedRootUris = ConcurrentHashMap.newKeySet();
+		while ( true ) {
+			int failedCount = failedRootUris.size();
+			try {
+				InputStream in = null;
+				if ( (this.requestHedger != null) && isHedgedEndpoint(request.getEndpoint()) ) {
+					// Service root URIs used by the original request so that the hedge can use another URI.
+					Set<String> inUseRootUris = ConcurrentHashMap.newKeySet();
+					in = this.requestHedger.open(request.getEndpoint(),
+						attempt -> openRequestStreamAttempt(request, priority, client, (unit != null), failedRootUris, inUseRootUris, attempt));
+				}
+				else {
+					in = openRequestStreamAttempt(request, priority, client, (unit != null), failedRootUris, null, null);
+				}
+				if ( unit != null ) {
+					// The file will exist if the response is cached when the stream is read.
+					unit.addCacheFile(this.responseCache.getEntryFile(request));
+				}
+				return in;
+			}
+			catch ( IOException e ) {
+				if ( (failedRootUris.size() == failedCount) || (failedRootUris.size() >= this.endpointRouter.size()) ) {
+					// Not a service root URI failure, or all URIs have failed.
+					throw e;
+				}
+				Message.printWarning(3, routine, "Request failed (" + e + ") - trying another service root URI.");
+			}
+		}
+	}
+
+	/**
+	 * Make one attempt to open an input stream for the response to a request, using the response cache if enabled.
+	 * @param request the Synoptic request
+	 * @param priority priority for the request
+	 * @param client client for the request, used to share requests fairly within a priority
+	 * @param alwaysStore whether to save the response in the cache regardless of the time to live (for a checkpoint unit)
+	 * @param failedRootUris service root URIs that have failed for the request, which is added to if this attempt fails
+	 * @param inUseRootUris service root URIs used by other attempts, which is added to,
+	 * or null if not hedging, in which case the stream is returned without waiting for the first byte
+	 * @param attempt the hedged attempt, which is given the connection so that it can be cancelled, or null if not hedging;
+	 * for a hedge of another attempt, a URI that is not in use is used if possible
+	 * @return input stream for the response, which must be closed
+	 * @throws IOException if the request cannot be opened
+	 */
+	private InputStream openRequestStreamAttempt ( SynopticRequest request, RequestScheduler.Priority priority, String client,
+		boolean alwaysStore, Set<String> failedRootUris, Set<String> inUseRootUris, RequestHedger.Attempt attempt ) throws IOException {
+		// Only use an API token and endpoint if a web service request is made (not for a cached response):
+		// - the token with the most headroom is used and is in use until the response is read
+		// - the fastest healthy endpoint is used
+		// - wait for the scheduler to start the request, which is in progress until the response is read,
+		//   but don't wait for a hedge because the original request may finish first
+		// - if adaptive concurrency is used, the scheduler uses the adaptive limit and the permit is used to adjust the limit
+		final RequestScheduler.Ticket [] ticket = new RequestScheduler.Ticket[1];
+		final AdaptiveConcurrencyLimiter.Permit [] permit = new AdaptiveConcurrencyLimiter.Permit[1];
+		final ApiTokenPool.Lease [] lease = new ApiTokenPool.Lease[1];
+		final String [] rootUri = new String[1];
+		final long [] startMs = new long[1];
+		boolean isHedge = (attempt != null) && attempt.isHedge();
+		Supplier<String> urlSupplier = () -> {
+			if ( this.circuitBreaker != null ) {
+				// The supplier cannot throw a checked exception so wrap and unwrap below.
+				try {
+					if ( this.circuitBreaker.checkAllowed() ) {
+						updateCircuitBreakerStatus();
+					}
+				}
+				catch ( CircuitBreaker.CircuitOpenException e ) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			try {
+				// Throws an exception if the thread is interrupted (e.g., a read is cancelled).
+				ticket[0] = this.requestScheduler.acquire(priority, client, !isHedge);
+			}
+			catch ( InterruptedIOException e ) {
+				throw new UncheckedIOException(e);
+			}
+			if ( ticket[0] == null ) {
+				throw new UncheckedIOException(new IOException("Hedge was not made because the concurrent request limit has been reached."));
+			}
+			if ( isHedge ) {
+				Set<String> excludeRootUris = new HashSet<>(failedRootUris);
+				excludeRootUris.addAll(inUseRootUris);
+				rootUri[0] = this.endpointRouter.choose(excludeRootUris);
+			}
+			if ( rootUri[0] == null ) {
+				rootUri[0] = this.endpointRouter.choose(failedRootUris);
+			}
+			if ( rootUri[0] == null ) {
+				// All have failed, for example for a hedge after the original request failed.
+				rootUri[0] = this.endpointRouter.choose(null);
+			}
+			if ( inUseRootUris != null ) {
+				inUseRootUris.add(rootUri[0]);
+			}
+			try {
+				if ( this.concurrencyLimiter != null ) {
+					permit[0] = this.concurrencyLimiter.acquire(false);
+				}
+				lease[0] = this.apiTokenPool.acquire();
+			}
+			catch ( InterruptedIOException e ) {
+				throw new UncheckedIOException(e);
+			}
+			startMs[0] = System.currentTimeMillis();
+			return request.toUrl(rootUri[0], lease[0].getToken());
+		};
+		try {
+			InputStream in = null;
+			// Give the connection to the hedged attempt so that it can be disconnected if the other attempt is used.
+			Consumer<HttpURLConnection> connectionConsumer = (attempt == null) ? null : attempt::setConnection;
+			if ( this.responseCache == null ) {
+				HttpURLConnection connection = WebUtil.openConnection(urlSupplier.get());
+				if ( connectionConsumer != null ) {
+					connectionConsumer.accept(connection);
+				}
+				in = connection.getInputStream();
+			}
+			else {
+				in = this.responseCache.openStream(request, urlSupplier, alwaysStore, connectionConsumer);
+			}
+			if ( rootUri[0] != null ) {
+				this.endpointRouter.recordSuccess(rootUri[0], System.currentTimeMillis() - startMs[0]);
+				if ( !failedRootUris.isEmpty() ) {
+					updateEndpointHealthProperty();
+				}
+				if ( (this.circuitBreaker != null) && this.circuitBreaker.recordSuccess() ) {
+					updateCircuitBreakerStatus();
+				}
+			}
+			if ( permit[0] != null ) {
+				permit[0].recordResponse(System.currentTimeMillis() - startMs[0]);
+				in = permit[0].releaseOnClose(in);
+			}
+			if ( lease[0] != null ) {
+				in = lease[0].releaseOnClose(in);
+			}
+			if ( ticket[0] != null ) {
+				in = ticket[0].releaseOnClose(in);
+			}
+			if ( inUseRootUris != null ) {
+				// Wait for the first byte so that a stalled response can be hedged.
+				in = new BufferedInputStream(in);
+				in.mark(1);
+				in.read();
+				in.reset();
+			}
+			return in;
+		}
+		catch ( IOException | RuntimeException e ) {
+			// A cancelled hedged attempt fails because it was disconnected, which is not a service failure.
+			boolean cancelled = (attempt != null) && attempt.isCancelled();
+			if ( lease[0] != null ) {
+				lease[0].release(true);
+			}
+			if ( permit[0] != null ) {
+				permit[0].release();
+				if ( !cancelled && AdaptiveConcurrencyLimiter.isThrottleError((Exception)e) ) {
+					this.concurrencyLimiter.recordThrottle();
+				}
+			}
+			if ( ticket[0] != null ) {
+				ticket[0].release();
+			}
+			boolean failureRecorded = false;
+			if ( (rootUri[0] != null) && (e instanceof IOException) && !(e instanceof ResponseCache.OfflineException)
+				&& !(e instanceof FileNotFoundException) && !cancelled ) {
+				// Error may be specific to the service root URI (e.g., cannot connect or server error).
+				this.endpointRouter.recordFailure(rootUri[0], e);
+				failedRootUris.add(rootUri[0]);
+				updateEndpointHealthProperty();
+				if ( this.circuitBreaker != null ) {
+					failureRecorded = true;
+					if ( this.circuitBreaker.recordFailure((Exception)e) ) {
+						updateCircuitBreakerStatus();
+					}
+				}
+			}
+			if ( (this.circuitBreaker != null) && !failureRecorded ) {
+				// If this was a half-open trial request (e.g., interrupted, 404, or cancelled), allow another trial.
+				this.circuitBreaker.releaseTrial();
+			}
+			if ( e instanceof UncheckedIOException ) {
+				// Thrown by the URL supplier, for example if the circuit breaker is open.
+				throw ((UncheckedIOException)e).getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Log a change in the circuit breaker state and set the datastore status and 'CircuitBreakerState' property:
+	 * - the datastore status is 1 (error) if the circuit is not closed, so that the problem is visible
+	 */
+	private void updateCircuitBreakerStatus () {
+		String routine = getClass().getSimpleName() + ".updateCircuitBreakerStatus";
+		String message = this.circuitBreaker.getStatusMessage();
+		setProperty("CircuitBreakerState", message);
+		if ( this.circuitBreaker.getState() == CircuitBreaker.State.CLOSED ) {
+			Message.printStatus(2, routine, "Datastore \"" + getName() + "\" Synoptic web service requests are succeeding: " + message);
+			setStatus(0);
+			setStatusMessage("");
+		}
+		else {
+			Message.printWarning(2, routine, "Datastore \"" + getName() + "\" Synoptic web service requests are failing: " + message);
+			setStatus(1);
+			setStatusMessage("Synoptic web service requests are failing - " + message);
+		}
+	}
+
+	/**
+	 * Set the 'ConcurrencyLimit' and 'ConcurrencyLimitHistory' datastore properties from the adaptive concurrency limiter,
+	 * so that the limit can be viewed.
+	 */
+	public void updateConcurrencyLimitProperty () {
+		if ( this.concurrencyLimiter != null ) {
+			setProperty("ConcurrencyLimit", this.concurrencyLimiter.getMetrics());
+			setProperty("ConcurrencyLimitHistory", String.join("; ", this.concurrencyLimiter.getHistory()));
+		}
+	}
+
+	/**
+	 * Set the 'ServiceRootURIHealth' datastore property from the endpoint router,
+	 * so that the health of each service root URI can be viewed.
+	 */
+	private void updateEndpointHealthProperty () {
+		if ( this.endpointRouter.size() > 1 ) {
+			setProperty("ServiceRootURIHealth", String.join("; ", this.endpointRouter.getHealth()));
+		}
+	}
+
+	/**
+	 * Record the result of a 'timeseries' request in the negative cache.
+	 * Results are not recorded when offline because the response cache may be incomplete.
+	 * @param stationId station identifier
+	 * @param sensorVariable sensor variable
+	 * @param request the Synoptic request, used for the period
+	 * @param observationCount number of observations that were read
+	 * @param reason reason for no data, used in messages
+	 */
+	private void recordNegativeCache ( String stationId, String sensorVariable, SynopticRequest request,
+		int observationCount, String reason ) {
+		if ( (this.negativeCache == null) || this.offline ) {
+			return;
+		}
+		if ( observationCount > 0 ) {
+			this.negativeCache.recordData(stationId, sensorVariable);
+		}
+		else {
+			this.negativeCache.recordEmpty(stationId, sensorVariable,
+				request.getParameter("start"), request.getParameter("end"), reason);
+		}
+	}
+
+	/**
+	 * Remove a request's response from the response cache,
+	 * for example when the response indicates an error that should not be reused.
+	 * @param request the Synoptic request
+	 */
+	private void removeCachedResponse ( SynopticRequest request ) {
+		if ( this.responseCache != null ) {
+			this.responseCache.remove(request);
+			CheckpointJournal.Unit unit = CheckpointJournal.getThreadUnit();
+			if ( unit != null ) {
+				unit.removeCacheFile(this.responseCache.getEntryFile(request));
+			}
+		}
+	}
+
 	/**
  	* Read the network list objects.
  	*/
 	private List<Network> readNetworkList() throws IOException {
 		String routine = getClass().getSimpleName() + ".readNetworkList";
-		String requestUrl = getServiceRootURI() + "/networks?" + getApiTokenParameter();
-		Message.printStatus(2, routine, "Reading network list from: " + requestUrl);
+		SynopticRequest request = new SynopticRequest("networks");
+		Message.printStatus(2, routine, "Reading network list from: " + request);
 		List<Network> siteList = new ArrayList<>();
 		String arrayName = "MNET";
-		JsonNode jsonNode = JacksonToolkit.getInstance().getJsonNodeFromWebServiceUrl(requestUrl, arrayName);
+		JsonNode jsonNode = JacksonToolkit.getInstance().getJsonNodeFromInputStream(
+			openRequestStream(request), request.toString(), arrayName);
 		Message.printStatus(2, routine, "  Read " + jsonNode.size() + " items.");
-		if ( (jsonNode != null) && (jsonNode.size() > 0) ) {
-			for(int i = 0; i < jsonNode.size(); i++) {
-				siteList.add((Network)JacksonToolkit.getInstance().treeToValue(jsonNode.get(i), Network.class));
-			}
-		}
+		// Deserialize the array in one call.
+		siteList.addAll(JacksonToolkit.getInstance().treeToValueList(jsonNode, Network.class));
 		return siteList;
 	}
 
@@ -955,6 +2188,8 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
      */
     public TS readTimeSeries ( String tsid, DateTime readStart, DateTime readEnd, boolean readData ) {
     	String routine = getClass().getSimpleName() + ".readTimeSeries";
+    	// A single time series lookup so requests have priority over batch reads.
+    	RequestScheduler.Priority priorityBefore = RequestScheduler.setThreadPriority(RequestScheduler.Priority.INTERACTIVE);
     	try {
     		Message.printStatus(2, routine, "Reading time series \"" + tsid + "\".");
     		return readTimeSeries ( tsid, readStart, readEnd, readData, null );
@@ -964,6 +2199,9 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     		Message.printWarning(2, routine, e);
     		throw new RuntimeException ( e );
     	}
+    	finally {
+    		RequestScheduler.setThreadPriority(priorityBefore);
+    	}
     }
 
     /**
@@ -979,6 +2217,14 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
      *      should be output as 1Day time series.</li>
      * <li> "ReadDayAs24Hour" - string "false" (default) or "true" indicating whether day interval time series
      *      should be output as 24Hour time series.</li>
+     * <li> "AggregationStatistic" - statistic used to aggregate observations to the TSID regular interval
+     *      (5Minute, 15Minute, 1Hour, 1Day, 1Month), one of "Count", "Last", "Max", "Mean", "Min", or "Sum",
+     *      with default of "Sum" for precipitation sensor variables and "Mean" for other variables.</li>
+     * <li> "ServerAggregation" - string "true" (default) or "false" indicating whether to use the Synoptic
+     *      'precipitation' and 'statistics' services to aggregate 1Hour, 1Day, and 1Month data on the server.</li>
+     * <li> "AccumulationToIncrement" - string "true" or "false" (default) indicating whether to convert accumulated
+     *      values that periodically reset (e.g., 'precip_accum_one_hour') to the increment since the previous observation,
+     *      which is done before aggregating to a regular interval.</li>
      * <li> "Debug" - if true, turn on debug for the query</li>
      * </ul>
      * @return the time series or null if not read
@@ -992,46 +2238,22 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     	}
 
     	// The Synoptic API requires that the start and end are set:
-    	// - default to one month of data
+    	// - default to one month of data ending at the current time
     	if ( readStart == null ) {
-    		readStart = new DateTime(DateTime.DATE_CURRENT);
-    		readStart.addMonth(-1);
+    		readStart = resolveReadStart(readStart);
     	}
     	if ( readEnd == null ) {
-    		// Default to current.
-    		readEnd = new DateTime(DateTime.DATE_CURRENT);
+    		readEnd = resolveReadEnd(readEnd);
     	}
 
     	// Get the properties of interest:
     	// - corresponds to parameters in the ReadSynoptic command
     	// - TSID command uses the defaults and may result in more exceptions because TSID can only handle general behavior
-    	if ( readProperties == null ) {
-    		// Create an empty hashmap if necessary to avoid checking for null below.
-    		readProperties = new HashMap<>();
-    	}
-    	String IrregularInterval = null;
-    	TimeInterval irregularInterval = null;
-    	boolean read24HourAsDay = false;
-    	boolean readDayAs24Hour = false;
-    	Object object = readProperties.get("IrregularInterval");
-    	if ( object != null ) {
-    		IrregularInterval = (String)object;
-    		irregularInterval = TimeInterval.parseInterval(IrregularInterval);
-    	}
-    	object = readProperties.get("Read24HourAsDay");
-    	if ( object != null ) {
-    		String Read24HourAsDay = (String)object;
-    		if ( Read24HourAsDay.equalsIgnoreCase("true") ) {
-    			read24HourAsDay = true;
-    		}
-    	}
-    	object = readProperties.get("ReadDayAs24Hour");
-    	if ( object != null ) {
-    		String ReadDayAs24Hour = (String)object;
-    		if ( ReadDayAs24Hour.equalsIgnoreCase("true") ) {
-    			readDayAs24Hour = true;
-    		}
-    	}
+    	ReadOptions readOptions = new ReadOptions(readProperties);
+    	TimeInterval irregularInterval = readOptions.irregularInterval;
+    	boolean read24HourAsDay = readOptions.read24HourAsDay;
+    	boolean readDayAs24Hour = readOptions.readDayAs24Hour;
+    	boolean accumulationToIncrement = readOptions.accumulationToIncrement;
 
     	TS ts = null;
 
@@ -1064,14 +2286,19 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     	else if ( read24HourAsDay && !((intervalBaseReq == TimeInterval.HOUR) && (intervalMultReq == 24)) ) {
    			throw new RuntimeException ( "TSID (" + tsidReq + ") requesting reading 24 hour as day but input is not 24Hour interval." );
     	}
-   		else if ( (intervalBaseReq == TimeInterval.MONTH) && (irregularInterval == null) ) {
-   			throw new RuntimeException ( "TSID ( " + tsidReq
-   				+ ") reading Month interval is not supported.  Use ReadSynoptic(IrregularInterval=IrregMonth)" );
-   		}
    		else if ( (intervalBaseReq == TimeInterval.YEAR) && (irregularInterval == null) ) {
    			throw new RuntimeException ( "TSID ( " + tsidReq +
    				") reading Year interval is not supported.  Use ReadSynoptic(IrregularInterval=IrregYear)" );
    		}
+   		else if ( isRegularIntervalReq && (irregularInterval == null) && !read24HourAsDay && !readDayAs24Hour
+   			&& !IntervalAggregator.isSupportedInterval(intervalBaseReq, intervalMultReq) ) {
+   			throw new RuntimeException ( "TSID ( " + tsidReq + ") reading " + tsidentReq.getInterval()
+   				+ " interval is not supported.  Observations can be aggregated to " + IntervalAggregator.getIntervalChoices() + "." );
+   		}
+
+   		// Observations are aggregated to the regular interval as they are read:
+   		// - the irregular observations are not saved in a time series
+   		boolean doAggregate = readOptions.isAggregated(intervalBaseReq);
 
     	// Read the time series catalog for the requested TSID:
     	// - TODO smalers 2023-03-18 may be able to avoid this since the 'timeseries' service also returns STATION,
@@ -1127,12 +2354,19 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     	// - TODO smalers 2023-01-17 may need to do more to handle the case of interval data timestamps being adjusted below
     	// - if irregular interval, the query period eill impact what is returned
     	if ( readStart != null ) {
-    		if ( TimeInterval.isRegularInterval(intervalBase) ) {
+    		if ( doAggregate ) {
+    			// Use the interval that includes the start, with precision consistent with the interval.
+    			ts.setDate1(IntervalAggregator.getIntervalEnd(readStart, intervalBaseReq, intervalMultReq));
+    		}
+    		else if ( TimeInterval.isRegularInterval(intervalBase) ) {
     			ts.setDate1(readStart);
     		}
     	}
     	if ( readEnd != null ) {
-    		if ( TimeInterval.isRegularInterval(intervalBase) ) {
+    		if ( doAggregate ) {
+    			ts.setDate2(IntervalAggregator.getIntervalEnd(readEnd, intervalBaseReq, intervalMultReq));
+    		}
+    		else if ( TimeInterval.isRegularInterval(intervalBase) ) {
     			ts.setDate2(readEnd);
     		}
     	}
@@ -1147,190 +2381,278 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		// - additional properties are set below to help understand adjusted timestamps and offset days
 		setTimeSeriesProperties ( ts, tscatalog );
 
+		String aggregationStatistic = readOptions.getAggregationStatistic(tscatalog);
+
     	if ( readData ) {
-    		// Request the time series:
-    		// - station ID matches the TSID location
-    		// - sensor variable matches TSID main data type
-    		// - use 'obstimezone=local' so that output does not need to be converted
-    		// - units default to 'english'
-    		StringBuilder requestUrl = new StringBuilder(
-    			getServiceRootURI() + "/stations/timeseries?" + getApiTokenParameter()
-    			+ "&stid=" + tsidentReq.getLocation()
-    			+ "&vars=" + tscatalog.getSensorVariable()
-    			+ "&obtimezone=local"
-    			+ "&units=english");
-
-    			// If the read period was specific, add to the URL.
-    			if ( readStart != null ) {
-    				requestUrl.append( "&start=" + formatUtcTimeFromLocal(readStart, tscatalog.getStationTimeZone() ) );
+    		// Try to aggregate on the server, which requires a much smaller response than reading all observations:
+    		// - if the server does not provide the data, aggregate locally below
+    		String service = getServerAggregationService(tscatalog, intervalBaseReq, intervalMultReq, readOptions);
+    		if ( service != null ) {
+    			ts.allocateDataSpace();
+    			if ( readServerAggregatedTimeSeriesData(ts, tscatalog, service, intervalBaseReq, aggregationStatistic, readStart, readEnd) ) {
+    				return ts;
     			}
-    			if ( readEnd != null ) {
-    				requestUrl.append( "&end=" + formatUtcTimeFromLocal(readEnd, tscatalog.getStationTimeZone() ) );
+    		}
+    		String problem = readOptions.getLocalAggregationProblem(tscatalog, intervalBaseReq);
+    		if ( problem != null ) {
+    			throw new RuntimeException ( "TSID (" + tsidReq + ") " + problem );
+    		}
+    	}
+
+    	if ( readData ) {
+    		SynopticRequest request = createTimeSeriesRequest(tsidentReq.getLocation(), tscatalog, readStart, readEnd);
+
+    			// Skip the request if the station and sensor variable recently had no data for the period.
+    			String stationId = tsidentReq.getLocation();
+    			String sensorVariable = tscatalog.getSensorVariable();
+    			if ( this.negativeCache != null ) {
+    				String reason = this.negativeCache.isKnownEmpty(stationId, sensorVariable,
+    					request.getParameter("start"), request.getParameter("end"));
+    				if ( reason != null ) {
+    					Message.printStatus(2, routine, "  Not requesting data for " + stationId + " " + sensorVariable
+    						+ " - recent request for the period had no data (" + reason + ").");
+    					if ( doAggregate ) {
+    						ts.allocateDataSpace();
+    					}
+    					ts.setProperty("ts.NegativeCacheSkipped", Boolean.TRUE);
+    					ts.addToGenesis("Did not request Synoptic data because a recent request for the period had no data ("
+    						+ reason + ").");
+    					return ts;
+    				}
     			}
 
-		  		// The data for the time series will have a format similar to the following:
-		        // "OBSERVATIONS": {
-		  	    //     "date_time": [
-		  	    //       "2015-01-03T00:00:00Z",
-		  	    //       "2015-01-03T00:05:00Z",
-		  	    //       "2015-01-03T00:10:00Z",
-		  	    //       "2015-01-03T00:15:00Z",
-		  	    //       "2015-01-03T00:20:00Z"
-		  	    //     ],
-		  	    //     "air_temp_set_1": [-5.6, -5.6, -6.1, -6.1, -6.7]
-		  	    //
-		  		//
-		  		// Use the rootNode to get the observations node and then decode somewhat manually because,
-		  		// once again, the key is the sensor variable and not a generic name.
-		  		// If here only one station will have returned.
-
-    			// Request the data.
-    			JsonNode rootNode = null;
-		  		String arrayName = null;
-    			Message.printStatus(2, routine, "Reading time series data using: " );
-    			Message.printStatus(2, routine, "  " + requestUrl );
-		  		try {
-		  			rootNode = JacksonToolkit.getInstance().getJsonNodeFromWebServiceUrl(requestUrl.toString(), arrayName);
+		  		// Create the aggregator and incrementer, which are used for CSV and JSON observations.
+		  		IntervalAggregator aggregator = null;
+		  		if ( doAggregate ) {
+		  			// Allocate the regular interval time series and aggregate values as they are read.
+		  			ts.allocateDataSpace();
+		  			aggregator = new IntervalAggregator(ts, aggregationStatistic);
 		  		}
-		  		catch ( Exception e ) {
-			  		Message.printWarning(3,routine,"Error reading 'timeseries' service (" + e + ").");
-			  		Message.printWarning(3,routine,e);
-			  		// Rethrow the exception.
-			  		throw new RuntimeException ( "Error requesting data from the 'timeseries' service.", e );
+		  		AccumulationIncrementer incrementer = null;
+		  		if ( accumulationToIncrement ) {
+		  			// Convert accumulated values to increments as values are read.
+		  			incrementer = new AccumulationIncrementer();
 		  		}
 
-		  		// Process the 'SUMMARY' to check if the request had a problem.
-		  		Summary summary = getSummary(rootNode);
-		  		if ( summary == null ) {
-			  		String message = "Unable to find 'SUMMARY' in response - cannot evaluate success.";
-			  		Message.printWarning(3, routine, message );
-		  		}
-		  		else if ( summary.isOk() ) {
-			  		String message = "Request returned RESPONSE_CODE=" + summary.getResponseCode() + " - OK to continue.";
-			  		Message.printStatus(2, routine, "  " + message );
-		  		}
-		  		else {
-			  		String message = "Request returned RESPONSE_CODE=" + summary.getResponseCode() + " - cannot continue.";
-			  		Message.printWarning(3, routine, "  " + message );
-			  		throw new RuntimeException ( message );
+		  		// Try the CSV output first if configured:
+		  		// - the JSON output is read if the CSV layout is not supported
+		  		boolean csvDecoded = false;
+		  		if ( this.timeSeriesFormat.equalsIgnoreCase("CSV") ) {
+		  			csvDecoded = readTimeSeriesDataCsv ( ts, tscatalog, request.copy().setParameter("output", "csv"),
+		  				incrementer, aggregator );
 		  		}
 
-		  		// Process the "UNITS" map:
-		  		// - not in 'metadata' (is in 'latest' and 'timeseries')
-		  		List<Units> unitsList = new ArrayList<>();
-		  		try {
-			  		JsonNode unitsNode = rootNode.get("UNITS");
-			  		if ( unitsNode != null ) {
-				  		// Iterate through the map.
-				  		Iterator<Entry<String, JsonNode>> mapNodes = unitsNode.fields();
-				  		while ( mapNodes.hasNext() ) {
-					  		Map.Entry<String, JsonNode> unitNode = mapNodes.next();
-					  		String variable = unitNode.getKey();
-					  		JsonNode value = (JsonNode)unitNode.getValue();
-					  		String units = value.asText();
-					  		Units latestUnits = new Units(variable,units);
-					  		unitsList.add(latestUnits);
+		  		if ( !csvDecoded ) {
+		  			long jsonStartMs = System.currentTimeMillis();
+			  		// The data for the time series will have a format similar to the following:
+			        // "OBSERVATIONS": {
+			  	    //     "date_time": [
+			  	    //       "2015-01-03T00:00:00Z",
+			  	    //       "2015-01-03T00:05:00Z",
+			  	    //       "2015-01-03T00:10:00Z",
+			  	    //       "2015-01-03T00:15:00Z",
+			  	    //       "2015-01-03T00:20:00Z"
+			  	    //     ],
+			  	    //     "air_temp_set_1": [-5.6, -5.6, -6.1, -6.1, -6.7]
+			  	    //
+			  		//
+			  		// Use the rootNode to get the observations node and then decode somewhat manually because,
+			  		// once again, the key is the sensor variable and not a generic name.
+			  		// If here only one station will have returned.
+
+	    			// Request the data.
+	    			JsonNode rootNode = null;
+			  		String arrayName = null;
+	    			Message.printStatus(2, routine, "Reading time series data using: " );
+	    			Message.printStatus(2, routine, "  " + request );
+			  		try {
+			  			String requestUrl = getRequestUrl(request);
+			  			rootNode = JacksonToolkit.getInstance().getJsonNodeFromInputStream(
+			  				openRequestStream(request), request.toString(), arrayName);
+			  			this.requestShaper.recordResponse(RequestShaper.PATH_DATA, requestUrl,
+			  				getRequestUrl(this.requestShaper.getDataBaseline(request)),
+			  				JacksonToolkit.getInstance().getLastResponseByteCount());
+			  		}
+			  		catch ( ResponseCache.OfflineException e ) {
+				  		// Make the message clear for the time series.
+				  		Message.printWarning(3,routine,e.getMessage());
+				  		throw new RuntimeException ( e.getMessage(), e );
+			  		}
+			  		catch ( Exception e ) {
+				  		Message.printWarning(3,routine,"Error reading 'timeseries' service (" + e + ").");
+				  		Message.printWarning(3,routine,e);
+				  		// Rethrow the exception.
+				  		throw new RuntimeException ( "Error requesting data from the 'timeseries' service.", e );
+			  		}
+
+			  		// Process the 'SUMMARY' to check if the request had a problem.
+			  		Summary summary = getSummary(rootNode);
+			  		if ( summary == null ) {
+				  		String message = "Unable to find 'SUMMARY' in response - cannot evaluate success.";
+				  		Message.printWarning(3, routine, message );
+			  		}
+			  		else if ( summary.isOk() ) {
+				  		String message = "Request returned RESPONSE_CODE=" + summary.getResponseCode() + " - OK to continue.";
+				  		Message.printStatus(2, routine, "  " + message );
+			  		}
+			  		else {
+				  		String message = "Request returned RESPONSE_CODE=" + summary.getResponseCode() + " - cannot continue.";
+				  		Message.printWarning(3, routine, "  " + message );
+				  		removeCachedResponse(request);
+				  		if ( (summary.getResponseCode() != null) && (summary.getResponseCode() == 2) ) {
+				  			// RESPONSE_CODE=2 indicates no results, which will not change until the station reports data,
+				  			// whereas other codes (e.g., invalid token) are not specific to the station.
+				  			recordNegativeCache ( stationId, sensorVariable, request, 0,
+				  				"RESPONSE_CODE=" + summary.getResponseCode() + " " + summary.getResponseMessage() );
+				  		}
+				  		throw new RuntimeException ( message );
+			  		}
+
+			  		// Process the "UNITS" map:
+			  		// - not in 'metadata' (is in 'latest' and 'timeseries')
+			  		List<Units> unitsList = new ArrayList<>();
+			  		try {
+				  		JsonNode unitsNode = rootNode.get("UNITS");
+				  		if ( unitsNode != null ) {
+					  		// Iterate through the map.
+					  		Iterator<Entry<String, JsonNode>> mapNodes = unitsNode.fields();
+					  		while ( mapNodes.hasNext() ) {
+						  		Map.Entry<String, JsonNode> unitNode = mapNodes.next();
+						  		String variable = unitNode.getKey();
+						  		JsonNode value = (JsonNode)unitNode.getValue();
+						  		String units = value.asText();
+						  		Units latestUnits = new Units(variable,units);
+						  		unitsList.add(latestUnits);
+					  		}
+					  		Message.printStatus(2, routine, "Read " + unitsList.size() + " units from 'timeseries'.");
 				  		}
-				  		Message.printStatus(2, routine, "Read " + unitsList.size() + " units from 'timeseries'.");
 			  		}
-		  		}
-		  		catch ( Exception e ) {
-			  		Message.printWarning(3,routine,"Error reading 'UNITS' from 'timeseries' results (" + e + ").");
-			  		Message.printWarning(3,routine,e);
-		  		}
-		  		// Set the units based on the sensor variable.
-		  		for ( Units units : unitsList ) {
-		  			if ( units.getVariableName().equalsIgnoreCase(tscatalog.getSensorVariable()) ) {
-		  				ts.setDataUnits(units.getUnits());
-		  				ts.setDataUnitsOriginal(units.getUnits());
-		  			}
-		  		}
+			  		catch ( Exception e ) {
+				  		Message.printWarning(3,routine,"Error reading 'UNITS' from 'timeseries' results (" + e + ").");
+				  		Message.printWarning(3,routine,e);
+			  		}
+			  		// Set the units based on the sensor variable.
+			  		for ( Units units : unitsList ) {
+			  			if ( units.getVariableName().equalsIgnoreCase(tscatalog.getSensorVariable()) ) {
+			  				ts.setDataUnits(units.getUnits());
+			  				ts.setDataUnitsOriginal(units.getUnits());
+			  			}
+			  		}
 
-		  		// Get data out of the object.
-
-		  		JsonNode stationArrayNode = rootNode.get("STATION");
-		  		int dataCount = 0;
-		  		if ( stationArrayNode != null ) {
-		  			if ( stationArrayNode.size() == 0 ) {
-			  			Message.printWarning(3, routine, "  Read 0 items ('STATION' JSON node not read).");
-		  			}
-		  			else if ( stationArrayNode.size() > 1 ) {
-			  			Message.printWarning(3, routine, "  Read " + stationArrayNode.size() + "  items ('STATION' has too many elements).");
-		  			}
-		  			else {
-		  				// Have one station, as expected:
-		  				// - one station but iterate through the array
-		  				Message.printStatus(2, routine, "  Read 1 STATION from 'metadata' service - continuing to read observations.");
-		  				Message.printStatus(2, routine, "  Looping through " + stationArrayNode.size() + " stations in STATION.");
-			  			for ( int i = 0; i < stationArrayNode.size(); i++ ) {
-				  			JsonNode stationNode = stationArrayNode.get(i);
-				  			// Get the "OBSERVATIONS" node.
-				  			JsonNode observationsNode = stationNode.get("OBSERVATIONS");
-				  			if ( observationsNode != null ) {
-				  				JsonNode valuesNode = observationsNode.get(
-				  					getValueArrayNameForSensorVariable(tscatalog.getSensorVariableOut()));
-				  				if ( valuesNode != null ) {
-				  					// Get the object matching the sensor variable, with _1, etc.
-				  					// Decode the observations 'date_time' array and corresponding values.
-				  					StationObservations stationObservations = (StationObservations)
-				  						JacksonToolkit.getInstance().treeToValue(observationsNode, StationObservations.class);
-				  					String [] dateTimeArray = stationObservations.getDateTimeArray();
-				  					Message.printStatus(2, routine, "  'date_time' array has " + dateTimeArray.length + " items.");
-				  					// Decode the values array, for example:
-				  					//   "air_temp_set_1": [-5.6, -5.6, -6.1, -6.1, -6.7]
-				  					// If have data, loop through and transfer the data using the iterator below.
-				  					Iterator<JsonNode> valueNodesIterator = valuesNode.elements();
-				  					if ( dateTimeArray != null ) {
-				  						String dateTimeString = null;
-			  							Double value = null;
-			  							DateTime dateTime = null;
-				  						for ( int iVal = 0; iVal < dateTimeArray.length; iVal++ ) {
-				  							dateTimeString = dateTimeArray[iVal];
-				  							// Convert the string to a DateTime.
-				  							try {
-				  								dateTime = DateTime.parse(dateTimeString);
-				  							}
-				  							catch ( Exception e ) {
-				  								Message.printWarning(3, routine, "Error parsing observation date/tme: \"" + dateTimeString + "\"");
-				  								// Skip the value.
-				  								continue;
-				  							}
-				  							if ( valueNodesIterator.hasNext() ) {
-				  									JsonNode valueNode = valueNodesIterator.next();
-				  								// Value is a Double.
-				  								if ( valueNode.isNull() ) {
-				  									value = Double.NaN;
-				  								}
-				  								else {
-				  									value = valueNode.asDouble();
-				  								}
-				  							}
-				  							else {
-				  								// No more values.
-				  								break;
-				  							}
-				  							// Set the value in the time series:
-				  							// - there are no flags
-				  							// - TODO smalers 2023-03-19 may need to add logic to covert to daily, etc.
-				  							if ( debug ) {
-				  								Message.printStatus(2, routine, "  Setting data " + dateTime + " " + value);
-				  							}
-				  							ts.setDataValue(dateTime, value);
-				  							++dataCount;
-				  						}
-				  						Message.printStatus(2, routine, "  Read " + dataCount + " data values.");
+			  		// Get data out of the object.
+
+			  		JsonNode stationArrayNode = rootNode.get("STATION");
+			  		int dataCount = 0;
+			  		if ( stationArrayNode != null ) {
+			  			if ( stationArrayNode.size() == 0 ) {
+				  			Message.printWarning(3, routine, "  Read 0 items ('STATION' JSON node not read).");
+			  			}
+			  			else if ( stationArrayNode.size() > 1 ) {
+				  			Message.printWarning(3, routine, "  Read " + stationArrayNode.size() + "  items ('STATION' has too many elements).");
+			  			}
+			  			else {
+			  				// Have one station, as expected:
+			  				// - one station but iterate through the array
+			  				Message.printStatus(2, routine, "  Read 1 STATION from 'metadata' service - continuing to read observations.");
+			  				Message.printStatus(2, routine, "  Looping through " + stationArrayNode.size() + " stations in STATION.");
+				  			for ( int i = 0; i < stationArrayNode.size(); i++ ) {
+					  			JsonNode stationNode = stationArrayNode.get(i);
+					  			// Get the "OBSERVATIONS" node.
+					  			JsonNode observationsNode = stationNode.get("OBSERVATIONS");
+					  			if ( observationsNode != null ) {
+					  				JsonNode valuesNode = observationsNode.get(
+					  					getValueArrayNameForSensorVariable(tscatalog.getSensorVariableOut()));
+					  				if ( valuesNode != null ) {
+					  					// Get the object matching the sensor variable, with _1, etc.
+					  					// Decode the observations 'date_time' array and corresponding values.
+					  					StationObservations stationObservations = (StationObservations)
+					  						JacksonToolkit.getInstance().treeToValue(observationsNode, StationObservations.class);
+					  					String [] dateTimeArray = stationObservations.getDateTimeArray();
+					  					Message.printStatus(2, routine, "  'date_time' array has " + dateTimeArray.length + " items.");
+					  					// Decode the values array, for example:
+					  					//   "air_temp_set_1": [-5.6, -5.6, -6.1, -6.1, -6.7]
+					  					// If have data, loop through and transfer the data using the iterator below.
+					  					Iterator<JsonNode> valueNodesIterator = valuesNode.elements();
+					  					if ( dateTimeArray != null ) {
+					  						String dateTimeString = null;
+				  							Double value = null;
+				  							DateTime dateTime = null;
+					  						for ( int iVal = 0; iVal < dateTimeArray.length; iVal++ ) {
+					  							dateTimeString = dateTimeArray[iVal];
+					  							// Convert the string to a DateTime.
+					  							try {
+					  								dateTime = DateTime.parse(dateTimeString);
+					  							}
+					  							catch ( Exception e ) {
+					  								Message.printWarning(3, routine, "Error parsing observation date/tme: \"" + dateTimeString + "\"");
+					  								// Skip the value.
+					  								continue;
+					  							}
+					  							if ( valueNodesIterator.hasNext() ) {
+					  									JsonNode valueNode = valueNodesIterator.next();
+					  								// Value is a Double.
+					  								if ( valueNode.isNull() ) {
+					  									value = Double.NaN;
+					  								}
+					  								else {
+					  									value = valueNode.asDouble();
+					  								}
+					  							}
+					  							else {
+					  								// No more values.
+					  								break;
+					  							}
+					  							// Set the value in the time series:
+					  							// - there are no flags
+					  							// - TODO smalers 2023-03-19 may need to add logic to covert to daily, etc.
+					  							if ( debug ) {
+					  								Message.printStatus(2, routine, "  Setting data " + dateTime + " " + value);
+					  							}
+					  							setObservationValue ( ts, dateTime, value, incrementer, aggregator );
+					  							++dataCount;
+					  						}
+					  						Message.printStatus(2, routine, "  Read " + dataCount + " data values.");
+					  					}
+					  				}
+					  				else {
+				  						Message.printStatus(2, routine, "  Did not find " + tscatalog.getSensorVariableOut()
+				  							+ " array in STATION.OBSERVATIONS.");
 				  					}
-				  				}
+					  			}
 				  				else {
-			  						Message.printStatus(2, routine, "  Did not find " + tscatalog.getSensorVariableOut()
-			  							+ " array in STATION.OBSERVATIONS.");
-			  					}
+				  					Message.printStatus(2, routine, "  Did not find 'OBSERVATIONS' array in STATION[" + i + "].");
+				  				}
 				  			}
-			  				else {
-			  					Message.printStatus(2, routine, "  Did not find 'OBSERVATIONS' array in STATION[" + i + "].");
-			  				}
 			  			}
-		  			}
+			  		}
+		  			ts.setProperty("ts.ObservationCount", Integer.valueOf(dataCount));
+		  			Message.printStatus(2, routine, "  Read and decoded JSON output in "
+		  				+ (System.currentTimeMillis() - jsonStartMs) + " ms.");
+		  		}
+
+		  		Object observationCount = ts.getProperty("ts.ObservationCount");
+		  		recordNegativeCache ( stationId, sensorVariable, request,
+		  			(observationCount instanceof Integer) ? (Integer)observationCount : 0, "no observations" );
+
+		  		if ( incrementer != null ) {
+		  			Message.printStatus(2, routine, "  Converted " + incrementer.getInputCount()
+		  				+ " accumulated values to increments (" + incrementer.getResetCount() + " resets).");
+		  			ts.setProperty("ts.AccumulationResetCount", Integer.valueOf(incrementer.getResetCount()));
+		  			ts.addToGenesis("Converted " + incrementer.getInputCount()
+		  				+ " accumulated Synoptic observations to increments, treating missing as zero and detecting "
+		  				+ incrementer.getResetCount() + " resets.");
+		  		}
+
+		  		if ( aggregator != null ) {
+		  			aggregator.finish();
+		  			Message.printStatus(2, routine, "  Aggregated " + aggregator.getInputCount() + " values to "
+		  				+ aggregator.getOutputCount() + " " + tsidentReq.getInterval() + " values using "
+		  				+ aggregator.getStatistic() + " (" + aggregator.getMissingCount() + " missing, "
+		  				+ aggregator.getOutOfOrderCount() + " out of order values ignored).");
+		  			ts.setProperty("ts.AggregationStatistic", aggregator.getStatistic());
+		  			ts.setProperty("ts.AggregationInputCount", Integer.valueOf(aggregator.getInputCount()));
+		  			ts.addToGenesis("Aggregated " + aggregator.getInputCount() + " Synoptic observations to "
+		  				+ tsidentReq.getInterval() + " using " + aggregator.getStatistic() + ".");
 		  		}
 
 		  		// Loop through the stations.
@@ -1694,6 +3016,229 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     	return ts;
     }
 
+    /**
+     * Read time series data using the 'timeseries' service CSV output, which is smaller than the JSON output
+     * and is decoded from the response bytes.
+     * @param ts time series to set data in
+     * @param tscatalog time series catalog for the time series
+     * @param request 'timeseries' service request including 'output=csv'
+     * @param incrementer incrementer used to convert accumulated values to increments, or null if not used
+     * @param aggregator aggregator used to aggregate to regular interval, or null if not used
+     * @return true if the data were read, false if the CSV layout is not supported and the JSON output should be read
+     * @throws IOException if the request fails, in which case the JSON output is not requested
+     */
+    private boolean readTimeSeriesDataCsv ( TS ts, TimeSeriesCatalog tscatalog, SynopticRequest request,
+    	AccumulationIncrementer incrementer, IntervalAggregator aggregator ) throws IOException {
+    	String routine = getClass().getSimpleName() + ".readTimeSeriesDataCsv";
+    	Message.printStatus(2, routine, "Reading time series data using: " );
+    	Message.printStatus(2, routine, "  " + request );
+    	String requestUrl = getRequestUrl(request);
+    	long startMs = System.currentTimeMillis();
+    	ByteBuffer buffer = null;
+    	// A request failure is not a CSV layout problem so don't request the JSON output.
+    	try ( InputStream in = openRequestStream(request) ) {
+    		buffer = WebUtil.readInputStreamToByteBuffer(in);
+    	}
+    	int byteCount = buffer.remaining();
+    	this.requestShaper.recordResponse(RequestShaper.PATH_DATA, requestUrl,
+    		getRequestUrl(this.requestShaper.getDataBaseline(request)), byteCount);
+    	TimeSeriesCsvDecoder decoder = new TimeSeriesCsvDecoder();
+    	boolean decoded = decoder.decode(buffer, getValueArrayNameForSensorVariable(tscatalog.getSensorVariableOut()),
+    		(dateTime, value) -> setObservationValue ( ts, dateTime, value, incrementer, aggregator ) );
+    	if ( !decoded ) {
+    		Message.printStatus(2, routine, "  CSV output is not supported (" + decoder.getLayoutProblem()
+    			+ ") - will read JSON output.");
+    		removeCachedResponse(request);
+    		return false;
+    	}
+    	ts.setProperty("ts.ObservationCount", Integer.valueOf(decoder.getDataCount()));
+    	if ( decoder.getUnits() != null ) {
+    		ts.setDataUnits(decoder.getUnits());
+    		ts.setDataUnitsOriginal(decoder.getUnits());
+    	}
+    	Message.printStatus(2, routine, "  Read " + decoder.getDataCount() + " data values from " + byteCount
+    		+ " bytes of CSV output in " + (System.currentTimeMillis() - startMs) + " ms ("
+    		+ decoder.getBadRowCount() + " rows could not be decoded).");
+    	return true;
+    }
+
+    /**
+     * Create the request for a Synoptic service that aggregates on the server.
+     * @param tscatalog time series catalog for the time series
+     * @param service the service to use, "precipitation" or "statistics"
+     * @param intervalBase the interval base for the time series
+     * @param statistic aggregation statistic, one of IntervalAggregator.STATISTIC_*
+     * @param readStart start of read, which is adjusted to the start of the period that contains the start
+     * @param readEnd end of read
+     * @return the request
+     */
+    private SynopticRequest createServerAggregationRequest ( TimeSeriesCatalog tscatalog, String service,
+    	int intervalBase, String statistic, DateTime readStart, DateTime readEnd ) {
+    	String period = "day";
+    	if ( intervalBase == TimeInterval.HOUR ) {
+    		period = "hour";
+    	}
+    	else if ( intervalBase == TimeInterval.MONTH ) {
+    		period = "month";
+    	}
+    	SynopticRequest request = new SynopticRequest("stations/" + service)
+    		.setParameter("stid", tscatalog.getStationId())
+    		.setParameter("obtimezone", "local")
+    		.setParameter("units", "english");
+    	if ( service.equals("precipitation") ) {
+    		// Precipitation totals for each interval.
+    		request.setParameter("pmode", "intervals").setParameter("interval", period);
+    	}
+    	else {
+    		String type = null;
+    		if ( statistic.equals(IntervalAggregator.STATISTIC_COUNT) ) {
+    			type = "count";
+    		}
+    		else if ( statistic.equals(IntervalAggregator.STATISTIC_MAX) ) {
+    			type = "max";
+    		}
+    		else if ( statistic.equals(IntervalAggregator.STATISTIC_MIN) ) {
+    			type = "min";
+    		}
+    		else {
+    			type = "avg";
+    		}
+    		request.setParameter("vars", tscatalog.getSensorVariable()).setParameter("type", type).setParameter("period", period);
+    	}
+    	if ( readStart != null ) {
+    		// Start at the beginning of the period so that the periods are the same as the time series intervals.
+    		request.setParameter("start", formatUtcTimeFromLocal(
+    			ServerAggregationDecoder.getPeriodStart(readStart, intervalBase), tscatalog.getStationTimeZone()) );
+    	}
+    	if ( readEnd != null ) {
+    		request.setParameter("end", formatUtcTimeFromLocal(readEnd, tscatalog.getStationTimeZone()) );
+    	}
+    	this.requestShaper.shapeDataRequest(request);
+    	return request;
+    }
+
+    /**
+     * Create the 'metadata' request to match the time series catalog for a single time series.
+     * @param tsident time series identifier
+     * @return the request
+     */
+    private SynopticRequest createTimeSeriesMetadataRequest ( TSIdent tsident ) {
+    	SynopticRequest request = new SynopticRequest("stations/metadata");
+    	this.requestShaper.shapeMetadataRequest(request, false);
+    	// Request the specific station.
+    	request.setParameter("stid", tsident.getLocation());
+    	// Request the main variable:
+    	// - data type may include the main sensor variable and the numbered variable, separated by a dash
+    	String dataType = tsident.getType();
+    	if ( dataType.indexOf("-") > 0 ) {
+    		dataType = dataType.split("-")[0].trim();
+    	}
+    	request.setParameter("var", dataType);
+    	return request;
+    }
+
+    /**
+     * Create the 'timeseries' request to read the observations for a time series.
+     * @param stationId station identifier from the time series identifier
+     * @param tscatalog time series catalog for the time series
+     * @param readStart start of read
+     * @param readEnd end of read
+     * @return the request
+     */
+    private SynopticRequest createTimeSeriesRequest ( String stationId, TimeSeriesCatalog tscatalog,
+    	DateTime readStart, DateTime readEnd ) {
+		// Request the time series:
+		// - station ID matches the TSID location
+		// - sensor variable matches TSID main data type
+		// - use 'obstimezone=local' so that output does not need to be converted
+		// - units default to 'english'
+		SynopticRequest request = new SynopticRequest("stations/timeseries")
+			.setParameter("stid", stationId)
+			.setParameter("vars", tscatalog.getSensorVariable())
+			.setParameter("obtimezone", "local")
+			.setParameter("units", "english");
+
+		// If the read period was specific, add to the request.
+		if ( readStart != null ) {
+			request.setParameter("start", formatUtcTimeFromLocal(readStart, tscatalog.getStationTimeZone()) );
+		}
+		if ( readEnd != null ) {
+			request.setParameter("end", formatUtcTimeFromLocal(readEnd, tscatalog.getStationTimeZone()) );
+		}
+		// Only request what is needed.
+		this.requestShaper.shapeDataRequest(request);
+		return request;
+    }
+
+    /**
+     * Read aggregated time series data using a Synoptic service that aggregates on the server,
+     * which greatly reduces the size of the response compared to reading all observations.
+     * The time series must be regular interval with data space allocated.
+     * Values are set at the end of each period (see ServerAggregationDecoder).
+     * @param ts time series to set data in
+     * @param tscatalog time series catalog for the time series
+     * @param service the service to use, "precipitation" or "statistics"
+     * @param intervalBase the interval base for the time series
+     * @param statistic aggregation statistic, one of IntervalAggregator.STATISTIC_*
+     * @param readStart start of read
+     * @param readEnd end of read
+     * @return true if the data were read, false if the service did not provide data and data should be aggregated locally
+     */
+    private boolean readServerAggregatedTimeSeriesData ( TS ts, TimeSeriesCatalog tscatalog, String service,
+    	int intervalBase, String statistic, DateTime readStart, DateTime readEnd ) {
+    	String routine = getClass().getSimpleName() + ".readServerAggregatedTimeSeriesData";
+    	SynopticRequest request = createServerAggregationRequest(tscatalog, service, intervalBase, statistic, readStart, readEnd);
+    	boolean isPrecipitation = service.equals("precipitation");
+    	String period = isPrecipitation ? request.getParameter("interval") : request.getParameter("period");
+    	Message.printStatus(2, routine, "Reading server aggregated time series data using: " );
+    	Message.printStatus(2, routine, "  " + request );
+
+    	JsonNode rootNode = null;
+    	try {
+    		String requestUrl = getRequestUrl(request);
+    		rootNode = JacksonToolkit.getInstance().getJsonNodeFromInputStream(
+    			openRequestStream(request), request.toString(), null);
+    		this.requestShaper.recordResponse(RequestShaper.PATH_DATA, requestUrl,
+    			getRequestUrl(this.requestShaper.getDataBaseline(request)),
+    			JacksonToolkit.getInstance().getLastResponseByteCount());
+    	}
+    	catch ( Exception e ) {
+    		Message.printWarning(3, routine, "Error reading '" + service + "' service (" + e + ") - will aggregate locally.");
+    		return false;
+    	}
+    	Summary summary = getSummary(rootNode);
+    	if ( (summary == null) || !summary.isOk() ) {
+    		// For example, the variable is not supported by the service or the account does not have access.
+    		removeCachedResponse(request);
+    		Message.printStatus(2, routine, "  '" + service + "' service did not return data ("
+    			+ ((summary == null) ? "no SUMMARY" : ("RESPONSE_CODE=" + summary.getResponseCode()))
+    			+ ") - will aggregate locally.");
+    		return false;
+    	}
+
+    	ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+    	boolean decoded = decoder.decode(rootNode, service, statistic, tscatalog.getSensorVariable(),
+    		getValueArrayNameForSensorVariable(tscatalog.getSensorVariableOut()), intervalBase,
+    		ServerAggregationDecoder.getPeriodStart(readStart, intervalBase),
+    		(dateTime, value) -> ts.setDataValue(dateTime, value) );
+    	if ( !decoded ) {
+    		Message.printStatus(2, routine, "  '" + service + "' service " + decoder.getLayoutProblem() + " - will aggregate locally.");
+    		return false;
+    	}
+    	if ( decoder.getUnits() != null ) {
+    		ts.setDataUnits(decoder.getUnits());
+    		ts.setDataUnitsOriginal(decoder.getUnits());
+    	}
+    	int dataCount = decoder.getDataCount();
+    	int skipCount = decoder.getSkipCount();
+    	Message.printStatus(2, routine, "  Read " + dataCount + " " + period + " values from '" + service
+    		+ "' service (" + skipCount + " periods without data).");
+    	ts.setProperty("ts.AggregationStatistic", statistic);
+    	ts.setProperty("ts.AggregationService", service);
+    	ts.addToGenesis("Read " + dataCount + " " + statistic + " values aggregated by the Synoptic '" + service + "' service.");
+    	return true;
+    }
+
 	/**
 	 * Read time series catalog, which uses the "/getTimeseriesList" web service query.
 	 * @param tsid requested time series identifier, called from readTimeSeries() to get metadata,
@@ -1705,12 +3250,36 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	 * @param ifp input filter panel with "where" conditions
 	 */
 	public List<TimeSeriesCatalog> readTimeSeriesCatalog ( String tsid, String dataTypeReq, String dataIntervalReq, InputFilter_JPanel ifp ) {
+		TimeSeriesCatalogReadListener listener = null;
+		return readTimeSeriesCatalog ( tsid, dataTypeReq, dataIntervalReq, ifp, listener );
+	}
+
+	/**
+	 * Read time series catalog, which uses the "/getTimeseriesList" web service query.
+	 * @param tsid requested time series identifier, called from readTimeSeries() to get metadata,
+	 *        if null use the filters to read 1+ time series catalog
+	 * @param dataTypeReq Requested data type (e.g., "DischargeRiver") or "*" to read all data types,
+	 *        or null to use default of "*".
+	 * @param dataIntervalReq Requested data interval (e.g., "IrregSecond") or "*" to read all intervals,
+	 *        or null to use default of "*".
+	 * @param ifp input filter panel with "where" conditions
+	 * @param listener listener that is passed the time series catalog as they are read and can cancel the read,
+	 *        or null if the catalog is only returned at the end
+	 * @return the time series catalog, which is partial if the read was cancelled
+	 */
+	public List<TimeSeriesCatalog> readTimeSeriesCatalog ( String tsid, String dataTypeReq, String dataIntervalReq, InputFilter_JPanel ifp,
+		TimeSeriesCatalogReadListener listener ) {
 		String routine = getClass().getSimpleName() + ".readTimeSeriesCatalog";
 
 		// Note that when requesting additional fields with 'returnfields', aLL fields to be returned must be specified,
 		// not just additional fields above the default.
-		StringBuilder requestUrl = null;
-		String requestUrlString = null;
+		SynopticRequest request = null;
+		// Key for the time series catalog cache, if the query uses State or NWS CWA filters.
+		String tscatalogCacheKey = null;
+		// Whether to read the catalog using only State and NWS CWA filters, cache, and then filter locally.
+		boolean doCacheCatalog = false;
+		// Whether any filters could not be included in the request and must be evaluated locally (e.g., 'Between').
+		boolean doLocalFilter = false;
 
 		TSIdent tsident = null;
 		// The following are checked below to know when the data type contains a _1, etc.
@@ -1734,17 +3303,12 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 			catch ( Exception e ) {
 				throw new RuntimeException("Error parsing the requested time series identifier \"" + tsid + "\"");
 			}
-			requestUrl = new StringBuilder(
-				getServiceRootURI() + "/stations/metadata?" + getApiTokenParameter() + "&complete=1&sensorvars=1");
-			// Request the specific station.
-			requestUrl.append("&stid=" + tsident.getLocation());
-			// Request the main variable:
-			// - data type may include the main sensor variable and the numbered variable, separated by a dash
+			// Only the station and sensor variables are needed to resolve a single time series.
+			request = createTimeSeriesMetadataRequest(tsident);
+			// The data type may include the main sensor variable and the numbered variable, separated by a dash.
 			String dataType = tsident.getType();
 			if ( dataType.indexOf("-") > 0 ) {
-				// Need to use the first part.
 				String [] parts = dataType.split("-");
-				dataType = parts[0].trim();
 				tsidDataTypeReq = parts[0].trim();
 				tsidDataSubTypeReq = parts[1].trim();
 			}
@@ -1753,23 +3317,59 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 				tsidDataTypeReq = dataType;
 				tsidDataSubTypeReq = null;
 			}
-			requestUrl.append("&var=" + dataType);
-			// Workaround to fix the network issue.
-			requestUrlString = fixNetworkRequest ( requestUrl.toString() );
 			Message.printStatus(2, routine, "Reading 1 station time series metadata using:" );
-			Message.printStatus(2, routine, "  " + requestUrlString);
+			Message.printStatus(2, routine, "  " + request);
 		}
 		else {
 			// Reading 1+ time series using the provided filter parameters.
-			requestUrl = new StringBuilder(
-				getServiceRootURI() + "/stations/metadata?" + getApiTokenParameter() + "&complete=1&sensorvars=1");
+			if ( ifp != null ) {
+				// Check whether the query can be answered from a cached State or NWS CWA catalog:
+				// - additional filters narrow the cached catalog and are evaluated locally
+				tscatalogCacheKey = getTimeSeriesCatalogCacheKey ( dataTypeReq, dataIntervalReq, ifp );
+			}
+			if ( tscatalogCacheKey != null ) {
+				// Remove catalogs that are older than the station metadata time to live.
+				long minCacheTimeMs = System.currentTimeMillis() - getTimeSeriesCatalogCacheTtlSeconds()*1000L;
+				TimeSeriesCatalogSnapshot snapshot = this.tscatalogSnapshot.updateAndGet(s -> s.withoutCachedCatalogs(minCacheTimeMs));
+				this.tscatalogCacheAccessMap.keySet().removeIf(key -> snapshot.getCachedCatalog(key) == null);
+				TimeSeriesCatalogSpatialIndex cachedIndex = snapshot.getCachedCatalog(tscatalogCacheKey);
+				if ( cachedIndex != null ) {
+					this.tscatalogCacheAccessMap.put(tscatalogCacheKey, this.tscatalogCacheAccessSequence.incrementAndGet());
+					List<TimeSeriesCatalog> filteredList = LocalQueryUtil.filterTimeSeriesCatalog(cachedIndex, ifp);
+					Message.printStatus(2, routine, "Matched " + filteredList.size() + " of " + cachedIndex.getTimeSeriesCatalogStore().size()
+						+ " cached time series catalog for \"" + tscatalogCacheKey + "\" - no web service request.");
+					if ( listener != null ) {
+						listener.timeSeriesCatalogRead(filteredList);
+					}
+					return filteredList;
+				}
+				// Not cached:
+				// - read and cache if the query only has State and NWS CWA filters,
+				//   spatial filters that are likely to be repeated with different locations,
+				//   or filters that cannot be included in the web service request (e.g., 'Between')
+				// - otherwise use a normal request because all filters reduce the size of the response
+				doCacheCatalog = true;
+	        	int nfg = ifp.getNumFilterGroups ();
+	        	for ( int ifg = 0; ifg < nfg; ifg++ ) {
+	        		InputFilter filter = ifp.getInputFilter ( ifg );
+	        		String operator = ifp.getOperator(ifg);
+	        		if ( !filter.getWhereLabel().trim().isEmpty() && !isTimeSeriesCatalogCacheAnchor(filter, operator)
+	        			&& !LocalQueryUtil.isSpatialFilter(filter)
+	        			&& (WebUtil.getQueryClauseFromInputFilter(filter, operator) != null) ) {
+	        			doCacheCatalog = false;
+	        			break;
+	        		}
+	        	}
+			}
+			// Shaping parameters are added below when it is known whether filters are evaluated locally.
+			request = new SynopticRequest("stations/metadata");
 
 			// Add filters for the data type and time step.
 
 			if ( (dataTypeReq != null) && !dataTypeReq.isEmpty() && !dataTypeReq.equals("*") ) {
 				try {
-					//requestUrl.append ( "&var=" + URLEncoder.encode(dataTypeReq,StandardCharsets.UTF_8.toString()) );
-					requestUrl.append ( "&var=" + dataTypeReq );
+					//request.setParameter ( "var", URLEncoder.encode(dataTypeReq,StandardCharsets.UTF_8.toString()) );
+					request.setParameter ( "var", dataTypeReq );
 				}
 				catch ( Exception e ) {
 					// TODO smalers 2023-01-01 should not happen.
@@ -1792,6 +3392,10 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 	            	boolean special = false; // TODO smalers 2022-12-26 might add special filters.
 	            	if ( special ) {
 	            	}
+	            	else if ( doCacheCatalog && !isTimeSeriesCatalogCacheAnchor(filter, ifp.getOperator(ifg)) ) {
+	            		// Only State and NWS CWA filters are used to read the catalog that is cached:
+	            		// - other filters are evaluated locally below
+	            	}
 	            	else {
 	            		// Add the query parameter to the URL.
 				    	filter = ifp.getInputFilter(ifg);
@@ -1800,26 +3404,72 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 				    		Message.printStatus(2,routine,"Filter group " + ifg + " where is: \"" + queryClause + "\"");
 				    	}
 				    	if ( queryClause != null ) {
-				    		requestUrl.append("&" + queryClause);
+				    		request.addQueryClause(queryClause);
 				    		++numFilterWheres;
 				    	}
+				    	else if ( !filter.getWhereLabel().trim().isEmpty()
+				    		&& LocalQueryUtil.isLocalQueryFilter(filter, ifp.getOperator(ifg)) ) {
+				    		// Filter is not supported by the web service so evaluate below.
+				    		doLocalFilter = true;
+				    	}
 	            	}
 	        	}
 	        }
-			// Workaround to fix the network issue.
-			requestUrlString = fixNetworkRequest ( requestUrl.toString() );
+			// The complete metadata (e.g., NWS CWA) is only needed if the catalog is cached or filtered locally.
+			this.requestShaper.shapeMetadataRequest(request, doCacheCatalog || doLocalFilter);
+			// Network short names must be converted to network ID.
+			resolveNetworkParameter(request);
 			Message.printStatus(2, routine, "Reading 1+ station time series metadata using:" );
-			Message.printStatus(2, routine, "  " + requestUrlString);
+			Message.printStatus(2, routine, "  " + request);
 		}
 
-		List<MetadataStation> metadataStationList = new ArrayList<>();
 		JsonNode jsonNode = null;
 		JsonNode rootNode = null;
 
-		// Request the data.
-		String arrayName = null;
+		// Convert the Synoptic MetadataStation objects to TimeSeriesCatalog as the stations are decoded:
+		// - also filter on the data interval, which is not a web service parameter
+		// - TODO smalers 2023-03-16 need to get the data interval from the variable?
+		boolean doCheckInterval = false;
+		if ( (dataIntervalReq != null) && !dataIntervalReq.isEmpty() && !dataIntervalReq.equals("*") ) {
+			doCheckInterval = true;
+		}
+		// Observations can be aggregated to some regular intervals when the time series are read,
+		// in which case the catalog uses the requested interval.
+		final String dataInterval = (doCheckInterval && IntervalAggregator.isSupportedInterval(dataIntervalReq)) ? dataIntervalReq : "IrregSecond";
+		final boolean doAddCatalog = !doCheckInterval || dataIntervalReq.equals(dataInterval);
+		// Rows can be passed to the listener as stations are decoded unless filters are evaluated after the full catalog is read,
+		// in which case the filtered list is passed to the listener at the end.
+		final boolean doStreamRows = (listener != null) && !doLocalFilter && (!doCacheCatalog || isTimeSeriesCatalogCacheAnchorOnly(ifp));
+		final List<TimeSeriesCatalog> tscatalogList = new ArrayList<>();
+		final int [] stationCount = new int[1];
+		final String tsidDataTypeReqF = tsidDataTypeReq;
+		final String tsidDataSubTypeReqF = tsidDataSubTypeReq;
+
+		// Request the data:
+		// - the "STATION" array is streamed so that large responses are not fully loaded before processing
+		// - other top-level objects such as "SUMMARY" and "UNITS" are returned in the root node
+		String arrayName = "STATION";
+		String requestUrlString = getRequestUrl(request);
 		try {
-			rootNode = JacksonToolkit.getInstance().getJsonNodeFromWebServiceUrl(requestUrlString, arrayName);
+			rootNode = JacksonToolkit.getInstance().getJsonNodeFromInputStream(
+				openRequestStream(request), request.toString(), arrayName,
+				stationNode -> {
+					++stationCount[0];
+					MetadataStation metadataStation = JacksonToolkit.getInstance().treeToValue(stationNode, MetadataStation.class);
+					if ( (metadataStation == null) || !doAddCatalog ) {
+						return;
+					}
+					int sizeBefore = tscatalogList.size();
+					addTimeSeriesCatalog ( metadataStation, dataInterval, tsid, tsidDataTypeReqF, tsidDataSubTypeReqF, tscatalogList );
+					if ( doStreamRows && (tscatalogList.size() > sizeBefore) ) {
+						listener.timeSeriesCatalogRead(new ArrayList<>(tscatalogList.subList(sizeBefore, tscatalogList.size())));
+					}
+				},
+				(listener == null) ? null : listener::isReadCancelled);
+			this.requestShaper.recordResponse(
+				(tsident == null) ? RequestShaper.PATH_METADATA_CATALOG : RequestShaper.PATH_METADATA_TSID,
+				requestUrlString, getRequestUrl(this.requestShaper.getMetadataBaseline(request)),
+				JacksonToolkit.getInstance().getLastResponseByteCount());
 		}
 		catch ( Exception e ) {
 			String message = "Error reading 'metadata' service (" + e + ").";
@@ -1827,6 +3477,13 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 			Message.printWarning(3,routine,e);
 			throw new RuntimeException ( message, e);
 		}
+		Message.printStatus(2, routine, "  Read " + stationCount[0] + " stations from 'metadata' service, created "
+			+ tscatalogList.size() + " time series catalog.");
+		if ( (listener != null) && listener.isReadCancelled() ) {
+			// Return what was read but don't cache the partial catalog.
+			Message.printStatus(2, routine, "  Read was cancelled - returning " + tscatalogList.size() + " time series catalog.");
+			return tscatalogList;
+		}
 
 		// Process the 'SUMMARY' to check if the request had a problem.
 		Summary summary = getSummary(rootNode);
@@ -1841,6 +3498,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
   		else {
 			String message = "Request returned RESPONSE_CODE=" + summary.getResponseCode() + " - cannot continue.";
 			Message.printWarning(3, routine, "  " + message );
+			removeCachedResponse(request);
 			throw new RuntimeException ( message );
 		}
 
@@ -1869,209 +3527,36 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 			Message.printWarning(3,routine,e);
 		}
 
-		// Process the "STATION" array.
-		arrayName = "STATION";
-		try {
-			// 'get' will return null if not found.
-			jsonNode = rootNode.get(arrayName);
-		}
-		catch ( Exception e ) {
-			Message.printWarning(3,routine,"Error reading 'metadata' service (" + e + ").");
-			Message.printWarning(3,routine,e);
-		}
-		if ( (jsonNode != null) && (jsonNode.size() > 0) ) {
-			Message.printStatus(2, routine, "  Read " + jsonNode.size() + " stations from 'metadata' service.");
-			for ( int i = 0; i < jsonNode.size(); i++ ) {
-				metadataStationList.add((MetadataStation)JacksonToolkit.getInstance().treeToValue(jsonNode.get(i), MetadataStation.class));
+		if ( doCacheCatalog ) {
+			// Save the State or NWS CWA catalog and evaluate the remaining filters locally:
+			// - use the compact store to minimize memory use
+			TimeSeriesCatalogStore tscatalogStore = new TimeSeriesCatalogStore(tscatalogList);
+			TimeSeriesCatalogSpatialIndex spatialIndex = new TimeSeriesCatalogSpatialIndex(tscatalogStore);
+			String cacheKey = tscatalogCacheKey;
+			this.tscatalogCacheAccessMap.put(cacheKey, this.tscatalogCacheAccessSequence.incrementAndGet());
+			TimeSeriesCatalogSnapshot snapshot = this.tscatalogSnapshot.updateAndGet(s -> s.withCachedCatalog(
+				cacheKey, spatialIndex, TSCATALOG_CACHE_SIZE, key -> this.tscatalogCacheAccessMap.getOrDefault(key, Long.valueOf(0)),
+				System.currentTimeMillis()));
+			// Remove the access sequence for catalogs that are no longer cached.
+			this.tscatalogCacheAccessMap.keySet().removeIf(key -> snapshot.getCachedCatalog(key) == null);
+			List<TimeSeriesCatalog> filteredList = LocalQueryUtil.filterTimeSeriesCatalog(spatialIndex, ifp);
+			Message.printStatus(2, routine, "Cached " + tscatalogList.size() + " time series catalog for \""
+				+ tscatalogCacheKey + "\", matched "
+				+ filteredList.size() + " using local filters.");
+			if ( (listener != null) && !doStreamRows ) {
+				listener.timeSeriesCatalogRead(filteredList);
 			}
-			Message.printStatus(2, routine, "  Created " + metadataStationList.size() + " stations from 'metadata' service response.");
+			return filteredList;
 		}
-		else {
-			Message.printStatus(2, routine, "  Read 0 items ('STATION' JSON node not read).");
-		}
-
-		// Convert the Synoptic MetadataStation objects to TimeSeriesCatalog:
-		// - also filter on the data interval, which is not a web service parameter
-		boolean doCheckInterval = false;
-		if ( (dataIntervalReq != null) && !dataIntervalReq.isEmpty() && !dataIntervalReq.equals("*") ) {
-			doCheckInterval = true;
-		}
-		List<TimeSeriesCatalog> tscatalogList = new ArrayList<>();
-		String dataInterval;
-
-		// Loop through the 'MetadataStation' instances and create corresponding TimeSeriesCatalog entries.
-		for ( MetadataStation metadataStation : metadataStationList ) {
-			// TODO smalers 2023-03-16 need to get the data interval from the variable?
-			dataInterval = "IrregSecond";
-			if ( doCheckInterval ) {
-				if ( !dataIntervalReq.equals(dataInterval) ) {
-					continue;
-				}
-			}
-
-			// Matched the filters so continue adding.
-
-			// Loop through the sensor variables (SENSOR_VARIABLES) for the station.
-			//
-		    //  "SENSOR_VARIABLES": {
-		    //    "wind_speed": {
-		    //      "wind_speed_value_1": {
-		    //        "period_of_record": {
-		    //          "start": "",
-		    //          "end": ""
-		    //        }
-		    //      }
-		    //    },
-		    //    "air_temp": {
-		    //      "air_temp_value_1": {
-		    //        "period_of_record": {
-		    //          "start": "",
-		    //          "end": ""
-		    //        }
-		    //      }
-		    //    },
-			//
-			// The following map corresponds to the SENSOR_VARIABLES key.
-			Map<String, ?> SENSOR_VARIABLES_Map = metadataStation.getSensorVariablesMap();
-			// Used to break out of multiple levels of for loops.
-			boolean doBreak = false;
-			if ( SENSOR_VARIABLES_Map != null ) {
-				for ( Map.Entry<String, ?> sensorVariableEntry : metadataStation.getSensorVariablesMap().entrySet() ) {
-					// Get the data for the sensor variable:
-					// - key is the variable name (e.g., "wind_speed" in the above example)
-					// - value is the map under the name
-					String sensorVariableName = sensorVariableEntry.getKey();
-					@SuppressWarnings("unchecked")
-					Map<String,?> sensorVariableOutMap = (Map<String,?>)sensorVariableEntry.getValue();
-					if ( sensorVariableOutMap.size() == 0 ) {
-						// There are no variables (e.g., "wind_speed_value_1") so don't add 'tscatalog'.
-					}
-					// Loop through the output variable for the variable (e.g., "wind_speed_value_1").
-					for ( Map.Entry<String, ?> sensorVariableOutEntry : sensorVariableOutMap.entrySet() ) {
-						// Get the data for the sensor variable (output) dataset:
-						// - key is the variable name (e.g., "wind_speed_value_1" in the above example)
-						// - a 'tscatalog' object corresponds to this inner sensor
-						TimeSeriesCatalog tscatalog = new TimeSeriesCatalog();
-						String sensorVariableNameOut = sensorVariableOutEntry.getKey();
-						String start = "";
-						String end = "";
-						@SuppressWarnings("unchecked")
-						Map<String,?> sensorVariableOutDetailsMap = (Map<String,?>)sensorVariableOutEntry.getValue();
-						for ( Map.Entry<String, ?> sensorVariableOutDetailsEntry : sensorVariableOutDetailsMap.entrySet() ) {
-							// Get the detailed data for the sensor variable (output details) dataset:
-							// - key is the variable name (e.g., "period_of_record" in the above example)
-							String sensorVariableOutDetailKey = sensorVariableOutDetailsEntry.getKey();
-							if ( sensorVariableOutDetailKey.equalsIgnoreCase("period_of_record") ) {
-								// Read the period start and end.
-								@SuppressWarnings("unchecked")
-								Map<String,?> periodMap = (Map<String,?>)sensorVariableOutDetailsEntry.getValue();
-								for ( Map.Entry<String, ?> periodData : periodMap.entrySet() ) {
-									String periodKey = periodData.getKey();
-									if ( periodKey.equalsIgnoreCase("start") ) {
-										start = (String)periodData.getValue();
-									}
-									else if ( periodKey.equalsIgnoreCase("end") ) {
-										end = (String)periodData.getValue();
-									}
-								}
-							}
-						}
-
-						// Standard properties expected by TSTool:
-						// - data source is set to network below
-						if ( sensorVariableOutMap.size() == 1 ) {
-							tscatalog.setDataType(sensorVariableName);
-						}
-						else {
-							// For uniqueness the data type is both parts:
-							// - may need to evaluate if this is too verbose but should occur infrequently
-							tscatalog.setDataType(sensorVariableName + "-" + sensorVariableNameOut);
-						}
-						tscatalog.setDataInterval(dataInterval);
-						/*
-						LatestUnits units = LatestUnits.lookupLatestUnitsFromVariable(latestUnitsList, variableName);
-						if ( units == null ) {
-							tscatalog.setDataUnits("");
-						}
-						else {
-							tscatalog.setDataUnits(units.getUnits());
-						}
-						*/
-
-						if ( StringUtil.isDouble(metadataStation.getElevation()) ) {
-							Double elevation = Double.parseDouble(metadataStation.getElevation());
-							tscatalog.setStationElevation(elevation);
-						}
-						if ( StringUtil.isDouble(metadataStation.getElevDem()) ) {
-							Double elevDem = Double.parseDouble(metadataStation.getElevDem());
-							tscatalog.setStationElevDem(elevDem);
-						}
-						tscatalog.setStationId( metadataStation.getStid());
-						if ( StringUtil.isDouble(metadataStation.getLatitude()) ) {
-							Double latitude = Double.parseDouble(metadataStation.getLatitude());
-							tscatalog.setStationLatitude(latitude);
-						}
-						if ( StringUtil.isDouble(metadataStation.getLongitude()) ) {
-							Double longitude = Double.parseDouble(metadataStation.getLongitude());
-							tscatalog.setStationLongitude(longitude);
-						}
-						tscatalog.setStationMnetId(metadataStation.getMnetId());
-						Network network = Network.lookupNetworkFromId(this.networkList, metadataStation.getMnetId());
-						if ( network != null ) {
-							// Replace space with underscore to avoid issues with TSIDs including whitespace.
-							tscatalog.setStationMnet(network.getShortName().replace(" ", "_"));
-							tscatalog.setDataSource(network.getShortName().replace(" ", "_"));
-						}
-						tscatalog.setStationQcFlagged(metadataStation.getQcFlagged());
-						tscatalog.setStationName(metadataStation.getName());
-						tscatalog.setStationState(metadataStation.getState());
-						tscatalog.setStationStatus(metadataStation.getStatus());
-						tscatalog.setStationTimeZone(metadataStation.getTimeZone());
-
-						// Sensor variable.
-						tscatalog.setSensorVariable(sensorVariableName);
-						tscatalog.setSensorVariableOut(sensorVariableNameOut);
-						tscatalog.setSensorStart(start);
-						tscatalog.setSensorEnd(end);
-
-						// Save the catalog in the list.
-						if ( (tsid != null) && !tsid.isEmpty() ) {
-							// Reading a single time series:
-							// - only save if the request is matched and can then break out of the loop
-							if ( tsidDataSubTypeReq == null ) {
-								// Check the main sensor variable.
-								if ( sensorVariableName.equalsIgnoreCase(tsidDataTypeReq) ) {
-									// Save the catalog and return it.
-									tscatalogList.add(tscatalog);
-									doBreak = true;
-									break;
-								}
-							}
-							else {
-								// Check the main sensor variable and the numbered variable.
-								if ( sensorVariableName.equalsIgnoreCase(tsidDataTypeReq) &&
-									sensorVariableNameOut.equalsIgnoreCase(tsidDataSubTypeReq)) {
-									// Save the catalog and return it.
-									tscatalogList.add(tscatalog);
-									doBreak = true;
-									break;
-								}
-							}
-						}
-						else {
-							// Reading 1+ catalogs so always add.
-							tscatalogList.add(tscatalog);
-						}
-					}
-					if ( doBreak ) {
-						break;
-					}
-				}
-			}
-			else {
-				// No sensor variables map.
-				Message.printStatus(2, routine, "No sensor variables map for station \"" + metadataStation.getStid() + "\"");
+		else if ( doLocalFilter ) {
+			// Evaluate filters that could not be included in the web service request.
+			List<TimeSeriesCatalog> filteredList = LocalQueryUtil.filterTimeSeriesCatalog(tscatalogList, ifp);
+			Message.printStatus(2, routine, "Matched " + filteredList.size() + " of " + tscatalogList.size()
+				+ " time series catalog using local filters.");
+			if ( listener != null ) {
+				listener.timeSeriesCatalogRead(filteredList);
 			}
+			return filteredList;
 		}
 
 		return tscatalogList;
@@ -2081,6 +3566,19 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
      * Read time series metadata, which results in a query that joins station, station_type, point, point_class, and point_type.
      */
     List<TimeSeriesCatalog> readTimeSeriesMeta ( String dataTypeReq, String dataIntervalReq, InputFilter_JPanel ifp ) {
+    	TimeSeriesCatalogReadListener listener = null;
+    	return readTimeSeriesMeta ( dataTypeReq, dataIntervalReq, ifp, listener );
+    }
+
+    /**
+     * Read time series metadata, passing the time series catalog to a listener as they are read.
+     * @param dataTypeReq requested data type, which may include a note after " - "
+     * @param dataIntervalReq requested data interval, which may include a note after " - "
+     * @param ifp input filter panel with "where" conditions
+     * @param listener listener that is passed the time series catalog as they are read and can cancel the read, or null
+     */
+    public List<TimeSeriesCatalog> readTimeSeriesMeta ( String dataTypeReq, String dataIntervalReq, InputFilter_JPanel ifp,
+    	TimeSeriesCatalogReadListener listener ) {
     	// Remove note from data type.
 	   	int pos = dataTypeReq.indexOf(" - ");
 	   	if ( pos > 0 ) {
@@ -2093,7 +3591,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		String tsid = null;
 	   	// By default all time series are included in the catalog:
 	   	// - the filter panel options can be used to constrain
-	    return readTimeSeriesCatalog ( tsid, dataTypeReq, dataIntervalReq, ifp );
+	    return readTimeSeriesCatalog ( tsid, dataTypeReq, dataIntervalReq, ifp, listener );
 	}
 
 	/**
@@ -2110,8 +3608,8 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
  	*/
 	private List<Variable> readVariableList() throws IOException {
 		String routine = getClass().getSimpleName() + ".readVariableList";
-		String requestUrl = getServiceRootURI() + "/variables?" + getApiTokenParameter();
-		Message.printStatus(2, routine, "Reading variable list from: " + requestUrl);
+		SynopticRequest variablesRequest = new SynopticRequest("variables");
+		Message.printStatus(2, routine, "Reading variable list from: " + variablesRequest);
 		List<Variable> variableList = new ArrayList<>();
 		/*
 		String arrayName = null;
@@ -2124,12 +3622,11 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 		}
 		*/
 
-		URL request = null;
+		String request = variablesRequest.toString();
 		try {
-			request = new URL(requestUrl);
-			ObjectMapper mapper = JacksonToolkit.getInstance().getObjectMapper();
-			// The following gets the JSON from the URL.
-			JsonNode rootNode = mapper.readTree(request);
+			// The following gets the JSON from the URL or response cache.
+			JsonNode rootNode = JacksonToolkit.getInstance().getJsonNodeFromInputStream(
+				openRequestStream(variablesRequest), request, null);
 			String element = "VARIABLES";
 			// Position the node at the "VARIABLES" node:
 			// - 'get' will return null if not found
@@ -2138,20 +3635,16 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 				Message.printStatus(2, routine, "VARIABLES has " + jsonNode.size() + " objects.");
 			}
 			if ( (jsonNode != null) && (jsonNode.size() > 0) && !jsonNode.isMissingNode() ) {
-				// Node (variable) name changes for each object so have to iterate manually:
-				// - VARIABLES is an array so use 'elements' below.
-				Iterator<JsonNode> nodes = jsonNode.elements();
-				while ( nodes.hasNext() ) {
-					JsonNode arrayNode = nodes.next();
-					// Know that each array item is a map:
-					// - key is the variable name
-					// - value is another map with the variable long name and units
-					Iterator<Entry<String, JsonNode>> mapNodes = arrayNode.fields();
-					while ( mapNodes.hasNext() ) {
-						Map.Entry<String, JsonNode> entry = mapNodes.next();
-						//Message.printStatus(2, routine, "Variable name = " + entry.getKey());
-						// Deserialize the variable object.
-						Variable variable =	(Variable)JacksonToolkit.getInstance().treeToValue(entry.getValue(), Variable.class);
+				// Node (variable) name changes for each object so deserialize the array as a list of maps:
+				// - key is the variable name
+				// - value is another map with the variable long name and units
+				for ( Map<String,Variable> variableMap : JacksonToolkit.getInstance().treeToValueMapList(jsonNode, Variable.class) ) {
+					for ( Map.Entry<String,Variable> entry : variableMap.entrySet() ) {
+						Variable variable = entry.getValue();
+						if ( variable == null ) {
+							// JSON null.
+							continue;
+						}
 						// Set the name to the key of the parent map.
 						variable.setName(entry.getKey());
 						// Add the variable to the variable list.
@@ -2174,7 +3667,7 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
 			throw e;
 		}
 		catch ( MalformedURLException e ) {
-			Message.printWarning(2, routine, "Malformed URL has occured. URL=\"" + requestUrl + "\" (" + e + ").");
+			Message.printWarning(2, routine, "Malformed URL has occured. URL=\"" + variablesRequest + "\" (" + e + ").");
 			Message.printWarning(2, routine, e );
 			throw e;
 		}
@@ -2194,6 +3687,83 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     	return "";
     }
 
+	/**
+	 * Resolve the 'network' query parameter:
+	 * - the documentation says that the short name can be specified but it seems that only network ID can be used
+	 * - rather than switching to opaque network ID in commands, replace short names (e.g., 'cwa') with the ID (e.g., '63')
+	 * - the parameter can be a comma-separated list
+	 * @param request the request to update
+	 * @throws IllegalArgumentException if a network short name is not found
+	 */
+	private void resolveNetworkParameter ( SynopticRequest request ) {
+		String networks = request.getParameter("network");
+		if ( (networks == null) || networks.isEmpty() ) {
+			return;
+		}
+		// Use the same networks for all parts of the parameter.
+		SynopticReferenceData referenceData = this.referenceData.get();
+		StringBuilder b = new StringBuilder();
+		for ( String network : networks.split(",") ) {
+			network = network.trim();
+			if ( b.length() > 0 ) {
+				b.append(",");
+			}
+			if ( StringUtil.isInteger(network) ) {
+				// Network is an integer so leave as is.
+				b.append(network);
+			}
+			else {
+				Network networkObject = referenceData.getNetworkForShortName(network);
+				if ( networkObject == null ) {
+					throw new IllegalArgumentException ( "Network \"" + network
+						+ "\" does not match a Synoptic network short name - cannot request data." );
+				}
+				b.append(networkObject.getId());
+			}
+		}
+		request.setParameter("network", b.toString());
+	}
+
+	/**
+	 * Convert a time in milliseconds to a DateTime in the computer's time zone, consistent with DateTime.DATE_CURRENT.
+	 * @param ms time in milliseconds since 1970-01-01 UTC
+	 * @return DateTime to minute precision
+	 */
+	private DateTime toDateTime ( long ms ) {
+		ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.systemDefault());
+		DateTime dt = new DateTime(DateTime.PRECISION_MINUTE);
+		dt.setYear(zdt.getYear());
+		dt.setMonth(zdt.getMonthValue());
+		dt.setDay(zdt.getDayOfMonth());
+		dt.setHour(zdt.getHour());
+		dt.setMinute(zdt.getMinute());
+		return dt;
+	}
+
+	/**
+	 * Set an observation value in the time series, converting to an increment and aggregating if requested.
+	 * @param ts time series to set data in
+	 * @param dateTime observation date/time
+	 * @param value observation value, NaN if missing
+	 * @param incrementer incrementer used to convert accumulated values to increments, or null if not used
+	 * @param aggregator aggregator used to aggregate to regular interval, or null if not used
+	 */
+	private void setObservationValue ( TS ts, DateTime dateTime, double value,
+		AccumulationIncrementer incrementer, IntervalAggregator aggregator ) {
+		if ( incrementer != null ) {
+			value = incrementer.increment(value);
+		}
+		if ( aggregator != null ) {
+			aggregator.add(dateTime, value);
+		}
+		else if ( (incrementer != null) && incrementer.isReset() ) {
+			ts.setDataValue(dateTime, value, AccumulationIncrementer.RESET_FLAG, 0);
+		}
+		else {
+			ts.setDataValue(dateTime, value);
+		}
+	}
+
     /**
      * Set the time series properties from the TimeSeriesCatalog.
      * @param ts time series to update
@@ -2220,4 +3790,278 @@ public class SynopticDataStore extends AbstractWebServiceDataStore implements Da
     	ts.setProperty("sensor.end", tscatalog.getSensorEnd());
     }
 
+	/**
+	 * Strip the note from a data type choice (e.g., "air_temp - Air Temperature" becomes "air_temp").
+	 * @param dataType data type, may be null
+	 * @return the data type without the note
+	 */
+	private String stripDataTypeNote ( String dataType ) {
+		if ( dataType == null ) {
+			return null;
+		}
+	   	int pos = dataType.indexOf(" - ");
+	   	if ( pos > 0 ) {
+		   	dataType = dataType.substring(0, pos);
+	   	}
+	   	return dataType.trim();
+	}
+
+	/**
+	 * Warm the response cache by reading time series in parallel, so that later reads (e.g., a scheduled run)
+	 * use cached responses rather than requesting data from Synoptic.
+	 * The time series are read with readTimeSeries() so that the requests match later reads that use the same parameters.
+	 * The number of time series that are read at the same time is limited by the 'MaxConcurrentRequests' property.
+	 * @param tsidList list of time series identifiers to read
+	 * @param readStart start of the read period, or null to use the default
+	 * @param readEnd end of the read period, or null to use the default
+	 * @param readProperties read properties, as for readTimeSeries()
+	 * @param isCancelled supplier that returns true if warming should stop, or null if it cannot be cancelled
+	 * @return list of problem messages, one for each time series that could not be read, empty if no problems
+	 * (time series that were not read because the circuit breaker is open are summarized in one message)
+	 */
+	public List<String> warmResponseCache ( List<String> tsidList, DateTime readStart, DateTime readEnd,
+		HashMap<String,Object> readProperties, BooleanSupplier isCancelled ) {
+		return warmResponseCache ( tsidList, readStart, readEnd, readProperties, isCancelled, null );
+	}
+
+	/**
+	 * Warm the response cache by reading time series in parallel, recording completed time series in a checkpoint journal
+	 * so that a cancelled or failed read can be resumed.
+	 * @param tsidList list of time series identifiers to read
+	 * @param readStart start of the read period, or null to use the default
+	 * @param readEnd end of the read period, or null to use the default
+	 * @param readProperties read properties, as for readTimeSeries()
+	 * @param isCancelled supplier that returns true if warming should stop, or null if it cannot be cancelled
+	 * @param journal checkpoint journal, or null if not used:
+	 * time series that are complete in the journal are skipped and other time series are added when read
+	 * @return list of problem messages, one for each time series that could not be read, empty if no problems
+	 * (time series that were not read because the circuit breaker is open are summarized in one message)
+	 */
+	public List<String> warmResponseCache ( List<String> tsidList, DateTime readStart, DateTime readEnd,
+		HashMap<String,Object> readProperties, BooleanSupplier isCancelled, CheckpointJournal journal ) {
+		String routine = getClass().getSimpleName() + ".warmResponseCache";
+		if ( this.responseCache == null ) {
+			throw new RuntimeException ( "Datastore \"" + getName() + "\" ResponseCacheFolder is not specified - cannot warm the cache." );
+		}
+		List<String> problems = Collections.synchronizedList(new ArrayList<>());
+		// Reads that failed because the circuit breaker is open, summarized as one problem.
+		AtomicInteger circuitOpenCount = new AtomicInteger(0);
+		// Time series that were skipped because they were completed by a previous read.
+		AtomicInteger resumedCount = new AtomicInteger(0);
+		// Resolve the default read period once so that all time series use the same period and the checkpoint unit keys
+		// identify the period that was read.
+		DateTime windowStart = resolveReadStart(readStart);
+		DateTime windowEnd = resolveReadEnd(readEnd);
+		// If adaptive concurrency is used, the concurrent requests are limited by the limiter.
+		int threadCount = Math.max(1, Math.min(
+			(this.concurrencyLimiter == null) ? this.maxConcurrentRequests : this.concurrencyLimiter.getMaxLimit(), tsidList.size()));
+		Message.printStatus(2, routine, "Warming the response cache for " + tsidList.size() + " time series using "
+			+ threadCount + " threads.");
+		long startMs = System.currentTimeMillis();
+		// Requests from the thread pool share the same client so that other clients have a fair share of requests.
+		String client = "warmResponseCache-" + RequestScheduler.getThreadClient();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for ( String tsid : tsidList ) {
+				futures.add(executor.submit( () -> {
+					if ( (isCancelled != null) && isCancelled.getAsBoolean() ) {
+						return;
+					}
+					String unitKey = CheckpointJournal.getUnitKey(tsid, windowStart, windowEnd);
+					if ( (journal != null) && journal.isComplete(unitKey) ) {
+						// Responses were cached by a previous read.
+						resumedCount.incrementAndGet();
+						return;
+					}
+					String clientBefore = RequestScheduler.setThreadClient(client);
+					CheckpointJournal.Unit unit = (journal == null) ? null : CheckpointJournal.beginUnit(false);
+					try {
+						// Each read modifies its own properties.
+						readTimeSeries ( tsid, new DateTime(windowStart), new DateTime(windowEnd), true,
+							(readProperties == null) ? null : new HashMap<>(readProperties) );
+						if ( unit != null ) {
+							journal.recordComplete(unitKey, unit.getCacheFiles());
+						}
+					}
+					catch ( Exception e ) {
+						if ( CircuitBreaker.isCircuitOpen(e) ) {
+							circuitOpenCount.incrementAndGet();
+						}
+						else {
+							problems.add("Error reading \"" + tsid + "\" (" + e + ").");
+						}
+					}
+					finally {
+						RequestScheduler.setThreadClient(clientBefore);
+						if ( unit != null ) {
+							CheckpointJournal.endUnit();
+						}
+					}
+				}));
+			}
+			for ( Future<?> future : futures ) {
+				try {
+					future.get();
+				}
+				catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				catch ( ExecutionException e ) {
+					problems.add("Error warming the response cache (" + e + ").");
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		if ( resumedCount.get() > 0 ) {
+			Message.printStatus(2, routine, "Skipped " + resumedCount.get()
+				+ " time series that were cached by a previous read (checkpoint journal \"" + journal.getFile() + "\").");
+		}
+		Message.printStatus(2, routine, "Warmed the response cache for "
+			+ (tsidList.size() - problems.size() - circuitOpenCount.get() - resumedCount.get()) + " of "
+			+ tsidList.size() + " time series in " + (System.currentTimeMillis() - startMs) + " ms ("
+			+ this.responseCache.getStoreCount() + " responses saved).");
+		if ( this.apiTokenPool.size() > 1 ) {
+			for ( String usage : this.apiTokenPool.getUsage() ) {
+				Message.printStatus(2, routine, "  API token " + usage);
+			}
+		}
+		for ( String usage : this.requestScheduler.getUsage() ) {
+			Message.printStatus(2, routine, "  Scheduled requests " + usage);
+		}
+		if ( this.concurrencyLimiter != null ) {
+			Message.printStatus(2, routine, "  Adaptive concurrency " + this.concurrencyLimiter.getMetrics());
+			for ( String history : this.concurrencyLimiter.getHistory() ) {
+				Message.printStatus(2, routine, "    " + history);
+			}
+			updateConcurrencyLimitProperty();
+		}
+		if ( circuitOpenCount.get() > 0 ) {
+			problems.add("Did not read " + circuitOpenCount.get() + " time series because Synoptic web service requests are failing ("
+				+ this.circuitBreaker.getStatusMessage() + ").");
+		}
+		return problems;
+	}
+
+	/**
+	 * Read options from the read properties (see readTimeSeries()),
+	 * used by readTimeSeries() and planReadTimeSeries() so that both make the same decisions.
+	 */
+	private static class ReadOptions {
+		/**
+		 * Irregular interval to read, or null to read the interval in the TSID.
+		 */
+		final TimeInterval irregularInterval;
+
+		/**
+		 * Whether to read 24Hour interval as 1Day.
+		 */
+		final boolean read24HourAsDay;
+
+		/**
+		 * Whether to read 1Day interval as 24Hour.
+		 */
+		final boolean readDayAs24Hour;
+
+		/**
+		 * Requested aggregation statistic, or null to use the default for the sensor variable.
+		 */
+		final String aggregationStatistic;
+
+		/**
+		 * Whether to aggregate on the server if possible.
+		 */
+		final boolean serverAggregation;
+
+		/**
+		 * Whether to convert accumulated values to increments.
+		 */
+		final boolean accumulationToIncrement;
+
+		/**
+		 * Constructor.
+		 * @param readProperties read properties, can be null to use the defaults
+		 */
+		ReadOptions ( HashMap<String,Object> readProperties ) {
+			if ( readProperties == null ) {
+				readProperties = new HashMap<>();
+			}
+			Object object = readProperties.get("IrregularInterval");
+			if ( object != null ) {
+				try {
+					this.irregularInterval = TimeInterval.parseInterval((String)object);
+				}
+				catch ( Exception e ) {
+					throw new RuntimeException ( "Irregular interval \"" + object + "\" is invalid." );
+				}
+			}
+			else {
+				this.irregularInterval = null;
+			}
+			this.read24HourAsDay = "true".equalsIgnoreCase((String)readProperties.get("Read24HourAsDay"));
+			this.readDayAs24Hour = "true".equalsIgnoreCase((String)readProperties.get("ReadDayAs24Hour"));
+			object = readProperties.get("AggregationStatistic");
+			if ( object != null ) {
+				this.aggregationStatistic = IntervalAggregator.lookupStatistic((String)object);
+				if ( this.aggregationStatistic == null ) {
+					throw new RuntimeException ( "Aggregation statistic \"" + object + "\" is not supported." );
+				}
+			}
+			else {
+				this.aggregationStatistic = null;
+			}
+			this.serverAggregation = !"false".equalsIgnoreCase((String)readProperties.get("ServerAggregation"));
+			this.accumulationToIncrement = "true".equalsIgnoreCase((String)readProperties.get("AccumulationToIncrement"));
+		}
+
+		/**
+		 * Return the aggregation statistic for a time series, using the default for the sensor variable if not requested:
+		 * - "Sum" for precipitation and "Mean" for other variables
+		 * @param tscatalog time series catalog for the time series
+		 * @return the aggregation statistic, one of IntervalAggregator.STATISTIC_*
+		 */
+		String getAggregationStatistic ( TimeSeriesCatalog tscatalog ) {
+			if ( this.aggregationStatistic != null ) {
+				return this.aggregationStatistic;
+			}
+			if ( (tscatalog.getSensorVariable() != null) && tscatalog.getSensorVariable().toLowerCase().startsWith("precip") ) {
+				return IntervalAggregator.STATISTIC_SUM;
+			}
+			return IntervalAggregator.STATISTIC_MEAN;
+		}
+
+		/**
+		 * Return the reason that observations cannot be aggregated locally, or null if they can.
+		 * Summing accumulated values (e.g., 'precip_accum_one_hour') counts the same precipitation more than once,
+		 * so AccumulationToIncrement must be used, which gives the same result as the 'precipitation' service.
+		 * @param tscatalog time series catalog for the time series
+		 * @param intervalBase requested interval base
+		 * @return the reason that observations cannot be aggregated locally, or null if they can
+		 */
+		String getLocalAggregationProblem ( TimeSeriesCatalog tscatalog, int intervalBase ) {
+			if ( !isAggregated(intervalBase) || this.accumulationToIncrement
+				|| !getAggregationStatistic(tscatalog).equals(IntervalAggregator.STATISTIC_SUM) ) {
+				return null;
+			}
+			String sensorVariable = tscatalog.getSensorVariable();
+			if ( (sensorVariable != null) && sensorVariable.toLowerCase().startsWith("precip_accum") ) {
+				return "sums accumulated '" + sensorVariable
+					+ "' values, which requires AccumulationToIncrement=True to convert the values to increments.";
+			}
+			return null;
+		}
+
+		/**
+		 * Determine whether observations are aggregated to the requested interval.
+		 * @param intervalBase requested interval base
+		 * @return true if observations are aggregated to the regular interval
+		 */
+		boolean isAggregated ( int intervalBase ) {
+			return TimeInterval.isRegularInterval(intervalBase) && (this.irregularInterval == null)
+				&& !this.read24HourAsDay && !this.readDayAs24Hour;
+		}
+	}
 }
@@ -46,11 +46,13 @@ public class SynopticDataStoreFactory implements DataStoreFactory {
 	    	System.out.println("Synoptic datastore ServiceRootURI is not defined.");
 	    }
 	    String apiToken = props.getValue ( "ApiToken" );
-	    if ( apiToken == null ) {
-	    	System.out.println("Synoptic datastore ApiToken is not defined.");
+	    String apiTokens = props.getValue ( "ApiTokens" );
+	    if ( (apiToken == null) && (apiTokens == null) ) {
+	    	System.out.println("Synoptic datastore ApiToken or ApiTokens is not defined.");
 	    }
 	    try {
-	        DataStore ds = new SynopticDataStore ( name, description, new URI(serviceRootURI), props );
+	        // The service root URI can be a comma-separated list, in which case the first is the primary URI.
+	        DataStore ds = new SynopticDataStore ( name, description, new URI(serviceRootURI.split(",")[0].trim()), props );
 	        return ds;
 	    }
 	    catch ( Exception e ) {
@@ -0,0 +1,180 @@
+// SynopticReferenceData - immutable snapshot of the datastore reference data
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.Network;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.NwsCwa;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.State;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.Variable;
+
+/**
+ * Immutable snapshot of the datastore reference data (states, networks, NWS CWA, and variables).
+ * The datastore replaces the snapshot as a whole when any list is refreshed,
+ * so code that gets the snapshot (or a list from it) sees consistent data without locking,
+ * even if a refresh occurs while the data are being used.
+ */
+final class SynopticReferenceData {
+
+	/**
+	 * Snapshot with no data, used before global data are read.
+	 */
+	static final SynopticReferenceData EMPTY = new SynopticReferenceData(
+		Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(), Collections.emptyList(), Collections.emptyList());
+
+	/**
+	 * State list.
+	 */
+	private final List<State> stateList;
+
+	/**
+	 * Network list.
+	 */
+	private final List<Network> networkList;
+
+	/**
+	 * Index of 'networkList' by network short name, used to resolve 'network' query parameters.
+	 */
+	private final Map<String,Network> networkShortNameMap;
+
+	/**
+	 * NWS CWA list.
+	 */
+	private final List<NwsCwa> nwsCwaList;
+
+	/**
+	 * Variable list.
+	 */
+	private final List<Variable> variableList;
+
+	/**
+	 * Constructor, which is only called with read-only collections.
+	 */
+	private SynopticReferenceData ( List<State> stateList, List<Network> networkList, Map<String,Network> networkShortNameMap,
+		List<NwsCwa> nwsCwaList, List<Variable> variableList ) {
+		this.stateList = stateList;
+		this.networkList = networkList;
+		this.networkShortNameMap = networkShortNameMap;
+		this.nwsCwaList = nwsCwaList;
+		this.variableList = variableList;
+	}
+
+	/**
+	 * Return the network list.
+	 * @return the read-only network list
+	 */
+	List<Network> getNetworkList () {
+		return this.networkList;
+	}
+
+	/**
+	 * Return the network matching a short name.
+	 * @param shortName network short name
+	 * @return the matching network, or null if not matched
+	 */
+	Network getNetworkForShortName ( String shortName ) {
+		return this.networkShortNameMap.get(shortName);
+	}
+
+	/**
+	 * Return the NWS CWA list.
+	 * @return the read-only NWS CWA list
+	 */
+	List<NwsCwa> getNwsCwaList () {
+		return this.nwsCwaList;
+	}
+
+	/**
+	 * Return the state list.
+	 * @return the read-only state list
+	 */
+	List<State> getStateList () {
+		return this.stateList;
+	}
+
+	/**
+	 * Return the variable list.
+	 * @return the read-only variable list
+	 */
+	List<Variable> getVariableList () {
+		return this.variableList;
+	}
+
+	/**
+	 * Return a copy of the snapshot with a new network list.
+	 * @param networkList list of networks, which is copied
+	 * @return new snapshot
+	 */
+	SynopticReferenceData withNetworkList ( List<Network> networkList ) {
+		Map<String,Network> networkShortNameMap = new HashMap<>();
+		for ( Network network : networkList ) {
+			if ( network.getShortName() != null ) {
+				networkShortNameMap.put(network.getShortName(), network);
+			}
+		}
+		return new SynopticReferenceData(this.stateList, readOnlyCopy(networkList),
+			Collections.unmodifiableMap(networkShortNameMap), this.nwsCwaList, this.variableList);
+	}
+
+	/**
+	 * Return a copy of the snapshot with a new NWS CWA list.
+	 * @param nwsCwaList list of NWS CWA, which is copied
+	 * @return new snapshot
+	 */
+	SynopticReferenceData withNwsCwaList ( List<NwsCwa> nwsCwaList ) {
+		return new SynopticReferenceData(this.stateList, this.networkList, this.networkShortNameMap,
+			readOnlyCopy(nwsCwaList), this.variableList);
+	}
+
+	/**
+	 * Return a copy of the snapshot with a new state list.
+	 * @param stateList list of states, which is copied
+	 * @return new snapshot
+	 */
+	SynopticReferenceData withStateList ( List<State> stateList ) {
+		return new SynopticReferenceData(readOnlyCopy(stateList), this.networkList, this.networkShortNameMap,
+			this.nwsCwaList, this.variableList);
+	}
+
+	/**
+	 * Return a copy of the snapshot with a new variable list.
+	 * @param variableList list of variables, which is copied
+	 * @return new snapshot
+	 */
+	SynopticReferenceData withVariableList ( List<Variable> variableList ) {
+		return new SynopticReferenceData(this.stateList, this.networkList, this.networkShortNameMap,
+			this.nwsCwaList, readOnlyCopy(variableList));
+	}
+
+	/**
+	 * Return a read-only copy of a list.
+	 */
+	private static <T> List<T> readOnlyCopy ( List<T> list ) {
+		return Collections.unmodifiableList(new ArrayList<>(list));
+	}
+}
@@ -0,0 +1,217 @@
+// SynopticRequest - Synoptic web service request, with endpoint and ordered query parameters
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.datastore;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Synoptic web service request, with the endpoint (e.g., "stations/metadata") and ordered query parameters.
+ * The API token is not stored in the request so that the request can be used as a cache key and be logged.
+ * Use toUrl() to create the URL that is sent to the web service and getCacheKey() to create a canonical key,
+ * which sorts the query parameters so that equivalent requests have the same key.
+ */
+public class SynopticRequest {
+
+	/**
+	 * Endpoint relative to the service root URI, for example "stations/metadata".
+	 */
+	private final String endpoint;
+
+	/**
+	 * Query parameters in the order that they were set, not including the API token:
+	 * - the value is null for clauses that don't use '=' (e.g., "elevation>5000")
+	 */
+	private final Map<String,String> parameterMap = new LinkedHashMap<>();
+
+	/**
+	 * Constructor.
+	 * @param endpoint endpoint relative to the service root URI, for example "stations/metadata"
+	 */
+	public SynopticRequest ( String endpoint ) {
+		if ( (endpoint == null) || endpoint.isEmpty() ) {
+			throw new IllegalArgumentException("The Synoptic request endpoint must be specified.");
+		}
+		// Remove leading / so that the URL is formed consistently.
+		while ( endpoint.startsWith("/") ) {
+			endpoint = endpoint.substring(1);
+		}
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * Add a query clause, for example from an input filter.
+	 * A clause with '=' is added as a parameter name and value.
+	 * Other clauses (e.g., "elevation>5000") are added as is.
+	 * @param clause query clause without leading '&amp;'
+	 * @return this request, to allow chaining
+	 */
+	public SynopticRequest addQueryClause ( String clause ) {
+		if ( (clause == null) || clause.isEmpty() ) {
+			return this;
+		}
+		int pos = clause.indexOf("=");
+		if ( (pos > 0) && (clause.indexOf(">") < 0) && (clause.indexOf("<") < 0) ) {
+			setParameter(clause.substring(0, pos), clause.substring(pos + 1));
+		}
+		else {
+			this.parameterMap.put(clause, null);
+		}
+		return this;
+	}
+
+	/**
+	 * Append the query parameters.
+	 */
+	private void appendParameters ( StringBuilder b, Map<String,String> map ) {
+		for ( Map.Entry<String,String> entry : map.entrySet() ) {
+			if ( b.charAt(b.length() - 1) != '?' ) {
+				b.append("&");
+			}
+			b.append(entry.getKey());
+			if ( entry.getValue() != null ) {
+				b.append("=");
+				b.append(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Create a copy of the request, for example to modify the parameters for a related request.
+	 * @return a copy of the request
+	 */
+	public SynopticRequest copy () {
+		SynopticRequest request = new SynopticRequest(this.endpoint);
+		request.parameterMap.putAll(this.parameterMap);
+		return request;
+	}
+
+	/**
+	 * Return the canonical cache key for the request, which does not include the API token or service root URI.
+	 * The query parameters are sorted by name so that the key does not depend on the order that parameters were set.
+	 * @return the canonical cache key, for example "stations/metadata?sensorvars=1&amp;state=CO"
+	 */
+	public String getCacheKey () {
+		StringBuilder b = new StringBuilder(this.endpoint + "?");
+		appendParameters(b, new TreeMap<>(this.parameterMap));
+		return b.toString();
+	}
+
+	/**
+	 * Return the endpoint.
+	 * @return the endpoint, for example "stations/metadata"
+	 */
+	public String getEndpoint () {
+		return this.endpoint;
+	}
+
+	/**
+	 * Return a query parameter value.
+	 * @param name parameter name
+	 * @return the parameter value, or null if not set
+	 */
+	public String getParameter ( String name ) {
+		return this.parameterMap.get(name);
+	}
+
+	/**
+	 * Return the query parameters, as a read-only map.
+	 * @return the query parameters in the order that they were set
+	 */
+	public Map<String,String> getParameters () {
+		return Collections.unmodifiableMap(this.parameterMap);
+	}
+
+	/**
+	 * Indicate whether a query parameter is set.
+	 * @param name parameter name
+	 * @return true if the parameter is set
+	 */
+	public boolean hasParameter ( String name ) {
+		return this.parameterMap.containsKey(name);
+	}
+
+	/**
+	 * Remove a query parameter.
+	 * @param name parameter name
+	 * @return this request, to allow chaining
+	 */
+	public SynopticRequest removeParameter ( String name ) {
+		this.parameterMap.remove(name);
+		return this;
+	}
+
+	/**
+	 * Set a query parameter, replacing the value if already set, in which case the original order is retained.
+	 * @param name parameter name
+	 * @param value parameter value, or null to remove the parameter
+	 * @return this request, to allow chaining
+	 */
+	public SynopticRequest setParameter ( String name, String value ) {
+		if ( value == null ) {
+			this.parameterMap.remove(name);
+		}
+		else {
+			this.parameterMap.put(name, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Set an integer query parameter.
+	 * @param name parameter name
+	 * @param value parameter value
+	 * @return this request, to allow chaining
+	 */
+	public SynopticRequest setParameter ( String name, int value ) {
+		return setParameter(name, String.valueOf(value));
+	}
+
+	/**
+	 * Return the cache key, which is suitable for logging because it does not include the API token.
+	 */
+	@Override
+	public String toString () {
+		return getCacheKey();
+	}
+
+	/**
+	 * Return the URL to send to the web service.
+	 * @param serviceRootUri service root URI, for example "https://api.synopticdata.com/v2"
+	 * @param apiToken API token, which is the first query parameter
+	 * @return the URL to send to the web service
+	 */
+	public String toUrl ( String serviceRootUri, String apiToken ) {
+		StringBuilder b = new StringBuilder(serviceRootUri);
+		if ( (b.length() > 0) && (b.charAt(b.length() - 1) != '/') ) {
+			b.append("/");
+		}
+		b.append(this.endpoint);
+		b.append("?token=");
+		b.append(apiToken);
+		appendParameters(b, this.parameterMap);
+		return b.toString();
+	}
+}
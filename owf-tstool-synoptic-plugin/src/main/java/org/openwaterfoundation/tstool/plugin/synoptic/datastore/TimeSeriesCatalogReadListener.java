@@ -0,0 +1,49 @@
+// TimeSeriesCatalogReadListener - listener for time series catalog that are read incrementally
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.datastore;
+
+import java.util.List;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+
+/**
+ * Listener for time series catalog that are read incrementally,
+ * for example to display rows in the TSTool time series list as the web service response is decoded.
+ * Methods are called from the thread that is reading the catalog, which is typically not the Swing event thread.
+ */
+public interface TimeSeriesCatalogReadListener {
+
+	/**
+	 * Indicate whether the read has been cancelled, in which case the read stops as soon as possible.
+	 * @return true if the read has been cancelled
+	 */
+	public boolean isReadCancelled ();
+
+	/**
+	 * Called when time series catalog have been read.
+	 * Each catalog in the result is passed exactly once, in the order of the full result.
+	 * @param tscatalogList time series catalog that have been read, which should not be modified
+	 */
+	public void timeSeriesCatalogRead ( List<TimeSeriesCatalog> tscatalogList );
+}
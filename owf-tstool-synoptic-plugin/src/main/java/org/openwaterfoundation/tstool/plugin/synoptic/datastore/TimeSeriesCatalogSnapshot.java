@@ -0,0 +1,180 @@
+// TimeSeriesCatalogSnapshot - immutable snapshot of the datastore cached time series catalog
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.StationIdIndex;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.TimeSeriesCatalogSpatialIndex;
+
+/**
+ * Immutable snapshot of the datastore cached time series catalog:
+ * - the global catalog from getTimeSeriesCatalog(true)
+ * - the State and NWS CWA catalogs that have been read, each with a spatial index and the time it was cached
+ * The datastore replaces the snapshot as a whole when the catalog changes,
+ * so readers (e.g., UI choices and queries evaluated locally) see consistent data without locking.
+ * The station identifier index is derived from the snapshot when first requested.
+ */
+final class TimeSeriesCatalogSnapshot {
+
+	/**
+	 * Snapshot with no data.
+	 */
+	static final TimeSeriesCatalogSnapshot EMPTY = new TimeSeriesCatalogSnapshot(
+		Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+
+	/**
+	 * Global time series catalog.
+	 */
+	private final List<TimeSeriesCatalog> tscatalogList;
+
+	/**
+	 * Time series catalog read using only State and NWS CWA filters,
+	 * with the key created by SynopticDataStore.getTimeSeriesCatalogCacheKey().
+	 */
+	private final Map<String,TimeSeriesCatalogSpatialIndex> tscatalogCache;
+
+	/**
+	 * Time in milliseconds when each catalog in 'tscatalogCache' was cached, used to expire old catalogs.
+	 */
+	private final Map<String,Long> tscatalogCacheTimeMap;
+
+	/**
+	 * Station identifiers for the catalog, created when first requested:
+	 * - if multiple threads request at the same time, each may create an equivalent index
+	 */
+	private volatile StationIdIndex stationIdIndex = null;
+
+	/**
+	 * Constructor, which is only called with read-only collections.
+	 */
+	private TimeSeriesCatalogSnapshot ( List<TimeSeriesCatalog> tscatalogList,
+		Map<String,TimeSeriesCatalogSpatialIndex> tscatalogCache, Map<String,Long> tscatalogCacheTimeMap ) {
+		this.tscatalogList = tscatalogList;
+		this.tscatalogCache = tscatalogCache;
+		this.tscatalogCacheTimeMap = tscatalogCacheTimeMap;
+	}
+
+	/**
+	 * Return the cached State or NWS CWA catalog.
+	 * @param key cache key
+	 * @return the spatial index for the catalog, or null if not cached
+	 */
+	TimeSeriesCatalogSpatialIndex getCachedCatalog ( String key ) {
+		return this.tscatalogCache.get(key);
+	}
+
+	/**
+	 * Return the station identifier index, creating it if necessary.
+	 * @return the station identifier index for the global and cached catalog
+	 */
+	StationIdIndex getStationIdIndex () {
+		StationIdIndex index = this.stationIdIndex;
+		if ( index == null ) {
+			List<List<TimeSeriesCatalog>> tscatalogLists = new ArrayList<>();
+			tscatalogLists.add(this.tscatalogList);
+			for ( TimeSeriesCatalogSpatialIndex spatialIndex : this.tscatalogCache.values() ) {
+				tscatalogLists.add(spatialIndex.getTimeSeriesCatalogStore());
+			}
+			index = new StationIdIndex(tscatalogLists);
+			this.stationIdIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Return the global time series catalog.
+	 * @return the global time series catalog, which must not be modified
+	 */
+	List<TimeSeriesCatalog> getTimeSeriesCatalogList () {
+		return this.tscatalogList;
+	}
+
+	/**
+	 * Return a copy of the snapshot with an added State or NWS CWA catalog.
+	 * @param key cache key
+	 * @param spatialIndex spatial index for the catalog
+	 * @param maxSize maximum number of cached catalogs
+	 * @param lastAccess function that returns a cache key's last access sequence,
+	 * used to remove the least recently used catalog when the cache is full
+	 * @param cacheTimeMs time in milliseconds when the catalog was cached
+	 * @return new snapshot
+	 */
+	TimeSeriesCatalogSnapshot withCachedCatalog ( String key, TimeSeriesCatalogSpatialIndex spatialIndex, int maxSize,
+		ToLongFunction<String> lastAccess, long cacheTimeMs ) {
+		Map<String,TimeSeriesCatalogSpatialIndex> tscatalogCache = new LinkedHashMap<>(this.tscatalogCache);
+		Map<String,Long> tscatalogCacheTimeMap = new LinkedHashMap<>(this.tscatalogCacheTimeMap);
+		tscatalogCache.remove(key);
+		while ( !tscatalogCache.isEmpty() && (tscatalogCache.size() >= maxSize) ) {
+			String oldestKey = null;
+			long oldestAccess = Long.MAX_VALUE;
+			for ( String cacheKey : tscatalogCache.keySet() ) {
+				long access = lastAccess.applyAsLong(cacheKey);
+				if ( access < oldestAccess ) {
+					oldestKey = cacheKey;
+					oldestAccess = access;
+				}
+			}
+			tscatalogCache.remove(oldestKey);
+		}
+		tscatalogCache.put(key, spatialIndex);
+		tscatalogCacheTimeMap.keySet().retainAll(tscatalogCache.keySet());
+		tscatalogCacheTimeMap.put(key, Long.valueOf(cacheTimeMs));
+		return new TimeSeriesCatalogSnapshot(this.tscatalogList, Collections.unmodifiableMap(tscatalogCache),
+			Collections.unmodifiableMap(tscatalogCacheTimeMap));
+	}
+
+	/**
+	 * Return a copy of the snapshot without the State or NWS CWA catalogs that were cached before a time.
+	 * @param minCacheTimeMs catalogs cached before this time in milliseconds are removed,
+	 * Long.MAX_VALUE to remove all cached catalogs
+	 * @return new snapshot, or this snapshot if no catalogs are removed
+	 */
+	TimeSeriesCatalogSnapshot withoutCachedCatalogs ( long minCacheTimeMs ) {
+		Map<String,TimeSeriesCatalogSpatialIndex> tscatalogCache = new LinkedHashMap<>(this.tscatalogCache);
+		Map<String,Long> tscatalogCacheTimeMap = new LinkedHashMap<>(this.tscatalogCacheTimeMap);
+		tscatalogCacheTimeMap.values().removeIf(cacheTimeMs -> cacheTimeMs.longValue() < minCacheTimeMs);
+		tscatalogCache.keySet().retainAll(tscatalogCacheTimeMap.keySet());
+		if ( tscatalogCache.size() == this.tscatalogCache.size() ) {
+			return this;
+		}
+		return new TimeSeriesCatalogSnapshot(this.tscatalogList, Collections.unmodifiableMap(tscatalogCache),
+			Collections.unmodifiableMap(tscatalogCacheTimeMap));
+	}
+
+	/**
+	 * Return a copy of the snapshot with a new global catalog.
+	 * @param tscatalogList global catalog, which is not copied and must not be modified
+	 * (not wrapped so that a TimeSeriesCatalogStore can be used with row views)
+	 * @return new snapshot
+	 */
+	TimeSeriesCatalogSnapshot withTimeSeriesCatalogList ( List<TimeSeriesCatalog> tscatalogList ) {
+		return new TimeSeriesCatalogSnapshot(tscatalogList, this.tscatalogCache, this.tscatalogCacheTimeMap);
+	}
+}
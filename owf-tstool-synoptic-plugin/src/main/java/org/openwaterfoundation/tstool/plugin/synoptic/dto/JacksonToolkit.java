@@ -22,21 +22,47 @@ NoticeEnd */
 
 package org.openwaterfoundation.tstool.plugin.synoptic.dto;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.MetadataStation;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.Network;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.StationObservations;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.Summary;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.Variable;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.WebUtil;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import RTi.Util.Message.Message;
 
 /**
  * This toolkit facilitates using Jackson package to translate JSON to/from data access objects.
+ * The toolkit is a singleton that can be shared by multiple threads:
+ * - the ObjectMapper is configured when the toolkit is created and is not changed
+ * - ObjectReader instances are immutable and are cached for each data access object class
+ * - the response byte count is tracked for each thread
  * @author sam
  *
  */
@@ -46,26 +72,85 @@ public class JacksonToolkit {
 	 * Global ObjectMapper as part of the Jackson library used
 	 * for serializing and deserializing JSON data to a POJO.
 	 */
-	private ObjectMapper mapper;
+	private final ObjectMapper mapper;
 	
 	/**
-	 * Jackson Toolkit used for lazy initialization of a singleton class
+	 * Jackson Toolkit singleton, created when the class is loaded so that all threads use the same instance.
+	 */
+	private static final JacksonToolkit instance = new JacksonToolkit();
+
+	/**
+	 * Cached readers for a single object, with key being the data access object class.
 	 */
-	private static JacksonToolkit instance;
+	private final Map<Class<?>,ObjectReader> readerMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Cached readers for a list of objects, with key being the data access object class.
+	 */
+	private final Map<Class<?>,ObjectReader> listReaderMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Cached readers for a list of maps of objects, with key being the data access object class.
+	 */
+	private final Map<Class<?>,ObjectReader> mapListReaderMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of bytes in the most recent web service response read by the current thread,
+	 * used to record the size of requests.
+	 */
+	private final ThreadLocal<Long> responseByteCount = ThreadLocal.withInitial(() -> Long.valueOf(0));
+
+	/**
+	 * Input stream that counts the bytes that are read.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		public CountingInputStream ( InputStream in ) {
+			super(in);
+		}
+
+		public long getCount () {
+			return this.count;
+		}
+
+		@Override
+		public int read () throws IOException {
+			int b = super.read();
+			if ( b >= 0 ) {
+				++this.count;
+			}
+			return b;
+		}
+
+		@Override
+		public int read ( byte [] bytes, int offset, int length ) throws IOException {
+			int n = super.read(bytes, offset, length);
+			if ( n > 0 ) {
+				this.count += n;
+			}
+			return n;
+		}
+	}
 	
 	private JacksonToolkit() {
 		this.mapper = new ObjectMapper()
 			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		// Create the readers for the objects that are deserialized for each station, network, and variable
+		// so that type information is not looked up for each object.
+		for ( Class<?> objClass : new Class<?>[] {
+			MetadataStation.class, Network.class, StationObservations.class, Summary.class, Variable.class } ) {
+			getReader(objClass);
+			getListReader(objClass);
+		}
+		getMapListReader(Variable.class);
 	}
 	
 	/**
-	 * Lazy initialization of a singleton class instance
+	 * Return the singleton class instance.
 	 * @return instance of JacksonToolkit class
 	 */
 	public static JacksonToolkit getInstance() {
-		if ( instance == null ) {
-			instance = new JacksonToolkit();
-		}
 		return instance;
 	}
 	
@@ -84,8 +169,6 @@ public class JacksonToolkit {
 	public JsonNode getJsonNodeFromWebServiceUrl(String url, String element)
 		throws JsonParseException, JsonMappingException, MalformedURLException, IOException {
 		String routine = getClass().getSimpleName() + ".getJsonNodeFromWebServicesUrl";
-		JsonNode results = null;
-		URL request = null;
 		
 		// TODO smalers 219-09-04 this is in HydroBase REST but results in double query of the web service!
 		//if ( !httpResponse200(url) ) {
@@ -95,9 +178,53 @@ public class JacksonToolkit {
 		
 		//System.out.println(url);
 		
+		this.responseByteCount.set(Long.valueOf(0));
+		InputStream in = null;
 		try {
-			request = new URL(url);
-			JsonNode rootNode = this.mapper.readTree(request);
+			in = WebUtil.openConnection(url).getInputStream();
+		}
+		catch ( MalformedURLException e ) {
+			Message.printWarning(2, routine, "Malformed URL has occured. URL=\"" + url + "\" (" + e + ").");
+			throw e;
+		}
+		catch ( IOException e ) {
+			Message.printWarning(2, routine, "IOException (" + e + ").");
+			throw e;
+		}
+		return getJsonNodeFromInputStream(in, url, element);
+	}
+
+	/**
+	 * Read a JSON response from an input stream and convert to a JsonNode from the Jackson Library.
+	 * This is used when the response is provided by a cache rather than directly from a URL.
+	 * The stream is read to the end and is closed.
+	 * @param inputStream input stream for the response
+	 * @param source description of the response source (e.g., request without API token), for messages
+	 * @param element element name corresponding to the JSON node, typically the name of an array of objects
+	 * (if null don't position at the array name)
+	 * @return JsonNode of returned value from web services request.
+	 * @throws JsonParseException if a JSON parse error
+	 * @throws JsonMappingException if a JSON mapping error
+	 * @throws IOException typically a timeout
+	 */
+	public JsonNode getJsonNodeFromInputStream(InputStream inputStream, String source, String element)
+		throws JsonParseException, JsonMappingException, IOException {
+		String routine = getClass().getSimpleName() + ".getJsonNodeFromInputStream";
+		JsonNode results = null;
+		this.responseByteCount.set(Long.valueOf(0));
+		try ( CountingInputStream in = new CountingInputStream(inputStream) ) {
+			JsonNode rootNode = null;
+			try ( JsonParser parser = this.mapper.getFactory().createParser(in) ) {
+				// Don't close the stream when the JSON is parsed so that the end of the stream can be read.
+				parser.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+				rootNode = this.mapper.readTree(parser);
+			}
+			if ( rootNode == null ) {
+				// Empty response, consistent with ObjectMapper.readTree(InputStream).
+				rootNode = MissingNode.getInstance();
+			}
+			readToEnd(in);
+			this.responseByteCount.set(Long.valueOf(in.getCount()));
 			results = rootNode;
 			// For now return the root node.
 			if ( (element != null) && !element.isEmpty() ) {
@@ -106,15 +233,11 @@ public class JacksonToolkit {
 			}
 		}
 		catch ( JsonParseException e ) {
-			Message.printWarning(2, routine, "Error parsing JSON response from \"" + request + "\" (" + e + ").");
+			Message.printWarning(2, routine, "Error parsing JSON response from \"" + source + "\" (" + e + ").");
 			throw e;
 		}
 		catch ( JsonMappingException e ) {
-			Message.printWarning(2, routine, "Error mapping JSON response from \"" + request + "\" (" + e + ").");
-			throw e;
-		}
-		catch ( MalformedURLException e ) {
-			Message.printWarning(2, routine, "Malformed URL has occured. URL=\"" + url + "\" (" + e + ").");
+			Message.printWarning(2, routine, "Error mapping JSON response from \"" + source + "\" (" + e + ").");
 			throw e;
 		}
 		catch ( IOException e ) {
@@ -125,14 +248,122 @@ public class JacksonToolkit {
 		return results;
 	}
 	
+	/**
+	 * Read a JSON response from an input stream and stream the elements of a top-level array to a consumer
+	 * as they are parsed, rather than reading the entire response into memory before processing.
+	 * This allows large responses to be processed incrementally and to be cancelled.
+	 * The stream is opened by the caller, for example using the response cache.
+	 * The stream is read to the end, unless cancelled, and is closed.
+	 * @param inputStream input stream for the response
+	 * @param source description of the response source (e.g., request without API token), for messages
+	 * @param arrayName name of the top-level array to stream (e.g., "STATION")
+	 * @param arrayElementConsumer consumer that is called for each array element
+	 * @param isCancelled supplier that returns true if the read should stop, or null if the read cannot be cancelled
+	 * @return the root JsonNode without the streamed array, for example to process "SUMMARY" and "UNITS"
+	 * @throws JsonParseException if a JSON parse error
+	 * @throws IOException typically a timeout
+	 */
+	public JsonNode getJsonNodeFromInputStream(InputStream inputStream, String source, String arrayName,
+		Consumer<JsonNode> arrayElementConsumer, BooleanSupplier isCancelled )
+		throws JsonParseException, IOException {
+		String routine = getClass().getSimpleName() + ".getJsonNodeFromInputStream";
+		ObjectNode rootNode = this.mapper.createObjectNode();
+		this.responseByteCount.set(Long.valueOf(0));
+		CountingInputStream in = null;
+		try {
+			in = new CountingInputStream(inputStream);
+			try ( JsonParser parser = this.mapper.getFactory().createParser(in) ) {
+				if ( parser.nextToken() != JsonToken.START_OBJECT ) {
+					throw new JsonParseException(parser, "Expecting JSON object at start of response.");
+				}
+				while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+					String fieldName = parser.getCurrentName();
+					JsonToken token = parser.nextToken();
+					if ( fieldName.equals(arrayName) && (token == JsonToken.START_ARRAY) ) {
+						// Stream the array elements.
+						while ( parser.nextToken() != JsonToken.END_ARRAY ) {
+							if ( (isCancelled != null) && isCancelled.getAsBoolean() ) {
+								// Stop reading:
+								// - closing the parser closes the connection
+								return rootNode;
+							}
+							JsonNode elementNode = this.mapper.readTree(parser);
+							arrayElementConsumer.accept(elementNode);
+						}
+					}
+					else {
+						// Read the full object for other fields, which are relatively small.
+						rootNode.set(fieldName, this.mapper.readTree(parser));
+					}
+				}
+				readToEnd(in);
+			}
+		}
+		catch ( JsonParseException e ) {
+			Message.printWarning(2, routine, "Error parsing JSON response from \"" + source + "\" (" + e + ").");
+			throw e;
+		}
+		catch ( IOException e ) {
+			Message.printWarning(2, routine, "IOException (" + e + ").");
+			throw e;
+		}
+		finally {
+			if ( in != null ) {
+				this.responseByteCount.set(Long.valueOf(in.getCount()));
+				in.close();
+			}
+		}
+		return rootNode;
+	}
+
+	/**
+	 * Return the number of bytes in the most recent web service response read by the current thread,
+	 * which is useful to evaluate the size of requests.
+	 * @return the number of bytes in the most recent response, or zero if the read failed
+	 */
+	public long getLastResponseByteCount () {
+		return this.responseByteCount.get().longValue();
+	}
+
+	/**
+	 * Return the cached reader for a list of objects.
+	 * @param objClass the class of objects in the list
+	 * @return the reader for a list of objects
+	 */
+	private ObjectReader getListReader ( Class<?> objClass ) {
+		return this.listReaderMap.computeIfAbsent(objClass,
+			c -> this.mapper.readerFor(TypeFactory.defaultInstance().constructCollectionType(List.class, c)));
+	}
+
+	/**
+	 * Return the cached reader for a list of maps of objects.
+	 * @param objClass the class of objects in the maps
+	 * @return the reader for a list of maps of objects
+	 */
+	private ObjectReader getMapListReader ( Class<?> objClass ) {
+		TypeFactory typeFactory = TypeFactory.defaultInstance();
+		return this.mapListReaderMap.computeIfAbsent(objClass,
+			c -> this.mapper.readerFor(typeFactory.constructCollectionType(List.class,
+				typeFactory.constructMapType(Map.class, String.class, c))));
+	}
+
 	/**
 	 * Return the object mapper used with the toolkit.
-	 * The object mapper can be reused.
+	 * The object mapper can be reused but must not be reconfigured because it is shared by threads.
 	 */
 	public ObjectMapper getObjectMapper () {
 		return this.mapper;
 	}
 
+	/**
+	 * Return the cached reader for an object.
+	 * @param objClass the class of object
+	 * @return the reader for the object
+	 */
+	private ObjectReader getReader ( Class<?> objClass ) {
+		return this.readerMap.computeIfAbsent(objClass, c -> this.mapper.readerFor(c));
+	}
+
 	/**
 	 * Checks to see if the request string returns a response 200 or an error 404.
 	 * @param urlString String representing the URL request from web services.
@@ -158,6 +389,16 @@ public class JacksonToolkit {
 		}
 	}
 	
+	/**
+	 * Read the remaining bytes in a stream after the JSON has been parsed,
+	 * typically only trailing whitespace, so that a caching stream sees the end of the response.
+	 */
+	private void readToEnd ( InputStream in ) throws IOException {
+		byte [] bytes = new byte[1024];
+		while ( in.read(bytes) >= 0 ) {
+		}
+	}
+
 	/**
 	 * Deserializes a JsonNode to a POJO class.
 	 * This has the advantage of providing control over the process.
@@ -166,12 +407,13 @@ public class JacksonToolkit {
 	 * Therefore, if zeros are being used where not expected, define as an object and not primitive in the class.
 	 * @param node - JsonNode to deserialize to POJO.
 	 * @param objClass - The class that the JsonNode is to be deserialized to.
-	 * @return the POJO that has been initialized via Jackson deserialization from the JsonNode data.
+	 * @return the POJO that has been initialized via Jackson deserialization from the JsonNode data,
+	 * or null if the node could not be deserialized.
 	 */
-	public Object treeToValue(JsonNode node, Class<?> objClass) {
+	public <T> T treeToValue(JsonNode node, Class<T> objClass) {
 		String routine = getClass().getSimpleName() + ".treeToValue";
 		try {
-			return this.mapper.treeToValue(node, objClass);
+			return getReader(objClass).readValue(node);
 		}
 		catch (JsonParseException e ) {
 			Message.printWarning(3, routine, "Error converting JSON response to class instance (" + e + ").");
@@ -189,4 +431,73 @@ public class JacksonToolkit {
 			return null;
 		}
 	}
+
+	/**
+	 * Deserializes a JSON array to a list of POJO in one call, which is faster than deserializing each element.
+	 * If the array cannot be deserialized in one call, the elements are deserialized individually
+	 * and elements that cannot be deserialized are not included in the returned list.
+	 * @param arrayNode - JSON array to deserialize, can be null or missing.
+	 * @param objClass - The class that the array elements are to be deserialized to.
+	 * @return list of POJO, guaranteed to be non-null
+	 */
+	public <T> List<T> treeToValueList(JsonNode arrayNode, Class<T> objClass) {
+		String routine = getClass().getSimpleName() + ".treeToValueList";
+		if ( (arrayNode == null) || !arrayNode.isArray() ) {
+			return new ArrayList<>();
+		}
+		try {
+			return getListReader(objClass).readValue(arrayNode);
+		}
+		catch ( IOException e ) {
+			Message.printWarning(3, routine, "Error converting JSON array to " + objClass.getSimpleName()
+				+ " list (" + e + ") - converting elements individually.");
+			List<T> list = new ArrayList<>(arrayNode.size());
+			for ( JsonNode node : arrayNode ) {
+				T obj = treeToValue(node, objClass);
+				if ( obj != null ) {
+					list.add(obj);
+				}
+			}
+			return list;
+		}
+	}
+
+	/**
+	 * Deserializes a JSON array of objects, where each object's fields are named objects, to a list of maps in one call,
+	 * for example the 'variables' service array:
+	 * <pre>
+	 *   "VARIABLES": [
+	 *     { "air_temp": { "long_name": "Temperature", "unit": "Celsius" } },
+	 * </pre>
+	 * If the array cannot be deserialized in one call, the fields are deserialized individually
+	 * and fields that cannot be deserialized are not included in the returned maps.
+	 * @param arrayNode - JSON array to deserialize, can be null or missing.
+	 * @param objClass - The class that the map values are to be deserialized to.
+	 * @return list of maps with key being the field name and value the POJO, guaranteed to be non-null
+	 */
+	public <T> List<Map<String,T>> treeToValueMapList(JsonNode arrayNode, Class<T> objClass) {
+		String routine = getClass().getSimpleName() + ".treeToValueMapList";
+		if ( (arrayNode == null) || !arrayNode.isArray() ) {
+			return new ArrayList<>();
+		}
+		try {
+			return getMapListReader(objClass).readValue(arrayNode);
+		}
+		catch ( IOException e ) {
+			Message.printWarning(3, routine, "Error converting JSON array to " + objClass.getSimpleName()
+				+ " map list (" + e + ") - converting fields individually.");
+			List<Map<String,T>> list = new ArrayList<>(arrayNode.size());
+			for ( JsonNode node : arrayNode ) {
+				Map<String,T> map = new LinkedHashMap<>();
+				node.fields().forEachRemaining(field -> {
+					T obj = treeToValue(field.getValue(), objClass);
+					if ( obj != null ) {
+						map.put(field.getKey(), obj);
+					}
+				});
+				list.add(map);
+			}
+			return list;
+		}
+	}
 }
@@ -0,0 +1,255 @@
+// ServerAggregationDecoder - decode values from the Synoptic precipitation and statistics services
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.dto;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.util.IntervalAggregator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import RTi.Util.Message.Message;
+import RTi.Util.Time.DateTime;
+import RTi.Util.Time.TimeInterval;
+
+/**
+ * Decode values aggregated on the server by the 'precipitation' (pmode=intervals) or 'statistics' service.
+ * Each value is for a period (hour, day, or month) and is passed to the consumer with the date/time at the end of the period,
+ * consistent with interval-ending values for TSTool regular interval time series:
+ * <ul>
+ * <li>the 'statistics' service returns the start of each period in 'date',
+ *     for example a day's value with date "2022-05-01" is set at 2022-05-02 (the end of 2022-05-01)</li>
+ * <li>the 'precipitation' service numbers the periods in 'interval' (1, 2, ...) from the request start,
+ *     which must be the start of a period (see getPeriodStart())</li>
+ * </ul>
+ * Only the documented response fields are used:
+ * <ul>
+ * <li>'statistics': 'date' and one of 'count', 'maximum', 'minimum', or 'average' for the requested statistic</li>
+ * <li>'precipitation': 'interval', 'total', and 'report_type', which must be the requested sensor variable
+ *     because the service chooses the station's precipitation variable</li>
+ * </ul>
+ * If the response does not have the expected layout, decode() returns false before any values are passed to the consumer,
+ * so that the observations can be aggregated locally instead.
+ */
+public class ServerAggregationDecoder {
+
+	/**
+	 * Count of values passed to the consumer.
+	 */
+	private int dataCount = 0;
+
+	/**
+	 * Count of periods without a value.
+	 */
+	private int skipCount = 0;
+
+	/**
+	 * Reason that the layout is not supported, if decode() returned false.
+	 */
+	private String layoutProblem = null;
+
+	/**
+	 * Units for the values, or null if not included in the response.
+	 */
+	private String units = null;
+
+	/**
+	 * Constructor.
+	 */
+	public ServerAggregationDecoder () {
+	}
+
+	/**
+	 * Decode the values from a 'precipitation' or 'statistics' service response.
+	 * @param rootNode root node of the response
+	 * @param service "precipitation" or "statistics"
+	 * @param statistic aggregation statistic, one of IntervalAggregator.STATISTIC_*
+	 * @param sensorVariable sensor variable without the set number (e.g., "air_temp" or "precip_accum_one_hour")
+	 * @param valueArrayName name of the 'statistics' array for the sensor (e.g., "air_temp_set_1")
+	 * @param intervalBase interval base for the periods (TimeInterval.HOUR, DAY, or MONTH)
+	 * @param periodStart start of the first period, which is the request start for the 'precipitation' service
+	 * @param consumer consumer for values, which is passed the date/time at the end of each period
+	 * @return true if the response was decoded, false if the layout is not supported,
+	 * in which case no values will have been passed to the consumer and getLayoutProblem() indicates the reason
+	 */
+	public boolean decode ( JsonNode rootNode, String service, String statistic, String sensorVariable, String valueArrayName,
+		int intervalBase, DateTime periodStart, TimeSeriesCsvDecoder.ObservationConsumer consumer ) {
+		String routine = getClass().getSimpleName() + ".decode";
+		boolean isPrecipitation = service.equals("precipitation");
+		// Name of the value in each period object.
+		String valueName = null;
+		if ( isPrecipitation ) {
+			valueName = "total";
+		}
+		else if ( statistic.equals(IntervalAggregator.STATISTIC_COUNT) ) {
+			valueName = "count";
+		}
+		else if ( statistic.equals(IntervalAggregator.STATISTIC_MAX) ) {
+			valueName = "maximum";
+		}
+		else if ( statistic.equals(IntervalAggregator.STATISTIC_MIN) ) {
+			valueName = "minimum";
+		}
+		else if ( statistic.equals(IntervalAggregator.STATISTIC_MEAN) ) {
+			valueName = "average";
+		}
+		else {
+			this.layoutProblem = "does not provide the " + statistic + " statistic";
+			return false;
+		}
+
+		// Get the data array:
+		// - 'precipitation' uses STATION[0].OBSERVATIONS.precipitation
+		// - 'statistics' uses STATION[0].STATISTICS.{variable}_set_1
+		JsonNode stationArrayNode = rootNode.get("STATION");
+		if ( (stationArrayNode == null) || (stationArrayNode.size() != 1) ) {
+			this.layoutProblem = "response does not include 1 station";
+			return false;
+		}
+		JsonNode periodArrayNode = null;
+		if ( isPrecipitation ) {
+			periodArrayNode = stationArrayNode.get(0).path("OBSERVATIONS").get("precipitation");
+		}
+		else {
+			periodArrayNode = stationArrayNode.get(0).path("STATISTICS").get(valueArrayName);
+		}
+		if ( (periodArrayNode == null) || !periodArrayNode.isArray() ) {
+			this.layoutProblem = "response does not include the '" + (isPrecipitation ? "precipitation" : valueArrayName) + "' array";
+			return false;
+		}
+		if ( isPrecipitation && (periodStart == null) ) {
+			this.layoutProblem = "the request start is needed to determine the precipitation periods";
+			return false;
+		}
+		if ( isPrecipitation ) {
+			// The totals must be for the requested sensor variable, for example not 'precip_accum' for 'precip_accum_one_hour'.
+			for ( JsonNode periodNode : periodArrayNode ) {
+				JsonNode valueNode = periodNode.get(valueName);
+				if ( (valueNode == null) || valueNode.isNull() ) {
+					continue;
+				}
+				String reportType = periodNode.path("report_type").asText(null);
+				if ( (reportType == null) || !reportType.equals(sensorVariable) ) {
+					this.layoutProblem = "totals are from '" + reportType + "' rather than '" + sensorVariable + "'";
+					return false;
+				}
+			}
+		}
+		JsonNode unitsNode = rootNode.path("UNITS").get(isPrecipitation ? "precipitation" : sensorVariable);
+		if ( unitsNode != null ) {
+			this.units = unitsNode.asText();
+		}
+
+		for ( JsonNode periodNode : periodArrayNode ) {
+			JsonNode valueNode = periodNode.get(valueName);
+			if ( (valueNode == null) || valueNode.isNull() ) {
+				// Period without data.
+				++this.skipCount;
+				continue;
+			}
+			// Determine the start of the period.
+			DateTime start = null;
+			if ( isPrecipitation ) {
+				JsonNode intervalNode = periodNode.get("interval");
+				if ( (intervalNode == null) || !intervalNode.canConvertToInt() || (intervalNode.asInt() < 1) ) {
+					++this.skipCount;
+					continue;
+				}
+				start = new DateTime(periodStart);
+				start.addInterval(intervalBase, intervalNode.asInt() - 1);
+			}
+			else {
+				JsonNode dateNode = periodNode.get("date");
+				if ( (dateNode == null) || dateNode.isNull() ) {
+					++this.skipCount;
+					continue;
+				}
+				try {
+					start = getPeriodStart(DateTime.parse(dateNode.asText()), intervalBase);
+				}
+				catch ( Exception e ) {
+					Message.printWarning(3, routine, "  Error parsing period date/time \"" + dateNode.asText() + "\" - skipping.");
+					++this.skipCount;
+					continue;
+				}
+			}
+			// Values are set at the end of the period.
+			DateTime end = new DateTime(start);
+			end.addInterval(intervalBase, 1);
+			consumer.observation(end, valueNode.asDouble());
+			++this.dataCount;
+		}
+		return true;
+	}
+
+	/**
+	 * Return the number of values that were passed to the consumer.
+	 * @return the number of values that were passed to the consumer
+	 */
+	public int getDataCount () {
+		return this.dataCount;
+	}
+
+	/**
+	 * Return the reason that the layout is not supported.
+	 * @return the reason that the layout is not supported, or null if decode() returned true
+	 */
+	public String getLayoutProblem () {
+		return this.layoutProblem;
+	}
+
+	/**
+	 * Return the start of the period (hour, day, or month) that contains a date/time,
+	 * for example to use as the start of a 'precipitation' service request.
+	 * @param dateTime date/time in the period
+	 * @param intervalBase interval base for the periods (TimeInterval.HOUR, DAY, or MONTH)
+	 * @return a new DateTime for the start of the period, with precision consistent with the interval
+	 */
+	public static DateTime getPeriodStart ( DateTime dateTime, int intervalBase ) {
+		DateTime start = new DateTime(dateTime);
+		if ( intervalBase == TimeInterval.HOUR ) {
+			start.setPrecision(DateTime.PRECISION_HOUR);
+		}
+		else if ( intervalBase == TimeInterval.DAY ) {
+			start.setPrecision(DateTime.PRECISION_DAY);
+		}
+		else if ( intervalBase == TimeInterval.MONTH ) {
+			start.setPrecision(DateTime.PRECISION_MONTH);
+		}
+		return start;
+	}
+
+	/**
+	 * Return the number of periods without a value.
+	 * @return the number of periods without a value
+	 */
+	public int getSkipCount () {
+		return this.skipCount;
+	}
+
+	/**
+	 * Return the units for the values.
+	 * @return the units for the values, or null if not included in the response
+	 */
+	public String getUnits () {
+		return this.units;
+	}
+}
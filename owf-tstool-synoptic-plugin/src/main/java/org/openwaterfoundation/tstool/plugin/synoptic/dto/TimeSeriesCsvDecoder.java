@@ -0,0 +1,461 @@
+// TimeSeriesCsvDecoder - decode time series observations from the CSV output of the timeseries service
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.dto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import RTi.Util.Message.Message;
+import RTi.Util.Time.DateTime;
+
+/**
+ * Decode observations from the 'timeseries' service CSV output (output=csv),
+ * which is smaller than the JSON output and can be tokenized directly from the response bytes.
+ * Fields are located by byte position and date/times and numbers are parsed from the bytes,
+ * so that String objects are not created for each field.
+ * The expected format is similar to the following, for one station:
+ * <pre>
+ * # STATION: KAPA
+ * # STATION NAME: Denver/Centennial
+ * ...
+ * Station_ID,Date_Time,precip_accum_one_hour_set_1
+ * ,,Inches
+ * KAPA,2022-05-01T00:53:00-0600,0.0
+ * KAPA,2022-05-01T00:58:00-0600,
+ * </pre>
+ * If the response does not have the expected layout (e.g., it is a JSON error response,
+ * does not include the requested value column, or uses quoted fields),
+ * decode() returns false before any values are passed to the consumer,
+ * so that the JSON output can be read instead.
+ */
+public class TimeSeriesCsvDecoder {
+
+	/**
+	 * Consumer for decoded observations.
+	 */
+	public interface ObservationConsumer {
+		/**
+		 * Process an observation.
+		 * @param dateTime observation date/time, a new instance for each observation
+		 * @param value observation value, NaN if missing
+		 */
+		public void observation ( DateTime dateTime, double value );
+	}
+
+	/**
+	 * Name of the date/time column.
+	 */
+	private static final String DATE_TIME_COLUMN = "Date_Time";
+
+	/**
+	 * Powers of 10 that can be represented exactly, used to parse numbers.
+	 */
+	private static final double [] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * Count of values passed to the consumer.
+	 */
+	private int dataCount = 0;
+
+	/**
+	 * Count of rows that could not be decoded.
+	 */
+	private int badRowCount = 0;
+
+	/**
+	 * Reason that the layout is not supported, if decode() returned false.
+	 */
+	private String layoutProblem = null;
+
+	/**
+	 * Units for the value column, or null if not included in the response.
+	 */
+	private String units = null;
+
+	/**
+	 * Time zone bytes for the most recent date/time, used to avoid parsing the time zone for each row.
+	 */
+	private byte [] timeZoneBytes = new byte[0];
+
+	/**
+	 * Date/time parsed for the most recent time zone, which is copied for each row.
+	 */
+	private DateTime timeZoneDateTime = null;
+
+	/**
+	 * Constructor.
+	 */
+	public TimeSeriesCsvDecoder () {
+	}
+
+	/**
+	 * Decode the observations from a CSV response.
+	 * @param buffer buffer containing the response, from the current position to the limit
+	 * @param valueColumnName name of the value column, for example "precip_accum_one_hour_set_1"
+	 * @param consumer consumer for observations
+	 * @return true if the response was decoded, false if the layout is not supported,
+	 * in which case no values will have been passed to the consumer and getLayoutProblem() indicates the reason
+	 */
+	public boolean decode ( ByteBuffer buffer, String valueColumnName, ObservationConsumer consumer ) {
+		String routine = getClass().getSimpleName() + ".decode";
+		int pos = buffer.position();
+		int limit = buffer.limit();
+		// Skip leading whitespace.
+		while ( (pos < limit) && isWhitespace(buffer.get(pos)) ) {
+			++pos;
+		}
+		if ( pos == limit ) {
+			this.layoutProblem = "response is empty";
+			return false;
+		}
+		byte first = buffer.get(pos);
+		if ( (first == '{') || (first == '[') || (first == '<') ) {
+			// JSON (e.g., error SUMMARY) or HTML response.
+			this.layoutProblem = "response is not CSV";
+			return false;
+		}
+
+		// Find the column header, skipping station metadata comments.
+		int dateColumn = -1;
+		int valueColumn = -1;
+		int columnCount = 0;
+		boolean foundHeader = false;
+		while ( pos < limit ) {
+			int lineEnd = findLineEnd(buffer, pos, limit);
+			int contentEnd = trimLineEnd(buffer, pos, lineEnd);
+			if ( (contentEnd > pos) && (buffer.get(pos) != '#') ) {
+				// Column header line.
+				for ( int i = pos; i < contentEnd; i++ ) {
+					if ( buffer.get(i) == '"' ) {
+						this.layoutProblem = "header uses quoted fields";
+						return false;
+					}
+				}
+				int fieldStart = pos;
+				for ( int i = pos; i <= contentEnd; i++ ) {
+					if ( (i == contentEnd) || (buffer.get(i) == ',') ) {
+						if ( fieldEquals(buffer, fieldStart, i, DATE_TIME_COLUMN) ) {
+							dateColumn = columnCount;
+						}
+						else if ( fieldEquals(buffer, fieldStart, i, valueColumnName) ) {
+							valueColumn = columnCount;
+						}
+						++columnCount;
+						fieldStart = i + 1;
+					}
+				}
+				foundHeader = true;
+				pos = lineEnd + 1;
+				break;
+			}
+			pos = lineEnd + 1;
+		}
+		if ( !foundHeader ) {
+			this.layoutProblem = "no column header";
+			return false;
+		}
+		if ( dateColumn < 0 ) {
+			this.layoutProblem = "no " + DATE_TIME_COLUMN + " column";
+			return false;
+		}
+		if ( valueColumn < 0 ) {
+			this.layoutProblem = "no " + valueColumnName + " column";
+			return false;
+		}
+
+		// Process the data rows:
+		// - the first row may be units, which has an empty station identifier
+		boolean firstRow = true;
+		int [] fieldStarts = new int[columnCount];
+		int [] fieldEnds = new int[columnCount];
+		while ( pos < limit ) {
+			int lineEnd = findLineEnd(buffer, pos, limit);
+			int contentEnd = trimLineEnd(buffer, pos, lineEnd);
+			int lineStart = pos;
+			pos = lineEnd + 1;
+			if ( contentEnd == lineStart ) {
+				// Blank line.
+				continue;
+			}
+			if ( buffer.get(lineStart) == '#' ) {
+				// Another station's metadata, which is not expected since one station is requested.
+				Message.printWarning(3, routine, "CSV response has more than one station - ignoring remaining rows.");
+				break;
+			}
+			// Locate the fields.
+			int fieldCount = 0;
+			int fieldStart = lineStart;
+			for ( int i = lineStart; (i <= contentEnd) && (fieldCount < columnCount); i++ ) {
+				if ( (i == contentEnd) || (buffer.get(i) == ',') ) {
+					fieldStarts[fieldCount] = fieldStart;
+					fieldEnds[fieldCount] = i;
+					++fieldCount;
+					fieldStart = i + 1;
+				}
+			}
+			if ( fieldCount <= Math.max(dateColumn, valueColumn) ) {
+				++this.badRowCount;
+				continue;
+			}
+			if ( firstRow ) {
+				firstRow = false;
+				if ( fieldStarts[dateColumn] == fieldEnds[dateColumn] ) {
+					// Units row.
+					if ( fieldEnds[valueColumn] > fieldStarts[valueColumn] ) {
+						this.units = getString(buffer, fieldStarts[valueColumn], fieldEnds[valueColumn]);
+					}
+					continue;
+				}
+			}
+			DateTime dateTime = parseDateTime(buffer, fieldStarts[dateColumn], fieldEnds[dateColumn]);
+			if ( dateTime == null ) {
+				++this.badRowCount;
+				continue;
+			}
+			double value = parseDouble(buffer, fieldStarts[valueColumn], fieldEnds[valueColumn]);
+			if ( value == Double.NEGATIVE_INFINITY ) {
+				// Used as a marker for a number that could not be parsed.
+				++this.badRowCount;
+				continue;
+			}
+			consumer.observation(dateTime, value);
+			++this.dataCount;
+		}
+		return true;
+	}
+
+	/**
+	 * Determine whether a field matches a string, without creating a String for the field.
+	 */
+	private boolean fieldEquals ( ByteBuffer buffer, int start, int end, String s ) {
+		if ( (end - start) != s.length() ) {
+			return false;
+		}
+		for ( int i = 0; i < s.length(); i++ ) {
+			if ( buffer.get(start + i) != s.charAt(i) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the position of the end of the line ('\n'), or the limit if the last line has no newline.
+	 */
+	private int findLineEnd ( ByteBuffer buffer, int pos, int limit ) {
+		while ( (pos < limit) && (buffer.get(pos) != '\n') ) {
+			++pos;
+		}
+		return pos;
+	}
+
+	/**
+	 * Return the number of rows that could not be decoded.
+	 * @return the number of rows that could not be decoded
+	 */
+	public int getBadRowCount () {
+		return this.badRowCount;
+	}
+
+	/**
+	 * Return the number of values that were passed to the consumer.
+	 * @return the number of values that were passed to the consumer
+	 */
+	public int getDataCount () {
+		return this.dataCount;
+	}
+
+	/**
+	 * Return the reason that the layout is not supported.
+	 * @return the reason that the layout is not supported, or null if decode() returned true
+	 */
+	public String getLayoutProblem () {
+		return this.layoutProblem;
+	}
+
+	/**
+	 * Return a string from the buffer, only used for values that are not repeated for each row.
+	 */
+	private String getString ( ByteBuffer buffer, int start, int end ) {
+		byte [] bytes = new byte[end - start];
+		for ( int i = 0; i < bytes.length; i++ ) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return the units for the value column.
+	 * @return the units for the value column, or null if not included in the response
+	 */
+	public String getUnits () {
+		return this.units;
+	}
+
+	/**
+	 * Determine whether a byte is whitespace.
+	 */
+	private boolean isWhitespace ( byte b ) {
+		return (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n');
+	}
+
+	/**
+	 * Parse a two or four digit number.
+	 * @return the number, or -1 if not digits
+	 */
+	private int parseDigits ( ByteBuffer buffer, int start, int count ) {
+		int value = 0;
+		for ( int i = start; i < (start + count); i++ ) {
+			int digit = buffer.get(i) - '0';
+			if ( (digit < 0) || (digit > 9) ) {
+				return -1;
+			}
+			value = value*10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Parse an ISO 8601 date/time, for example "2022-05-01T00:53:00-0600".
+	 * The time zone is parsed with DateTime.parse() only when it changes from the previous row,
+	 * so that the result is consistent with parsing the JSON 'date_time' strings.
+	 * @return the date/time, or null if it cannot be parsed
+	 */
+	private DateTime parseDateTime ( ByteBuffer buffer, int start, int end ) {
+		// Minimum is YYYY-MM-DDTHH:MM.
+		if ( ((end - start) < 16) || (buffer.get(start + 4) != '-') || (buffer.get(start + 7) != '-')
+			|| (buffer.get(start + 10) != 'T') || (buffer.get(start + 13) != ':') ) {
+			return null;
+		}
+		int year = parseDigits(buffer, start, 4);
+		int month = parseDigits(buffer, start + 5, 2);
+		int day = parseDigits(buffer, start + 8, 2);
+		int hour = parseDigits(buffer, start + 11, 2);
+		int minute = parseDigits(buffer, start + 14, 2);
+		int second = 0;
+		int timeZoneStart = start + 16;
+		if ( ((end - start) >= 19) && (buffer.get(start + 16) == ':') ) {
+			second = parseDigits(buffer, start + 17, 2);
+			timeZoneStart = start + 19;
+		}
+		if ( (year < 0) || (month < 0) || (day < 0) || (hour < 0) || (minute < 0) || (second < 0) ) {
+			return null;
+		}
+		// Check whether the time zone is the same as the previous row.
+		int timeZoneLength = end - timeZoneStart;
+		boolean sameTimeZone = (this.timeZoneDateTime != null) && (timeZoneLength == this.timeZoneBytes.length);
+		for ( int i = 0; sameTimeZone && (i < timeZoneLength); i++ ) {
+			if ( buffer.get(timeZoneStart + i) != this.timeZoneBytes[i] ) {
+				sameTimeZone = false;
+			}
+		}
+		if ( !sameTimeZone ) {
+			try {
+				this.timeZoneDateTime = DateTime.parse(getString(buffer, start, end));
+			}
+			catch ( Exception e ) {
+				this.timeZoneDateTime = null;
+				return null;
+			}
+			this.timeZoneBytes = new byte[timeZoneLength];
+			for ( int i = 0; i < timeZoneLength; i++ ) {
+				this.timeZoneBytes[i] = buffer.get(timeZoneStart + i);
+			}
+		}
+		// Copy the parsed date/time to retain precision and time zone and then set the date/time parts.
+		DateTime dateTime = new DateTime(this.timeZoneDateTime);
+		dateTime.setYear(year);
+		dateTime.setMonth(month);
+		dateTime.setDay(day);
+		dateTime.setHour(hour);
+		dateTime.setMinute(minute);
+		dateTime.setSecond(second);
+		return dateTime;
+	}
+
+	/**
+	 * Parse a number, for example "-12.5".
+	 * Simple decimal numbers are parsed from the bytes.
+	 * Numbers with exponents or many digits use Double.parseDouble().
+	 * @return the number, NaN if the field is empty, or Double.NEGATIVE_INFINITY if the number cannot be parsed
+	 */
+	private double parseDouble ( ByteBuffer buffer, int start, int end ) {
+		if ( start == end ) {
+			return Double.NaN;
+		}
+		int i = start;
+		boolean negative = false;
+		byte b = buffer.get(i);
+		if ( (b == '-') || (b == '+') ) {
+			negative = (b == '-');
+			++i;
+		}
+		long mantissa = 0;
+		int digitCount = 0;
+		int fractionDigitCount = 0;
+		boolean inFraction = false;
+		boolean simple = (i < end);
+		for ( ; i < end; i++ ) {
+			b = buffer.get(i);
+			if ( (b >= '0') && (b <= '9') ) {
+				mantissa = mantissa*10 + (b - '0');
+				++digitCount;
+				if ( inFraction ) {
+					++fractionDigitCount;
+				}
+			}
+			else if ( (b == '.') && !inFraction ) {
+				inFraction = true;
+			}
+			else {
+				// Exponent or other characters.
+				simple = false;
+				break;
+			}
+		}
+		if ( simple && (digitCount > 0) && (digitCount <= 15) ) {
+			// The mantissa and power of 10 are exact so the result is correctly rounded.
+			double value = mantissa/POW10[fractionDigitCount];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(getString(buffer, start, end));
+		}
+		catch ( NumberFormatException e ) {
+			return Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Return the end of the line content, excluding a trailing carriage return.
+	 */
+	private int trimLineEnd ( ByteBuffer buffer, int lineStart, int lineEnd ) {
+		if ( (lineEnd > lineStart) && (buffer.get(lineEnd - 1) == '\r') ) {
+			return lineEnd - 1;
+		}
+		return lineEnd;
+	}
+}
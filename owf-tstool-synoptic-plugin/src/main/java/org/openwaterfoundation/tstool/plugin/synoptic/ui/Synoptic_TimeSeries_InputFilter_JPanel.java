@@ -85,29 +85,15 @@ public class Synoptic_TimeSeries_InputFilter_JPanel extends InputFilter_JPanel {
 		String warning = super.checkInputFilters(displayWarning);
 		// Perform specific checks.
 		String warning2 = "";
-		int coordCount = 0;
-		/*
-		String Latitude = getInputValue("Latitude", false);
-		String Longitude = getInputValue("Longitude", false);
-		String LatLongRadius = getInputValue("LatLongRadius", false);
-		String LatLongRadiusUnits = getInputValue("LatLongRadiusUnits", false);
-		if ( (Latitude != null) && !Latitude.isEmpty() ) {
-			++coordCount;
-		}
-		if ( (Longitude != null) && !Longitude.isEmpty() ) {
-			++coordCount;
-		}
-		if ( (LatLongRadius != null) && !LatLongRadius.isEmpty() ) {
-			++coordCount;
-		}
-		if ( (LatLongRadiusUnits != null) && !LatLongRadiusUnits.isEmpty() ) {
-			++coordCount;
-		}
-		if ( (coordCount > 0) && (coordCount != 4) ) {
-			warning2 += "\nSpecifying latitude and longitude requires specifying latitude, longitude, radius, and units.";
-		}
-		*/
-		// Check that at least one of state specified.
+		// Check the location filters:
+		// - input is a comma-separated list of numbers
+		String bbox = getInputValue("Location - Bounding Box", false);
+		String nearest = getInputValue("Location - Nearest", false);
+		String radius = getInputValue("Location - Radius", false);
+		warning2 += checkLocationInput ( "Location - Bounding Box", bbox, 4, "longitudeMin,latitudeMin,longitudeMax,latitudeMax" );
+		warning2 += checkLocationInput ( "Location - Nearest", nearest, 3, "latitude,longitude,stationCount" );
+		warning2 += checkLocationInput ( "Location - Radius", radius, 3, "latitude,longitude,miles" );
+		// Check that at least one of state, NWS CWA, bounding box, or radius is specified.
 		int necInputFilters = 0;
 		String state = getInputValue("State", false);
 		if( (state != null) && !state.isEmpty()){
@@ -117,8 +103,14 @@ public class Synoptic_TimeSeries_InputFilter_JPanel extends InputFilter_JPanel {
 		if( (cwa != null) && !cwa.isEmpty()){
 			++necInputFilters;
 		}
+		if( (bbox != null) && !bbox.isEmpty()){
+			++necInputFilters;
+		}
+		if( (radius != null) && !radius.isEmpty()){
+			++necInputFilters;
+		}
 		if( necInputFilters == 0 ) {
-			warning2 += "\nState or NWS CWA is required to limit the query.";
+			warning2 += "\nState, NWS CWA, location bounding box, or location radius is required to limit the query.";
 		}
 		if ( !warning2.isEmpty() ) {
 			// Have non-empty specific warnings so append specific warnings.
@@ -128,6 +120,30 @@ public class Synoptic_TimeSeries_InputFilter_JPanel extends InputFilter_JPanel {
 		return warning;
 	}
 
+	/**
+	 * Check the input for a location filter.
+	 * @param label filter label, for messages
+	 * @param input the filter input, can be null or empty if not specified
+	 * @param count the number of comma-separated values that are required
+	 * @param format the format of the input, for messages
+	 * @return an empty string if no issues, or a warning starting with a newline
+	 */
+	private String checkLocationInput ( String label, String input, int count, String format ) {
+		if ( (input == null) || input.isEmpty() ) {
+			return "";
+		}
+		String [] parts = input.split(",");
+		if ( parts.length != count ) {
+			return "\n" + label + " input (" + input + ") must be specified as: " + format;
+		}
+		for ( String part : parts ) {
+			if ( !StringUtil.isDouble(part.trim()) ) {
+				return "\n" + label + " input (" + input + ") must be numbers specified as: " + format;
+			}
+		}
+		return "";
+	}
+
 	/**
 	Set the filter data.  This method is called at setup and when refreshing the list with a new subject type.
 	For all cases, use the InputFilter constructor "whereLabelPersistent" to ensure that the TSTool ReadSynoptic command
@@ -241,6 +257,21 @@ public class Synoptic_TimeSeries_InputFilter_JPanel extends InputFilter_JPanel {
     	filter.removeConstraint(InputFilter.INPUT_STARTS_WITH);
     	filters.add(filter);
 
+	    // Location:
+	    // - text fields with comma-separated values, consistent with the Synoptic 'bbox' and 'radius' query parameters
+	    // - nearest stations is evaluated locally
+	    String [] locationLabels = { "Location - Bounding Box", "Location - Nearest", "Location - Radius" };
+	    String [] locationInternals = { "bbox", "nearest", "radius" };
+	    for ( int i = 0; i < locationLabels.length; i++ ) {
+	    	InputFilter locationFilter = new InputFilter(locationLabels[i],
+	    		locationInternals[i], locationInternals[i], locationInternals[i],
+	        	StringUtil.TYPE_STRING, null, null, false);
+	    	locationFilter.removeConstraint(InputFilter.INPUT_CONTAINS);
+	    	locationFilter.removeConstraint(InputFilter.INPUT_ENDS_WITH);
+	    	locationFilter.removeConstraint(InputFilter.INPUT_STARTS_WITH);
+	    	filters.add(locationFilter);
+	    }
+
 	    // Status.
 	    if ( statusChoices.size() > 0 ) {
 	    	InputFilter stidFilter = new InputFilter("Status",
@@ -252,7 +283,10 @@ public class Synoptic_TimeSeries_InputFilter_JPanel extends InputFilter_JPanel {
 	    	filters.add(stidFilter);
 	    }
 
-	  	setToolTipText("<html>Specify one or more input filters to limit query, will be ANDed.</html>");
+	  	setToolTipText("<html>Specify one or more input filters to limit query, will be ANDed.<br>"
+	  		+ "Location - Bounding Box: longitudeMin,latitudeMin,longitudeMax,latitudeMax<br>"
+	  		+ "Location - Nearest: latitude,longitude,stationCount<br>"
+	  		+ "Location - Radius: latitude,longitude,miles</html>");
 	    
 	    int numVisible = 14;
 	    setInputFilters(filters, numFilterGroups, numVisible);
@@ -22,12 +22,15 @@ NoticeEnd */
 
 package org.openwaterfoundation.tstool.plugin.synoptic.ui;
 
+import java.util.Arrays;
 import java.util.List;
 
+
 import RTi.Util.GUI.JWorksheet_AbstractRowTableModel;
 
 import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticDataStore;
 import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalogStore;
 
 /**
 This class is a table model for time series header information for Synoptic web resource time series.
@@ -74,6 +77,17 @@ public class Synoptic_TimeSeries_TableModel extends JWorksheet_AbstractRowTableM
 	*/
 	private List<TimeSeriesCatalog> timeSeriesCatalogList = null;
 
+	/**
+	Row view used to display data from a TimeSeriesCatalogStore without creating objects,
+	null if the data are not a TimeSeriesCatalogStore.
+	*/
+	private TimeSeriesCatalogStore.RowView rowView = null;
+
+	/**
+	Loader that is adding rows in the background, or null if the rows were provided to the constructor.
+	*/
+	private Synoptic_TimeSeries_TableModelLoader loader = null;
+
 	/**
 	Constructor.  This builds the model for displaying the given KiWIS time series data.
 	@param dataStore the data store for the data
@@ -92,6 +106,55 @@ public class Synoptic_TimeSeries_TableModel extends JWorksheet_AbstractRowTableM
 		_data = data; // Generic
 		// TODO SAM 2016-04-17 Need to use instanceof here to check.
 		this.timeSeriesCatalogList = (List<TimeSeriesCatalog>)data;
+		if ( (data instanceof TimeSeriesCatalogStore) && (data.size() > 0) ) {
+			this.rowView = ((TimeSeriesCatalogStore)data).getRowView(0);
+		}
+	}
+
+	/**
+	Add time series catalog to the end of the table, used when rows are loaded in the background.
+	This must be called on the Swing event dispatch thread.
+	@param tscatalogList time series catalog to add
+	*/
+	public void addTimeSeriesCatalog ( List<TimeSeriesCatalog> tscatalogList ) {
+		if ( (tscatalogList == null) || tscatalogList.isEmpty() ) {
+			return;
+		}
+		if ( this.rowView != null ) {
+			// A TimeSeriesCatalogStore cannot be appended to.
+			throw new IllegalStateException ( "Cannot add rows to a table model that uses a time series catalog store." );
+		}
+		int firstRow = this.timeSeriesCatalogList.size();
+		this.timeSeriesCatalogList.addAll(tscatalogList);
+		_rows = this.timeSeriesCatalogList.size();
+		if ( _sortOrder != null ) {
+			// Add the new rows at the end of the sorted rows.
+			int size = _sortOrder.length;
+			_sortOrder = Arrays.copyOf(_sortOrder, _rows);
+			for ( int i = size; i < _rows; i++ ) {
+				_sortOrder[i] = i;
+			}
+		}
+		fireTableRowsInserted(firstRow, _rows - 1);
+	}
+
+	/**
+	Cancel loading rows in the background, if rows are being loaded.
+	Rows that have already been loaded remain in the table.
+	*/
+	public void cancelLoad () {
+		if ( this.loader != null ) {
+			this.loader.cancel(true);
+		}
+	}
+
+	/**
+	Dispose of the model when it is no longer used, for example when the datastore creates a model for a new query.
+	Loading rows in the background is cancelled.  Rows that have already been loaded remain in the table.
+	*/
+	public void dispose () {
+		cancelLoad();
+		this.loader = null;
 	}
 
 	/**
@@ -228,6 +291,14 @@ public class Synoptic_TimeSeries_TableModel extends JWorksheet_AbstractRowTableM
 		}
 	}
 
+	/**
+	Indicate whether rows are being loaded in the background.
+	@return true if rows are being loaded in the background
+	*/
+	public boolean isLoading () {
+		return (this.loader != null) && !this.loader.isDone();
+	}
+
 	/**
 	From AbstractTableMode.  Returns the number of rows of data in the table.
 	*/
@@ -247,7 +318,15 @@ public class Synoptic_TimeSeries_TableModel extends JWorksheet_AbstractRowTableM
 			row = _sortOrder[row];
 		}
 
-		TimeSeriesCatalog timeSeriesCatalog = this.timeSeriesCatalogList.get(row);
+		TimeSeriesCatalog timeSeriesCatalog = null;
+		if ( this.rowView != null ) {
+			// Position the view on the row rather than creating an object.
+			this.rowView.setPosition(row);
+			timeSeriesCatalog = this.rowView;
+		}
+		else {
+			timeSeriesCatalog = this.timeSeriesCatalogList.get(row);
+		}
 		switch (col) {
 			// OK to allow null because will be displayed as blank.
 			case COL_STATION_ID: return timeSeriesCatalog.getStationId();
@@ -276,4 +355,12 @@ public class Synoptic_TimeSeries_TableModel extends JWorksheet_AbstractRowTableM
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	Set the loader that is adding rows in the background.
+	@param loader the loader that is adding rows in the background
+	*/
+	public void setLoader ( Synoptic_TimeSeries_TableModelLoader loader ) {
+		this.loader = loader;
+	}
+
+}
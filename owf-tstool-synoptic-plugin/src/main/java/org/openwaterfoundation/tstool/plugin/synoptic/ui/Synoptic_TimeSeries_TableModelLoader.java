@@ -0,0 +1,159 @@
+// Synoptic_TimeSeries_TableModelLoader - load the time series list table model in the background
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.ui;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticDataStore;
+import org.openwaterfoundation.tstool.plugin.synoptic.datastore.TimeSeriesCatalogReadListener;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.RequestScheduler;
+
+import RTi.Util.GUI.InputFilter_JPanel;
+import RTi.Util.Message.Message;
+
+/**
+This class reads the time series catalog for the TSTool time series list in the background
+and adds rows to the table model as stations are decoded, so that the main window does not freeze for large queries.
+Rows are added on the Swing event dispatch thread.
+The read is cancelled by calling cancel(), for example from Synoptic_TimeSeries_TableModel.dispose().
+*/
+public class Synoptic_TimeSeries_TableModelLoader extends SwingWorker<Integer,TimeSeriesCatalog>
+	implements TimeSeriesCatalogReadListener {
+
+	/**
+	Datastore used to read the time series catalog.
+	*/
+	private SynopticDataStore datastore = null;
+
+	/**
+	Table model to add rows to.
+	*/
+	private Synoptic_TimeSeries_TableModel tableModel = null;
+
+	/**
+	Requested data type.
+	*/
+	private String dataType = null;
+
+	/**
+	Requested time step (interval).
+	*/
+	private String timeStep = null;
+
+	/**
+	Input filter panel with "where" conditions.
+	*/
+	private InputFilter_JPanel ifp = null;
+
+	/**
+	Constructor.
+	@param datastore datastore used to read the time series catalog
+	@param tableModel table model to add rows to
+	@param dataType data type to query, controlled by the datastore
+	@param timeStep time interval to query, controlled by the datastore
+	@param ifp input filter panel that provides additional filter options
+	*/
+	public Synoptic_TimeSeries_TableModelLoader ( SynopticDataStore datastore, Synoptic_TimeSeries_TableModel tableModel,
+		String dataType, String timeStep, InputFilter_JPanel ifp ) {
+		this.datastore = datastore;
+		this.tableModel = tableModel;
+		this.dataType = dataType;
+		this.timeStep = timeStep;
+		this.ifp = ifp;
+	}
+
+	/**
+	Read the time series catalog, called on a background thread.
+	The user is waiting for the list so requests have priority over batch reads (e.g., ReadSynoptic commands).
+	@return the number of time series catalog that were read
+	*/
+	@Override
+	protected Integer doInBackground () {
+		RequestScheduler.Priority priorityBefore = RequestScheduler.setThreadPriority(RequestScheduler.Priority.INTERACTIVE);
+		try {
+			List<TimeSeriesCatalog> tscatalogList = this.datastore.readTimeSeriesMeta ( this.dataType, this.timeStep, this.ifp, this );
+			return tscatalogList.size();
+		}
+		finally {
+			RequestScheduler.setThreadPriority(priorityBefore);
+		}
+	}
+
+	/**
+	Called on the Swing event dispatch thread when the read is complete, failed, or was cancelled.
+	*/
+	@Override
+	protected void done () {
+		String routine = getClass().getSimpleName() + ".done";
+		try {
+			Message.printStatus(2, routine, "Read " + get() + " time series catalog in the background.");
+		}
+		catch ( CancellationException e ) {
+			Message.printStatus(2, routine, "Reading the time series catalog was cancelled after "
+				+ this.tableModel.getRowCount() + " rows were listed.");
+		}
+		catch ( InterruptedException e ) {
+			Message.printStatus(2, routine, "Reading the time series catalog was interrupted.");
+		}
+		catch ( ExecutionException e ) {
+			Message.printWarning(1, routine, "Error reading the time series catalog (" + e.getCause() + ").");
+			Message.printWarning(3, routine, e.getCause());
+		}
+	}
+
+	/**
+	Indicate whether the read has been cancelled.
+	@return true if the read has been cancelled
+	*/
+	@Override
+	public boolean isReadCancelled () {
+		return isCancelled();
+	}
+
+	/**
+	Add rows to the table model, called on the Swing event dispatch thread.
+	Rows that are published close together are passed in one call.
+	@param tscatalogList time series catalog to add to the table model
+	*/
+	@Override
+	protected void process ( List<TimeSeriesCatalog> tscatalogList ) {
+		if ( !isCancelled() ) {
+			this.tableModel.addTimeSeriesCatalog(tscatalogList);
+		}
+	}
+
+	/**
+	Publish time series catalog that have been read, called on the background thread.
+	@param tscatalogList time series catalog that have been read
+	*/
+	@Override
+	public void timeSeriesCatalogRead ( List<TimeSeriesCatalog> tscatalogList ) {
+		publish(tscatalogList.toArray(new TimeSeriesCatalog[0]));
+	}
+}
@@ -0,0 +1,123 @@
+// AccumulationIncrementer - convert accumulated values that periodically reset to incremental values
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+/**
+ * Convert accumulated values that periodically reset to incremental values as values are read,
+ * for example to convert 'precip_accum_one_hour', which resets near the top of each hour,
+ * to the precipitation that was recorded since the previous observation.
+ * This is equivalent to FillConstant(ConstantValue=0) followed by
+ * Delta(ExpectedTrend=Increasing,ResetType=Auto) but does not require creating and processing additional time series:
+ * <ul>
+ * <li> missing values are treated as zero</li>
+ * <li> the increment for the first value is missing because there is no previous value</li>
+ * <li> if the value is >= the previous value, the increment is the difference</li>
+ * <li> if the value is < the previous value, the accumulation was reset to zero and the increment is the value</li>
+ * </ul>
+ * Values must be added in time order.
+ */
+public class AccumulationIncrementer {
+
+	/**
+	 * Flag that is set on values where a reset was detected.
+	 */
+	public static final String RESET_FLAG = "R";
+
+	/**
+	 * Previous accumulated value, or NaN if no values have been processed.
+	 */
+	private double previousValue = Double.NaN;
+
+	/**
+	 * Whether the most recent value was a reset.
+	 */
+	private boolean isReset = false;
+
+	/**
+	 * Count of values that were processed.
+	 */
+	private int inputCount = 0;
+
+	/**
+	 * Count of resets that were detected.
+	 */
+	private int resetCount = 0;
+
+	/**
+	 * Constructor.
+	 */
+	public AccumulationIncrementer () {
+	}
+
+	/**
+	 * Return the number of values that were processed.
+	 * @return the number of values that were processed
+	 */
+	public int getInputCount () {
+		return this.inputCount;
+	}
+
+	/**
+	 * Return the number of resets that were detected.
+	 * @return the number of resets that were detected
+	 */
+	public int getResetCount () {
+		return this.resetCount;
+	}
+
+	/**
+	 * Return the increment for the next accumulated value.
+	 * @param value accumulated value, NaN if missing, which is treated as zero
+	 * @return the increment since the previous value, or NaN for the first value
+	 */
+	public double increment ( double value ) {
+		++this.inputCount;
+		if ( Double.isNaN(value) ) {
+			value = 0.0;
+		}
+		double increment = Double.NaN;
+		this.isReset = false;
+		if ( !Double.isNaN(this.previousValue) ) {
+			if ( value >= this.previousValue ) {
+				increment = value - this.previousValue;
+			}
+			else {
+				// Accumulation was reset to zero.
+				increment = value;
+				this.isReset = true;
+				++this.resetCount;
+			}
+		}
+		this.previousValue = value;
+		return increment;
+	}
+
+	/**
+	 * Indicate whether a reset was detected for the most recent value.
+	 * @return true if a reset was detected for the most recent value
+	 */
+	public boolean isReset () {
+		return this.isReset;
+	}
+}
@@ -0,0 +1,353 @@
+// AdaptiveConcurrencyLimiter - adaptive limit for concurrent web service requests
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Adaptive limit for the number of concurrent web service requests, using additive increase, multiplicative decrease (AIMD):
+ * - while the limit is in use and latency is similar to the baseline (lowest recent) latency,
+ *   the limit is increased by about 1 for each limit's worth of requests
+ * - if a request is throttled (HTTP 429 or a throttling RESPONSE_CODE) the limit is halved
+ * - if the moving average latency is more than twice the baseline latency (a latency spike) the limit is reduced by 20%
+ * Decreases are made at most once per second because requests in progress will see the same condition,
+ * and the limit is not increased during that time.
+ * The limit and a history of changes are available for messages and datastore properties.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	/**
+	 * Weight of a new latency measurement in the moving average.
+	 */
+	private static final double ALPHA = 0.2;
+
+	/**
+	 * Factor that the baseline latency increases for each measurement,
+	 * so that the baseline adjusts if the service becomes slower for a long time (doubles in about 350 requests).
+	 */
+	private static final double BASELINE_DRIFT = 1.002;
+
+	/**
+	 * Ratio of short-term to long-term latency that is a latency spike.
+	 */
+	private static final double SPIKE_RATIO = 2.0;
+
+	/**
+	 * Minimum number of latency measurements before a latency spike is detected.
+	 */
+	private static final int SPIKE_MIN_SAMPLES = 20;
+
+	/**
+	 * Minimum time between decreases, milliseconds.
+	 */
+	private static final long DECREASE_INTERVAL_MS = 1000L;
+
+	/**
+	 * Maximum number of history entries.
+	 */
+	private static final int HISTORY_MAX = 100;
+
+	/**
+	 * Permit for a request, which must be released when the request is complete.
+	 */
+	public class Permit {
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private Permit () {
+		}
+
+		/**
+		 * Record that the response was received (e.g., headers), which is used to adjust the limit.
+		 * @param latencyMs time from sending the request to receiving the response, milliseconds
+		 */
+		public void recordResponse ( long latencyMs ) {
+			recordLatency(latencyMs);
+		}
+
+		/**
+		 * Release the permit.  Additional calls are ignored.
+		 */
+		public void release () {
+			if ( this.released.compareAndSet(false, true) ) {
+				synchronized ( AdaptiveConcurrencyLimiter.this ) {
+					--inFlight;
+					AdaptiveConcurrencyLimiter.this.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Wrap an input stream so that the permit is released when the stream is closed,
+		 * so that the request is in progress while the response is read.
+		 * @param in input stream for the response
+		 * @return wrapped input stream
+		 */
+		public InputStream releaseOnClose ( InputStream in ) {
+			return new FilterInputStream(in) {
+				@Override
+				public void close () throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						release();
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * Minimum and maximum limit.
+	 */
+	private final int minLimit;
+	private final int maxLimit;
+
+	/**
+	 * Current limit, fractional so that it can be increased additively.
+	 */
+	private double limit;
+
+	/**
+	 * Number of requests in progress.
+	 */
+	private int inFlight = 0;
+
+	/**
+	 * Moving average and baseline latency, milliseconds, or < 0 if no requests have been made.
+	 */
+	private double latencyMs = -1.0;
+	private double latencyBaselineMs = -1.0;
+
+	/**
+	 * Number of latency measurements.
+	 */
+	private long sampleCount = 0;
+
+	/**
+	 * Time of the last decrease, milliseconds.
+	 */
+	private long lastDecreaseMs = 0;
+
+	/**
+	 * Counts for messages.
+	 */
+	private long requestCount = 0;
+	private long throttleCount = 0;
+	private long spikeCount = 0;
+	private long waitMs = 0;
+
+	/**
+	 * History of limit changes, oldest first.
+	 */
+	private final LinkedList<String> historyList = new LinkedList<>();
+
+	/**
+	 * Constructor.
+	 * @param initialLimit initial limit
+	 * @param minLimit minimum limit, at least 1
+	 * @param maxLimit maximum limit
+	 */
+	public AdaptiveConcurrencyLimiter ( int initialLimit, int minLimit, int maxLimit ) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+		addHistory("initial");
+	}
+
+	/**
+	 * Acquire a permit for a request, waiting if the limit has been reached.
+	 * If the thread is interrupted (e.g., a read is cancelled), a permit is not returned.
+	 * @return permit, which must be released
+	 * @throws InterruptedIOException if the thread is interrupted
+	 */
+	public Permit acquire () throws InterruptedIOException {
+		return acquire(true);
+	}
+
+	/**
+	 * Acquire a permit for a request.
+	 * If the thread is interrupted (e.g., a read is cancelled), a permit is not returned.
+	 * @param wait if true, wait if the limit has been reached; if false, return a permit without waiting,
+	 * for example if the number of concurrent requests is controlled by a RequestScheduler that uses getLimit()
+	 * @return permit, which must be released
+	 * @throws InterruptedIOException if the thread is interrupted
+	 */
+	public synchronized Permit acquire ( boolean wait ) throws InterruptedIOException {
+		long waitStartMs = System.currentTimeMillis();
+		if ( Thread.currentThread().isInterrupted() ) {
+			throw new InterruptedIOException("Interrupted before starting the request.");
+		}
+		while ( wait && (this.inFlight >= getLimit()) ) {
+			try {
+				// Wake up periodically in case the limit was increased without a release.
+				wait(100);
+			}
+			catch ( InterruptedException e ) {
+				// Restore the interrupt for the caller and don't start the request.
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the concurrent request limit.");
+			}
+		}
+		++this.inFlight;
+		++this.requestCount;
+		this.waitMs += System.currentTimeMillis() - waitStartMs;
+		return new Permit();
+	}
+
+	/**
+	 * Add a history entry for the current limit.
+	 */
+	private void addHistory ( String reason ) {
+		this.historyList.add(LocalTime.now().truncatedTo(ChronoUnit.SECONDS) + " limit=" + getLimit() + " (" + reason + ")");
+		if ( this.historyList.size() > HISTORY_MAX ) {
+			this.historyList.removeFirst();
+		}
+	}
+
+	/**
+	 * Decrease the limit.
+	 * @param factor factor to multiply the limit by
+	 * @param reason reason for the decrease, for the history
+	 * @return true if the limit was decreased, false if decreased recently
+	 */
+	private boolean decrease ( double factor, String reason ) {
+		long nowMs = System.currentTimeMillis();
+		if ( (nowMs - this.lastDecreaseMs) < DECREASE_INTERVAL_MS ) {
+			return false;
+		}
+		this.lastDecreaseMs = nowMs;
+		int limitBefore = getLimit();
+		this.limit = Math.max(this.minLimit, this.limit*factor);
+		if ( getLimit() != limitBefore ) {
+			addHistory(reason);
+		}
+		return true;
+	}
+
+	/**
+	 * Return the history of limit changes, oldest first.
+	 * @return list of history strings
+	 */
+	public synchronized List<String> getHistory () {
+		return new ArrayList<>(this.historyList);
+	}
+
+	/**
+	 * Return the number of requests in progress.
+	 * @return the number of requests in progress
+	 */
+	public synchronized int getInFlight () {
+		return this.inFlight;
+	}
+
+	/**
+	 * Return the current limit.
+	 * @return the current limit
+	 */
+	public synchronized int getLimit () {
+		return (int)Math.floor(this.limit);
+	}
+
+	/**
+	 * Return the maximum limit, for example to size a thread pool.
+	 * @return the maximum limit
+	 */
+	public int getMaxLimit () {
+		return this.maxLimit;
+	}
+
+	/**
+	 * Return the metrics, for messages and datastore properties.
+	 * @return metrics string
+	 */
+	public synchronized String getMetrics () {
+		return "limit=" + getLimit() + " (" + this.minLimit + "-" + this.maxLimit + ")"
+			+ ", inProgress=" + this.inFlight
+			+ ", latency=" + ((this.latencyMs < 0.0) ? "unknown" : (Math.round(this.latencyMs) + " ms"))
+			+ ", latencyBaseline=" + ((this.latencyBaselineMs < 0.0) ? "unknown" : (Math.round(this.latencyBaselineMs) + " ms"))
+			+ ", requests=" + this.requestCount + ", throttled=" + this.throttleCount
+			+ ", latencySpikes=" + this.spikeCount + ", waitMs=" + this.waitMs;
+	}
+
+	/**
+	 * Determine whether an exception is due to the request being throttled (HTTP 429 Too Many Requests).
+	 * @param e exception to check
+	 * @return true if the request was throttled
+	 */
+	public static boolean isThrottleError ( Exception e ) {
+		// HttpURLConnection does not provide the response code in the exception so check the message.
+		String message = (e == null) ? null : e.getMessage();
+		return (message != null) && message.contains("response code: 429");
+	}
+
+	/**
+	 * Record the latency for a request.
+	 * @param latencyMs time to receive the response, milliseconds
+	 */
+	private synchronized void recordLatency ( long latencyMs ) {
+		++this.sampleCount;
+		if ( this.latencyMs < 0.0 ) {
+			this.latencyMs = latencyMs;
+			this.latencyBaselineMs = Math.max(1.0, latencyMs);
+		}
+		else {
+			this.latencyMs = ALPHA*latencyMs + (1.0 - ALPHA)*this.latencyMs;
+			this.latencyBaselineMs = Math.max(1.0, Math.min(this.latencyMs, this.latencyBaselineMs*BASELINE_DRIFT));
+		}
+		if ( (this.sampleCount >= SPIKE_MIN_SAMPLES) && (this.latencyMs > SPIKE_RATIO*this.latencyBaselineMs) ) {
+			if ( decrease(0.8, "latency " + Math.round(this.latencyMs) + " ms > " + SPIKE_RATIO + " x "
+				+ Math.round(this.latencyBaselineMs) + " ms") ) {
+				++this.spikeCount;
+			}
+		}
+		else if ( (this.inFlight >= (getLimit() - 1)) && (this.limit < this.maxLimit)
+			&& ((System.currentTimeMillis() - this.lastDecreaseMs) >= DECREASE_INTERVAL_MS) ) {
+			// The limit is in use and latency is flat so increase by about 1 per limit's worth of requests.
+			int limitBefore = getLimit();
+			this.limit = Math.min(this.maxLimit, this.limit + 1.0/this.limit);
+			if ( getLimit() != limitBefore ) {
+				addHistory("latency " + Math.round(this.latencyMs) + " ms");
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Record that a request was throttled, for example HTTP 429 or a throttling RESPONSE_CODE.
+	 */
+	public synchronized void recordThrottle () {
+		++this.throttleCount;
+		decrease(0.5, "throttled");
+	}
+}
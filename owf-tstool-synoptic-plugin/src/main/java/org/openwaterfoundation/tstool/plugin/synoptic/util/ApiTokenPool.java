@@ -0,0 +1,282 @@
+// ApiTokenPool - pool of Synoptic API tokens with rate limiting and usage counters
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of Synoptic API tokens, used to increase the aggregate request rate when an organization has several tokens.
+ * Each request is dispatched to the token with the most remaining headroom:
+ * - if a rate limit is specified, headroom is the number of requests that can be made now (token bucket)
+ *   minus the requests in progress, and acquire() waits if no token can be used
+ * - if a rate limit is not specified, the token with the fewest requests in progress is used (least loaded)
+ * - ties are broken using the fewest total requests, which results in round-robin dispatch
+ * Usage counters are kept for each token and tokens are masked in messages.
+ */
+public class ApiTokenPool {
+
+	/**
+	 * Token and its counters.
+	 */
+	private static class Token {
+		final String value;
+		int inFlight = 0;
+		long requestCount = 0;
+		long errorCount = 0;
+		long waitMs = 0;
+		// Available requests for the rate limit (token bucket).
+		double permits;
+
+		Token ( String value, double permits ) {
+			this.value = value;
+			this.permits = permits;
+		}
+	}
+
+	/**
+	 * Lease for a token, which must be released when the request is complete.
+	 */
+	public class Lease {
+		private final Token token;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private Lease ( Token token ) {
+			this.token = token;
+		}
+
+		/**
+		 * Return the API token value.
+		 * @return the API token value
+		 */
+		public String getToken () {
+			return this.token.value;
+		}
+
+		/**
+		 * Release the lease.  Additional calls are ignored.
+		 * @param error whether the request failed
+		 */
+		public void release ( boolean error ) {
+			if ( this.released.compareAndSet(false, true) ) {
+				synchronized ( ApiTokenPool.this ) {
+					--this.token.inFlight;
+					if ( error ) {
+						++this.token.errorCount;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Wrap an input stream so that the lease is released when the stream is closed,
+		 * so that the token is in use while the response is read.
+		 * @param in input stream for the response
+		 * @return wrapped input stream
+		 */
+		public InputStream releaseOnClose ( InputStream in ) {
+			return new FilterInputStream(in) {
+				@Override
+				public void close () throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						release(false);
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * Tokens in the pool.
+	 */
+	private final List<Token> tokenList = new ArrayList<>();
+
+	/**
+	 * Maximum requests per second for each token, or <= 0 if not limited.
+	 */
+	private final double requestsPerSecond;
+
+	/**
+	 * Time that permits were last added, milliseconds.
+	 */
+	private long refillMs = System.currentTimeMillis();
+
+	/**
+	 * Constructor.
+	 * @param tokens API tokens, duplicates and empty strings are ignored
+	 * @param requestsPerSecond maximum requests per second for each token, or <= 0 if not limited
+	 */
+	public ApiTokenPool ( List<String> tokens, double requestsPerSecond ) {
+		this.requestsPerSecond = requestsPerSecond;
+		List<String> values = new ArrayList<>();
+		for ( String token : tokens ) {
+			if ( (token != null) && !token.trim().isEmpty() && !values.contains(token.trim()) ) {
+				values.add(token.trim());
+				this.tokenList.add(new Token(token.trim(), getCapacity()));
+			}
+		}
+		if ( this.tokenList.isEmpty() ) {
+			// Use an empty token so that the service returns a message about the missing token.
+			this.tokenList.add(new Token("", getCapacity()));
+		}
+	}
+
+	/**
+	 * Acquire a token for a request, waiting if all tokens have reached the rate limit.
+	 * If the thread is interrupted (e.g., a read is cancelled), a token is not used.
+	 * @return lease for the token, which must be released
+	 * @throws InterruptedIOException if the thread is interrupted
+	 */
+	public Lease acquire () throws InterruptedIOException {
+		long waitStartMs = System.currentTimeMillis();
+		while ( true ) {
+			if ( Thread.currentThread().isInterrupted() ) {
+				throw new InterruptedIOException("Interrupted waiting for an API token.");
+			}
+			long sleepMs = 0;
+			synchronized ( this ) {
+				refill();
+				Token best = null;
+				double bestHeadroom = 0;
+				for ( Token token : this.tokenList ) {
+					double headroom = (this.requestsPerSecond > 0) ? (token.permits - token.inFlight) : -token.inFlight;
+					if ( (this.requestsPerSecond > 0) && (token.permits < 1.0) ) {
+						// Rate limit has been reached.
+						continue;
+					}
+					if ( (best == null) || (headroom > bestHeadroom)
+						|| ((headroom == bestHeadroom) && (token.requestCount < best.requestCount)) ) {
+						best = token;
+						bestHeadroom = headroom;
+					}
+				}
+				if ( best != null ) {
+					if ( this.requestsPerSecond > 0 ) {
+						best.permits = Math.max(0.0, best.permits - 1.0);
+					}
+					++best.inFlight;
+					++best.requestCount;
+					best.waitMs += System.currentTimeMillis() - waitStartMs;
+					return new Lease(best);
+				}
+				// Wait until the next permit is available.
+				double maxPermits = 0;
+				for ( Token token : this.tokenList ) {
+					maxPermits = Math.max(maxPermits, token.permits);
+				}
+				sleepMs = Math.max(1, (long)Math.ceil((1.0 - maxPermits)*1000.0/this.requestsPerSecond));
+			}
+			try {
+				Thread.sleep(sleepMs);
+			}
+			catch ( InterruptedException e ) {
+				// Checked at the top of the loop.
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Return the maximum number of permits for a token, which allows a burst of one second of requests.
+	 */
+	private double getCapacity () {
+		return Math.max(1.0, this.requestsPerSecond);
+	}
+
+	/**
+	 * Return the first token, for example to display a URL.
+	 * @return the first token
+	 */
+	public String getFirstToken () {
+		return this.tokenList.get(0).value;
+	}
+
+	/**
+	 * Return the maximum requests per second for each token.
+	 * @return the maximum requests per second for each token, or <= 0 if not limited
+	 */
+	public double getRequestsPerSecond () {
+		return this.requestsPerSecond;
+	}
+
+	/**
+	 * Return the number of tokens.
+	 * @return the number of tokens
+	 */
+	public int size () {
+		return this.tokenList.size();
+	}
+
+	/**
+	 * Return usage for each token, with the token masked, for messages.
+	 * @return list of usage strings, one per token
+	 */
+	public synchronized List<String> getUsage () {
+		List<String> usageList = new ArrayList<>();
+		for ( Token token : this.tokenList ) {
+			usageList.add(maskToken(token.value) + ": requests=" + token.requestCount + ", errors=" + token.errorCount
+				+ ", inProgress=" + token.inFlight + ", waitMs=" + token.waitMs);
+		}
+		return Collections.unmodifiableList(usageList);
+	}
+
+	/**
+	 * Mask a token for messages, showing only the first and last characters.
+	 * @param token token to mask
+	 * @return masked token
+	 */
+	public static String maskToken ( String token ) {
+		if ( (token == null) || token.isEmpty() ) {
+			return "(none)";
+		}
+		if ( token.length() <= 8 ) {
+			return "****";
+		}
+		return token.substring(0, 4) + "..." + token.substring(token.length() - 4);
+	}
+
+	/**
+	 * Add permits to the tokens for the time since the last refill.
+	 */
+	private void refill () {
+		if ( this.requestsPerSecond <= 0 ) {
+			return;
+		}
+		long nowMs = System.currentTimeMillis();
+		double added = (nowMs - this.refillMs)*this.requestsPerSecond/1000.0;
+		this.refillMs = nowMs;
+		double capacity = getCapacity();
+		for ( Token token : this.tokenList ) {
+			token.permits = Math.min(capacity, token.permits + added);
+		}
+	}
+}
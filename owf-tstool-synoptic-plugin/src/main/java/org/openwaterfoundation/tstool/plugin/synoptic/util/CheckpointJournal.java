@@ -0,0 +1,343 @@
+// CheckpointJournal - journal of completed read units used to resume a large read
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Journal of completed read units for a large read (e.g., ReadSynoptic command), so that a read that fails
+ * or is cancelled can be resumed without requesting the completed units again.
+ * A unit is a time series identifier (station and variable) and read window.
+ * Each completed unit is appended to the journal file with the response cache files that were used for the unit:
+ * - when resuming, a unit is complete if it is in the journal and all of its cache files exist
+ * - the unit is then read using the cached responses regardless of their age
+ * The journal file is a text file with lines:  unit key, completion time, and cache files separated by tabs.
+ * The unit for the current thread is set with beginUnit() so that the datastore can add cache files
+ * and use cached responses without passing the unit through all read methods.
+ * When the read is complete, delete() removes the journal file and the cache files that were only saved for the journal.
+ */
+public class CheckpointJournal {
+
+	/**
+	 * Read unit, used to collect cache files for the unit.
+	 */
+	public static class Unit {
+		private final boolean useCache;
+		private final Set<File> cacheFiles = new LinkedHashSet<>();
+
+		private Unit ( boolean useCache ) {
+			this.useCache = useCache;
+		}
+
+		/**
+		 * Add a cache file used for the unit.
+		 * @param cacheFile response cache file
+		 */
+		public synchronized void addCacheFile ( File cacheFile ) {
+			this.cacheFiles.add(cacheFile);
+		}
+
+		/**
+		 * Return the cache files used for the unit.
+		 * @return the cache files used for the unit
+		 */
+		public synchronized List<File> getCacheFiles () {
+			return new ArrayList<>(this.cacheFiles);
+		}
+
+		/**
+		 * Remove a cache file, for example if the cached response is removed because it was an error.
+		 * @param cacheFile response cache file
+		 */
+		public synchronized void removeCacheFile ( File cacheFile ) {
+			this.cacheFiles.remove(cacheFile);
+		}
+
+		/**
+		 * Indicate whether cached responses should be used regardless of their age, when resuming.
+		 * @return true if cached responses should be used
+		 */
+		public boolean useCache () {
+			return this.useCache;
+		}
+	}
+
+	/**
+	 * Name of the folder in the response cache folder for journal files.
+	 */
+	public static final String FOLDER_NAME = "checkpoint";
+
+	/**
+	 * Unit for the current thread, or null if not reading a unit.
+	 */
+	private static final ThreadLocal<Unit> threadUnit = new ThreadLocal<>();
+
+	/**
+	 * Journal file.
+	 */
+	private final File file;
+
+	/**
+	 * Completed units, with key being the unit key and value being the cache files.
+	 */
+	private final Map<String,List<File>> completedMap = new HashMap<>();
+
+	/**
+	 * Writer for the journal file.
+	 */
+	private BufferedWriter writer = null;
+
+	/**
+	 * Constructor.  The journal is read if resuming and is otherwise started over.
+	 * @param file journal file
+	 * @param resume if true, read the completed units from the journal file;
+	 * if false, remove the completed units from a previous read
+	 * @throws IOException if the journal cannot be read or written
+	 */
+	public CheckpointJournal ( File file, boolean resume ) throws IOException {
+		this.file = file;
+		if ( (file.getParentFile() != null) && !file.getParentFile().exists() && !file.getParentFile().mkdirs() ) {
+			throw new IOException ( "Unable to create checkpoint folder \"" + file.getParentFile() + "\"." );
+		}
+		if ( resume && file.exists() ) {
+			try ( BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) ) {
+				String line;
+				while ( (line = in.readLine()) != null ) {
+					if ( line.isEmpty() || line.startsWith("#") ) {
+						continue;
+					}
+					String [] parts = line.split("\t", -1);
+					List<File> cacheFiles = new ArrayList<>();
+					if ( (parts.length > 2) && !parts[2].isEmpty() ) {
+						for ( String cacheFile : parts[2].split(";") ) {
+							cacheFiles.add(new File(cacheFile));
+						}
+					}
+					this.completedMap.put(parts[0], cacheFiles);
+				}
+			}
+		}
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, resume), StandardCharsets.UTF_8));
+		if ( !resume || (file.length() == 0) ) {
+			this.writer.write("# Checkpoint journal:  unit key, completion time, and response cache files, separated by tabs\n");
+			this.writer.flush();
+		}
+	}
+
+	/**
+	 * Start a unit for the current thread, which must be followed by endUnit().
+	 * @param useCache whether cached responses should be used regardless of their age (when resuming a completed unit)
+	 * @return the unit
+	 */
+	public static Unit beginUnit ( boolean useCache ) {
+		Unit unit = new Unit(useCache);
+		threadUnit.set(unit);
+		return unit;
+	}
+
+	/**
+	 * Close the journal file.
+	 */
+	public synchronized void close () {
+		if ( this.writer != null ) {
+			try {
+				this.writer.close();
+			}
+			catch ( IOException e ) {
+				// Ignore since each line was flushed.
+			}
+			this.writer = null;
+		}
+	}
+
+	/**
+	 * Close and delete the journal file when the read is complete, and remove the response cache files
+	 * that were only saved so that the read could be resumed (see ResponseCache.removePinned()).
+	 * @param responseCache response cache containing the cache files
+	 * @return the number of cache files that were removed
+	 */
+	public synchronized int delete ( ResponseCache responseCache ) {
+		close();
+		int removedCount = 0;
+		Set<File> cacheFiles = new LinkedHashSet<>();
+		for ( List<File> unitCacheFiles : this.completedMap.values() ) {
+			cacheFiles.addAll(unitCacheFiles);
+		}
+		for ( File cacheFile : cacheFiles ) {
+			if ( responseCache.removePinned(cacheFile) ) {
+				++removedCount;
+			}
+		}
+		this.completedMap.clear();
+		this.file.delete();
+		return removedCount;
+	}
+
+	/**
+	 * End the unit for the current thread.
+	 * @return the unit, or null if a unit was not started
+	 */
+	public static Unit endUnit () {
+		Unit unit = threadUnit.get();
+		threadUnit.remove();
+		return unit;
+	}
+
+	/**
+	 * Return the number of completed units.
+	 * @return the number of completed units
+	 */
+	public synchronized int getCompletedCount () {
+		return this.completedMap.size();
+	}
+
+	/**
+	 * Return the journal file.
+	 * @return the journal file
+	 */
+	public File getFile () {
+		return this.file;
+	}
+
+	/**
+	 * Return the journal file for a read, which is named using a hash of the read parameters
+	 * so that only the same read is resumed.
+	 * @param responseCacheFolder response cache folder, in which the journal folder is created
+	 * @param readKey string that identifies the read, such as the command string without the Resume parameter
+	 * @return the journal file
+	 */
+	public static File getJournalFile ( File responseCacheFolder, String readKey ) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte [] hash = digest.digest(readKey.getBytes(StandardCharsets.UTF_8));
+			StringBuilder b = new StringBuilder();
+			// Use the first part of the hash, which is long enough to be unique.
+			for ( int i = 0; i < 12; i++ ) {
+				b.append(String.format("%02x", hash[i]));
+			}
+			return new File(new File(responseCacheFolder, FOLDER_NAME), b.toString() + ".txt");
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			// Should not happen since SHA-256 is required in all Java implementations.
+			throw new RuntimeException ( e );
+		}
+	}
+
+	/**
+	 * Return the unit for the current thread.
+	 * @return the unit, or null if a unit was not started
+	 */
+	public static Unit getThreadUnit () {
+		return threadUnit.get();
+	}
+
+	/**
+	 * Return the key for a unit.
+	 * The read window must be resolved (not null for the default) so that a unit is only resumed for the same window.
+	 * @param tsid time series identifier (station and variable)
+	 * @param readStart start of the read window
+	 * @param readEnd end of the read window
+	 * @return the unit key
+	 */
+	public static String getUnitKey ( String tsid, Object readStart, Object readEnd ) {
+		return tsid + "|" + readStart + "|" + readEnd;
+	}
+
+	/**
+	 * Determine whether a unit is complete and can be resumed from the response cache.
+	 * @param unitKey unit key from getUnitKey()
+	 * @return true if the unit is in the journal and all of its cache files exist
+	 */
+	public synchronized boolean isComplete ( String unitKey ) {
+		List<File> cacheFiles = this.completedMap.get(unitKey);
+		if ( (cacheFiles == null) || cacheFiles.isEmpty() ) {
+			// Not complete or no cached responses to resume from.
+			return false;
+		}
+		for ( File cacheFile : cacheFiles ) {
+			if ( !cacheFile.exists() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Record a completed unit, which is immediately written to the journal file
+	 * so that the unit can be resumed if the read is cancelled or fails.
+	 * The unit is only recorded if all of its responses were saved in the response cache,
+	 * because otherwise it cannot be resumed.
+	 * @param unitKey unit key from getUnitKey()
+	 * @param cacheFiles response cache files used for the unit
+	 * @return true if the unit was recorded, false if a cache file does not exist
+	 * @throws IOException if the journal cannot be written
+	 */
+	public synchronized boolean recordComplete ( String unitKey, Collection<File> cacheFiles ) throws IOException {
+		if ( cacheFiles.isEmpty() ) {
+			return false;
+		}
+		for ( File cacheFile : cacheFiles ) {
+			if ( !cacheFile.exists() ) {
+				return false;
+			}
+		}
+		List<File> cacheFileList = Collections.unmodifiableList(new ArrayList<>(cacheFiles));
+		this.completedMap.put(unitKey, cacheFileList);
+		if ( this.writer == null ) {
+			return true;
+		}
+		StringBuilder b = new StringBuilder(unitKey);
+		b.append('\t').append(Instant.now());
+		b.append('\t');
+		for ( int i = 0; i < cacheFileList.size(); i++ ) {
+			if ( i > 0 ) {
+				b.append(';');
+			}
+			b.append(cacheFileList.get(i).getAbsolutePath());
+		}
+		b.append('\n');
+		this.writer.write(b.toString());
+		this.writer.flush();
+		return true;
+	}
+}
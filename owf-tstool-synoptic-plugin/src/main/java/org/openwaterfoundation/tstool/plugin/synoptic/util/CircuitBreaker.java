@@ -0,0 +1,337 @@
+// CircuitBreaker - circuit breaker for web service requests
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.IOException;
+
+/**
+ * Circuit breaker for web service requests, shared by all requests for a datastore.
+ * The outcomes of recent requests are tracked and when the error rate exceeds a threshold the circuit is opened,
+ * after which requests fail immediately with CircuitOpenException rather than waiting for the service to time out.
+ * After the open time has passed the circuit is half-open and one trial request is allowed at a time:
+ * - if the trial request succeeds the circuit is closed
+ * - if the trial request fails the circuit is opened again, with the open time doubled up to a maximum
+ * Methods that change the state return true so that the caller can log the change and update status.
+ */
+public class CircuitBreaker {
+
+	/**
+	 * Circuit state.
+	 */
+	public enum State {
+		/**
+		 * Requests are allowed.
+		 */
+		CLOSED,
+		/**
+		 * Requests fail immediately.
+		 */
+		OPEN,
+		/**
+		 * One trial request is allowed at a time.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * Exception thrown when a request is not allowed because the circuit is open.
+	 */
+	public static class CircuitOpenException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public CircuitOpenException ( String message ) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Maximum time that the circuit is open before a trial request, milliseconds.
+	 */
+	private static final long OPEN_MAX_MS = 10*60*1000L;
+
+	/**
+	 * Error rate (0 to 1) at or above which the circuit is opened.
+	 */
+	private final double errorRateThreshold;
+
+	/**
+	 * Minimum number of outcomes in the window before the circuit can be opened,
+	 * so that a few errors at the start do not open the circuit.
+	 */
+	private final int minimumRequests;
+
+	/**
+	 * Time that the circuit is open before a trial request, milliseconds.
+	 */
+	private final long openMs;
+
+	/**
+	 * Outcomes of recent requests, as a ring buffer, true if failed.
+	 */
+	private final boolean [] window;
+
+	/**
+	 * Number of outcomes in the window and position of the next outcome.
+	 */
+	private int windowCount = 0;
+	private int windowPos = 0;
+
+	/**
+	 * Number of failures in the window.
+	 */
+	private int windowFailureCount = 0;
+
+	/**
+	 * Current state.
+	 */
+	private State state = State.CLOSED;
+
+	/**
+	 * Time when the circuit can be half-open, milliseconds.
+	 */
+	private long openUntilMs = 0;
+
+	/**
+	 * Number of times that the circuit has been opened without closing, used to increase the open time.
+	 */
+	private int openCount = 0;
+
+	/**
+	 * Time that the current trial request was allowed, milliseconds, or 0 if no trial request is in progress.
+	 */
+	private long trialStartMs = 0;
+
+	/**
+	 * Number of requests that were not allowed because the circuit was open.
+	 */
+	private long rejectedCount = 0;
+
+	/**
+	 * Last error, for messages, without the API token (see WebUtil.describeError()).
+	 */
+	private String lastError = null;
+
+	/**
+	 * Thread making the current trial request, used to release the trial if the request is not made or has no outcome.
+	 */
+	private Thread trialThread = null;
+
+	/**
+	 * Constructor.
+	 * @param errorRateThreshold error rate (0 to 1) at or above which the circuit is opened
+	 * @param windowSize number of recent requests used to compute the error rate
+	 * @param minimumRequests minimum number of requests in the window before the circuit can be opened
+	 * @param openMs time that the circuit is open before a trial request, milliseconds
+	 */
+	public CircuitBreaker ( double errorRateThreshold, int windowSize, int minimumRequests, long openMs ) {
+		if ( (errorRateThreshold <= 0.0) || (errorRateThreshold > 1.0) ) {
+			throw new IllegalArgumentException("Circuit breaker error rate (" + errorRateThreshold + ") must be > 0 and <= 1.");
+		}
+		if ( windowSize < 1 ) {
+			throw new IllegalArgumentException("Circuit breaker window size (" + windowSize + ") must be >= 1.");
+		}
+		this.errorRateThreshold = errorRateThreshold;
+		this.window = new boolean[windowSize];
+		this.minimumRequests = Math.max(1, Math.min(minimumRequests, windowSize));
+		this.openMs = Math.max(1L, openMs);
+	}
+
+	/**
+	 * Add an outcome to the window.
+	 */
+	private void addOutcome ( boolean failed ) {
+		if ( this.windowCount == this.window.length ) {
+			// Remove the oldest outcome.
+			if ( this.window[this.windowPos] ) {
+				--this.windowFailureCount;
+			}
+		}
+		else {
+			++this.windowCount;
+		}
+		this.window[this.windowPos] = failed;
+		if ( failed ) {
+			++this.windowFailureCount;
+		}
+		this.windowPos = (this.windowPos + 1) % this.window.length;
+	}
+
+	/**
+	 * Check whether a request is allowed, which must be followed by recordSuccess(), recordFailure(), or releaseTrial()
+	 * in the same thread.
+	 * @return true if the state changed (from open to half-open)
+	 * @throws CircuitOpenException if the circuit is open, or half-open with a trial request in progress
+	 */
+	public synchronized boolean checkAllowed () throws CircuitOpenException {
+		long nowMs = System.currentTimeMillis();
+		boolean changed = false;
+		if ( this.state == State.CLOSED ) {
+			return false;
+		}
+		if ( (this.state == State.OPEN) && (nowMs >= this.openUntilMs) ) {
+			this.state = State.HALF_OPEN;
+			this.trialStartMs = 0;
+			this.trialThread = null;
+			changed = true;
+		}
+		if ( this.state == State.HALF_OPEN ) {
+			// Allow a trial request if one is not in progress:
+			// - a trial request that has not finished after the open time is assumed to have been abandoned
+			if ( (this.trialStartMs == 0) || ((nowMs - this.trialStartMs) > this.openMs) ) {
+				this.trialStartMs = nowMs;
+				this.trialThread = Thread.currentThread();
+				return changed;
+			}
+		}
+		++this.rejectedCount;
+		throw new CircuitOpenException("Synoptic web service circuit is " + this.state
+			+ " due to errors (last error: " + this.lastError + ") - not making request.");
+	}
+
+	/**
+	 * Return the error rate for the window.
+	 * @return the error rate (0 to 1), or 0 if no requests have been made
+	 */
+	public synchronized double getErrorRate () {
+		return (this.windowCount == 0) ? 0.0 : ((double)this.windowFailureCount/this.windowCount);
+	}
+
+	/**
+	 * Return the number of requests that were not allowed because the circuit was open.
+	 * @return the number of requests that were not allowed
+	 */
+	public synchronized long getRejectedCount () {
+		return this.rejectedCount;
+	}
+
+	/**
+	 * Return the state.
+	 * @return the state
+	 */
+	public synchronized State getState () {
+		return this.state;
+	}
+
+	/**
+	 * Return a description of the state, for messages and datastore status.
+	 * @return description of the state
+	 */
+	public synchronized String getStatusMessage () {
+		StringBuilder b = new StringBuilder("Circuit " + this.state);
+		if ( this.state == State.OPEN ) {
+			long seconds = Math.max(0L, (this.openUntilMs - System.currentTimeMillis())/1000);
+			b.append(" (trial request in " + seconds + " s)");
+		}
+		b.append(", errorRate=" + String.format("%.2f", getErrorRate()) + " for last " + this.windowCount + " requests");
+		b.append(", rejected=" + this.rejectedCount);
+		if ( (this.state != State.CLOSED) && (this.lastError != null) ) {
+			b.append(", lastError=" + this.lastError);
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Determine whether an exception was caused by the circuit being open.
+	 * @param e exception to check, including its causes
+	 * @return true if the exception or one of its causes is CircuitOpenException
+	 */
+	public static boolean isCircuitOpen ( Throwable e ) {
+		for ( Throwable t = e; t != null; t = t.getCause() ) {
+			if ( t instanceof CircuitOpenException ) {
+				return true;
+			}
+			if ( t.getCause() == t ) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Open the circuit.
+	 */
+	private void open ( long nowMs ) {
+		long ms = this.openMs << Math.min(10, this.openCount);
+		this.state = State.OPEN;
+		this.openUntilMs = nowMs + Math.min(Math.max(this.openMs, OPEN_MAX_MS), ms);
+		this.trialStartMs = 0;
+		this.trialThread = null;
+		++this.openCount;
+	}
+
+	/**
+	 * Record a failed request.
+	 * @param error error for the request, for messages, which is saved without the API token
+	 * @return true if the state changed (to open)
+	 */
+	public synchronized boolean recordFailure ( Exception error ) {
+		this.lastError = WebUtil.describeError(error);
+		addOutcome(true);
+		if ( this.state == State.HALF_OPEN ) {
+			// Trial request failed.
+			open(System.currentTimeMillis());
+			return true;
+		}
+		if ( (this.state == State.CLOSED) && (this.windowCount >= this.minimumRequests)
+			&& (getErrorRate() >= this.errorRateThreshold) ) {
+			open(System.currentTimeMillis());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Release the trial request allowed for the current thread by checkAllowed() without recording an outcome,
+	 * for example if the request was not made because the thread was interrupted,
+	 * or the response (e.g., 404 not found) does not indicate whether the service is healthy.
+	 * Another trial request is then allowed.  Nothing is done if the thread is not making the trial request.
+	 */
+	public synchronized void releaseTrial () {
+		if ( (this.state == State.HALF_OPEN) && (this.trialThread == Thread.currentThread()) ) {
+			this.trialStartMs = 0;
+			this.trialThread = null;
+		}
+	}
+
+	/**
+	 * Record a successful request.
+	 * @return true if the state changed (to closed)
+	 */
+	public synchronized boolean recordSuccess () {
+		addOutcome(false);
+		if ( this.state == State.HALF_OPEN ) {
+			// Trial request succeeded:
+			// - clear the window so that the errors that opened the circuit do not immediately open it again
+			this.state = State.CLOSED;
+			this.trialStartMs = 0;
+			this.trialThread = null;
+			this.openCount = 0;
+			this.windowCount = 0;
+			this.windowPos = 0;
+			this.windowFailureCount = 0;
+			return true;
+		}
+		return false;
+	}
+}
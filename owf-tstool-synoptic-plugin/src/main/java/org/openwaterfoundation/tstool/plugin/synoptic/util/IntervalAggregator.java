@@ -0,0 +1,351 @@
+// IntervalAggregator - aggregate irregular observations to a regular interval time series as values are read
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import RTi.TS.TS;
+import RTi.Util.Time.DateTime;
+import RTi.Util.Time.TimeInterval;
+
+/**
+ * Aggregate irregular interval observations to a regular interval time series as values are read,
+ * so that the irregular interval time series does not need to be created and then converted with ChangeInterval.
+ * Values must be added in time order.
+ * TSTool uses interval-ending timestamps, so a value is included in the interval (start, end],
+ * for example a 15Minute value at 10:15 includes observations after 10:00 up to and including 10:15,
+ * a 1Day value includes observations after midnight up to and including midnight at the end of the day,
+ * and a 1Month value similarly includes midnight at the end of the month.
+ * Intervals without observations are set to missing.
+ */
+public class IntervalAggregator {
+
+	/**
+	 * Statistics that can be computed.
+	 */
+	public static final String STATISTIC_COUNT = "Count";
+	public static final String STATISTIC_LAST = "Last";
+	public static final String STATISTIC_MAX = "Max";
+	public static final String STATISTIC_MEAN = "Mean";
+	public static final String STATISTIC_MIN = "Min";
+	public static final String STATISTIC_SUM = "Sum";
+
+	/**
+	 * Output time series, which must be regular interval and have data space allocated.
+	 */
+	private final TS ts;
+
+	/**
+	 * Interval base and multiplier for the output time series.
+	 */
+	private final int intervalBase;
+	private final int intervalMult;
+
+	/**
+	 * Statistic to compute, one of STATISTIC_*.
+	 */
+	private final String statistic;
+
+	/**
+	 * End of the interval that is being accumulated, or null if no values have been added.
+	 */
+	private DateTime intervalEnd = null;
+
+	/**
+	 * Statistic accumulators for the current interval.
+	 */
+	private int count = 0;
+	private double sum = 0.0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private double last = Double.NaN;
+
+	/**
+	 * Counts for the full aggregation, used for logging and time series properties.
+	 */
+	private int inputCount = 0;
+	private int missingCount = 0;
+	private int outOfOrderCount = 0;
+	private int outputCount = 0;
+
+	/**
+	 * Constructor.
+	 * @param ts regular interval output time series, with data space allocated
+	 * @param statistic statistic to compute, one of STATISTIC_*
+	 */
+	public IntervalAggregator ( TS ts, String statistic ) {
+		this.ts = ts;
+		this.intervalBase = ts.getDataIntervalBase();
+		this.intervalMult = ts.getDataIntervalMult();
+		this.statistic = lookupStatistic(statistic);
+		if ( this.statistic == null ) {
+			throw new IllegalArgumentException ( "Aggregation statistic \"" + statistic + "\" is not supported." );
+		}
+		if ( !isSupportedInterval(this.intervalBase, this.intervalMult) ) {
+			throw new IllegalArgumentException ( "Aggregation to interval " + this.intervalMult + " "
+				+ TimeInterval.getName(this.intervalBase, 0) + " is not supported." );
+		}
+	}
+
+	/**
+	 * Add an observation.
+	 * @param dateTime observation date/time, which is not modified
+	 * @param value observation value, NaN if missing (missing values are ignored)
+	 */
+	public void add ( DateTime dateTime, double value ) {
+		++this.inputCount;
+		if ( Double.isNaN(value) ) {
+			++this.missingCount;
+			return;
+		}
+		DateTime end = getIntervalEnd(dateTime, this.intervalBase, this.intervalMult);
+		if ( this.intervalEnd == null ) {
+			this.intervalEnd = end;
+		}
+		else if ( end.lessThan(this.intervalEnd) ) {
+			// Should not happen because Synoptic returns observations in time order.
+			++this.outOfOrderCount;
+			return;
+		}
+		else if ( !end.equals(this.intervalEnd) ) {
+			// Start a new interval.
+			setIntervalValue();
+			this.intervalEnd = end;
+		}
+		++this.count;
+		this.sum += value;
+		if ( Double.isNaN(this.min) || (value < this.min) ) {
+			this.min = value;
+		}
+		if ( Double.isNaN(this.max) || (value > this.max) ) {
+			this.max = value;
+		}
+		this.last = value;
+	}
+
+	/**
+	 * Finish the aggregation by setting the value for the last interval.
+	 * This must be called after all values have been added.
+	 */
+	public void finish () {
+		if ( this.intervalEnd != null ) {
+			setIntervalValue();
+			this.intervalEnd = null;
+		}
+	}
+
+	/**
+	 * Return the number of values that were added, including missing values.
+	 * @return the number of values that were added
+	 */
+	public int getInputCount () {
+		return this.inputCount;
+	}
+
+	/**
+	 * Return the list of intervals that can be aggregated, used for UI choices.
+	 * @return the list of intervals that can be aggregated
+	 */
+	public static List<String> getIntervalChoices () {
+		List<String> intervals = new ArrayList<>();
+		intervals.add("5Minute");
+		intervals.add("15Minute");
+		intervals.add("1Hour");
+		intervals.add("1Day");
+		intervals.add("1Month");
+		return intervals;
+	}
+
+	/**
+	 * Return the end of the interval that contains a date/time, using interval-ending timestamps.
+	 * @param dateTime date/time to process, which is not modified
+	 * @param intervalBase interval base (e.g., TimeInterval.MINUTE)
+	 * @param intervalMult interval multiplier
+	 * @return a new date/time for the end of the interval, with precision consistent with the interval
+	 */
+	public static DateTime getIntervalEnd ( DateTime dateTime, int intervalBase, int intervalMult ) {
+		DateTime end = new DateTime(dateTime);
+		boolean onBoundary;
+		if ( intervalBase == TimeInterval.MINUTE ) {
+			int remainder = (dateTime.getHour()*60 + dateTime.getMinute()) % intervalMult;
+			onBoundary = (remainder == 0) && (dateTime.getSecond() == 0);
+			end.setSecond(0);
+			if ( !onBoundary ) {
+				end.addMinute(intervalMult - remainder);
+			}
+			end.setPrecision(DateTime.PRECISION_MINUTE);
+		}
+		else if ( intervalBase == TimeInterval.HOUR ) {
+			int remainder = dateTime.getHour() % intervalMult;
+			onBoundary = (remainder == 0) && (dateTime.getMinute() == 0) && (dateTime.getSecond() == 0);
+			end.setSecond(0);
+			end.setMinute(0);
+			if ( !onBoundary ) {
+				end.addHour(intervalMult - remainder);
+			}
+			end.setPrecision(DateTime.PRECISION_HOUR);
+		}
+		else if ( intervalBase == TimeInterval.DAY ) {
+			// Midnight is the end of the previous day.
+			onBoundary = (dateTime.getHour() == 0) && (dateTime.getMinute() == 0) && (dateTime.getSecond() == 0);
+			if ( onBoundary ) {
+				end.addDay(-1);
+			}
+			end.setPrecision(DateTime.PRECISION_DAY);
+		}
+		else if ( intervalBase == TimeInterval.MONTH ) {
+			// Midnight on the first day is the end of the previous month.
+			onBoundary = (dateTime.getDay() == 1) && (dateTime.getHour() == 0) && (dateTime.getMinute() == 0) && (dateTime.getSecond() == 0);
+			if ( onBoundary ) {
+				end.addMonth(-1);
+			}
+			end.setPrecision(DateTime.PRECISION_MONTH);
+		}
+		else {
+			throw new IllegalArgumentException ( "Interval base " + intervalBase + " is not supported for aggregation." );
+		}
+		return end;
+	}
+
+	/**
+	 * Return the number of values that were ignored because they were missing.
+	 * @return the number of values that were ignored because they were missing
+	 */
+	public int getMissingCount () {
+		return this.missingCount;
+	}
+
+	/**
+	 * Return the number of values that were ignored because they were not in time order.
+	 * @return the number of values that were ignored because they were not in time order
+	 */
+	public int getOutOfOrderCount () {
+		return this.outOfOrderCount;
+	}
+
+	/**
+	 * Return the number of output intervals that were set.
+	 * @return the number of output intervals that were set
+	 */
+	public int getOutputCount () {
+		return this.outputCount;
+	}
+
+	/**
+	 * Return the statistic that is computed.
+	 * @return the statistic that is computed
+	 */
+	public String getStatistic () {
+		return this.statistic;
+	}
+
+	/**
+	 * Return the list of statistics that can be computed, used for UI choices.
+	 * @return the list of statistics that can be computed
+	 */
+	public static List<String> getStatisticChoices () {
+		List<String> statistics = new ArrayList<>();
+		statistics.add(STATISTIC_COUNT);
+		statistics.add(STATISTIC_LAST);
+		statistics.add(STATISTIC_MAX);
+		statistics.add(STATISTIC_MEAN);
+		statistics.add(STATISTIC_MIN);
+		statistics.add(STATISTIC_SUM);
+		return statistics;
+	}
+
+	/**
+	 * Indicate whether an interval can be aggregated.
+	 * @param intervalBase interval base (e.g., TimeInterval.MINUTE)
+	 * @param intervalMult interval multiplier
+	 * @return true if the interval can be aggregated
+	 */
+	public static boolean isSupportedInterval ( int intervalBase, int intervalMult ) {
+		if ( intervalBase == TimeInterval.MINUTE ) {
+			return (intervalMult == 5) || (intervalMult == 15);
+		}
+		else if ( (intervalBase == TimeInterval.HOUR) || (intervalBase == TimeInterval.DAY) || (intervalBase == TimeInterval.MONTH) ) {
+			return intervalMult == 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Indicate whether an interval can be aggregated.
+	 * @param interval interval string (e.g., "15Minute")
+	 * @return true if the interval can be aggregated, false if not or the interval is invalid
+	 */
+	public static boolean isSupportedInterval ( String interval ) {
+		if ( (interval == null) || interval.isEmpty() || interval.equals("*") ) {
+			return false;
+		}
+		try {
+			TimeInterval timeInterval = TimeInterval.parseInterval(interval);
+			return isSupportedInterval(timeInterval.getBase(), timeInterval.getMultiplier());
+		}
+		catch ( Exception e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * Look up a statistic, ignoring case.
+	 * @param statistic statistic to look up
+	 * @return the matching STATISTIC_* value, or null if not matched
+	 */
+	public static String lookupStatistic ( String statistic ) {
+		if ( statistic == null ) {
+			return null;
+		}
+		for ( String choice : getStatisticChoices() ) {
+			if ( choice.equalsIgnoreCase(statistic) ) {
+				return choice;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Set the value for the current interval and reset the accumulators.
+	 */
+	private void setIntervalValue () {
+		double value;
+		switch ( this.statistic ) {
+			case STATISTIC_COUNT: value = this.count; break;
+			case STATISTIC_LAST: value = this.last; break;
+			case STATISTIC_MAX: value = this.max; break;
+			case STATISTIC_MIN: value = this.min; break;
+			case STATISTIC_SUM: value = this.sum; break;
+			default: value = this.sum/this.count; break;
+		}
+		this.ts.setDataValue(this.intervalEnd, value);
+		++this.outputCount;
+		this.count = 0;
+		this.sum = 0.0;
+		this.min = Double.NaN;
+		this.max = Double.NaN;
+		this.last = Double.NaN;
+	}
+}
@@ -0,0 +1,423 @@
+// LocalQueryUtil - utility functions to evaluate input filters against local (cached) data
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalogStore;
+
+import RTi.Util.GUI.InputFilter;
+import RTi.Util.GUI.InputFilter_JPanel;
+import RTi.Util.Message.Message;
+
+/**
+ * Methods to evaluate input filter "where" clauses against local data, such as a cached time series catalog.
+ * This complements WebUtil.getQueryClauseFromInputFilter(), which formats the same filters as web service query parameters.
+ * Evaluating locally allows queries that narrow a previous query to be answered without another web service request.
+ * The spatial filters ("bbox", "nearest", and "radius") are evaluated using TimeSeriesCatalogSpatialIndex.
+ */
+public class LocalQueryUtil {
+
+	/**
+	 * Filter a list of time series catalog using the input filter panel.
+	 * All filter groups are ANDed, consistent with the web service query.
+	 * @param tscatalogList list of time series catalog to filter
+	 * @param ifp input filter panel with "where" conditions
+	 * @return a new list containing the matching catalog
+	 */
+	public static List<TimeSeriesCatalog> filterTimeSeriesCatalog ( List<TimeSeriesCatalog> tscatalogList, InputFilter_JPanel ifp ) {
+		if ( tscatalogList == null ) {
+			return new ArrayList<>();
+		}
+		TimeSeriesCatalogStore tscatalogStore = null;
+		if ( tscatalogList instanceof TimeSeriesCatalogStore ) {
+			tscatalogStore = (TimeSeriesCatalogStore)tscatalogList;
+		}
+		else {
+			tscatalogStore = new TimeSeriesCatalogStore(tscatalogList);
+		}
+		return filterTimeSeriesCatalog ( new TimeSeriesCatalogSpatialIndex(tscatalogStore), ifp );
+	}
+
+	/**
+	 * Filter a store of time series catalog using the input filter panel.
+	 * All filter groups are ANDed, consistent with the web service query.
+	 * The spatial index is used for bounding box, radius, and nearest station filters.
+	 * The nearest station filter is applied last, to the catalog that match all other filters.
+	 * @param spatialIndex spatial index for the store of time series catalog to filter
+	 * @param ifp input filter panel with "where" conditions
+	 * @return a subset of the store containing the matching catalog, which shares data with the store
+	 */
+	public static TimeSeriesCatalogStore filterTimeSeriesCatalog ( TimeSeriesCatalogSpatialIndex spatialIndex, InputFilter_JPanel ifp ) {
+		TimeSeriesCatalogStore tscatalogStore = spatialIndex.getTimeSeriesCatalogStore();
+		List<Integer> positions = new ArrayList<>();
+		if ( ifp == null ) {
+			for ( int i = 0; i < tscatalogStore.size(); i++ ) {
+				positions.add(i);
+			}
+			return tscatalogStore.select(positions);
+		}
+		// Get the filters and operators once rather than for each catalog:
+		// - spatial filters are handled separately using the index
+		int nfg = ifp.getNumFilterGroups();
+		List<InputFilter> filters = new ArrayList<>();
+		List<String> operators = new ArrayList<>();
+		List<double[]> bboxList = new ArrayList<>();
+		List<double[]> radiusList = new ArrayList<>();
+		double [] nearest = null;
+		for ( int ifg = 0; ifg < nfg; ifg++ ) {
+			InputFilter filter = ifp.getInputFilter(ifg);
+			if ( (filter == null) || filter.getWhereLabel().trim().isEmpty() ) {
+				// Blank indicates that the filter should be ignored.
+				continue;
+			}
+			String whereSubject = filter.getWhereInternal();
+			if ( "bbox".equalsIgnoreCase(whereSubject) ) {
+				bboxList.add(parseSpatialInput(filter, 4));
+			}
+			else if ( "nearest".equalsIgnoreCase(whereSubject) ) {
+				nearest = parseSpatialInput(filter, 3);
+			}
+			else if ( "radius".equalsIgnoreCase(whereSubject) ) {
+				radiusList.add(parseSpatialInput(filter, 3));
+			}
+			else {
+				filters.add(filter);
+				operators.add(ifp.getOperator(ifg));
+			}
+		}
+		// Determine the positions that match the bounding box and radius filters.
+		BitSet spatialSet = null;
+		for ( double [] bbox : bboxList ) {
+			spatialSet = intersect(spatialSet, spatialIndex.findInBoundingBox(bbox[0], bbox[1], bbox[2], bbox[3]));
+		}
+		for ( double [] radius : radiusList ) {
+			spatialSet = intersect(spatialSet, spatialIndex.findWithinRadius(radius[0], radius[1], radius[2]));
+		}
+		// Use a single view to evaluate the other filters without creating objects.
+		BitSet matchedSet = new BitSet(tscatalogStore.size());
+		TimeSeriesCatalogStore.RowView view = (tscatalogStore.size() > 0) ? tscatalogStore.getRowView(0) : null;
+		for ( int i = 0; i < tscatalogStore.size(); i++ ) {
+			if ( (spatialSet != null) && !spatialSet.get(i) ) {
+				continue;
+			}
+			view.setPosition(i);
+			boolean matches = true;
+			for ( int j = 0; j < filters.size(); j++ ) {
+				if ( !matchesInputFilter(view, filters.get(j), operators.get(j)) ) {
+					matches = false;
+					break;
+				}
+			}
+			if ( matches ) {
+				matchedSet.set(i);
+				positions.add(i);
+			}
+		}
+		if ( nearest != null ) {
+			// Limit to the nearest stations that match the other filters.
+			positions = spatialIndex.findNearest(nearest[0], nearest[1], (int)nearest[2], matchedSet::get);
+		}
+		return tscatalogStore.select(positions);
+	}
+
+	/**
+	 * Return the catalog value corresponding to a filter's internal "where", as a string.
+	 * @param tscatalog time series catalog to evaluate
+	 * @param whereSubject internal where, which matches the web service query parameter (e.g., "state")
+	 * @return the value for the catalog, or null if the "where" is not handled
+	 */
+	private static String getCatalogValue ( TimeSeriesCatalog tscatalog, String whereSubject ) {
+		if ( whereSubject.equalsIgnoreCase("cwa") ) {
+			return tscatalog.getStationNwsCwa();
+		}
+		else if ( whereSubject.equalsIgnoreCase("elevation") ) {
+			return (tscatalog.getStationElevation() == null) ? null : "" + tscatalog.getStationElevation();
+		}
+		else if ( whereSubject.equalsIgnoreCase("latitude") ) {
+			return (tscatalog.getStationLatitude() == null) ? null : "" + tscatalog.getStationLatitude();
+		}
+		else if ( whereSubject.equalsIgnoreCase("longitude") ) {
+			return (tscatalog.getStationLongitude() == null) ? null : "" + tscatalog.getStationLongitude();
+		}
+		else if ( whereSubject.equalsIgnoreCase("network") ) {
+			return tscatalog.getStationMnet();
+		}
+		else if ( whereSubject.equalsIgnoreCase("state") ) {
+			return tscatalog.getStationState();
+		}
+		else if ( whereSubject.equalsIgnoreCase("status") ) {
+			return tscatalog.getStationStatus();
+		}
+		else if ( whereSubject.equalsIgnoreCase("stid") ) {
+			return tscatalog.getStationId();
+		}
+		return null;
+	}
+
+	/**
+	 * Indicate whether a filter can be evaluated locally.
+	 * @param filter the InputFilter that is being processed
+	 * @param operator the operator that is selected for the filter
+	 * @return true if the filter's "where" and operator can be evaluated with matchesInputFilter(),
+	 * or if the filter is blank and will be ignored
+	 */
+	public static boolean isLocalQueryFilter ( InputFilter filter, String operator ) {
+		if ( filter.getWhereLabel().trim().isEmpty() ) {
+			// Blank filter is ignored.
+			return true;
+		}
+		String whereSubject = filter.getWhereInternal();
+		if ( (whereSubject == null) || whereSubject.isEmpty() ) {
+			return true;
+		}
+		if ( isSpatialFilter(filter) ) {
+			return operator.equalsIgnoreCase(InputFilter.INPUT_MATCHES) || operator.equalsIgnoreCase(InputFilter.INPUT_EQUALS);
+		}
+		if ( !whereSubject.equalsIgnoreCase("cwa")
+			&& !whereSubject.equalsIgnoreCase("elevation")
+			&& !whereSubject.equalsIgnoreCase("latitude")
+			&& !whereSubject.equalsIgnoreCase("longitude")
+			&& !whereSubject.equalsIgnoreCase("network")
+			&& !whereSubject.equalsIgnoreCase("state")
+			&& !whereSubject.equalsIgnoreCase("status")
+			&& !whereSubject.equalsIgnoreCase("stid") ) {
+			return false;
+		}
+		return isLocalQueryOperator(operator);
+	}
+
+	/**
+	 * Indicate whether an operator can be evaluated locally.
+	 * @param operator the operator that is selected for the filter
+	 * @return true if the operator is handled by matchesValue()
+	 */
+	public static boolean isLocalQueryOperator ( String operator ) {
+		if ( operator == null ) {
+			return false;
+		}
+		return operator.equalsIgnoreCase(InputFilter.INPUT_BETWEEN)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_CONTAINS)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_ENDS_WITH)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_EQUALS)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_GREATER_THAN)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_GREATER_THAN_OR_EQUAL_TO)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_LESS_THAN)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_LESS_THAN_OR_EQUAL_TO)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_MATCHES)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_ONE_OF)
+			|| operator.equalsIgnoreCase(InputFilter.INPUT_STARTS_WITH);
+	}
+
+	/**
+	 * Indicate whether a filter is a spatial filter ("bbox", "nearest", or "radius").
+	 * @param filter the InputFilter that is being processed
+	 * @return true if the filter is a spatial filter
+	 */
+	public static boolean isSpatialFilter ( InputFilter filter ) {
+		String whereSubject = filter.getWhereInternal();
+		return "bbox".equalsIgnoreCase(whereSubject)
+			|| "nearest".equalsIgnoreCase(whereSubject)
+			|| "radius".equalsIgnoreCase(whereSubject);
+	}
+
+	/**
+	 * Intersect the positions matched by a spatial filter with previous matches.
+	 * @param set previous matches, or null if no previous spatial filters
+	 * @param positions positions that match a spatial filter
+	 * @return positions that match all spatial filters
+	 */
+	private static BitSet intersect ( BitSet set, List<Integer> positions ) {
+		BitSet newSet = new BitSet();
+		for ( Integer i : positions ) {
+			if ( (set == null) || set.get(i) ) {
+				newSet.set(i);
+			}
+		}
+		return newSet;
+	}
+
+	/**
+	 * Evaluate whether a time series catalog matches an input filter.
+	 * @param tscatalog time series catalog to evaluate
+	 * @param filter the InputFilter that is being processed
+	 * @param operator the operator that is selected for the filter
+	 * The "nearest" filter depends on all catalog and always returns true - use filterTimeSeriesCatalog() instead.
+	 * @return true if the catalog matches the filter or the filter is blank
+	 * @exception IllegalArgumentException if the operator or "where" is not handled
+	 */
+	public static boolean matchesInputFilter ( TimeSeriesCatalog tscatalog, InputFilter filter, String operator ) {
+		String routine = LocalQueryUtil.class.getSimpleName() + ".matchesInputFilter";
+		if ( filter.getWhereLabel().trim().isEmpty() ) {
+			// Blank indicates that the filter should be ignored.
+			return true;
+		}
+		String whereSubject = filter.getWhereInternal();
+		if ( (whereSubject == null) || whereSubject.isEmpty() ) {
+			return true;
+		}
+		if ( !isLocalQueryFilter(filter, operator) ) {
+			String message = "Filter \"" + whereSubject + "\" with operator \"" + operator + "\" cannot be evaluated locally.";
+			Message.printWarning ( 3, routine, message );
+			throw new IllegalArgumentException(message);
+		}
+		if ( isSpatialFilter(filter) ) {
+			Double latitude = tscatalog.getStationLatitude();
+			Double longitude = tscatalog.getStationLongitude();
+			if ( whereSubject.equalsIgnoreCase("nearest") ) {
+				return true;
+			}
+			else if ( (latitude == null) || (longitude == null) ) {
+				return false;
+			}
+			else if ( whereSubject.equalsIgnoreCase("bbox") ) {
+				double [] bbox = parseSpatialInput(filter, 4);
+				return (longitude >= bbox[0]) && (latitude >= bbox[1]) && (longitude <= bbox[2]) && (latitude <= bbox[3]);
+			}
+			else {
+				double [] radius = parseSpatialInput(filter, 3);
+				return TimeSeriesCatalogSpatialIndex.getDistanceMiles(radius[0], radius[1], latitude, longitude) <= radius[2];
+			}
+		}
+		String input = filter.getInputInternal().trim();
+		String value = getCatalogValue(tscatalog, whereSubject);
+		if ( whereSubject.equalsIgnoreCase("network") ) {
+			// Network short names may contain spaces, which are replaced with underscore in the catalog.
+			input = input.replace(" ", "_");
+		}
+		return matchesValue(value, operator, input);
+	}
+
+	/**
+	 * Evaluate whether a value matches an operator and input:
+	 * - string comparisons are case-independent, consistent with the web services
+	 * - comparison operators are numeric if the value and input are numbers, and string comparisons otherwise
+	 * - 'Between' input is two values separated by a comma, with inclusive bounds
+	 * - 'OneOf' input is a comma-separated list
+	 * @param value the value to evaluate, null if not available
+	 * @param operator the operator that is selected for the filter
+	 * @param input the user input
+	 * @return true if the value matches, false if not or the value is null
+	 */
+	public static boolean matchesValue ( String value, String operator, String input ) {
+		if ( value == null ) {
+			return false;
+		}
+		if ( operator.equalsIgnoreCase(InputFilter.INPUT_BETWEEN) ) {
+			String [] parts = input.split(",");
+			if ( parts.length != 2 ) {
+				return false;
+			}
+			return (compareValues(value, parts[0].trim()) >= 0) && (compareValues(value, parts[1].trim()) <= 0);
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_CONTAINS) ) {
+			return value.toUpperCase().contains(input.toUpperCase());
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_ENDS_WITH) ) {
+			return value.toUpperCase().endsWith(input.toUpperCase());
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_EQUALS) ) {
+			return compareValues(value, input) == 0;
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_GREATER_THAN) ) {
+			return compareValues(value, input) > 0;
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_GREATER_THAN_OR_EQUAL_TO) ) {
+			return compareValues(value, input) >= 0;
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_LESS_THAN) ) {
+			return compareValues(value, input) < 0;
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_LESS_THAN_OR_EQUAL_TO) ) {
+			return compareValues(value, input) <= 0;
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_MATCHES) ) {
+			return value.equalsIgnoreCase(input);
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_ONE_OF) ) {
+			for ( String part : input.split(",") ) {
+				if ( value.equalsIgnoreCase(part.trim()) ) {
+					return true;
+				}
+			}
+			return false;
+		}
+		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_STARTS_WITH) ) {
+			return value.toUpperCase().startsWith(input.toUpperCase());
+		}
+		else {
+		    String message = "Unrecognized operator \"" + operator + "\"";
+			throw new IllegalArgumentException(message);
+		}
+	}
+
+	/**
+	 * Parse the input for a spatial filter, which is a comma-separated list of numbers:
+	 * <ul>
+	 * <li>"bbox" - longitudeMin,latitudeMin,longitudeMax,latitudeMax</li>
+	 * <li>"nearest" - latitude,longitude,stationCount</li>
+	 * <li>"radius" - latitude,longitude,miles</li>
+	 * </ul>
+	 * @param filter the InputFilter that is being processed
+	 * @param count the number of values that are expected
+	 * @return the parsed values
+	 * @exception IllegalArgumentException if the input is invalid
+	 */
+	public static double [] parseSpatialInput ( InputFilter filter, int count ) {
+		String input = filter.getInputInternal().trim();
+		String [] parts = input.split(",");
+		if ( parts.length != count ) {
+			throw new IllegalArgumentException("Filter \"" + filter.getWhereLabel() + "\" input \"" + input
+				+ "\" should have " + count + " comma-separated values.");
+		}
+		double [] values = new double[count];
+		for ( int i = 0; i < count; i++ ) {
+			try {
+				values[i] = Double.parseDouble(parts[i].trim());
+			}
+			catch ( NumberFormatException e ) {
+				throw new IllegalArgumentException("Filter \"" + filter.getWhereLabel() + "\" input \"" + input
+					+ "\" value \"" + parts[i].trim() + "\" is not a number.");
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Compare two values, numerically if both are numbers and otherwise as case-independent strings.
+	 * @param value the value being evaluated
+	 * @param input the user input to compare with
+	 * @return negative, zero, or positive, similar to Comparable.compareTo()
+	 */
+	private static int compareValues ( String value, String input ) {
+		try {
+			return Double.compare(Double.parseDouble(value), Double.parseDouble(input));
+		}
+		catch ( NumberFormatException e ) {
+			return value.compareToIgnoreCase(input);
+		}
+	}
+}
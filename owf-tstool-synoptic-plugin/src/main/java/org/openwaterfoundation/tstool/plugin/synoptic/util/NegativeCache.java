@@ -0,0 +1,363 @@
+// NegativeCache - cache of station and sensor variable requests that returned no data
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import RTi.Util.Message.Message;
+
+/**
+ * Cache of station and sensor variable requests that returned no data (negative cache),
+ * used to avoid requesting the same empty data repeatedly, for example for state-wide reads.
+ * Each entry records the station, sensor variable, and request window (UTC, Synoptic 'yyyyMMddHHmm' format),
+ * and the time that the entry was recorded.
+ * A request is known to be empty if an entry that has not expired has the same station and sensor variable
+ * and the entry window contains the request window.
+ * If the entry window ended near the time that it was recorded (e.g., the most recent 7 days),
+ * the entry indicates that there were no data from the start through the present,
+ * so later requests with moving windows can also be skipped until the entry expires.
+ * Entries are saved in a file if specified so that they can be used in later sessions.
+ * Changes are appended to the file as they are recorded and the file is compacted when it is read,
+ * so that recording an entry does not rewrite the file.
+ */
+public class NegativeCache {
+
+	/**
+	 * Name of the file used to save entries, when saved in a folder.
+	 */
+	public static final String FILE_NAME = "negative-cache.txt";
+
+	/**
+	 * Header for the file.
+	 */
+	private static final String HEADER = "# Synoptic negative cache: StationId, Variable, Start (UTC), End (UTC), RecordedMs, Reason (tab-delimited)\n"
+		+ "# A line with only StationId, Variable, RecordedMs indicates that data were returned, which removes previous entries.";
+
+	/**
+	 * End used for entries that extend to the present.
+	 */
+	private static final String END_PRESENT = "999912312359";
+
+	/**
+	 * If a request ends within this time of the recording time, the entry extends to the present.
+	 */
+	private static final long PRESENT_TOLERANCE_MS = 3600L*1000L;
+
+	/**
+	 * Format for Synoptic 'start' and 'end', UTC.
+	 */
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmm").withZone(ZoneOffset.UTC);
+
+	/**
+	 * Time to live for entries, milliseconds.
+	 */
+	private final long ttlMs;
+
+	/**
+	 * File used to save entries, or null if entries are only kept in memory.
+	 */
+	private final File file;
+
+	/**
+	 * Entries, with key from getKey().
+	 */
+	private final Map<String,List<Entry>> entryMap = new HashMap<>();
+
+	/**
+	 * Number of requests that were avoided.
+	 */
+	private final AtomicLong avoidedCount = new AtomicLong(0);
+
+	/**
+	 * Writer used to append changes to the file, opened when first needed.
+	 */
+	private PrintWriter writer = null;
+
+	/**
+	 * Cache entry.
+	 */
+	private static class Entry {
+		String stationId;
+		String variable;
+		String start;
+		String end;
+		long recordedMs;
+		String reason;
+	}
+
+	/**
+	 * Constructor.
+	 * @param ttlSeconds time to live for entries, seconds
+	 * @param file file used to save entries, or null to only keep entries in memory
+	 */
+	public NegativeCache ( long ttlSeconds, File file ) {
+		this.ttlMs = ttlSeconds*1000L;
+		this.file = file;
+		if ( (file != null) && file.exists() ) {
+			read();
+			// Compact the file to remove expired and replaced entries.
+			write();
+		}
+	}
+
+	/**
+	 * Add an entry, removing expired entries and entries that are contained in the new entry.
+	 */
+	private void addEntry ( Entry entry, long now ) {
+		List<Entry> entryList = this.entryMap.computeIfAbsent(getKey(entry.stationId, entry.variable), k -> new ArrayList<>());
+		for ( Iterator<Entry> it = entryList.iterator(); it.hasNext(); ) {
+			Entry e = it.next();
+			if ( ((now - e.recordedMs) >= this.ttlMs)
+				|| ((e.start.compareTo(entry.start) >= 0) && (e.end.compareTo(entry.end) <= 0)) ) {
+				it.remove();
+			}
+		}
+		entryList.add(entry);
+	}
+
+	/**
+	 * Append a line to the file, if a file is used.
+	 */
+	private void append ( String line ) {
+		if ( this.file == null ) {
+			return;
+		}
+		String routine = getClass().getSimpleName() + ".append";
+		try {
+			if ( this.writer == null ) {
+				boolean exists = this.file.exists();
+				this.writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), StandardCharsets.UTF_8));
+				if ( !exists ) {
+					this.writer.println(HEADER);
+				}
+			}
+			this.writer.println(line);
+			this.writer.flush();
+			if ( this.writer.checkError() ) {
+				Message.printWarning(3, routine, "Error writing negative cache file \"" + this.file + "\".");
+			}
+		}
+		catch ( IOException e ) {
+			Message.printWarning(3, routine, "Error writing negative cache file \"" + this.file + "\" (" + e + ").");
+		}
+	}
+
+	/**
+	 * Format a time in milliseconds as Synoptic UTC 'yyyyMMddHHmm'.
+	 */
+	private String format ( long ms ) {
+		return FORMATTER.format(Instant.ofEpochMilli(ms));
+	}
+
+	/**
+	 * Return the number of requests that were avoided because they were known to be empty.
+	 * @return the number of avoided requests
+	 */
+	public long getAvoidedCount () {
+		return this.avoidedCount.get();
+	}
+
+	/**
+	 * Return the number of entries.
+	 * @return the number of entries, including expired entries that have not been removed
+	 */
+	public synchronized int getEntryCount () {
+		int count = 0;
+		for ( List<Entry> entryList : this.entryMap.values() ) {
+			count += entryList.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the key for a station and sensor variable.
+	 */
+	private String getKey ( String stationId, String variable ) {
+		return stationId.toUpperCase() + "|" + variable;
+	}
+
+	/**
+	 * Determine whether a request is known to be empty.
+	 * If true, the avoided count is incremented.
+	 * @param stationId station identifier
+	 * @param variable sensor variable (e.g., "air_temp")
+	 * @param start request start, UTC 'yyyyMMddHHmm', or null if not specified
+	 * @param end request end, UTC 'yyyyMMddHHmm', or null if not specified
+	 * @return the reason that the request is known to be empty, or null if not known to be empty
+	 */
+	public synchronized String isKnownEmpty ( String stationId, String variable, String start, String end ) {
+		List<Entry> entryList = this.entryMap.get(getKey(stationId, variable));
+		if ( entryList == null ) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		String startReq = (start == null) ? "" : start;
+		String endReq = (end == null) ? format(now) : end;
+		for ( Entry entry : entryList ) {
+			if ( (now - entry.recordedMs) >= this.ttlMs ) {
+				// Expired.
+				continue;
+			}
+			if ( (startReq.compareTo(entry.start) >= 0) && (endReq.compareTo(entry.end) <= 0) ) {
+				this.avoidedCount.incrementAndGet();
+				return entry.reason;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read the entries from the file, applying the changes in order and ignoring expired entries.
+	 */
+	private void read () {
+		String routine = getClass().getSimpleName() + ".read";
+		long now = System.currentTimeMillis();
+		try ( BufferedReader in = new BufferedReader(
+			new InputStreamReader(Files.newInputStream(this.file.toPath()), StandardCharsets.UTF_8)) ) {
+			String line;
+			while ( (line = in.readLine()) != null ) {
+				if ( line.startsWith("#") || line.trim().isEmpty() ) {
+					continue;
+				}
+				String [] parts = line.split("\t", -1);
+				if ( parts.length == 3 ) {
+					// Data were returned.
+					this.entryMap.remove(getKey(parts[0], parts[1]));
+					continue;
+				}
+				if ( parts.length != 6 ) {
+					continue;
+				}
+				Entry entry = new Entry();
+				entry.stationId = parts[0];
+				entry.variable = parts[1];
+				entry.start = parts[2];
+				entry.end = parts[3];
+				try {
+					entry.recordedMs = Long.parseLong(parts[4]);
+				}
+				catch ( NumberFormatException e ) {
+					continue;
+				}
+				entry.reason = parts[5];
+				if ( (now - entry.recordedMs) < this.ttlMs ) {
+					addEntry(entry, now);
+				}
+			}
+			Message.printStatus(2, routine, "Read " + getEntryCount() + " negative cache entries from \"" + this.file + "\".");
+		}
+		catch ( IOException e ) {
+			Message.printWarning(3, routine, "Error reading negative cache file \"" + this.file + "\" (" + e + ").");
+		}
+	}
+
+	/**
+	 * Record that a request returned data, which removes entries for the station and sensor variable.
+	 * @param stationId station identifier
+	 * @param variable sensor variable (e.g., "air_temp")
+	 */
+	public synchronized void recordData ( String stationId, String variable ) {
+		if ( this.entryMap.remove(getKey(stationId, variable)) != null ) {
+			append(stationId + "\t" + variable + "\t" + System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Record that a request returned no data.
+	 * @param stationId station identifier
+	 * @param variable sensor variable (e.g., "air_temp")
+	 * @param start request start, UTC 'yyyyMMddHHmm', or null if not specified
+	 * @param end request end, UTC 'yyyyMMddHHmm', or null if not specified
+	 * @param reason reason that the request returned no data, for messages
+	 */
+	public synchronized void recordEmpty ( String stationId, String variable, String start, String end, String reason ) {
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry();
+		entry.stationId = stationId;
+		entry.variable = variable;
+		entry.start = (start == null) ? "" : start;
+		if ( (end == null) || (end.compareTo(format(now - PRESENT_TOLERANCE_MS)) >= 0) ) {
+			// No data through the present.
+			entry.end = END_PRESENT;
+		}
+		else {
+			entry.end = end;
+		}
+		entry.recordedMs = now;
+		entry.reason = reason.replace('\t', ' ').replace('\n', ' ');
+		addEntry(entry, now);
+		append(toLine(entry));
+	}
+
+	/**
+	 * Format an entry as a line in the file.
+	 */
+	private String toLine ( Entry entry ) {
+		return entry.stationId + "\t" + entry.variable + "\t" + entry.start + "\t" + entry.end + "\t"
+			+ entry.recordedMs + "\t" + entry.reason;
+	}
+
+	/**
+	 * Write all entries to the file, replacing the file, which is done when the file is read to compact the file.
+	 */
+	private void write () {
+		String routine = getClass().getSimpleName() + ".write";
+		File tempFile = new File(this.file.getPath() + ".tmp");
+		try ( PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) ) {
+			out.println(HEADER);
+			for ( List<Entry> entryList : this.entryMap.values() ) {
+				for ( Entry entry : entryList ) {
+					out.println(toLine(entry));
+				}
+			}
+		}
+		catch ( IOException e ) {
+			Message.printWarning(3, routine, "Error writing negative cache file \"" + this.file + "\" (" + e + ").");
+			return;
+		}
+		try {
+			Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch ( IOException e ) {
+			Message.printWarning(3, routine, "Error writing negative cache file \"" + this.file + "\" (" + e + ").");
+		}
+	}
+}
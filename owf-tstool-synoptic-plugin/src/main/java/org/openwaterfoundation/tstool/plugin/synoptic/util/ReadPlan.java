@@ -0,0 +1,430 @@
+// ReadPlan - planned web service requests for a time series read, used to explain the cost of a read
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticRequest;
+
+import RTi.Util.Table.DataTable;
+import RTi.Util.Table.TableField;
+import RTi.Util.Table.TableRecord;
+import RTi.Util.Time.DateTime;
+
+/**
+ * Web service requests that are planned for a time series read, without making the requests,
+ * used by ReadSynoptic(Explain=True) to estimate the cost of a read before it is run.
+ * Requests with the same cache key are only planned once because the response cache and
+ * negative cache will satisfy the duplicate requests (e.g., 'metadata' for several intervals of the same sensor).
+ * The number of values and bytes are estimates based on the sensor period of record in the time series catalog,
+ * and the duration is estimated from the measured (or default) latency, concurrency, and API token rate limit.
+ */
+public class ReadPlan {
+
+	/**
+	 * Request status values.
+	 */
+	public static final String STATUS_CACHED = "Cached";
+	public static final String STATUS_KNOWN_EMPTY = "KnownEmpty";
+	public static final String STATUS_NOT_AVAILABLE = "NotAvailable";
+	public static final String STATUS_REQUEST = "Request";
+
+	/**
+	 * Typical interval between irregular observations, minutes, used to estimate the number of values.
+	 */
+	public static final int OBSERVATION_MINUTES = 15;
+
+	/**
+	 * Estimated response bytes for each value, for JSON and CSV output,
+	 * and for a server aggregated period, which includes several properties.
+	 */
+	private static final int BYTES_PER_VALUE_JSON = 32;
+	private static final int BYTES_PER_VALUE_CSV = 28;
+	private static final int BYTES_PER_PERIOD = 96;
+
+	/**
+	 * Estimated response bytes that are not values (SUMMARY, UNITS, STATION), and for a 'metadata' response for one station.
+	 */
+	private static final int BYTES_OVERHEAD = 1500;
+	private static final int BYTES_METADATA = 3000;
+
+	/**
+	 * Latency used if the latency has not been measured, milliseconds.
+	 */
+	private static final double DEFAULT_LATENCY_MS = 1000.0;
+
+	/**
+	 * Transfer rate used to estimate the time to read a response body, bytes per second.
+	 */
+	private static final double TRANSFER_BYTES_PER_SECOND = 1000000.0;
+
+	/**
+	 * A planned request.
+	 */
+	public static class PlannedRequest {
+		private final SynopticRequest request;
+		private final String stationId;
+		private final String sensorVariable;
+		private final String status;
+		private final long valueCount;
+		private final long byteCount;
+		private final List<String> tsidList = new ArrayList<>();
+
+		private PlannedRequest ( SynopticRequest request, String stationId, String sensorVariable, String status,
+			long valueCount, long byteCount ) {
+			this.request = request;
+			this.stationId = stationId;
+			this.sensorVariable = sensorVariable;
+			this.status = status;
+			this.valueCount = valueCount;
+			this.byteCount = byteCount;
+		}
+
+		/**
+		 * Return the estimated number of response bytes.
+		 * @return the estimated number of response bytes
+		 */
+		public long getByteCount () {
+			return this.byteCount;
+		}
+
+		/**
+		 * Return the request.
+		 * @return the request
+		 */
+		public SynopticRequest getRequest () {
+			return this.request;
+		}
+
+		/**
+		 * Return the request status, one of STATUS_*.
+		 * @return the request status
+		 */
+		public String getStatus () {
+			return this.status;
+		}
+
+		/**
+		 * Return the time series identifiers that use the request.
+		 * @return the time series identifiers that use the request
+		 */
+		public List<String> getTsidList () {
+			return this.tsidList;
+		}
+
+		/**
+		 * Return the estimated number of values.
+		 * @return the estimated number of values
+		 */
+		public long getValueCount () {
+			return this.valueCount;
+		}
+	}
+
+	/**
+	 * Planned requests, with key being the request cache key.
+	 */
+	private final Map<String,PlannedRequest> requestMap = new LinkedHashMap<>();
+
+	/**
+	 * Number of concurrent requests used for the read.
+	 */
+	private final int concurrency;
+
+	/**
+	 * Measured latency, milliseconds, or < 0 if not measured.
+	 */
+	private final double latencyMs;
+
+	/**
+	 * Number of API tokens and requests per second allowed for each token, or 0 if not limited.
+	 */
+	private final int tokenCount;
+	private final double requestsPerSecond;
+
+	/**
+	 * Constructor.
+	 * @param concurrency number of concurrent requests used for the read (1 if the time series are read sequentially)
+	 * @param latencyMs measured latency, milliseconds, or < 0 if not measured
+	 * @param tokenCount number of API tokens
+	 * @param requestsPerSecond requests per second allowed for each API token, or 0 if not limited
+	 */
+	public ReadPlan ( int concurrency, double latencyMs, int tokenCount, double requestsPerSecond ) {
+		this.concurrency = Math.max(1, concurrency);
+		this.latencyMs = latencyMs;
+		this.tokenCount = Math.max(1, tokenCount);
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	/**
+	 * Add a planned request, or add the time series identifier to the request if the request was already planned.
+	 * @param request request that will be made
+	 * @param tsid time series identifier that uses the request
+	 * @param stationId station identifier
+	 * @param sensorVariable sensor variable, or null if not specific to a variable
+	 * @param status request status, one of STATUS_*
+	 * @param valueCount estimated number of values
+	 * @param byteCount estimated number of response bytes
+	 */
+	public void addRequest ( SynopticRequest request, String tsid, String stationId, String sensorVariable, String status,
+		long valueCount, long byteCount ) {
+		PlannedRequest planned = this.requestMap.get(request.getCacheKey());
+		if ( planned == null ) {
+			planned = new PlannedRequest(request, stationId, sensorVariable, status, valueCount, byteCount);
+			this.requestMap.put(request.getCacheKey(), planned);
+		}
+		planned.tsidList.add(tsid);
+	}
+
+	/**
+	 * Create a table with one row per planned request, sorted by station, sensor variable, and service.
+	 * @param tableID identifier for the table
+	 * @return the table
+	 * @throws Exception if the table cannot be created
+	 */
+	public DataTable createTable ( String tableID ) throws Exception {
+		List<TableField> columnList = new ArrayList<>();
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "StationId", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "SensorVariable", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "Service", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "Start", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "End", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "Status", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_INT, "TSIDCount", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "TSID", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_LONG, "EstimatedValues", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_LONG, "EstimatedBytes", -1));
+		columnList.add(new TableField(TableField.DATA_TYPE_DOUBLE, "EstimatedSeconds", -1, 2));
+		columnList.add(new TableField(TableField.DATA_TYPE_STRING, "Request", -1));
+		DataTable table = new DataTable(columnList);
+		table.setTableID(tableID);
+		List<PlannedRequest> plannedList = new ArrayList<>(this.requestMap.values());
+		plannedList.sort((p1, p2) -> {
+			int c = compareStrings(p1.stationId, p2.stationId);
+			if ( c == 0 ) {
+				c = compareStrings(p1.sensorVariable, p2.sensorVariable);
+			}
+			if ( c == 0 ) {
+				c = p1.request.getEndpoint().compareTo(p2.request.getEndpoint());
+			}
+			return c;
+		});
+		for ( PlannedRequest planned : plannedList ) {
+			TableRecord record = new TableRecord();
+			record.addFieldValue(planned.stationId);
+			record.addFieldValue(planned.sensorVariable);
+			record.addFieldValue(planned.request.getEndpoint());
+			record.addFieldValue(planned.request.getParameter("start"));
+			record.addFieldValue(planned.request.getParameter("end"));
+			record.addFieldValue(planned.status);
+			record.addFieldValue(Integer.valueOf(planned.tsidList.size()));
+			record.addFieldValue(String.join(", ", planned.tsidList));
+			record.addFieldValue(Long.valueOf(planned.valueCount));
+			record.addFieldValue(Long.valueOf(planned.byteCount));
+			record.addFieldValue(Double.valueOf(planned.status.equals(STATUS_REQUEST) ? getRequestSeconds(planned) : 0.0));
+			record.addFieldValue(planned.request.toString());
+			table.addRecord(record);
+		}
+		return table;
+	}
+
+	/**
+	 * Compare strings, with null sorting first.
+	 */
+	private static int compareStrings ( String s1, String s2 ) {
+		if ( s1 == null ) {
+			return (s2 == null) ? 0 : -1;
+		}
+		else if ( s2 == null ) {
+			return 1;
+		}
+		return s1.compareToIgnoreCase(s2);
+	}
+
+	/**
+	 * Estimate the number of response bytes for a 'metadata' request for one station.
+	 * @return the estimated number of response bytes
+	 */
+	public static long estimateMetadataBytes () {
+		return BYTES_METADATA;
+	}
+
+	/**
+	 * Estimate the number of response bytes for a data request.
+	 * @param valueCount estimated number of values
+	 * @param serverAggregated whether the values are periods aggregated on the server
+	 * @param csv whether the response is CSV
+	 * @return the estimated number of response bytes
+	 */
+	public static long estimateDataBytes ( long valueCount, boolean serverAggregated, boolean csv ) {
+		int bytesPerValue = serverAggregated ? BYTES_PER_PERIOD : (csv ? BYTES_PER_VALUE_CSV : BYTES_PER_VALUE_JSON);
+		return BYTES_OVERHEAD + valueCount*bytesPerValue;
+	}
+
+	/**
+	 * Estimate the number of values for a read period.
+	 * The read period is limited to the sensor period of record.
+	 * @param readStart start of the read period
+	 * @param readEnd end of the read period
+	 * @param sensorStart start of the sensor period of record, or null if unknown
+	 * @param sensorEnd end of the sensor period of record, or null if unknown or active
+	 * @param intervalMinutes minutes per value, OBSERVATION_MINUTES for observations,
+	 * or the length of the aggregation period for server aggregated values
+	 * @return the estimated number of values
+	 */
+	public static long estimateValueCount ( DateTime readStart, DateTime readEnd, DateTime sensorStart, DateTime sensorEnd,
+		long intervalMinutes ) {
+		DateTime start = readStart;
+		if ( (sensorStart != null) && sensorStart.greaterThan(start) ) {
+			start = sensorStart;
+		}
+		DateTime end = readEnd;
+		if ( (sensorEnd != null) && sensorEnd.lessThan(end) ) {
+			end = sensorEnd;
+		}
+		long minutes = getMinutes(start, end);
+		if ( minutes <= 0 ) {
+			return 0;
+		}
+		return minutes/Math.max(1, intervalMinutes) + 1;
+	}
+
+	/**
+	 * Return the estimated number of response bytes for requests that will be made.
+	 * @return the estimated number of response bytes for requests that will be made
+	 */
+	public long getByteCount () {
+		long byteCount = 0;
+		for ( PlannedRequest planned : this.requestMap.values() ) {
+			if ( planned.status.equals(STATUS_REQUEST) ) {
+				byteCount += planned.byteCount;
+			}
+		}
+		return byteCount;
+	}
+
+	/**
+	 * Return the estimated duration for requests that will be made, seconds.
+	 * The duration is the larger of the time to make the requests with the read concurrency,
+	 * and the time allowed by the API token rate limit.
+	 * @return the estimated duration, seconds
+	 */
+	public double getDurationSeconds () {
+		double requestSeconds = 0.0;
+		int requestCount = 0;
+		for ( PlannedRequest planned : this.requestMap.values() ) {
+			if ( planned.status.equals(STATUS_REQUEST) ) {
+				requestSeconds += getRequestSeconds(planned);
+				++requestCount;
+			}
+		}
+		double durationSeconds = requestSeconds/this.concurrency;
+		if ( this.requestsPerSecond > 0.0 ) {
+			durationSeconds = Math.max(durationSeconds, requestCount/(this.tokenCount*this.requestsPerSecond));
+		}
+		return durationSeconds;
+	}
+
+	/**
+	 * Return the latency used for estimates, milliseconds.
+	 * @return the measured latency, or the default if not measured
+	 */
+	public double getLatencyMs () {
+		return (this.latencyMs < 0.0) ? DEFAULT_LATENCY_MS : this.latencyMs;
+	}
+
+	/**
+	 * Return the minutes between two date/times.
+	 */
+	private static long getMinutes ( DateTime start, DateTime end ) {
+		LocalDateTime start2 = LocalDateTime.of(start.getYear(), Math.max(1, start.getMonth()), Math.max(1, start.getDay()),
+			start.getHour(), start.getMinute());
+		LocalDateTime end2 = LocalDateTime.of(end.getYear(), Math.max(1, end.getMonth()), Math.max(1, end.getDay()),
+			end.getHour(), end.getMinute());
+		return Duration.between(start2, end2).toMinutes();
+	}
+
+	/**
+	 * Return the number of requests with a status.
+	 * @param status request status, one of STATUS_*
+	 * @return the number of requests with the status
+	 */
+	public int getRequestCount ( String status ) {
+		int count = 0;
+		for ( PlannedRequest planned : this.requestMap.values() ) {
+			if ( planned.status.equals(status) ) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the planned requests, in the order that they were planned.
+	 * @return the planned requests
+	 */
+	public List<PlannedRequest> getRequests () {
+		return new ArrayList<>(this.requestMap.values());
+	}
+
+	/**
+	 * Return the estimated time for a request, seconds.
+	 */
+	private double getRequestSeconds ( PlannedRequest planned ) {
+		return getLatencyMs()/1000.0 + planned.byteCount/TRANSFER_BYTES_PER_SECOND;
+	}
+
+	/**
+	 * Return a summary of the plan, for messages.
+	 * @return a summary of the plan
+	 */
+	public String getSummary () {
+		long valueCount = 0;
+		for ( PlannedRequest planned : this.requestMap.values() ) {
+			if ( planned.status.equals(STATUS_REQUEST) ) {
+				valueCount += planned.valueCount;
+			}
+		}
+		StringBuilder b = new StringBuilder();
+		b.append(getRequestCount(STATUS_REQUEST) + " web service requests");
+		b.append(" (" + getRequestCount(STATUS_CACHED) + " cached, " + getRequestCount(STATUS_KNOWN_EMPTY) + " known to be empty");
+		if ( getRequestCount(STATUS_NOT_AVAILABLE) > 0 ) {
+			b.append(", " + getRequestCount(STATUS_NOT_AVAILABLE) + " not available offline");
+		}
+		b.append("), about " + valueCount + " values and " + getByteCount() + " bytes, estimated duration "
+			+ String.format("%.1f", getDurationSeconds()) + " seconds");
+		b.append(" (latency " + Math.round(getLatencyMs()) + " ms" + ((this.latencyMs < 0.0) ? " default" : "")
+			+ ", " + this.concurrency + " concurrent requests");
+		if ( this.requestsPerSecond > 0.0 ) {
+			b.append(", " + this.tokenCount + " API tokens limited to " + this.requestsPerSecond + " requests per second");
+		}
+		b.append(")");
+		return b.toString();
+	}
+}
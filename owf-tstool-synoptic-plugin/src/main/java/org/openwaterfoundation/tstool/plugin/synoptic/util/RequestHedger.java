@@ -0,0 +1,395 @@
+// RequestHedger - issues a duplicate request when a response is slow, to reduce tail latency
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import RTi.Util.Message.Message;
+
+/**
+ * Request hedging, used to reduce the tail latency caused by a few requests that stall.
+ * If a request has not returned its first byte after a delay, which is a percentile of recent first byte times
+ * for the endpoint, a duplicate (hedge) request is made and the first response is used.
+ * The other request is cancelled by disconnecting its connection, so that a stalled request does not continue to use resources.
+ * The number of hedges is limited to a fraction of requests (budget) so that rate limits are not exceeded.
+ */
+public class RequestHedger {
+
+	/**
+	 * An attempt to open a request stream, used to cancel the attempt if another attempt is used.
+	 */
+	public static class Attempt {
+		private final boolean isHedge;
+		private volatile boolean cancelled = false;
+		private volatile HttpURLConnection connection = null;
+
+		/**
+		 * Constructor.
+		 * @param isHedge true if the duplicate (hedge) request, false if the original request
+		 */
+		public Attempt ( boolean isHedge ) {
+			this.isHedge = isHedge;
+		}
+
+		/**
+		 * Cancel the attempt, disconnecting the connection if it has been set.
+		 */
+		void cancel () {
+			this.cancelled = true;
+			HttpURLConnection connection = this.connection;
+			if ( connection != null ) {
+				connection.disconnect();
+			}
+		}
+
+		/**
+		 * Return whether the attempt was cancelled because another attempt was used.
+		 * @return true if the attempt was cancelled
+		 */
+		public boolean isCancelled () {
+			return this.cancelled;
+		}
+
+		/**
+		 * Return whether the attempt is the duplicate (hedge) request.
+		 * @return true if the duplicate (hedge) request, false if the original request
+		 */
+		public boolean isHedge () {
+			return this.isHedge;
+		}
+
+		/**
+		 * Set the connection for the attempt, which is disconnected if the attempt is cancelled.
+		 * @param connection the connection for the request
+		 * @throws UncheckedIOException if the attempt has already been cancelled
+		 */
+		public void setConnection ( HttpURLConnection connection ) {
+			this.connection = connection;
+			if ( this.cancelled ) {
+				connection.disconnect();
+				throw new UncheckedIOException(new IOException("The request was cancelled because another request was used."));
+			}
+		}
+	}
+
+	/**
+	 * Opener for a request stream.
+	 */
+	public interface Opener {
+		/**
+		 * Open the stream for a request, returning when the first byte is available.
+		 * @param attempt the attempt, which should be given the connection for the request so that it can be cancelled
+		 * @return input stream positioned at the start of the response
+		 * @throws IOException if the request fails
+		 */
+		InputStream open ( Attempt attempt ) throws IOException;
+	}
+
+	/**
+	 * Number of recent first byte times used to determine the delay for each endpoint.
+	 */
+	private static final int SAMPLE_SIZE = 100;
+
+	/**
+	 * Minimum number of first byte times before requests are hedged.
+	 */
+	private static final int SAMPLE_MIN = 20;
+
+	/**
+	 * Minimum delay before a hedge, milliseconds, to avoid hedging fast requests.
+	 */
+	private static final long DELAY_MIN_MS = 100;
+
+	/**
+	 * Percentile of first byte times used for the delay (e.g., 95).
+	 */
+	private final double percentile;
+
+	/**
+	 * Maximum fraction of requests that can be hedged (e.g., 0.05).
+	 */
+	private final double budget;
+
+	/**
+	 * Recent first byte times for each endpoint, milliseconds, used as ring buffers.
+	 */
+	private final Map<String,long[]> sampleMap = new HashMap<>();
+
+	/**
+	 * Number of first byte times recorded for each endpoint.
+	 */
+	private final Map<String,Long> sampleCountMap = new HashMap<>();
+
+	/**
+	 * Number of requests that could have been hedged.
+	 */
+	private final AtomicLong requestCount = new AtomicLong(0);
+
+	/**
+	 * Number of hedges that were made.
+	 */
+	private final AtomicLong hedgeCount = new AtomicLong(0);
+
+	/**
+	 * Number of hedges that returned before the original request.
+	 */
+	private final AtomicLong hedgeWinCount = new AtomicLong(0);
+
+	/**
+	 * Threads used to make requests, created when first needed.
+	 */
+	private ExecutorService executor = null;
+
+	/**
+	 * Result of an attempt.
+	 */
+	private static class Result {
+		final Attempt attempt;
+		final InputStream in;
+		final IOException error;
+
+		Result ( Attempt attempt, InputStream in, IOException error ) {
+			this.attempt = attempt;
+			this.in = in;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param percentile percentile of recent first byte times used for the hedge delay (e.g., 95)
+	 * @param budget maximum fraction of requests that can be hedged (e.g., 0.05)
+	 */
+	public RequestHedger ( double percentile, double budget ) {
+		this.percentile = Math.max(1.0, Math.min(99.9, percentile));
+		this.budget = Math.max(0.0, Math.min(1.0, budget));
+	}
+
+	/**
+	 * Close a stream, ignoring errors.
+	 */
+	private void close ( InputStream in ) {
+		try {
+			in.close();
+		}
+		catch ( IOException e ) {
+			// Ignore.
+		}
+	}
+
+	/**
+	 * Return the delay before a hedge for an endpoint.
+	 * @param endpoint endpoint (e.g., "stations/timeseries")
+	 * @return the delay in milliseconds, or -1 if there are not enough first byte times to determine the delay
+	 */
+	public synchronized long getDelayMs ( String endpoint ) {
+		long [] samples = this.sampleMap.get(endpoint);
+		long count = this.sampleCountMap.getOrDefault(endpoint, Long.valueOf(0));
+		if ( (samples == null) || (count < SAMPLE_MIN) ) {
+			return -1;
+		}
+		long [] sorted = Arrays.copyOf(samples, (int)Math.min(count, SAMPLE_SIZE));
+		Arrays.sort(sorted);
+		int i = (int)Math.ceil(this.percentile/100.0*sorted.length) - 1;
+		return Math.max(DELAY_MIN_MS, sorted[Math.max(0, Math.min(sorted.length - 1, i))]);
+	}
+
+	/**
+	 * Return the number of hedges that were made.
+	 * @return the number of hedges that were made
+	 */
+	public long getHedgeCount () {
+		return this.hedgeCount.get();
+	}
+
+	/**
+	 * Return the number of hedges that returned before the original request.
+	 * @return the number of hedges that returned before the original request
+	 */
+	public long getHedgeWinCount () {
+		return this.hedgeWinCount.get();
+	}
+
+	/**
+	 * Return the executor, creating if necessary.
+	 */
+	private synchronized ExecutorService getExecutor () {
+		if ( this.executor == null ) {
+			// Use daemon threads so that a stalled request does not prevent the application from exiting.
+			this.executor = Executors.newCachedThreadPool( runnable -> {
+				Thread thread = new Thread(runnable, "SynopticRequestHedger");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return this.executor;
+	}
+
+	/**
+	 * Open a request stream, hedging the request if it is slow.
+	 * @param endpoint endpoint (e.g., "stations/timeseries"), used to determine the delay
+	 * @param opener opener for the request, which is called a second time for the hedge
+	 * @return input stream for the first response
+	 * @throws IOException if the request (and the hedge, if made) fails
+	 */
+	public InputStream open ( String endpoint, Opener opener ) throws IOException {
+		String routine = getClass().getSimpleName() + ".open";
+		this.requestCount.incrementAndGet();
+		long delayMs = getDelayMs(endpoint);
+		long startMs = System.currentTimeMillis();
+		if ( delayMs < 0 ) {
+			// Not enough information to hedge so open in this thread.
+			InputStream in = opener.open(new Attempt(false));
+			recordFirstByteTime(endpoint, System.currentTimeMillis() - startMs);
+			return in;
+		}
+		LinkedBlockingQueue<Result> resultQueue = new LinkedBlockingQueue<>();
+		AtomicBoolean decided = new AtomicBoolean(false);
+		List<Attempt> attempts = new ArrayList<>();
+		attempts.add(new Attempt(false));
+		submit(opener, attempts.get(0), resultQueue, decided);
+		int pending = 1;
+		boolean hedged = false;
+		IOException firstError = null;
+		try {
+			while ( pending > 0 ) {
+				Result result = null;
+				if ( !hedged ) {
+					result = resultQueue.poll(Math.max(0, startMs + delayMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					if ( result == null ) {
+						if ( tryHedge() ) {
+							Message.printStatus(2, routine, "No response after " + delayMs + " ms - hedging the request.");
+							attempts.add(new Attempt(true));
+							submit(opener, attempts.get(1), resultQueue, decided);
+							++pending;
+						}
+						hedged = true;
+						continue;
+					}
+				}
+				else {
+					result = resultQueue.take();
+				}
+				--pending;
+				if ( result.error != null ) {
+					if ( firstError == null ) {
+						firstError = result.error;
+					}
+					continue;
+				}
+				decided.set(true);
+				// Cancel the other attempt so that a stalled request does not continue to hold resources,
+				// and close its response if it has already been queued.
+				for ( Attempt attempt : attempts ) {
+					if ( attempt != result.attempt ) {
+						attempt.cancel();
+					}
+				}
+				for ( Result other = resultQueue.poll(); other != null; other = resultQueue.poll() ) {
+					if ( other.in != null ) {
+						close(other.in);
+					}
+				}
+				if ( result.attempt.isHedge() ) {
+					this.hedgeWinCount.incrementAndGet();
+				}
+				else {
+					recordFirstByteTime(endpoint, System.currentTimeMillis() - startMs);
+				}
+				return result.in;
+			}
+		}
+		catch ( InterruptedException e ) {
+			decided.set(true);
+			for ( Attempt attempt : attempts ) {
+				attempt.cancel();
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for the response.", e);
+		}
+		throw firstError;
+	}
+
+	/**
+	 * Record the time to receive the first byte for an endpoint.
+	 * @param endpoint endpoint (e.g., "stations/timeseries")
+	 * @param ms time to receive the first byte, milliseconds
+	 */
+	private synchronized void recordFirstByteTime ( String endpoint, long ms ) {
+		long [] samples = this.sampleMap.computeIfAbsent(endpoint, k -> new long[SAMPLE_SIZE]);
+		long count = this.sampleCountMap.getOrDefault(endpoint, Long.valueOf(0));
+		samples[(int)(count % SAMPLE_SIZE)] = ms;
+		this.sampleCountMap.put(endpoint, count + 1);
+	}
+
+	/**
+	 * Submit an attempt.  If the attempt returns after another attempt was used, its stream is closed.
+	 */
+	private void submit ( Opener opener, Attempt attempt, LinkedBlockingQueue<Result> resultQueue, AtomicBoolean decided ) {
+		getExecutor().submit( () -> {
+			Result result = null;
+			try {
+				result = new Result(attempt, opener.open(attempt), null);
+			}
+			catch ( IOException e ) {
+				result = new Result(attempt, null, e);
+			}
+			catch ( UncheckedIOException e ) {
+				result = new Result(attempt, null, e.getCause());
+			}
+			catch ( RuntimeException e ) {
+				result = new Result(attempt, null, new IOException(e));
+			}
+			resultQueue.add(result);
+			if ( decided.get() && (result.in != null) && resultQueue.remove(result) ) {
+				// Another attempt was used and the result was not removed by open() so close here.
+				close(result.in);
+			}
+		});
+	}
+
+	/**
+	 * Determine whether a hedge can be made within the budget and if so count the hedge.
+	 */
+	private synchronized boolean tryHedge () {
+		if ( this.hedgeCount.get() >= Math.max(1.0, this.budget*this.requestCount.get()) ) {
+			return false;
+		}
+		this.hedgeCount.incrementAndGet();
+		return true;
+	}
+}
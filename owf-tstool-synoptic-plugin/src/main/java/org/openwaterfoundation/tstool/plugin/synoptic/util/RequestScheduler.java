@@ -0,0 +1,361 @@
+// RequestScheduler - priority scheduler for web service requests
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Priority scheduler for web service requests, which limits the number of concurrent requests
+ * so that interactive requests (e.g., listing time series in the TSTool main window) are not queued behind batch reads:
+ * - waiting interactive requests are started before waiting batch requests
+ * - one request above the capacity is reserved for interactive requests so that they do not wait for a batch request to finish
+ * - within each priority, waiting requests are started round-robin by client (e.g., command or thread),
+ *   so that one client with many requests does not delay other clients
+ * The priority and client for requests made by a thread are set with setThreadPriority() and setThreadClient().
+ * If a priority is not set, requests from the Swing event dispatch thread are interactive and other requests are batch.
+ */
+public class RequestScheduler {
+
+	/**
+	 * Request priority.
+	 */
+	public enum Priority {
+		/**
+		 * Requests for a user interface, which a user is waiting for.
+		 */
+		INTERACTIVE,
+		/**
+		 * Requests for commands and other bulk reads.
+		 */
+		BATCH
+	}
+
+	/**
+	 * Number of requests above the capacity that are reserved for interactive requests.
+	 */
+	private static final int INTERACTIVE_RESERVE = 1;
+
+	/**
+	 * Priority for requests made by the current thread, or null to use the default.
+	 */
+	private static final ThreadLocal<Priority> threadPriority = new ThreadLocal<>();
+
+	/**
+	 * Client for requests made by the current thread, or null to use the thread name.
+	 */
+	private static final ThreadLocal<String> threadClient = new ThreadLocal<>();
+
+	/**
+	 * Ticket for a request, which must be released when the request is complete.
+	 */
+	public class Ticket {
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private Ticket () {
+		}
+
+		/**
+		 * Release the ticket.  Additional calls are ignored.
+		 */
+		public void release () {
+			if ( this.released.compareAndSet(false, true) ) {
+				synchronized ( RequestScheduler.this ) {
+					--inFlight;
+					dispatch();
+				}
+			}
+		}
+
+		/**
+		 * Wrap an input stream so that the ticket is released when the stream is closed,
+		 * so that the request is in progress while the response is read.
+		 * @param in input stream for the response
+		 * @return wrapped input stream
+		 */
+		public InputStream releaseOnClose ( InputStream in ) {
+			return new FilterInputStream(in) {
+				@Override
+				public void close () throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						release();
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * Request that is waiting to start.
+	 */
+	private static class Waiter {
+		boolean started = false;
+	}
+
+	/**
+	 * Maximum number of concurrent requests, which may change (e.g., adaptive concurrency).
+	 */
+	private final IntSupplier capacity;
+
+	/**
+	 * Number of requests in progress.
+	 */
+	private int inFlight = 0;
+
+	/**
+	 * Waiting requests for each priority, with key being the client, in round-robin order.
+	 */
+	private final Map<Priority,LinkedHashMap<String,ArrayDeque<Waiter>>> waitingMap = new EnumMap<>(Priority.class);
+
+	/**
+	 * Counts for each priority, for messages.
+	 */
+	private final Map<Priority,long[]> countMap = new EnumMap<>(Priority.class);
+
+	/**
+	 * Positions in the count arrays.
+	 */
+	private static final int COUNT_REQUESTS = 0;
+	private static final int COUNT_WAIT_MS = 1;
+	private static final int COUNT_MAX_WAIT_MS = 2;
+	private static final int COUNT_SKIPPED = 3;
+
+	/**
+	 * Constructor.
+	 * @param capacity supplier for the maximum number of concurrent requests (not including the interactive reserve)
+	 */
+	public RequestScheduler ( IntSupplier capacity ) {
+		this.capacity = capacity;
+		for ( Priority priority : Priority.values() ) {
+			this.waitingMap.put(priority, new LinkedHashMap<>());
+			this.countMap.put(priority, new long[4]);
+		}
+	}
+
+	/**
+	 * Acquire a ticket for a request, waiting if necessary.
+	 * If the thread is interrupted (e.g., a read is cancelled), the request is not started.
+	 * @param priority priority for the request
+	 * @param client client for the request, used to share requests fairly within a priority
+	 * @param wait if true, wait until the request can start; if false, return null if the request cannot start now
+	 * (e.g., for an optional request such as a hedge)
+	 * @return ticket, which must be released, or null if not waiting and the request cannot start now
+	 * @throws InterruptedIOException if the thread is interrupted
+	 */
+	public synchronized Ticket acquire ( Priority priority, String client, boolean wait ) throws InterruptedIOException {
+		long startMs = System.currentTimeMillis();
+		long [] counts = this.countMap.get(priority);
+		if ( Thread.currentThread().isInterrupted() ) {
+			throw new InterruptedIOException("Interrupted before starting the request.");
+		}
+		if ( !wait ) {
+			if ( canStart(priority) && !hasWaiting(Priority.INTERACTIVE) && ((priority == Priority.INTERACTIVE) || !hasWaiting(Priority.BATCH)) ) {
+				++this.inFlight;
+				++counts[COUNT_REQUESTS];
+				return new Ticket();
+			}
+			++counts[COUNT_SKIPPED];
+			return null;
+		}
+		Waiter waiter = new Waiter();
+		this.waitingMap.get(priority).computeIfAbsent(client, k -> new ArrayDeque<>()).add(waiter);
+		dispatch();
+		while ( !waiter.started ) {
+			try {
+				// Wake up periodically in case the capacity was increased.
+				wait(100);
+			}
+			catch ( InterruptedException e ) {
+				// Don't start the request:
+				// - if the request was started while waiting, give the capacity to the next waiting request
+				if ( waiter.started ) {
+					--this.inFlight;
+					dispatch();
+				}
+				else {
+					remove(priority, client, waiter);
+				}
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting to start the request.");
+			}
+			dispatch();
+		}
+		long waitMs = System.currentTimeMillis() - startMs;
+		++counts[COUNT_REQUESTS];
+		counts[COUNT_WAIT_MS] += waitMs;
+		counts[COUNT_MAX_WAIT_MS] = Math.max(counts[COUNT_MAX_WAIT_MS], waitMs);
+		return new Ticket();
+	}
+
+	/**
+	 * Determine whether a request with the priority can start based on the capacity.
+	 */
+	private boolean canStart ( Priority priority ) {
+		int limit = Math.max(1, this.capacity.getAsInt());
+		if ( priority == Priority.INTERACTIVE ) {
+			limit += INTERACTIVE_RESERVE;
+		}
+		return this.inFlight < limit;
+	}
+
+	/**
+	 * Start waiting requests while there is capacity, interactive requests first.
+	 */
+	private void dispatch () {
+		boolean started = false;
+		for ( Priority priority : Priority.values() ) {
+			LinkedHashMap<String,ArrayDeque<Waiter>> clientMap = this.waitingMap.get(priority);
+			while ( !clientMap.isEmpty() && canStart(priority) ) {
+				// Start the next request for the first client and move the client to the end of the round-robin order.
+				Iterator<Map.Entry<String,ArrayDeque<Waiter>>> it = clientMap.entrySet().iterator();
+				Map.Entry<String,ArrayDeque<Waiter>> entry = it.next();
+				it.remove();
+				Waiter waiter = entry.getValue().poll();
+				if ( !entry.getValue().isEmpty() ) {
+					clientMap.put(entry.getKey(), entry.getValue());
+				}
+				waiter.started = true;
+				++this.inFlight;
+				started = true;
+			}
+			if ( !clientMap.isEmpty() ) {
+				// Lower priority requests cannot start before the waiting requests.
+				break;
+			}
+		}
+		if ( started ) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Return the client for requests made by the current thread.
+	 * @return the client set with setThreadClient(), or the thread name
+	 */
+	public static String getThreadClient () {
+		String client = threadClient.get();
+		return (client == null) ? Thread.currentThread().getName() : client;
+	}
+
+	/**
+	 * Return the priority for requests made by the current thread.
+	 * @return the priority set with setThreadPriority(), or INTERACTIVE for the Swing event dispatch thread and BATCH otherwise
+	 */
+	public static Priority getThreadPriority () {
+		Priority priority = threadPriority.get();
+		if ( priority == null ) {
+			priority = SwingUtilities.isEventDispatchThread() ? Priority.INTERACTIVE : Priority.BATCH;
+		}
+		return priority;
+	}
+
+	/**
+	 * Return usage for each priority, for messages.
+	 * @return list of usage strings, one per priority
+	 */
+	public synchronized List<String> getUsage () {
+		List<String> usageList = new ArrayList<>();
+		for ( Priority priority : Priority.values() ) {
+			long [] counts = this.countMap.get(priority);
+			int waiting = 0;
+			for ( ArrayDeque<Waiter> waiters : this.waitingMap.get(priority).values() ) {
+				waiting += waiters.size();
+			}
+			usageList.add(priority + ": requests=" + counts[COUNT_REQUESTS] + ", waiting=" + waiting
+				+ ", averageWaitMs=" + ((counts[COUNT_REQUESTS] == 0) ? 0 : (counts[COUNT_WAIT_MS]/counts[COUNT_REQUESTS]))
+				+ ", maxWaitMs=" + counts[COUNT_MAX_WAIT_MS] + ", skipped=" + counts[COUNT_SKIPPED]);
+		}
+		return usageList;
+	}
+
+	/**
+	 * Determine whether requests with a priority are waiting.
+	 */
+	private boolean hasWaiting ( Priority priority ) {
+		return !this.waitingMap.get(priority).isEmpty();
+	}
+
+	/**
+	 * Remove a waiting request.
+	 */
+	private void remove ( Priority priority, String client, Waiter waiter ) {
+		LinkedHashMap<String,ArrayDeque<Waiter>> clientMap = this.waitingMap.get(priority);
+		ArrayDeque<Waiter> waiters = clientMap.get(client);
+		if ( waiters != null ) {
+			waiters.remove(waiter);
+			if ( waiters.isEmpty() ) {
+				clientMap.remove(client);
+			}
+		}
+	}
+
+	/**
+	 * Set the client for requests made by the current thread, for example so that requests from
+	 * a thread pool share the same client.
+	 * @param client client name, or null to use the thread name
+	 * @return the previous client, or null, which should be restored when done
+	 */
+	public static String setThreadClient ( String client ) {
+		String previous = threadClient.get();
+		if ( client == null ) {
+			threadClient.remove();
+		}
+		else {
+			threadClient.set(client);
+		}
+		return previous;
+	}
+
+	/**
+	 * Set the priority for requests made by the current thread.
+	 * @param priority priority, or null to use the default
+	 * @return the previous priority, or null, which should be restored when done
+	 */
+	public static Priority setThreadPriority ( Priority priority ) {
+		Priority previous = threadPriority.get();
+		if ( priority == null ) {
+			threadPriority.remove();
+		}
+		else {
+			threadPriority.set(priority);
+		}
+		return previous;
+	}
+}
@@ -0,0 +1,222 @@
+// RequestShaper - shape Synoptic request parameters to limit the size of responses
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticRequest;
+
+import RTi.Util.Message.Message;
+
+/**
+ * Shape the query parameters for Synoptic requests so that only the content that is used by each call path is returned,
+ * and record the response size for each call path.
+ * The call paths are:
+ * <ul>
+ * <li> {@link #PATH_METADATA_TSID} - 'metadata' service to resolve a single time series identifier,
+ *      which only needs station and sensor variables</li>
+ * <li> {@link #PATH_METADATA_CATALOG} - 'metadata' service to read the time series catalog,
+ *      which only needs 'complete=1' (e.g., for NWS CWA) if the catalog is cached or filtered locally</li>
+ * <li> {@link #PATH_DATA} - 'timeseries', 'statistics', and 'precipitation' services,
+ *      which can use 'precision' to limit the number of digits</li>
+ * </ul>
+ * Stations without data are not returned ('showemptystations=0').
+ * If the savings check is enabled, the request is also made with the original (baseline) parameters
+ * to measure the number of bytes that are saved, which doubles the number of requests and is only used for troubleshooting.
+ */
+public class RequestShaper {
+
+	/**
+	 * Call paths, used for statistics.
+	 */
+	public static final String PATH_METADATA_TSID = "metadata-tsid";
+	public static final String PATH_METADATA_CATALOG = "metadata-catalog";
+	public static final String PATH_DATA = "data";
+
+	/**
+	 * Number of digits after the decimal point for data values, or null to use the Synoptic default.
+	 */
+	private final Integer precision;
+
+	/**
+	 * Whether to request the baseline to measure the number of bytes that are saved.
+	 */
+	private final boolean checkSavings;
+
+	/**
+	 * Statistics for each call path: request count, response bytes, baseline bytes for checked requests,
+	 * and response bytes for checked requests.
+	 */
+	private final Map<String,long[]> statisticsMap = new LinkedHashMap<>();
+
+	/**
+	 * Constructor.
+	 * @param precision number of digits after the decimal point for data values, or null to use the Synoptic default
+	 * @param checkSavings whether to request the baseline to measure the number of bytes that are saved
+	 */
+	public RequestShaper ( Integer precision, boolean checkSavings ) {
+		this.precision = precision;
+		this.checkSavings = checkSavings;
+	}
+
+	/**
+	 * Return the baseline for a data request, without the shaping parameters.
+	 * @param request shaped data request
+	 * @return a copy of the request without the shaping parameters
+	 */
+	public SynopticRequest getDataBaseline ( SynopticRequest request ) {
+		return request.copy().removeParameter("showemptystations").removeParameter("precision");
+	}
+
+	/**
+	 * Return the baseline for a 'metadata' request, which always requested the complete metadata.
+	 * @param request shaped 'metadata' request
+	 * @return a copy of the request with the baseline parameters
+	 */
+	public SynopticRequest getMetadataBaseline ( SynopticRequest request ) {
+		return request.copy().setParameter("complete", "1").setParameter("sensorvars", "1").removeParameter("showemptystations");
+	}
+
+	/**
+	 * Return the number of digits after the decimal point for data values.
+	 * @return the number of digits after the decimal point for data values, or null to use the Synoptic default
+	 */
+	public Integer getPrecision () {
+		return this.precision;
+	}
+
+	/**
+	 * Return the statistics for each call path, for example to list in datastore properties.
+	 * @return a map with key being the call path and value being a summary string
+	 */
+	public Map<String,String> getStatistics () {
+		Map<String,String> map = new LinkedHashMap<>();
+		synchronized ( this.statisticsMap ) {
+			for ( Map.Entry<String,long[]> entry : this.statisticsMap.entrySet() ) {
+				long [] stats = entry.getValue();
+				StringBuilder b = new StringBuilder(stats[0] + " requests, " + stats[1] + " bytes");
+				if ( stats[2] > 0 ) {
+					b.append(", " + (stats[2] - stats[3]) + " bytes saved for " + stats[4] + " checked requests");
+				}
+				map.put(entry.getKey(), b.toString());
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Indicate whether the savings check is enabled.
+	 * @return true if the baseline is requested to measure the number of bytes that are saved
+	 */
+	public boolean isCheckSavings () {
+		return this.checkSavings;
+	}
+
+	/**
+	 * Shape a data request ('timeseries', 'statistics', 'precipitation').
+	 * @param request data request to modify
+	 */
+	public void shapeDataRequest ( SynopticRequest request ) {
+		request.setParameter("showemptystations", "0");
+		if ( this.precision != null ) {
+			request.setParameter("precision", this.precision.intValue());
+		}
+	}
+
+	/**
+	 * Shape a 'metadata' request.
+	 * @param request 'metadata' request to modify
+	 * @param needComplete whether the complete metadata is needed (e.g., NWS CWA for cached catalog)
+	 */
+	public void shapeMetadataRequest ( SynopticRequest request, boolean needComplete ) {
+		if ( needComplete ) {
+			request.setParameter("complete", "1");
+		}
+		else {
+			request.removeParameter("complete");
+		}
+		request.setParameter("sensorvars", "1");
+		request.setParameter("showemptystations", "0");
+	}
+
+	/**
+	 * Read a URL and return the number of bytes in the response.
+	 */
+	private long readByteCount ( String url ) throws IOException {
+		long count = 0;
+		try ( InputStream in = WebUtil.openConnection(url).getInputStream() ) {
+			byte [] bytes = new byte[16*1024];
+			int n;
+			while ( (n = in.read(bytes)) > 0 ) {
+				count += n;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Record the response size for a request.
+	 * If the savings check is enabled, the baseline URL is requested to measure the number of bytes that are saved.
+	 * @param path call path, one of PATH_*
+	 * @param url URL that was requested
+	 * @param baselineUrl URL with the baseline parameters, or null if not checked
+	 * @param byteCount number of bytes in the response
+	 */
+	public void recordResponse ( String path, String url, String baselineUrl, long byteCount ) {
+		String routine = getClass().getSimpleName() + ".recordResponse";
+		long baselineByteCount = -1;
+		if ( this.checkSavings && (baselineUrl != null) && !baselineUrl.equals(url) ) {
+			try {
+				baselineByteCount = readByteCount(baselineUrl);
+			}
+			catch ( Exception e ) {
+				Message.printWarning(3, routine, "Error reading baseline request to check savings (" + e + ").");
+			}
+		}
+		synchronized ( this.statisticsMap ) {
+			long [] stats = this.statisticsMap.get(path);
+			if ( stats == null ) {
+				stats = new long[5];
+				this.statisticsMap.put(path, stats);
+			}
+			++stats[0];
+			stats[1] += byteCount;
+			if ( baselineByteCount >= 0 ) {
+				stats[2] += baselineByteCount;
+				stats[3] += byteCount;
+				++stats[4];
+			}
+		}
+		if ( baselineByteCount >= 0 ) {
+			Message.printStatus(2, routine, "  Response for '" + path + "' is " + byteCount + " bytes, baseline is "
+				+ baselineByteCount + " bytes (" + (baselineByteCount - byteCount) + " bytes saved).");
+		}
+		else {
+			Message.printStatus(2, routine, "  Response for '" + path + "' is " + byteCount + " bytes.");
+		}
+	}
+}
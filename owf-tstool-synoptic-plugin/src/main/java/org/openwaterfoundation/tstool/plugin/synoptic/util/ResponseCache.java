@@ -0,0 +1,700 @@
+// ResponseCache - compressed on-disk cache of raw Synoptic web service responses
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.datastore.SynopticRequest;
+
+import RTi.Util.Message.Message;
+
+/**
+ * Cache of raw web service responses, stored on disk as gzip-compressed files.
+ * Entries are keyed by the canonical request (SynopticRequest.getCacheKey()), which does not include the API token.
+ * Each entry file contains a short text header (cache key, ETag, Last-Modified, whether immutable)
+ * followed by the response body, all compressed.
+ * Entries are used as follows:
+ * - requests with an 'end' time that is in the past are immutable and are served without a web service request
+ * - other requests use a time to live (TTL) for the endpoint, with the age determined from the file modification time
+ * - expired entries are revalidated using If-None-Match and If-Modified-Since if the server provided ETag or Last-Modified
+ * - endpoints with a TTL of zero are not cached, other than immutable requests
+ * A response is saved only when it has been read to the end,
+ * so cancelled and failed reads do not leave partial entries.
+ * The cache can also be used to run without a network connection:
+ * - in record mode, all responses are requested from the web service and saved, regardless of time to live
+ * - in offline mode, all responses are read from the cache, regardless of time to live,
+ *   and a request that is not in the cache results in an OfflineException
+ * The time that recording started is saved so that offline runs can use the same current time for default periods.
+ */
+public class ResponseCache {
+
+	/**
+	 * Extension for entry files.
+	 */
+	public static final String ENTRY_EXTENSION = ".gz";
+
+	/**
+	 * First line of the entry header, to allow the format to change.
+	 */
+	private static final String HEADER_VERSION = "SynopticResponseCache 1";
+
+	/**
+	 * File in the cache folder that contains the time that recording started.
+	 */
+	public static final String RECORD_TIME_FILE = "record-time.txt";
+
+	/**
+	 * Time after the 'end' of a request before the response is considered immutable:
+	 * - observations can be received by Synoptic after the observation time
+	 */
+	private static final long IMMUTABLE_DELAY_MS = 24L*3600L*1000L;
+
+	/**
+	 * Format for the Synoptic 'end' query parameter, UTC.
+	 */
+	private static final DateTimeFormatter END_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+
+	/**
+	 * Folder for the entry files.
+	 */
+	private final File folder;
+
+	/**
+	 * Time to live in seconds for each endpoint (e.g., "stations/metadata").
+	 */
+	private final Map<String,Long> endpointTtlMap = new HashMap<>();
+
+	/**
+	 * Whether in offline mode, in which case only the cache is used.
+	 */
+	private boolean offline = false;
+
+	/**
+	 * Whether in record mode, in which case all responses are requested and saved.
+	 */
+	private boolean record = false;
+
+	/**
+	 * Statistics for the cache.
+	 */
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong revalidatedCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+	private final AtomicLong storeCount = new AtomicLong(0);
+
+	/**
+	 * Exception thrown in offline mode when a response is not in the cache.
+	 */
+	public static class OfflineException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public OfflineException ( String message ) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Entry header.
+	 */
+	private static class EntryHeader {
+		String key = null;
+		String etag = null;
+		String lastModified = null;
+		boolean immutable = false;
+	}
+
+	/**
+	 * Input stream that saves the response to a temporary entry file as it is read,
+	 * and moves the temporary file to the entry file when the end of the response has been read.
+	 */
+	private class StoringInputStream extends FilterInputStream {
+		private final File tempFile;
+		private final File entryFile;
+		private OutputStream out = null;
+		private boolean eof = false;
+		private boolean closed = false;
+
+		public StoringInputStream ( InputStream in, File entryFile, EntryHeader header ) {
+			super(in);
+			this.entryFile = entryFile;
+			File tempFile = null;
+			try {
+				tempFile = File.createTempFile("response-", ".tmp", folder);
+				this.out = new GZIPOutputStream(new FileOutputStream(tempFile), 64*1024);
+				writeHeader(this.out, header);
+			}
+			catch ( IOException e ) {
+				// Continue reading without saving.
+				closeOutput();
+				if ( tempFile != null ) {
+					tempFile.delete();
+				}
+				tempFile = null;
+			}
+			this.tempFile = tempFile;
+		}
+
+		@Override
+		public int read () throws IOException {
+			byte [] b = new byte[1];
+			int n = read(b, 0, 1);
+			return (n <= 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read ( byte [] bytes, int offset, int length ) throws IOException {
+			int n = super.read(bytes, offset, length);
+			if ( n < 0 ) {
+				this.eof = true;
+			}
+			else if ( (n > 0) && (this.out != null) ) {
+				try {
+					this.out.write(bytes, offset, n);
+				}
+				catch ( IOException e ) {
+					// Continue reading without saving.
+					closeOutput();
+				}
+			}
+			return n;
+		}
+
+		@Override
+		public void close () throws IOException {
+			if ( this.closed ) {
+				return;
+			}
+			this.closed = true;
+			try {
+				super.close();
+			}
+			finally {
+				boolean save = this.eof && (this.out != null);
+				closeOutput();
+				if ( this.tempFile != null ) {
+					if ( save ) {
+						try {
+							Files.move(this.tempFile.toPath(), this.entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+							storeCount.incrementAndGet();
+						}
+						catch ( IOException e ) {
+							Message.printWarning(3, ResponseCache.class.getSimpleName() + ".close",
+								"Error saving response cache entry \"" + this.entryFile + "\" (" + e + ").");
+						}
+					}
+					this.tempFile.delete();
+				}
+			}
+		}
+
+		private void closeOutput () {
+			if ( this.out != null ) {
+				try {
+					this.out.close();
+				}
+				catch ( IOException e ) {
+					// Entry will not be used since it is not complete.
+					this.eof = false;
+				}
+				this.out = null;
+			}
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param folder folder for entry files, will be created if it does not exist
+	 */
+	public ResponseCache ( File folder ) {
+		if ( !folder.exists() && !folder.mkdirs() ) {
+			throw new RuntimeException ( "Unable to create response cache folder \"" + folder + "\"." );
+		}
+		this.folder = folder;
+	}
+
+	/**
+	 * Return the entry file for a request.
+	 * The file name is a hash of the cache key so that it is a valid file name of limited length.
+	 * @param request request to look up
+	 * @return the entry file, which may not exist
+	 */
+	public File getEntryFile ( SynopticRequest request ) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte [] hash = digest.digest(request.getCacheKey().getBytes(StandardCharsets.UTF_8));
+			StringBuilder b = new StringBuilder();
+			for ( byte h : hash ) {
+				b.append(String.format("%02x", h));
+			}
+			return new File(this.folder, b.toString() + ENTRY_EXTENSION);
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			// Should not happen since SHA-256 is required in all Java implementations.
+			throw new RuntimeException ( e );
+		}
+	}
+
+	/**
+	 * Return the cache folder.
+	 * @return the cache folder
+	 */
+	public File getFolder () {
+		return this.folder;
+	}
+
+	/**
+	 * Return the time that recording started, from the record time file.
+	 * @return the time that recording started, in milliseconds since 1970-01-01 UTC, or -1 if not available
+	 */
+	public long getRecordTimeMs () {
+		File file = new File(this.folder, RECORD_TIME_FILE);
+		if ( !file.exists() ) {
+			return -1;
+		}
+		try {
+			String s = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+			return Long.parseLong(s);
+		}
+		catch ( IOException | NumberFormatException e ) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Return the number of requests that were served from the cache without a web service request.
+	 * @return the number of cache hits
+	 */
+	public long getHitCount () {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Return the number of requests that were not in the cache or had changed.
+	 * @return the number of cache misses
+	 */
+	public long getMissCount () {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Return the number of expired entries that were revalidated and had not changed.
+	 * @return the number of revalidated entries
+	 */
+	public long getRevalidatedCount () {
+		return this.revalidatedCount.get();
+	}
+
+	/**
+	 * Return the number of responses that were saved in the cache.
+	 * @return the number of saved responses
+	 */
+	public long getStoreCount () {
+		return this.storeCount.get();
+	}
+
+	/**
+	 * Return the time to live for an endpoint.
+	 * @param endpoint endpoint (e.g., "stations/metadata")
+	 * @return the time to live in seconds, zero if the endpoint is not cached
+	 */
+	public long getTtlSeconds ( String endpoint ) {
+		Long ttl = this.endpointTtlMap.get(endpoint);
+		return (ttl == null) ? 0 : ttl.longValue();
+	}
+
+	/**
+	 * Determine whether a request would be read from the cache without a web service request,
+	 * for example to plan a read.  The cache hit and miss counts are not changed.
+	 * @param request request to check
+	 * @return true if the cached response would be used
+	 */
+	public boolean isCached ( SynopticRequest request ) {
+		if ( this.record ) {
+			return false;
+		}
+		File entryFile = getEntryFile(request);
+		if ( !entryFile.exists() ) {
+			return false;
+		}
+		EntryHeader header = readHeader(entryFile, request.getCacheKey());
+		if ( header == null ) {
+			return false;
+		}
+		long ageMs = System.currentTimeMillis() - entryFile.lastModified();
+		return this.offline || header.immutable || (ageMs < getTtlSeconds(request.getEndpoint())*1000L);
+	}
+
+	/**
+	 * Return whether in offline mode.
+	 * @return true if in offline mode
+	 */
+	public boolean isOffline () {
+		return this.offline;
+	}
+
+	/**
+	 * Return whether in record mode.
+	 * @return true if in record mode
+	 */
+	public boolean isRecord () {
+		return this.record;
+	}
+
+	/**
+	 * Determine whether a request is immutable, meaning that the response will not change.
+	 * This is the case when the request 'end' is older than a delay that allows for late observations.
+	 * @param request request to check
+	 * @return true if the request is immutable
+	 */
+	public static boolean isImmutable ( SynopticRequest request ) {
+		String end = request.getParameter("end");
+		if ( (end == null) || (end.length() != 12) ) {
+			return false;
+		}
+		try {
+			long endMs = LocalDateTime.parse(end, END_FORMATTER).toInstant(ZoneOffset.UTC).toEpochMilli();
+			return endMs < (System.currentTimeMillis() - IMMUTABLE_DELAY_MS);
+		}
+		catch ( DateTimeParseException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * Open an input stream for a request, either from the cache or from the web service.
+	 * A response from the web service is saved in the cache when it is read to the end and the stream is closed.
+	 * @param request request, used for the cache key
+	 * @param url URL for the request, including the API token
+	 * @return input stream for the response body, which must be closed
+	 * @throws IOException if the web service request fails
+	 */
+	public InputStream openStream ( SynopticRequest request, String url ) throws IOException {
+		return openStream(request, () -> url);
+	}
+
+	/**
+	 * Open an input stream for a request, either from the cache or from the web service.
+	 * A response from the web service is saved in the cache when it is read to the end and the stream is closed.
+	 * @param request request, used for the cache key
+	 * @param urlSupplier supplier for the URL for the request, including the API token,
+	 * which is only called if a web service request is made (e.g., to use an API token from a pool)
+	 * @return input stream for the response body, which must be closed
+	 * @throws IOException if the web service request fails
+	 */
+	public InputStream openStream ( SynopticRequest request, Supplier<String> urlSupplier ) throws IOException {
+		return openStream(request, urlSupplier, false, null);
+	}
+
+	/**
+	 * Open an input stream for a request, either from the cache or from the web service.
+	 * A response from the web service is saved in the cache when it is read to the end and the stream is closed.
+	 * @param request request, used for the cache key
+	 * @param urlSupplier supplier for the URL for the request, including the API token,
+	 * which is only called if a web service request is made (e.g., to use an API token from a pool)
+	 * @param alwaysStore if true, save the response even if the endpoint is not cached (time to live is zero),
+	 * for example so that a checkpointed read can be resumed using openCachedStream()
+	 * @param connectionConsumer consumer that is given the connection if a web service request is made,
+	 * for example so that the request can be cancelled using disconnect(), or null if not used
+	 * @return input stream for the response body, which must be closed
+	 * @throws IOException if the web service request fails
+	 */
+	public InputStream openStream ( SynopticRequest request, Supplier<String> urlSupplier, boolean alwaysStore,
+		Consumer<HttpURLConnection> connectionConsumer ) throws IOException {
+		String routine = getClass().getSimpleName() + ".openStream";
+		boolean immutable = isImmutable(request);
+		long ttlMs = getTtlSeconds(request.getEndpoint())*1000L;
+		if ( !immutable && (ttlMs <= 0) && !this.offline && !this.record && !alwaysStore ) {
+			// Not cached.
+			HttpURLConnection connection = WebUtil.openConnection(urlSupplier.get());
+			if ( connectionConsumer != null ) {
+				connectionConsumer.accept(connection);
+			}
+			return connection.getInputStream();
+		}
+		File entryFile = getEntryFile(request);
+		EntryHeader header = null;
+		if ( entryFile.exists() && !this.record ) {
+			header = readHeader(entryFile, request.getCacheKey());
+		}
+		if ( this.offline ) {
+			if ( header == null ) {
+				this.missCount.incrementAndGet();
+				throw new OfflineException ( "Offline and no cached response is available for \"" + request + "\"." );
+			}
+			this.hitCount.incrementAndGet();
+			Message.printStatus(2, routine, "Using cached response for \"" + request + "\" (offline).");
+			return openBody(entryFile);
+		}
+		if ( header != null ) {
+			long ageMs = System.currentTimeMillis() - entryFile.lastModified();
+			if ( header.immutable || (ageMs < ttlMs) ) {
+				this.hitCount.incrementAndGet();
+				Message.printStatus(2, routine, "Using cached response for \"" + request + "\" ("
+					+ (header.immutable ? "immutable" : ("age " + ageMs/1000 + " seconds")) + ").");
+				return openBody(entryFile);
+			}
+		}
+		HttpURLConnection connection = WebUtil.openConnection(urlSupplier.get());
+		if ( connectionConsumer != null ) {
+			connectionConsumer.accept(connection);
+		}
+		if ( header != null ) {
+			// Revalidate the expired entry.
+			if ( header.etag != null ) {
+				connection.setRequestProperty("If-None-Match", header.etag);
+			}
+			if ( header.lastModified != null ) {
+				connection.setRequestProperty("If-Modified-Since", header.lastModified);
+			}
+		}
+		if ( (header != null) && (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) ) {
+			connection.disconnect();
+			entryFile.setLastModified(System.currentTimeMillis());
+			this.revalidatedCount.incrementAndGet();
+			Message.printStatus(2, routine, "Cached response for \"" + request + "\" has not changed.");
+			return openBody(entryFile);
+		}
+		this.missCount.incrementAndGet();
+		EntryHeader newHeader = new EntryHeader();
+		newHeader.key = request.getCacheKey();
+		newHeader.etag = connection.getHeaderField("ETag");
+		newHeader.lastModified = connection.getHeaderField("Last-Modified");
+		newHeader.immutable = immutable;
+		// Throws an exception if the response is an error.
+		return new StoringInputStream(connection.getInputStream(), entryFile, newHeader);
+	}
+
+	/**
+	 * Open an input stream for a cached response regardless of its age,
+	 * for example to resume a read using responses that were saved by a previous read.
+	 * @param request request, used for the cache key
+	 * @return input stream for the response body, which must be closed, or null if the response is not cached
+	 * @throws IOException if the cached response cannot be read
+	 */
+	public InputStream openCachedStream ( SynopticRequest request ) throws IOException {
+		String routine = getClass().getSimpleName() + ".openCachedStream";
+		File entryFile = getEntryFile(request);
+		if ( !entryFile.exists() || (readHeader(entryFile, request.getCacheKey()) == null) ) {
+			return null;
+		}
+		this.hitCount.incrementAndGet();
+		Message.printStatus(2, routine, "Using cached response for \"" + request + "\" (resume).");
+		return openBody(entryFile);
+	}
+
+	/**
+	 * Open an entry file and position the stream at the start of the response body.
+	 */
+	private InputStream openBody ( File entryFile ) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(entryFile), 64*1024);
+		try {
+			readHeaderLines(in);
+		}
+		catch ( IOException e ) {
+			in.close();
+			throw e;
+		}
+		return in;
+	}
+
+	/**
+	 * Read the header from an entry file.
+	 * @param entryFile entry file to read
+	 * @param key cache key that is expected, to protect against hash collisions
+	 * @return the header, or null if the file cannot be read or is for a different key
+	 */
+	private EntryHeader readHeader ( File entryFile, String key ) {
+		try ( InputStream in = new GZIPInputStream(new FileInputStream(entryFile)) ) {
+			Map<String,String> headerMap = readHeaderLines(in);
+			EntryHeader header = new EntryHeader();
+			header.key = headerMap.get("Key");
+			header.etag = headerMap.get("ETag");
+			header.lastModified = headerMap.get("Last-Modified");
+			header.immutable = "true".equals(headerMap.get("Immutable"));
+			if ( !key.equals(header.key) ) {
+				return null;
+			}
+			return header;
+		}
+		catch ( IOException e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * Read the header lines from an entry stream, leaving the stream positioned at the response body.
+	 * @return map of header name and value
+	 */
+	private Map<String,String> readHeaderLines ( InputStream in ) throws IOException {
+		Map<String,String> headerMap = new HashMap<>();
+		ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+		boolean first = true;
+		while ( true ) {
+			int b = in.read();
+			if ( b < 0 ) {
+				throw new IOException ( "Unexpected end of response cache entry header." );
+			}
+			if ( b != '\n' ) {
+				line.write(b);
+				continue;
+			}
+			String s = new String(line.toByteArray(), StandardCharsets.UTF_8);
+			line.reset();
+			if ( first ) {
+				if ( !s.equals(HEADER_VERSION) ) {
+					throw new IOException ( "Unsupported response cache entry version \"" + s + "\"." );
+				}
+				first = false;
+			}
+			else if ( s.isEmpty() ) {
+				// End of the header.
+				return headerMap;
+			}
+			else {
+				int pos = s.indexOf(": ");
+				if ( pos > 0 ) {
+					headerMap.put(s.substring(0, pos), s.substring(pos + 2));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the cache entry for a request,
+	 * for example if the response indicated an error that should not be reused.
+	 * @param request request to remove
+	 * @return true if an entry was removed
+	 */
+	public boolean remove ( SynopticRequest request ) {
+		File entryFile = getEntryFile(request);
+		return entryFile.exists() && entryFile.delete();
+	}
+
+	/**
+	 * Remove an entry that was only saved for a checkpointed read (see openStream() 'alwaysStore'),
+	 * which is the case if the entry is not immutable and its endpoint is not cached.
+	 * Other entries are kept because they are used until they expire.
+	 * @param entryFile entry file to remove
+	 * @return true if the entry was removed
+	 */
+	public boolean removePinned ( File entryFile ) {
+		if ( this.record || !entryFile.exists() ) {
+			return false;
+		}
+		Map<String,String> headerMap = null;
+		try ( InputStream in = new GZIPInputStream(new FileInputStream(entryFile)) ) {
+			headerMap = readHeaderLines(in);
+		}
+		catch ( IOException e ) {
+			// Not a valid entry so remove.
+			return entryFile.delete();
+		}
+		String key = headerMap.get("Key");
+		if ( "true".equals(headerMap.get("Immutable")) || (key == null) ) {
+			return false;
+		}
+		int pos = key.indexOf('?');
+		String endpoint = (pos < 0) ? key : key.substring(0, pos);
+		if ( getTtlSeconds(endpoint) > 0 ) {
+			return false;
+		}
+		return entryFile.delete();
+	}
+
+	/**
+	 * Set whether in offline mode, in which case only the cache is used.
+	 * @param offline whether in offline mode
+	 */
+	public void setOffline ( boolean offline ) {
+		this.offline = offline;
+	}
+
+	/**
+	 * Set whether in record mode, in which case all responses are requested from the web service and saved.
+	 * The record time file is written with the current time.
+	 * @param record whether in record mode
+	 * @return the record time in milliseconds since 1970-01-01 UTC, or -1 if not in record mode
+	 * @throws IOException if the record time file cannot be written
+	 */
+	public long setRecord ( boolean record ) throws IOException {
+		this.record = record;
+		if ( !record ) {
+			return -1;
+		}
+		long recordTimeMs = System.currentTimeMillis();
+		Files.write(new File(this.folder, RECORD_TIME_FILE).toPath(),
+			String.valueOf(recordTimeMs).getBytes(StandardCharsets.UTF_8));
+		return recordTimeMs;
+	}
+
+	/**
+	 * Set the time to live for an endpoint.
+	 * @param endpoint endpoint (e.g., "stations/metadata")
+	 * @param ttlSeconds time to live in seconds, zero to not cache the endpoint (other than immutable requests)
+	 */
+	public void setTtlSeconds ( String endpoint, long ttlSeconds ) {
+		this.endpointTtlMap.put(endpoint, Long.valueOf(ttlSeconds));
+	}
+
+	/**
+	 * Write the header to an entry stream.
+	 */
+	private void writeHeader ( OutputStream out, EntryHeader header ) throws IOException {
+		StringBuilder b = new StringBuilder();
+		b.append(HEADER_VERSION + "\n");
+		b.append("Key: " + header.key + "\n");
+		if ( header.etag != null ) {
+			b.append("ETag: " + header.etag + "\n");
+		}
+		if ( header.lastModified != null ) {
+			b.append("Last-Modified: " + header.lastModified + "\n");
+		}
+		b.append("Immutable: " + header.immutable + "\n");
+		b.append("\n");
+		out.write(b.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,250 @@
+// ServiceEndpointRouter - routes requests to the fastest healthy service root URI
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Router for multiple service root URIs, for example Synoptic and regional caching gateways (mirrors).
+ * A moving (exponentially weighted) average of the latency and error rate is tracked for each endpoint
+ * and each request is routed to the healthy endpoint with the lowest score.
+ * An endpoint is unhealthy after consecutive failures and is not used until a backoff period has passed,
+ * after which a request is routed to the endpoint again to check whether it has recovered.
+ */
+public class ServiceEndpointRouter {
+
+	/**
+	 * Weight of a new measurement in the moving averages.
+	 */
+	private static final double ALPHA = 0.2;
+
+	/**
+	 * Number of consecutive failures after which an endpoint is unhealthy.
+	 */
+	private static final int FAILURE_THRESHOLD = 2;
+
+	/**
+	 * Initial time that an unhealthy endpoint is not used, milliseconds, doubled for each additional failure.
+	 */
+	private static final long BACKOFF_MS = 30*1000L;
+
+	/**
+	 * Maximum time that an unhealthy endpoint is not used, milliseconds.
+	 */
+	private static final long BACKOFF_MAX_MS = 5*60*1000L;
+
+	/**
+	 * Endpoint and its statistics.
+	 */
+	private static class Endpoint {
+		final String rootUri;
+		// Moving average latency, or < 0 if no requests have been made.
+		double latencyMs = -1.0;
+		// Moving average error rate, 0 to 1.
+		double errorRate = 0.0;
+		int consecutiveFailures = 0;
+		long unhealthyUntilMs = 0;
+		long requestCount = 0;
+		long errorCount = 0;
+		// Last error without the API token (see WebUtil.describeError()).
+		String lastError = null;
+
+		Endpoint ( String rootUri ) {
+			this.rootUri = rootUri;
+		}
+
+		boolean isHealthy ( long nowMs ) {
+			return this.unhealthyUntilMs <= nowMs;
+		}
+
+		double getScore () {
+			// Try endpoints without a measurement first, then use latency penalized by errors.
+			double latency = (this.latencyMs < 0.0) ? 0.0 : this.latencyMs;
+			return latency*(1.0 + 4.0*this.errorRate);
+		}
+	}
+
+	/**
+	 * Endpoints, in the configured order.
+	 */
+	private final List<Endpoint> endpointList = new ArrayList<>();
+
+	/**
+	 * Constructor.
+	 * @param rootUris service root URIs, duplicates and empty strings are ignored
+	 */
+	public ServiceEndpointRouter ( List<String> rootUris ) {
+		for ( String rootUri : rootUris ) {
+			if ( (rootUri != null) && !rootUri.trim().isEmpty() && (getEndpoint(rootUri.trim()) == null) ) {
+				this.endpointList.add(new Endpoint(rootUri.trim()));
+			}
+		}
+		if ( this.endpointList.isEmpty() ) {
+			throw new IllegalArgumentException("At least one service root URI must be specified.");
+		}
+	}
+
+	/**
+	 * Choose the endpoint for a request.
+	 * @param excludeRootUris root URIs to exclude, for example those that have failed for the request, or null
+	 * @return the root URI to use, or null if all endpoints are excluded
+	 */
+	public synchronized String choose ( Set<String> excludeRootUris ) {
+		long nowMs = System.currentTimeMillis();
+		Endpoint best = null;
+		Endpoint earliestUnhealthy = null;
+		for ( Endpoint endpoint : this.endpointList ) {
+			if ( (excludeRootUris != null) && excludeRootUris.contains(endpoint.rootUri) ) {
+				continue;
+			}
+			if ( endpoint.isHealthy(nowMs) ) {
+				if ( (best == null) || (endpoint.getScore() < best.getScore())
+					|| ((endpoint.getScore() == best.getScore()) && (endpoint.requestCount < best.requestCount)) ) {
+					best = endpoint;
+				}
+			}
+			else if ( (earliestUnhealthy == null) || (endpoint.unhealthyUntilMs < earliestUnhealthy.unhealthyUntilMs) ) {
+				earliestUnhealthy = endpoint;
+			}
+		}
+		if ( best == null ) {
+			// All remaining endpoints are unhealthy so try the one that will recover first.
+			best = earliestUnhealthy;
+		}
+		if ( best == null ) {
+			return null;
+		}
+		++best.requestCount;
+		return best.rootUri;
+	}
+
+	/**
+	 * Return the endpoint for a root URI.
+	 */
+	private Endpoint getEndpoint ( String rootUri ) {
+		for ( Endpoint endpoint : this.endpointList ) {
+			if ( endpoint.rootUri.equals(rootUri) ) {
+				return endpoint;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return the health of each endpoint, for messages and datastore properties.
+	 * @return list of health strings, one per endpoint
+	 */
+	public synchronized List<String> getHealth () {
+		long nowMs = System.currentTimeMillis();
+		List<String> healthList = new ArrayList<>();
+		for ( Endpoint endpoint : this.endpointList ) {
+			StringBuilder b = new StringBuilder(endpoint.rootUri);
+			b.append(endpoint.isHealthy(nowMs) ? " healthy" : (" unhealthy for " + (endpoint.unhealthyUntilMs - nowMs)/1000 + " s"));
+			b.append(", latency=" + ((endpoint.latencyMs < 0.0) ? "unknown" : (Math.round(endpoint.latencyMs) + " ms")));
+			b.append(", errorRate=" + String.format("%.2f", endpoint.errorRate));
+			b.append(", requests=" + endpoint.requestCount + ", errors=" + endpoint.errorCount);
+			if ( endpoint.lastError != null ) {
+				b.append(", lastError=" + endpoint.lastError);
+			}
+			healthList.add(b.toString());
+		}
+		return healthList;
+	}
+
+	/**
+	 * Return the lowest moving average latency for the healthy endpoints, for example to estimate the duration of a read.
+	 * @return the latency in milliseconds, or < 0 if no requests have been made
+	 */
+	public synchronized double getLatencyMs () {
+		long nowMs = System.currentTimeMillis();
+		double latencyMs = -1.0;
+		for ( Endpoint endpoint : this.endpointList ) {
+			if ( endpoint.isHealthy(nowMs) && (endpoint.latencyMs >= 0.0) && ((latencyMs < 0.0) || (endpoint.latencyMs < latencyMs)) ) {
+				latencyMs = endpoint.latencyMs;
+			}
+		}
+		return latencyMs;
+	}
+
+	/**
+	 * Return the first (primary) root URI.
+	 * @return the first root URI
+	 */
+	public String getPrimaryRootUri () {
+		return this.endpointList.get(0).rootUri;
+	}
+
+	/**
+	 * Record a failed request, which may cause the endpoint to be unhealthy.
+	 * @param rootUri root URI for the request
+	 * @param error error for the request, for messages, which is saved without the API token
+	 * @return true if the endpoint is now unhealthy
+	 */
+	public synchronized boolean recordFailure ( String rootUri, Exception error ) {
+		Endpoint endpoint = getEndpoint(rootUri);
+		if ( endpoint == null ) {
+			return false;
+		}
+		++endpoint.errorCount;
+		++endpoint.consecutiveFailures;
+		endpoint.errorRate = ALPHA + (1.0 - ALPHA)*endpoint.errorRate;
+		endpoint.lastError = WebUtil.describeError(error);
+		if ( endpoint.consecutiveFailures >= FAILURE_THRESHOLD ) {
+			long backoffMs = BACKOFF_MS << Math.min(10, endpoint.consecutiveFailures - FAILURE_THRESHOLD);
+			endpoint.unhealthyUntilMs = System.currentTimeMillis() + Math.min(BACKOFF_MAX_MS, backoffMs);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record a successful request.
+	 * @param rootUri root URI for the request
+	 * @param latencyMs time to receive the response headers, milliseconds
+	 */
+	public synchronized void recordSuccess ( String rootUri, long latencyMs ) {
+		Endpoint endpoint = getEndpoint(rootUri);
+		if ( endpoint == null ) {
+			return;
+		}
+		endpoint.consecutiveFailures = 0;
+		endpoint.unhealthyUntilMs = 0;
+		endpoint.errorRate = (1.0 - ALPHA)*endpoint.errorRate;
+		if ( endpoint.latencyMs < 0.0 ) {
+			endpoint.latencyMs = latencyMs;
+		}
+		else {
+			endpoint.latencyMs = ALPHA*latencyMs + (1.0 - ALPHA)*endpoint.latencyMs;
+		}
+	}
+
+	/**
+	 * Return the number of endpoints.
+	 * @return the number of endpoints
+	 */
+	public int size () {
+		return this.endpointList.size();
+	}
+}
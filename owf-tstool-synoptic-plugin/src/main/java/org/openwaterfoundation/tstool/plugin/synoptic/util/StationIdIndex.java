@@ -0,0 +1,178 @@
+// StationIdIndex - sorted index of station identifiers by data type
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalog;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalogStore;
+
+/**
+ * Sorted, unique station identifiers, indexed by data type, used for UI choices.
+ * The index is created from time series catalog and is not modified,
+ * so it can be shared and only needs to be recreated when the catalog changes.
+ * Identifiers are sorted ignoring case and prefix lookup uses a binary search,
+ * which is fast enough for type-ahead with tens of thousands of stations.
+ */
+public class StationIdIndex {
+
+	/**
+	 * Station identifiers for all data types.
+	 */
+	private final String [] allStationIds;
+
+	/**
+	 * Station identifiers for each data type, with the key being the sensor variable (e.g., "air_temp")
+	 * or the full data type (e.g., "road_temp-road_temp_1"), in upper case.
+	 */
+	private final Map<String,String[]> dataTypeStationIdMap = new HashMap<>();
+
+	/**
+	 * Constructor.
+	 * @param tscatalogLists lists of time series catalog to index, which may contain the same stations
+	 */
+	public StationIdIndex ( List<List<TimeSeriesCatalog>> tscatalogLists ) {
+		TreeSet<String> allSet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		Map<String,TreeSet<String>> dataTypeSetMap = new HashMap<>();
+		for ( List<TimeSeriesCatalog> tscatalogList : tscatalogLists ) {
+			if ( tscatalogList == null ) {
+				continue;
+			}
+			// Use a row view for a store to avoid creating objects.
+			TimeSeriesCatalogStore.RowView view = null;
+			if ( (tscatalogList instanceof TimeSeriesCatalogStore) && !tscatalogList.isEmpty() ) {
+				view = ((TimeSeriesCatalogStore)tscatalogList).getRowView(0);
+			}
+			for ( int i = 0; i < tscatalogList.size(); i++ ) {
+				TimeSeriesCatalog tscatalog = null;
+				if ( view != null ) {
+					view.setPosition(i);
+					tscatalog = view;
+				}
+				else {
+					tscatalog = tscatalogList.get(i);
+				}
+				String stationId = tscatalog.getStationId();
+				if ( (stationId == null) || stationId.isEmpty() ) {
+					continue;
+				}
+				allSet.add(stationId);
+				addToDataTypeSet(dataTypeSetMap, tscatalog.getSensorVariable(), stationId);
+				addToDataTypeSet(dataTypeSetMap, tscatalog.getDataType(), stationId);
+			}
+		}
+		this.allStationIds = allSet.toArray(new String[0]);
+		for ( Map.Entry<String,TreeSet<String>> entry : dataTypeSetMap.entrySet() ) {
+			this.dataTypeStationIdMap.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+		}
+	}
+
+	/**
+	 * Add a station identifier to the set for a data type.
+	 */
+	private void addToDataTypeSet ( Map<String,TreeSet<String>> dataTypeSetMap, String dataType, String stationId ) {
+		if ( (dataType == null) || dataType.isEmpty() ) {
+			return;
+		}
+		String key = dataType.toUpperCase();
+		TreeSet<String> set = dataTypeSetMap.get(key);
+		if ( set == null ) {
+			set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			dataTypeSetMap.put(key, set);
+		}
+		set.add(stationId);
+	}
+
+	/**
+	 * Return the sorted station identifiers for a data type.
+	 * @param dataType data type to match, or null, empty, or "*" for all data types
+	 */
+	private String [] getArray ( String dataType ) {
+		if ( (dataType == null) || dataType.isEmpty() || dataType.equals("*") ) {
+			return this.allStationIds;
+		}
+		String [] stationIds = this.dataTypeStationIdMap.get(dataType.toUpperCase());
+		return (stationIds == null) ? new String[0] : stationIds;
+	}
+
+	/**
+	 * Return the station identifiers for a data type.
+	 * @param dataType data type to match, or null, empty, or "*" for all data types
+	 * @return sorted, unique station identifiers, as a read-only list
+	 */
+	public List<String> getStationIds ( String dataType ) {
+		return Collections.unmodifiableList(Arrays.asList(getArray(dataType)));
+	}
+
+	/**
+	 * Return the station identifiers for a data type that start with a prefix.
+	 * @param dataType data type to match, or null, empty, or "*" for all data types
+	 * @param prefix prefix to match, ignoring case, or null or empty to match all
+	 * @param maxCount maximum number of identifiers to return, or -1 to return all
+	 * @return sorted, unique station identifiers
+	 */
+	public List<String> getStationIdsWithPrefix ( String dataType, String prefix, int maxCount ) {
+		String [] stationIds = getArray(dataType);
+		List<String> matches = new ArrayList<>();
+		if ( prefix == null ) {
+			prefix = "";
+		}
+		// Find the first identifier that is >= the prefix.
+		int low = 0;
+		int high = stationIds.length;
+		while ( low < high ) {
+			int mid = (low + high) >>> 1;
+			if ( String.CASE_INSENSITIVE_ORDER.compare(stationIds[mid], prefix) < 0 ) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		for ( int i = low; i < stationIds.length; i++ ) {
+			if ( (maxCount >= 0) && (matches.size() >= maxCount) ) {
+				break;
+			}
+			if ( !stationIds[i].regionMatches(true, 0, prefix, 0, prefix.length()) ) {
+				// Past the identifiers that match the prefix.
+				break;
+			}
+			matches.add(stationIds[i]);
+		}
+		return matches;
+	}
+
+	/**
+	 * Return the number of station identifiers for all data types.
+	 * @return the number of station identifiers for all data types
+	 */
+	public int size () {
+		return this.allStationIds.length;
+	}
+}
@@ -0,0 +1,289 @@
+// TimeSeriesCatalogSpatialIndex - spatial index for time series catalog station coordinates
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.TimeSeriesCatalogStore;
+
+/**
+ * Uniform grid spatial index for time series catalog station latitude and longitude.
+ * The index is built once for a catalog store (e.g., a cached State catalog) and is then used for
+ * bounding box, radius, and nearest station queries without scanning the full store.
+ * Queries return positions in the store, which can be used with TimeSeriesCatalogStore.select().
+ * Catalog entries without coordinates are not included in the index.
+ * Distances are great circle distances in miles, consistent with the Synoptic 'radius' query parameter.
+ */
+public class TimeSeriesCatalogSpatialIndex {
+
+	/**
+	 * Earth radius in miles, used for great circle distance.
+	 */
+	private static final double EARTH_RADIUS_MILES = 3958.8;
+
+	/**
+	 * Miles per degree of latitude.
+	 */
+	private static final double MILES_PER_DEGREE = EARTH_RADIUS_MILES*Math.PI/180.0;
+
+	/**
+	 * Size of a grid cell in degrees:
+	 * - 0.25 degree is about 17 miles in latitude, which keeps typical radius queries to a few cells
+	 */
+	private final double cellSize = 0.25;
+
+	/**
+	 * Grid cells, with key from getCellKey() and value being positions in 'tscatalogStore'.
+	 */
+	private final Map<Long,List<Integer>> cellMap = new HashMap<>();
+
+	/**
+	 * Extent of the grid cells, used to stop expanding nearest station searches.
+	 */
+	private int rowMin = Integer.MAX_VALUE;
+	private int rowMax = Integer.MIN_VALUE;
+	private int colMin = Integer.MAX_VALUE;
+	private int colMax = Integer.MIN_VALUE;
+
+	/**
+	 * Time series catalog that is indexed.
+	 */
+	private final TimeSeriesCatalogStore tscatalogStore;
+
+	/**
+	 * Constructor.
+	 * @param tscatalogStore time series catalog to index
+	 */
+	public TimeSeriesCatalogSpatialIndex ( TimeSeriesCatalogStore tscatalogStore ) {
+		this.tscatalogStore = tscatalogStore;
+		for ( int i = 0; i < tscatalogStore.size(); i++ ) {
+			double latitude = tscatalogStore.getStationLatitude(i);
+			double longitude = tscatalogStore.getStationLongitude(i);
+			if ( Double.isNaN(latitude) || Double.isNaN(longitude) ) {
+				continue;
+			}
+			int row = getRow(latitude);
+			int col = getColumn(longitude);
+			this.rowMin = Math.min(this.rowMin, row);
+			this.rowMax = Math.max(this.rowMax, row);
+			this.colMin = Math.min(this.colMin, col);
+			this.colMax = Math.max(this.colMax, col);
+			List<Integer> cell = this.cellMap.get(getCellKey(row, col));
+			if ( cell == null ) {
+				cell = new ArrayList<>();
+				this.cellMap.put(getCellKey(row, col), cell);
+			}
+			cell.add(i);
+		}
+	}
+
+	/**
+	 * Find the catalog with station inside a bounding box.
+	 * @param longitudeMin minimum longitude (west edge)
+	 * @param latitudeMin minimum latitude (south edge)
+	 * @param longitudeMax maximum longitude (east edge)
+	 * @param latitudeMax maximum latitude (north edge)
+	 * @return positions of matching catalog, in the original order
+	 */
+	public List<Integer> findInBoundingBox ( double longitudeMin, double latitudeMin, double longitudeMax, double latitudeMax ) {
+		List<Integer> positions = new ArrayList<>();
+		for ( int row = Math.max(getRow(latitudeMin), this.rowMin); row <= Math.min(getRow(latitudeMax), this.rowMax); row++ ) {
+			for ( int col = Math.max(getColumn(longitudeMin), this.colMin); col <= Math.min(getColumn(longitudeMax), this.colMax); col++ ) {
+				List<Integer> cell = this.cellMap.get(getCellKey(row, col));
+				if ( cell == null ) {
+					continue;
+				}
+				for ( Integer i : cell ) {
+					double latitude = this.tscatalogStore.getStationLatitude(i);
+					double longitude = this.tscatalogStore.getStationLongitude(i);
+					if ( (latitude >= latitudeMin) && (latitude <= latitudeMax)
+						&& (longitude >= longitudeMin) && (longitude <= longitudeMax) ) {
+						positions.add(i);
+					}
+				}
+			}
+		}
+		Collections.sort(positions);
+		return positions;
+	}
+
+	/**
+	 * Find the catalog for the nearest stations.
+	 * All catalog for a station are returned, so the returned list may be longer than the station count.
+	 * @param latitude latitude of the point to search from
+	 * @param longitude longitude of the point to search from
+	 * @param stationCount number of stations to return
+	 * @param include predicate to limit the positions that are considered, or null to consider all
+	 * @return positions of matching catalog, sorted by distance
+	 */
+	public List<Integer> findNearest ( double latitude, double longitude, int stationCount, IntPredicate include ) {
+		List<Integer> nearestList = new ArrayList<>();
+		if ( (stationCount <= 0) || this.cellMap.isEmpty() ) {
+			return nearestList;
+		}
+		int row0 = getRow(latitude);
+		int col0 = getColumn(longitude);
+		// Station identifier code and distance for the candidates found so far.
+		Map<Integer,Double> stationDistanceMap = new HashMap<>();
+		List<Integer> candidates = new ArrayList<>();
+		int ringMax = Math.max(
+			Math.max(Math.abs(row0 - this.rowMin), Math.abs(this.rowMax - row0)),
+			Math.max(Math.abs(col0 - this.colMin), Math.abs(this.colMax - col0)));
+		for ( int ring = 0; ring <= ringMax; ring++ ) {
+			// Add the cells on the perimeter of the ring.
+			for ( int row = row0 - ring; row <= row0 + ring; row++ ) {
+				for ( int col = col0 - ring; col <= col0 + ring; col++ ) {
+					if ( (Math.abs(row - row0) != ring) && (Math.abs(col - col0) != ring) ) {
+						// Interior cell, already processed.
+						continue;
+					}
+					List<Integer> cell = this.cellMap.get(getCellKey(row, col));
+					if ( cell == null ) {
+						continue;
+					}
+					for ( Integer i : cell ) {
+						if ( (include != null) && !include.test(i) ) {
+							continue;
+						}
+						double distance = getDistanceMiles(latitude, longitude,
+							this.tscatalogStore.getStationLatitude(i), this.tscatalogStore.getStationLongitude(i));
+						stationDistanceMap.put(this.tscatalogStore.getStationIdCode(i), distance);
+						candidates.add(i);
+					}
+				}
+			}
+			if ( stationDistanceMap.size() >= stationCount ) {
+				// Can stop if the closest possible station outside the ring is further than the Nth station.
+				List<Double> distances = new ArrayList<>(stationDistanceMap.values());
+				Collections.sort(distances);
+				double nthDistance = distances.get(stationCount - 1);
+				double latitudeOuter = Math.min(90.0, Math.abs(latitude) + (ring + 1)*this.cellSize);
+				double outsideDistance = ring*this.cellSize*MILES_PER_DEGREE*Math.cos(Math.toRadians(latitudeOuter));
+				if ( outsideDistance > nthDistance ) {
+					break;
+				}
+			}
+		}
+		// Sort the candidates by distance and keep the requested number of stations.
+		candidates.sort((i1, i2) -> Double.compare(
+			stationDistanceMap.get(this.tscatalogStore.getStationIdCode(i1)),
+			stationDistanceMap.get(this.tscatalogStore.getStationIdCode(i2))));
+		Set<Integer> stationIds = new HashSet<>();
+		for ( Integer i : candidates ) {
+			Integer stationIdCode = this.tscatalogStore.getStationIdCode(i);
+			if ( !stationIds.contains(stationIdCode) ) {
+				if ( stationIds.size() == stationCount ) {
+					break;
+				}
+				stationIds.add(stationIdCode);
+			}
+			nearestList.add(i);
+		}
+		return nearestList;
+	}
+
+	/**
+	 * Find the catalog with station within a radius of a point.
+	 * @param latitude latitude of the center point
+	 * @param longitude longitude of the center point
+	 * @param radiusMiles radius in miles
+	 * @return positions of matching catalog, in the original order
+	 */
+	public List<Integer> findWithinRadius ( double latitude, double longitude, double radiusMiles ) {
+		// Limit the search to the bounding box of the circle.
+		double latitudeDelta = radiusMiles/MILES_PER_DEGREE;
+		double cosLatitude = Math.cos(Math.toRadians(Math.min(89.0, Math.abs(latitude) + latitudeDelta)));
+		double longitudeDelta = radiusMiles/(MILES_PER_DEGREE*cosLatitude);
+		List<Integer> positions = new ArrayList<>();
+		for ( int row = Math.max(getRow(latitude - latitudeDelta), this.rowMin);
+			row <= Math.min(getRow(latitude + latitudeDelta), this.rowMax); row++ ) {
+			for ( int col = Math.max(getColumn(longitude - longitudeDelta), this.colMin);
+				col <= Math.min(getColumn(longitude + longitudeDelta), this.colMax); col++ ) {
+				List<Integer> cell = this.cellMap.get(getCellKey(row, col));
+				if ( cell == null ) {
+					continue;
+				}
+				for ( Integer i : cell ) {
+					if ( getDistanceMiles(latitude, longitude,
+						this.tscatalogStore.getStationLatitude(i), this.tscatalogStore.getStationLongitude(i)) <= radiusMiles ) {
+						positions.add(i);
+					}
+				}
+			}
+		}
+		Collections.sort(positions);
+		return positions;
+	}
+
+	/**
+	 * Return the key for a grid cell.
+	 */
+	private long getCellKey ( int row, int col ) {
+		return (((long)row) << 32) | (col & 0xffffffffL);
+	}
+
+	/**
+	 * Return the grid column for a longitude.
+	 */
+	private int getColumn ( double longitude ) {
+		return (int)Math.floor(longitude/this.cellSize);
+	}
+
+	/**
+	 * Return the great circle (haversine) distance between two points.
+	 * @param latitude1 latitude of the first point, decimal degrees
+	 * @param longitude1 longitude of the first point, decimal degrees
+	 * @param latitude2 latitude of the second point, decimal degrees
+	 * @param longitude2 longitude of the second point, decimal degrees
+	 * @return distance in miles
+	 */
+	public static double getDistanceMiles ( double latitude1, double longitude1, double latitude2, double longitude2 ) {
+		double dLat = Math.toRadians(latitude2 - latitude1);
+		double dLon = Math.toRadians(longitude2 - longitude1);
+		double a = Math.sin(dLat/2)*Math.sin(dLat/2)
+			+ Math.cos(Math.toRadians(latitude1))*Math.cos(Math.toRadians(latitude2))*Math.sin(dLon/2)*Math.sin(dLon/2);
+		return 2.0*EARTH_RADIUS_MILES*Math.atan2(Math.sqrt(a), Math.sqrt(1.0 - a));
+	}
+
+	/**
+	 * Return the grid row for a latitude.
+	 */
+	private int getRow ( double latitude ) {
+		return (int)Math.floor(latitude/this.cellSize);
+	}
+
+	/**
+	 * Return the time series catalog store that is indexed.
+	 * @return the time series catalog store that is indexed
+	 */
+	public TimeSeriesCatalogStore getTimeSeriesCatalogStore () {
+		return this.tscatalogStore;
+	}
+}
@@ -22,6 +22,15 @@ NoticeEnd */
 
 package org.openwaterfoundation.tstool.plugin.synoptic.util;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import RTi.Util.GUI.InputFilter;
 import RTi.Util.Message.Message;
 
@@ -32,6 +41,31 @@ import RTi.Util.Message.Message;
  */
 public class WebUtil {
 
+	/**
+	 * Pattern for the HTTP response code in an HttpURLConnection exception message.
+	 */
+	private static final Pattern HTTP_CODE_PATTERN = Pattern.compile("HTTP response code: (\\d+)");
+
+	/**
+	 * Pattern for the 'token' query parameter in a URL.
+	 */
+	private static final Pattern TOKEN_PATTERN = Pattern.compile("([?&]token=)([^&\\s]*)");
+
+	/**
+	 * Pattern for a URL in an exception message.
+	 */
+	private static final Pattern URL_PATTERN = Pattern.compile("https?://\\S+");
+
+	/**
+	 * Timeout to connect to a web service, milliseconds.
+	 */
+	public static final int CONNECT_TIMEOUT_MS = 30*1000;
+
+	/**
+	 * Timeout waiting for data from a web service, milliseconds, so that a stalled request fails rather than hanging.
+	 */
+	public static final int READ_TIMEOUT_MS = 120*1000;
+
 	/**
 	 * Append a URL query parameter to the URL, automatically adding ? and &.
 	 * @param urlString URL string builder to update.
@@ -51,6 +85,32 @@ public class WebUtil {
 		urlString.append(paramValue);
 	}
 
+	/**
+	 * Describe a request error for messages and status that are kept after the request,
+	 * without the API token that HttpURLConnection includes in exception messages (e.g., "for URL: ...?token=...").
+	 * Only the exception class, the HTTP response code, and the URL with the token masked are included.
+	 * @param e the error
+	 * @return description of the error, for example "IOException (HTTP 500) https://host/v2/stations/timeseries?token=abcd...wxyz&stid=KAPA"
+	 */
+	public static String describeError ( Exception e ) {
+		if ( e == null ) {
+			return null;
+		}
+		StringBuilder b = new StringBuilder(e.getClass().getSimpleName());
+		String message = e.getMessage();
+		if ( message != null ) {
+			Matcher m = HTTP_CODE_PATTERN.matcher(message);
+			if ( m.find() ) {
+				b.append(" (HTTP " + m.group(1) + ")");
+			}
+			m = URL_PATTERN.matcher(message);
+			if ( m.find() ) {
+				b.append(" " + maskUrlToken(m.group()));
+			}
+		}
+		return b.toString();
+	}
+
 	/**
 	 * Format a URL query parameter clause give an input filter and operator.
 	 * Wildcards are generally allowed in KiWIS for string query parameters but not strings that
@@ -73,10 +133,19 @@ public class WebUtil {
 		if ( (whereSubject == null) || whereSubject.equals("") ) {
 		    return null;
 		}
+		if ( whereSubject.equalsIgnoreCase("nearest") ) {
+			// Nearest stations are not supported by a query parameter:
+			// - evaluated locally with LocalQueryUtil
+			return null;
+		}
 		// Get the user input.
 		String input = filter.getInputInternal().trim();
 	    if ( upperCase ) {
 	        input = input.toUpperCase();
+	    }
+	    if ( whereSubject.equalsIgnoreCase("bbox") || whereSubject.equalsIgnoreCase("radius") ) {
+	    	// Coordinate lists must not include whitespace.
+	    	input = input.replace(" ", "");
 	    }
 		Message.printStatus(2,routine,"Internal input is \"" + input + "\"");
 		// Now format the where clause.
@@ -84,7 +153,8 @@ public class WebUtil {
 		String whereClause = null;
 
 		if ( operator.equalsIgnoreCase(InputFilter.INPUT_BETWEEN) ) {
-			// TODO - need to enable in InputFilter_JPanel.
+			// Not supported by Synoptic query parameters:
+			// - evaluated locally with LocalQueryUtil
 		}
 		else if ( operator.equalsIgnoreCase( InputFilter.INPUT_CONTAINS) ) {
 			// Only applies to strings.
@@ -120,7 +190,16 @@ public class WebUtil {
 			whereClause = whereSubject + "=" + input;
 		}
 		else if ( operator.equalsIgnoreCase(InputFilter.INPUT_ONE_OF) ){
-			// TODO - need to enable in InputFilter_JPanel.
+			// Synoptic query parameters accept a comma-separated list:
+			// - remove whitespace around the values
+			StringBuilder b = new StringBuilder();
+			for ( String part : input.split(",") ) {
+				if ( b.length() > 0 ) {
+					b.append(",");
+				}
+				b.append(part.trim());
+			}
+			whereClause = whereSubject + "=" + b;
 		}
 		else if ( operator.equalsIgnoreCase( InputFilter.INPUT_STARTS_WITH) ) {
 			whereClause = whereSubject + "=" + input + "*";
@@ -140,4 +219,50 @@ public class WebUtil {
 		//}
 		return whereClause;
 	}
+
+	/**
+	 * Mask the 'token' query parameter in a URL using ApiTokenPool.maskToken().
+	 * @param url URL to mask
+	 * @return the URL with the token masked
+	 */
+	public static String maskUrlToken ( String url ) {
+		Matcher m = TOKEN_PATTERN.matcher(url);
+		StringBuffer b = new StringBuffer();
+		while ( m.find() ) {
+			m.appendReplacement(b, Matcher.quoteReplacement(m.group(1) + ApiTokenPool.maskToken(m.group(2))));
+		}
+		m.appendTail(b);
+		return b.toString();
+	}
+
+	/**
+	 * Open a connection for a URL, with connect and read timeouts.
+	 * The request is made when the input stream or response code is requested.
+	 * @param urlString URL to open
+	 * @return the connection
+	 * @throws IOException if the connection cannot be opened
+	 */
+	public static HttpURLConnection openConnection ( String urlString ) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(urlString).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+		connection.setReadTimeout(READ_TIMEOUT_MS);
+		return connection;
+	}
+
+	/**
+	 * Read an input stream to the end into a byte buffer, for example a response from a cache.
+	 * The stream is not closed.
+	 * @param in input stream to read
+	 * @return buffer containing the response, positioned at the start
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static ByteBuffer readInputStreamToByteBuffer ( InputStream in ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64*1024);
+		byte [] bytes = new byte[16*1024];
+		int count;
+		while ( (count = in.read(bytes)) >= 0 ) {
+			out.write(bytes, 0, count);
+		}
+		return ByteBuffer.wrap(out.toByteArray());
+	}
 }
@@ -0,0 +1,134 @@
+// JacksonToolkitTest - tests for JacksonToolkit
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openwaterfoundation.tstool.plugin.synoptic.dao.MetadataStation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Tests for JacksonToolkit, in particular that streaming the 'STATION' array of a large response
+ * gives the same result as reading the full tree.
+ */
+public class JacksonToolkitTest {
+
+	/**
+	 * Folder containing the response files.
+	 */
+	private static final String RESPONSE_FOLDER = "src/test/resources/org/openwaterfoundation/tstool/plugin/synoptic/dto/";
+
+	/**
+	 * Number of copies of the stations in the large response.
+	 */
+	private static final int COPY_COUNT = 5000;
+
+	/**
+	 * Create a large 'metadata' response by repeating the stations in the response file.
+	 * @return the response bytes
+	 */
+	private byte [] createLargeResponse () throws Exception {
+		JacksonToolkit toolkit = JacksonToolkit.getInstance();
+		ObjectNode rootNode = (ObjectNode)toolkit.getObjectMapper().readTree(new File(RESPONSE_FOLDER + "metadata-stations.json"));
+		ArrayNode stationArray = (ArrayNode)rootNode.get("STATION");
+		ArrayNode largeArray = toolkit.getObjectMapper().createArrayNode();
+		for ( int i = 0; i < COPY_COUNT; i++ ) {
+			for ( JsonNode stationNode : stationArray ) {
+				ObjectNode copy = ((ObjectNode)stationNode).deepCopy();
+				copy.put("STID", stationNode.get("STID").asText() + i);
+				largeArray.add(copy);
+			}
+		}
+		rootNode.set("STATION", largeArray);
+		return toolkit.getObjectMapper().writeValueAsBytes(rootNode);
+	}
+
+	/**
+	 * The streamed 'STATION' elements and the other top-level objects must equal the tree model.
+	 */
+	@Test
+	public void testStreamedEqualsTree () throws Exception {
+		JacksonToolkit toolkit = JacksonToolkit.getInstance();
+		byte [] response = createLargeResponse();
+
+		JsonNode treeRootNode = toolkit.getJsonNodeFromInputStream(new ByteArrayInputStream(response), "tree", null);
+		assertEquals(response.length, toolkit.getLastResponseByteCount());
+
+		List<JsonNode> streamedList = new ArrayList<>();
+		JsonNode streamedRootNode = toolkit.getJsonNodeFromInputStream(new ByteArrayInputStream(response), "streamed",
+			"STATION", streamedList::add, null);
+		assertEquals(response.length, toolkit.getLastResponseByteCount());
+
+		// The streamed array elements.
+		JsonNode treeStationArray = treeRootNode.get("STATION");
+		assertEquals(3*COPY_COUNT, treeStationArray.size());
+		assertEquals(treeStationArray.size(), streamedList.size());
+		for ( int i = 0; i < streamedList.size(); i++ ) {
+			assertEquals(treeStationArray.get(i), streamedList.get(i));
+		}
+
+		// The root node without the streamed array.
+		assertFalse(streamedRootNode.has("STATION"));
+		ObjectNode treeRootNodeWithoutStation = ((ObjectNode)treeRootNode).deepCopy();
+		treeRootNodeWithoutStation.remove("STATION");
+		assertEquals(treeRootNodeWithoutStation, streamedRootNode);
+
+		// The objects are the same when deserialized from the streamed elements and with the list method.
+		List<MetadataStation> stationList = toolkit.treeToValueList(treeStationArray, MetadataStation.class);
+		assertEquals(streamedList.size(), stationList.size());
+		for ( int i = 0; i < streamedList.size(); i++ ) {
+			MetadataStation station = toolkit.treeToValue(streamedList.get(i), MetadataStation.class);
+			assertNotNull(station);
+			assertEquals(stationList.get(i).getStid(), station.getStid());
+			assertEquals(stationList.get(i).getName(), station.getName());
+			assertEquals(stationList.get(i).getSensorVariablesMap(), station.getSensorVariablesMap());
+		}
+	}
+
+	/**
+	 * A cancelled read stops streaming the array.
+	 */
+	@Test
+	public void testStreamedCancel () throws Exception {
+		JacksonToolkit toolkit = JacksonToolkit.getInstance();
+		byte [] response = createLargeResponse();
+		List<JsonNode> streamedList = new ArrayList<>();
+		toolkit.getJsonNodeFromInputStream(new ByteArrayInputStream(response), "streamed",
+			"STATION", streamedList::add, () -> streamedList.size() >= 10);
+		assertEquals(10, streamedList.size());
+		assertTrue(toolkit.getLastResponseByteCount() < response.length);
+	}
+}
@@ -0,0 +1,162 @@
+// ServerAggregationDecoderTest - tests for ServerAggregationDecoder
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openwaterfoundation.tstool.plugin.synoptic.util.IntervalAggregator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import RTi.Util.Time.DateTime;
+import RTi.Util.Time.TimeInterval;
+
+/**
+ * Tests for ServerAggregationDecoder using responses in the 'statistics' and 'precipitation' service format.
+ * Values must be set at the end of each period, which is the period start plus one interval.
+ */
+public class ServerAggregationDecoderTest {
+
+	/**
+	 * Folder containing the response files.
+	 */
+	private static final String RESPONSE_FOLDER = "src/test/resources/org/openwaterfoundation/tstool/plugin/synoptic/dto/";
+
+	/**
+	 * Decode a response file and return the values as "date/time=value" strings.
+	 */
+	private List<String> decode ( ServerAggregationDecoder decoder, String responseFile, String service, String statistic,
+		String sensorVariable, String valueArrayName, int intervalBase, DateTime periodStart ) throws Exception {
+		JsonNode rootNode = new ObjectMapper().readTree(new File(RESPONSE_FOLDER + responseFile));
+		List<String> values = new ArrayList<>();
+		assertTrue(decoder.decode(rootNode, service, statistic, sensorVariable, valueArrayName, intervalBase, periodStart,
+			(dateTime, value) -> values.add(dateTime + "=" + value)));
+		return values;
+	}
+
+	/**
+	 * A day's statistic with 'date' 2022-05-01 is for the day that ends at 2022-05-02.
+	 */
+	@Test
+	public void testStatisticsDay () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		List<String> values = decode(decoder, "statistics-KAPA-air_temp-day.json", "statistics",
+			IntervalAggregator.STATISTIC_MAX, "air_temp", "air_temp_set_1", TimeInterval.DAY, null);
+		assertEquals(3, values.size());
+		assertEquals("2022-05-02=21.1", values.get(0));
+		assertEquals("2022-05-03=18.9", values.get(1));
+		assertEquals("2022-05-05=24.4", values.get(2));
+		assertEquals(3, decoder.getDataCount());
+		assertEquals(1, decoder.getSkipCount());
+		assertEquals("Celsius", decoder.getUnits());
+	}
+
+	/**
+	 * An hour's statistic with 'date' at the start of the hour is for the hour that ends one hour later.
+	 */
+	@Test
+	public void testStatisticsHour () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		List<String> values = decode(decoder, "statistics-KAPA-air_temp-hour.json", "statistics",
+			IntervalAggregator.STATISTIC_MEAN, "air_temp", "air_temp_set_1", TimeInterval.HOUR, null);
+		assertEquals(3, values.size());
+		assertEquals("2022-05-01 01=12.5", values.get(0));
+		assertEquals("2022-05-01 02=11.1", values.get(1));
+		assertEquals("2022-05-01 03=9.63", values.get(2));
+	}
+
+	/**
+	 * A month's statistic with 'date' 2022-04 is for the month that ends at 2022-05.
+	 */
+	@Test
+	public void testStatisticsMonth () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		List<String> values = decode(decoder, "statistics-KAPA-air_temp-month.json", "statistics",
+			IntervalAggregator.STATISTIC_MIN, "air_temp", "air_temp_set_1", TimeInterval.MONTH, null);
+		assertEquals(2, values.size());
+		assertEquals("2022-05=-6.7", values.get(0));
+		assertEquals("2022-06=-1.1", values.get(1));
+	}
+
+	/**
+	 * Precipitation intervals are numbered from the request start, which is the start of the first day.
+	 */
+	@Test
+	public void testPrecipitationIntervalsDay () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		DateTime periodStart = ServerAggregationDecoder.getPeriodStart(DateTime.parse("2022-05-01T06:00"), TimeInterval.DAY);
+		assertEquals("2022-05-01", periodStart.toString());
+		List<String> values = decode(decoder, "precipitation-KAPA-intervals-day.json", "precipitation",
+			IntervalAggregator.STATISTIC_SUM, "precip_accum_one_hour", "precip_accum_one_hour_set_1", TimeInterval.DAY, periodStart);
+		assertEquals(2, values.size());
+		assertEquals("2022-05-02=0.0", values.get(0));
+		assertEquals("2022-05-03=4.57", values.get(1));
+		assertEquals(1, decoder.getSkipCount());
+		assertEquals("Millimeters", decoder.getUnits());
+	}
+
+	/**
+	 * A response without the statistics array is not decoded so that data can be aggregated locally.
+	 */
+	@Test
+	public void testMissingArray () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		JsonNode rootNode = new ObjectMapper().readTree(new File(RESPONSE_FOLDER + "statistics-KAPA-air_temp-day.json"));
+		assertFalse(decoder.decode(rootNode, "statistics", IntervalAggregator.STATISTIC_MAX, "relative_humidity",
+			"relative_humidity_set_1", TimeInterval.DAY, null, (dateTime, value) -> { throw new AssertionError("no values expected"); }));
+		assertEquals(0, decoder.getDataCount());
+	}
+
+	/**
+	 * Precipitation totals for a different sensor variable are not used, so that data can be aggregated locally.
+	 */
+	@Test
+	public void testPrecipitationOtherSensorVariable () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		JsonNode rootNode = new ObjectMapper().readTree(new File(RESPONSE_FOLDER + "precipitation-KAPA-intervals-day.json"));
+		assertFalse(decoder.decode(rootNode, "precipitation", IntervalAggregator.STATISTIC_SUM, "precip_accum_24_hour",
+			"precip_accum_24_hour_set_1", TimeInterval.DAY, DateTime.parse("2022-05-01"),
+			(dateTime, value) -> { throw new AssertionError("no values expected"); }));
+		assertEquals(0, decoder.getDataCount());
+	}
+
+	/**
+	 * Only the documented value for the statistic is used.
+	 */
+	@Test
+	public void testUnsupportedStatistic () throws Exception {
+		ServerAggregationDecoder decoder = new ServerAggregationDecoder();
+		JsonNode rootNode = new ObjectMapper().readTree(new File(RESPONSE_FOLDER + "statistics-KAPA-air_temp-day.json"));
+		assertFalse(decoder.decode(rootNode, "statistics", IntervalAggregator.STATISTIC_LAST, "air_temp",
+			"air_temp_set_1", TimeInterval.DAY, null, (dateTime, value) -> { throw new AssertionError("no values expected"); }));
+	}
+}
@@ -0,0 +1,185 @@
+// TimeSeriesCsvDecoderTest - tests for TimeSeriesCsvDecoder
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import RTi.Util.Time.DateTime;
+
+/**
+ * Tests for TimeSeriesCsvDecoder using 'timeseries' service CSV output (output=csv).
+ */
+public class TimeSeriesCsvDecoderTest {
+
+	/**
+	 * Folder containing the response files.
+	 */
+	private static final String RESPONSE_FOLDER = "src/test/resources/org/openwaterfoundation/tstool/plugin/synoptic/dto/";
+
+	/**
+	 * Read a response file into a buffer.
+	 */
+	private ByteBuffer readResponse ( String responseFile ) throws Exception {
+		return ByteBuffer.wrap(Files.readAllBytes(new File(RESPONSE_FOLDER + responseFile).toPath()));
+	}
+
+	/**
+	 * Read a response file into a buffer, with CRLF line endings.
+	 */
+	private ByteBuffer readResponseCrlf ( String responseFile ) throws Exception {
+		String response = new String(Files.readAllBytes(new File(RESPONSE_FOLDER + responseFile).toPath()), StandardCharsets.UTF_8);
+		return ByteBuffer.wrap(response.replace("\r\n", "\n").replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Check that a response is not decoded and that no values are passed to the consumer,
+	 * so that the JSON output can be read instead.
+	 */
+	private void checkLayoutProblem ( ByteBuffer buffer, String valueColumnName, String expectedProblem ) {
+		TimeSeriesCsvDecoder decoder = new TimeSeriesCsvDecoder();
+		assertFalse(decoder.decode(buffer, valueColumnName,
+			(dateTime, value) -> { throw new AssertionError("no values expected"); }));
+		assertEquals(expectedProblem, decoder.getLayoutProblem());
+		assertEquals(0, decoder.getDataCount());
+	}
+
+	/**
+	 * Decode a response with the units row, time zone offsets, empty and NaN values, and rows that cannot be decoded.
+	 */
+	@Test
+	public void testDecode () throws Exception {
+		TimeSeriesCsvDecoder decoder = new TimeSeriesCsvDecoder();
+		List<DateTime> dateTimes = new ArrayList<>();
+		List<Double> values = new ArrayList<>();
+		assertTrue(decoder.decode(readResponse("timeseries-KAPA-precip_accum_one_hour.csv"), "precip_accum_one_hour_set_1",
+			(dateTime, value) -> { dateTimes.add(dateTime); values.add(value); }));
+		assertNull(decoder.getLayoutProblem());
+		assertEquals("Inches", decoder.getUnits());
+		// The quoted value is not decoded.
+		assertEquals(7, decoder.getDataCount());
+		assertEquals(1, decoder.getBadRowCount());
+		assertEquals(7, values.size());
+
+		// Values, with empty and NaN values being missing.
+		assertEquals(0.0, values.get(0), 0.0);
+		assertEquals(0.01, values.get(1), 0.0);
+		assertTrue(Double.isNaN(values.get(2)));
+		assertTrue(Double.isNaN(values.get(3)));
+		assertEquals(0.12, values.get(4), 0.0);
+		assertEquals(0.15, values.get(5), 0.0);
+		assertEquals(0.25, values.get(6), 0.0);
+
+		// Date/times, including the time zone offset before and after the change to daylight saving time,
+		// must be the same as parsing the strings, as is done for the JSON output.
+		String [] expectedDateTimes = {
+			"2022-03-13T00:53:00-0700",
+			"2022-03-13T01:53:00-0700",
+			"2022-03-13T03:53:00-0600",
+			"2022-03-13T04:53:00-0600",
+			"2022-03-13T05:53:00-0600",
+			"2022-03-13T06:53:00-0600",
+			"2022-03-13T08:53"
+		};
+		for ( int i = 0; i < expectedDateTimes.length; i++ ) {
+			DateTime expected = DateTime.parse(expectedDateTimes[i]);
+			assertEquals(expectedDateTimes[i], expected.toString(), dateTimes.get(i).toString());
+			assertEquals(expectedDateTimes[i], expected.getTimeZoneAbbreviation(), dateTimes.get(i).getTimeZoneAbbreviation());
+		}
+		// Each observation must have its own instance.
+		assertFalse(dateTimes.get(0) == dateTimes.get(1));
+	}
+
+	/**
+	 * Decode a response with CRLF line endings and more than one value column.
+	 */
+	@Test
+	public void testDecodeCrlf () throws Exception {
+		TimeSeriesCsvDecoder decoder = new TimeSeriesCsvDecoder();
+		List<Double> values = new ArrayList<>();
+		assertTrue(decoder.decode(readResponseCrlf("timeseries-KAPA-air_temp.csv"), "relative_humidity_set_1",
+			(dateTime, value) -> values.add(value)));
+		assertEquals("%", decoder.getUnits());
+		assertEquals(2, values.size());
+		assertEquals(45.5, values.get(0), 0.0);
+		assertTrue(Double.isNaN(values.get(1)));
+
+		decoder = new TimeSeriesCsvDecoder();
+		values.clear();
+		assertTrue(decoder.decode(readResponseCrlf("timeseries-KAPA-air_temp.csv"), "air_temp_set_1",
+			(dateTime, value) -> values.add(value)));
+		assertEquals("Celsius", decoder.getUnits());
+		assertEquals(12.2, values.get(0), 0.0);
+		assertEquals(-1.5, values.get(1), 0.0);
+	}
+
+	/**
+	 * Each layout that is not supported returns false so that the JSON output is read instead.
+	 */
+	@Test
+	public void testLayoutProblems () throws Exception {
+		checkLayoutProblem(ByteBuffer.wrap("  \n".getBytes(StandardCharsets.UTF_8)),
+			"precip_accum_one_hour_set_1", "response is empty");
+		checkLayoutProblem(readResponse("timeseries-error.csv"),
+			"precip_accum_one_hour_set_1", "response is not CSV");
+		checkLayoutProblem(ByteBuffer.wrap("<html><body>Service unavailable</body></html>".getBytes(StandardCharsets.UTF_8)),
+			"precip_accum_one_hour_set_1", "response is not CSV");
+		checkLayoutProblem(ByteBuffer.wrap("# STATION: KAPA\n# STATE: CO\n".getBytes(StandardCharsets.UTF_8)),
+			"precip_accum_one_hour_set_1", "no column header");
+		checkLayoutProblem(ByteBuffer.wrap("Station_ID,DateTime,precip_accum_one_hour_set_1\n".getBytes(StandardCharsets.UTF_8)),
+			"precip_accum_one_hour_set_1", "no Date_Time column");
+		checkLayoutProblem(readResponse("timeseries-KAPA-precip_accum_one_hour.csv"),
+			"precip_accum_one_hour_set_2", "no precip_accum_one_hour_set_2 column");
+		checkLayoutProblem(readResponse("timeseries-KAPA-quoted-header.csv"),
+			"precip_accum_one_hour_set_1", "header uses quoted fields");
+	}
+
+	/**
+	 * The buffer is decoded from its position to its limit.
+	 */
+	@Test
+	public void testBufferPosition () throws Exception {
+		byte [] bytes = Files.readAllBytes(new File(RESPONSE_FOLDER + "timeseries-KAPA-air_temp.csv").toPath());
+		byte [] padded = new byte[bytes.length + 10];
+		System.arraycopy(bytes, 0, padded, 5, bytes.length);
+		ByteBuffer buffer = ByteBuffer.wrap(padded);
+		buffer.position(5);
+		buffer.limit(5 + bytes.length);
+		TimeSeriesCsvDecoder decoder = new TimeSeriesCsvDecoder();
+		assertTrue(decoder.decode(buffer, "air_temp_set_1", (dateTime, value) -> {}));
+		assertEquals(2, decoder.getDataCount());
+		assertEquals(0, decoder.getBadRowCount());
+	}
+}
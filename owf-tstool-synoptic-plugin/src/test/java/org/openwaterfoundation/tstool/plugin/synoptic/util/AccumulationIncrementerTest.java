@@ -0,0 +1,107 @@
+// AccumulationIncrementerTest - tests for AccumulationIncrementer
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for AccumulationIncrementer, which must give the same result as FillConstant(ConstantValue=0)
+ * followed by Delta(ExpectedTrend=Increasing,ResetType=Auto).
+ */
+public class AccumulationIncrementerTest {
+
+	/**
+	 * Folder containing the test files.
+	 */
+	private static final String FOLDER = "src/test/resources/org/openwaterfoundation/tstool/plugin/synoptic/util/";
+
+	/**
+	 * Compare the increments for a 'timeseries' response with resets and missing values with the Delta output.
+	 */
+	@Test
+	public void testTimeSeriesResponse () throws Exception {
+		JsonNode observationsNode = new ObjectMapper().readTree(new File(FOLDER + "timeseries-KAPA-precip_accum_one_hour.json"))
+			.get("STATION").get(0).get("OBSERVATIONS");
+		JsonNode dateTimeArray = observationsNode.get("date_time");
+		JsonNode valueArray = observationsNode.get("precip_accum_one_hour_set_1");
+
+		// Expected output, without comments.
+		List<String[]> expectedList = new ArrayList<>();
+		for ( String line : Files.readAllLines(new File(FOLDER + "timeseries-KAPA-precip_accum_one_hour-Delta.csv").toPath(),
+			StandardCharsets.UTF_8) ) {
+			if ( !line.startsWith("#") && !line.isEmpty() ) {
+				expectedList.add(line.split(",", -1));
+			}
+		}
+		assertEquals(expectedList.size(), dateTimeArray.size());
+
+		AccumulationIncrementer incrementer = new AccumulationIncrementer();
+		int resetCount = 0;
+		for ( int i = 0; i < dateTimeArray.size(); i++ ) {
+			String [] expected = expectedList.get(i);
+			assertEquals(expected[0], dateTimeArray.get(i).asText());
+			double value = valueArray.get(i).isNull() ? Double.NaN : valueArray.get(i).asDouble();
+			double increment = incrementer.increment(value);
+			if ( expected[1].isEmpty() ) {
+				assertTrue(expected[0], Double.isNaN(increment));
+			}
+			else {
+				assertEquals(expected[0], Double.parseDouble(expected[1]), increment, 1.0e-6);
+			}
+			assertEquals(expected[0], expected[2].equals(AccumulationIncrementer.RESET_FLAG), incrementer.isReset());
+			if ( incrementer.isReset() ) {
+				++resetCount;
+			}
+		}
+		assertEquals(dateTimeArray.size(), incrementer.getInputCount());
+		assertEquals(resetCount, incrementer.getResetCount());
+		assertEquals(3, resetCount);
+	}
+
+	/**
+	 * A missing value is treated as zero, which is a reset, so the value after the gap is the increment from zero.
+	 */
+	@Test
+	public void testGap () {
+		AccumulationIncrementer incrementer = new AccumulationIncrementer();
+		assertTrue(Double.isNaN(incrementer.increment(0.5)));
+		assertEquals(0.0, incrementer.increment(Double.NaN), 1.0e-6);
+		assertTrue(incrementer.isReset());
+		assertEquals(0.7, incrementer.increment(0.7), 1.0e-6);
+		assertEquals(0.1, incrementer.increment(0.8), 1.0e-6);
+		assertEquals(1, incrementer.getResetCount());
+	}
+}
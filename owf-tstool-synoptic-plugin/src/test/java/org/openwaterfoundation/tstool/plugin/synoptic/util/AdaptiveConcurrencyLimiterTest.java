@@ -0,0 +1,89 @@
+// AdaptiveConcurrencyLimiterTest - tests for AdaptiveConcurrencyLimiter
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for AdaptiveConcurrencyLimiter.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	/**
+	 * A thread that is interrupted while waiting for the limit does not get a permit and remains interrupted.
+	 */
+	@Test
+	public void testAcquireInterruptedWhileWaiting () throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+		AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+		assertNotNull(permit);
+		boolean [] result = new boolean[2];
+		Thread thread = new Thread(() -> {
+			try {
+				limiter.acquire(true);
+			}
+			catch ( InterruptedIOException e ) {
+				result[0] = true;
+			}
+			result[1] = Thread.currentThread().isInterrupted();
+		});
+		thread.start();
+		Thread.sleep(50);
+		thread.interrupt();
+		thread.join(5000);
+		assertTrue("InterruptedIOException expected", result[0]);
+		assertTrue("Interrupt flag should be restored", result[1]);
+		assertEquals(1, limiter.getInFlight());
+		permit.release();
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	/**
+	 * An interrupted thread does not get a permit even if the limit has not been reached.
+	 */
+	@Test
+	public void testAcquireInterruptedWithoutWaiting () {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2);
+		Thread.currentThread().interrupt();
+		try {
+			limiter.acquire(false);
+			fail("InterruptedIOException expected");
+		}
+		catch ( InterruptedIOException e ) {
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally {
+			// Clear the interrupt so that other tests are not affected.
+			Thread.interrupted();
+		}
+		assertEquals(0, limiter.getInFlight());
+	}
+}
@@ -0,0 +1,87 @@
+// CheckpointJournalTest - tests for CheckpointJournal
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for CheckpointJournal.
+ */
+public class CheckpointJournalTest {
+
+	/**
+	 * Write a response cache entry file.
+	 */
+	private File writeEntry ( File folder, String name, String key ) throws IOException {
+		File entryFile = new File(folder, name);
+		try ( OutputStream out = new GZIPOutputStream(new FileOutputStream(entryFile)) ) {
+			out.write(("SynopticResponseCache 1\nKey: " + key + "\n\n{}").getBytes(StandardCharsets.UTF_8));
+		}
+		return entryFile;
+	}
+
+	/**
+	 * When the read is complete, the journal and the entries that were only saved for the journal are deleted,
+	 * and entries that are cached for their time to live are kept.
+	 */
+	@Test
+	public void testDelete () throws Exception {
+		File folder = Files.createTempDirectory("checkpoint-test").toFile();
+		ResponseCache responseCache = new ResponseCache(folder);
+		responseCache.setTtlSeconds("stations/metadata", 3600);
+		File dataFile = writeEntry(folder, "data.gz", "stations/timeseries?stid=KAPA&vars=air_temp");
+		File metadataFile = writeEntry(folder, "metadata.gz", "stations/metadata?stid=KAPA");
+		File journalFile = CheckpointJournal.getJournalFile(folder, "ReadSynoptic(StationId=\"KAPA\")");
+
+		CheckpointJournal journal = new CheckpointJournal(journalFile, true);
+		String unitKey = CheckpointJournal.getUnitKey("KAPA.ASOS/AWOS.air_temp.Hour", "2022-05-01", "2022-06-01");
+		assertTrue(journal.recordComplete(unitKey, Arrays.asList(dataFile, metadataFile)));
+		journal.close();
+
+		// Resume and then complete the read.
+		journal = new CheckpointJournal(journalFile, true);
+		assertTrue(journal.isComplete(unitKey));
+		assertEquals(1, journal.delete(responseCache));
+		assertFalse(journalFile.exists());
+		assertFalse(dataFile.exists());
+		assertTrue(metadataFile.exists());
+
+		metadataFile.delete();
+		journalFile.getParentFile().delete();
+		folder.delete();
+	}
+}
@@ -0,0 +1,90 @@
+// CircuitBreakerTest - tests for CircuitBreaker
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for CircuitBreaker.
+ */
+public class CircuitBreakerTest {
+
+	/**
+	 * API token used in the tests.
+	 */
+	private static final String TOKEN = "0123456789abcdef0123456789abcdef";
+
+	/**
+	 * Open a circuit breaker with one failure.
+	 */
+	private CircuitBreaker openCircuit ( long openMs ) {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(0.5, 1, 1, openMs);
+		assertTrue(circuitBreaker.recordFailure(new IOException("Server returned HTTP response code: 500 for URL: "
+			+ "https://api.synopticdata.com/v2/stations/timeseries?token=" + TOKEN + "&stid=KAPA")));
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		return circuitBreaker;
+	}
+
+	/**
+	 * The last error in the status message must not include the API token.
+	 */
+	@Test
+	public void testStatusMessageMasksToken () {
+		CircuitBreaker circuitBreaker = openCircuit(60000);
+		String message = circuitBreaker.getStatusMessage();
+		assertFalse(message, message.contains(TOKEN));
+		assertTrue(message, message.contains("lastError=IOException (HTTP 500) "
+			+ "https://api.synopticdata.com/v2/stations/timeseries?token=0123...cdef&stid=KAPA"));
+		try {
+			circuitBreaker.checkAllowed();
+			fail("Circuit should be open.");
+		}
+		catch ( CircuitBreaker.CircuitOpenException e ) {
+			assertFalse(e.getMessage(), e.getMessage().contains(TOKEN));
+		}
+	}
+
+	/**
+	 * A half-open trial request that is released allows another trial request.
+	 */
+	@Test
+	public void testReleaseTrial () throws Exception {
+		CircuitBreaker circuitBreaker = openCircuit(1);
+		Thread.sleep(5);
+		assertTrue(circuitBreaker.checkAllowed());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		// The request was not made (e.g., the thread was interrupted).
+		circuitBreaker.releaseTrial();
+		assertFalse(circuitBreaker.checkAllowed());
+		assertTrue(circuitBreaker.recordSuccess());
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+	}
+}
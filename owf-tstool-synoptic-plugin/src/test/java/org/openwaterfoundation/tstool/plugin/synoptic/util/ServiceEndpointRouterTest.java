@@ -0,0 +1,63 @@
+// ServiceEndpointRouterTest - tests for ServiceEndpointRouter
+
+/* NoticeStart
+
+OWF TSTool Synoptic Plugin
+Copyright (C) 2023 Open Water Foundation
+
+OWF TSTool Synoptic Plugin is free software:  you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    OWF TSTool Synoptic Plugin is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with OWF TSTool Synoptic Plugin.  If not, see <https://www.gnu.org/licenses/>.
+
+NoticeEnd */
+
+
+package org.openwaterfoundation.tstool.plugin.synoptic.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for ServiceEndpointRouter.
+ */
+public class ServiceEndpointRouterTest {
+
+	/**
+	 * API token used in the tests.
+	 */
+	private static final String TOKEN = "0123456789abcdef0123456789abcdef";
+
+	/**
+	 * The last error in the endpoint health must not include the API token.
+	 */
+	@Test
+	public void testHealthMasksToken () {
+		ServiceEndpointRouter router = new ServiceEndpointRouter(
+			Arrays.asList("https://api.synopticdata.com/v2", "https://api2.synopticdata.com/v2"));
+		router.recordFailure("https://api.synopticdata.com/v2", new IOException("Server returned HTTP response code: 503 for URL: "
+			+ "https://api.synopticdata.com/v2/stations/timeseries?stid=KAPA&token=" + TOKEN + "&vars=air_temp"));
+		router.recordFailure("https://api2.synopticdata.com/v2",
+			new FileNotFoundException("https://api2.synopticdata.com/v2/stations/metadata?token=" + TOKEN));
+		String health = String.join("\n", router.getHealth());
+		assertFalse(health, health.contains(TOKEN));
+		assertTrue(health, health.contains("lastError=IOException (HTTP 503) "
+			+ "https://api.synopticdata.com/v2/stations/timeseries?stid=KAPA&token=0123...cdef&vars=air_temp"));
+		assertTrue(health, health.contains("lastError=FileNotFoundException "
+			+ "https://api2.synopticdata.com/v2/stations/metadata?token=0123...cdef"));
+	}
+}